@@ -0,0 +1,89 @@
+package com.thetis.commands;
+
+import com.thetis.connector.kg.KGStore;
+import com.thetis.system.Logger;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * java -jar Thetis.1.0.jar kg --kg-dir data/kg/dbpedia/files --output-dir data/kg/store
+ * The store is then used instead of Neo4j by setting 'kg.local' in the KG configuration file to the output directory
+ * The store is kept in memory and holds at most KGStore.MAX_RELATIONSHIPS relationships
+ */
+@picocli.CommandLine.Command(name = "kg", description = "Imports RDF files of a KG into a local KG store that replaces Neo4j for entity lookups. " +
+        "The store is loaded fully into memory and holds at most 2^31 - 9 relationships between resources, so larger KGs must use Neo4j.")
+public class ImportKG extends Command
+{
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec; // injected by picocli
+
+    private File kgDir = null;
+    @CommandLine.Option(names = { "-kg", "--kg-dir" }, paramLabel = "KG_DIR", description = "Directory of RDF files (.ttl, .nt, optionally compressed)", required = true)
+    public void setKgDirectory(File value)
+    {
+        if (!value.isDirectory())
+        {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    String.format("Invalid value '%s' for option '--kg-dir': " + "the path does not point to a directory.", value));
+        }
+
+        this.kgDir = value;
+    }
+
+    @CommandLine.Option(names = { "-od", "--output-dir" }, paramLabel = "OUT_DIR", description = "Directory the KG store is written to", required = true)
+    private File outputDir;
+
+    @Override
+    public Integer call()
+    {
+        try (Stream<Path> fileStream = Files.find(this.kgDir.toPath(), Integer.MAX_VALUE,
+                (filePath, fileAttr) -> fileAttr.isRegularFile() && RDFLanguages.filenameToLang(filePath.toString()) != null))
+        {
+            List<Path> files = fileStream.sorted().collect(Collectors.toList());
+            KGStore.Builder builder = new KGStore.Builder();
+            long startTime = System.nanoTime();
+            int imported = 0;
+
+            for (Path file : files)
+            {
+                try
+                {
+                    Lang lang = RDFLanguages.filenameToLang(file.toString());
+                    RDFParser.source(file).lang(lang).parse(builder);
+                    imported++;
+                    Logger.logNewLine(Logger.Level.INFO, "Imported '" + file.getFileName() + "': " + builder.relationships() + " relationships so far");
+                }
+
+                catch (RiotException e)     // A malformed file does not stop the import of remaining files
+                {
+                    Logger.logNewLine(Logger.Level.ERROR, "Failed parsing '" + file + "': " + e.getMessage());
+                }
+            }
+
+            Logger.logNewLine(Logger.Level.INFO, "Skipped " + builder.skipped() + " triples with literals or blank nodes");
+            KGStore store = builder.build();
+            store.write(this.outputDir);
+            Logger.logNewLine(Logger.Level.INFO, "Imported " + imported + "/" + files.size() + " files with " + store.resourceCount() +
+                    " resources and " + store.relationshipCount() + " relationships in " + (System.nanoTime() - startTime) / 1e9 + " seconds");
+
+            return 0;
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Failed importing KG: " + e.getMessage());
+            return -1;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import picocli.CommandLine;
 import org.neo4j.driver.exceptions.AuthenticationException;
 import org.neo4j.driver.exceptions.ServiceUnavailableException;
 
+import com.thetis.connector.KnowledgeGraph;
 import com.thetis.connector.Neo4jEndpoint;
 
 @picocli.CommandLine.Command(name = "index", description = "creates the index for the specified set of tables")
@@ -213,11 +214,17 @@ public class IndexTables extends Command {
 
         try {
             DBDriverBatch<List<Double>, String> embeddingStore = Factory.fromConfig(false);
-            Neo4jEndpoint connector = new Neo4jEndpoint(this.configFile);
+            KnowledgeGraph connector = Factory.knowledgeGraph(this.configFile);
             connector.testConnection();
 
+            if (this.linking == Linking.LUCENE && !(connector instanceof Neo4jEndpoint))
+            {
+                Logger.logNewLine(Logger.Level.ERROR, "Lucene linking reads entity labels from Neo4j and cannot be used with a local KG");
+                return 1;
+            }
+
             Logger.logNewLine(Logger.Level.INFO, "Entity linker is constructing indexes");
-            Linker linker = this.linking == Linking.LUCENE ? new LuceneLinker(connector, this.kgDir, true) : new WikiLinker(connector);
+            Linker linker = this.linking == Linking.LUCENE ? new LuceneLinker((Neo4jEndpoint) connector, this.kgDir, true) : new WikiLinker(connector);
             Logger.logNewLine(Logger.Level.INFO, "Done");
 
             switch (this.tableType) {
@@ -276,7 +283,7 @@ public class IndexTables extends Command {
      * @param connector Neo4J connector instance
      * @return Number of successfully loaded tables
      */
-    private long indexWikiTables(Path tableDir, File outputDir, Neo4jEndpoint connector, Linker linker,
+    private long indexWikiTables(Path tableDir, File outputDir, KnowledgeGraph connector, Linker linker,
                                 DBDriverBatch<List<Double>, String> embeddingStore, int threads){
 
         // Open table directory
@@ -136,6 +136,8 @@ public class LoadEmbedding extends Command
 
         if (this.psPassword != null)
             Configuration.setDBPassword(this.psPassword);
+
+        Configuration.flush();  // Other commands read the database parameters
     }
 
     private static void parseFile(InputStream inputStream)
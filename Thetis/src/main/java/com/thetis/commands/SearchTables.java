@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.gson.JsonObject;
 import com.google.gson.Gson;
@@ -18,6 +19,7 @@ import java.util.stream.Stream;
 
 import com.thetis.connector.DBDriverBatch;
 import com.thetis.connector.Factory;
+import com.thetis.connector.KnowledgeGraph;
 import com.thetis.connector.Neo4jEndpoint;
 import com.thetis.loader.IndexReader;
 import com.thetis.loader.Stats;
@@ -26,10 +28,12 @@ import com.thetis.store.EmbeddingsIndex;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.TableCorpus;
 import com.thetis.store.lsh.SetLSHIndex;
 import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
 import com.thetis.tables.JsonTable;
 import com.thetis.commands.parser.TableParser;
@@ -104,7 +108,7 @@ public class SearchTables extends Command {
         }
     }
 
-    private enum PrefilterTechnique {LSH_TYPES, LSH_PREDICATES, LSH_EMBEDDINGS, PPR, BM25}
+    enum PrefilterTechnique {LSH_TYPES, LSH_PREDICATES, LSH_EMBEDDINGS, PPR, BM25, ENTITY_LINK}
 
     @CommandLine.Option(names = { "-sm", "--search-mode" }, description = "Must be one of {exact, analogous}", required = true)
     private SearchMode searchMode = null;
@@ -237,9 +241,23 @@ public class SearchTables extends Command {
     @CommandLine.Option(names = {"-t", "--threads"}, description = "Number of threads", required = true, defaultValue = "1")
     private int threads;
 
-    @CommandLine.Option(names = {"-pf", "--pre-filter"}, description = "Pre-filtering technique to reduce search space (LSH_TYPES, LSH_PREDICATES, LSH_EMBEDDINGS, BM25, PPR)")
+    @CommandLine.Option(names = {"-qt", "--query-timeout"}, description = "Time limit in milliseconds for searching tables of each query. When exceeded, the top-K tables found so far are returned", defaultValue = "0")
+    private long queryTimeout;
+
+    @CommandLine.Option(names = {"-pr", "--prune"}, description = "If specified, analogous search skips tables whose score upper bound is below the current top-K. The result is the same as without pruning")
+    private boolean prune;
+
+    private ExecutionService executionService = null;
+
+    @CommandLine.Option(names = {"-pf", "--pre-filter"}, description = "Pre-filtering technique to reduce search space (LSH_TYPES, LSH_PREDICATES, LSH_EMBEDDINGS, BM25, PPR, ENTITY_LINK)")
     private PrefilterTechnique prefilterTechnique = null;
 
+    @CommandLine.Option(names = {"-rtf", "--rare-type-frequency"}, description = "ENTITY_LINK pre-filtering also keeps tables sharing a type with the query that is assigned to at most this fraction of entities. Use 0 to only keep tables sharing entities", defaultValue = "0.01")
+    private double rareTypeFrequency;
+
+    @CommandLine.Option(names = {"--mmap"}, description = "If specified, the entity linker, entity table, entity-table link, and embeddings are memory-mapped from the index file instead of read onto the heap")
+    private boolean memoryMapping;
+
     @Override
     public Integer call()
     {
@@ -256,8 +274,11 @@ public class SearchTables extends Command {
         try
         {
             // Perform De-Serialization of the indexes
+            this.executionService = new ExecutionService(this.threads);
             long startTime = System.nanoTime();
-            IndexReader indexReader = new IndexReader(this.indexDir, true, true);
+            IndexReader indexReader = new IndexReader(this.indexDir, true, true,
+                    requiredComponents(this.searchMode == SearchMode.ANALOGOUS, this.prefilterTechnique));
+            indexReader.useMemoryMapping(this.memoryMapping);
             indexReader.performIO();
 
             long elapsedTime = System.nanoTime() - startTime;
@@ -267,25 +288,34 @@ public class SearchTables extends Command {
             EntityTable entityTable = indexReader.getEntityTable();
             EntityTableLink entityTableLink = indexReader.getEntityTableLink();
             EmbeddingsIndex<Id> embeddingsIdx = indexReader.getEmbeddingsIndex();
-            SetLSHIndex typesLSH = indexReader.getTypesLSHIndex();
-            SetLSHIndex predicatesLSH = indexReader.getPredicatesLSHIndex();
-            VectorLSHIndex embeddingsLSH = indexReader.getEmbeddingsLSHIndex();
-            BM25 bm25 = new BM25(linker, entityTable, entityTableLink, embeddingsIdx);
-            typesLSH.useEntityLinker(linker);
-            predicatesLSH.useEntityLinker(linker);
-            embeddingsLSH.useEntityLinker(linker);
+            TableCorpus tableCorpus = this.searchMode == SearchMode.ANALOGOUS ? indexReader.getTableCorpus() : null;
             Prefilter prefilter = null;
             DBDriverBatch<List<Double>, String> embeddingStore = Factory.fromConfig(false);
-            Neo4jEndpoint connector = new Neo4jEndpoint(this.configFile);
+            KnowledgeGraph connector = Factory.knowledgeGraph(this.configFile);
             connector.testConnection();
 
-            if (this.prefilterTechnique != null)
+            if (this.prefilterTechnique != null && this.searchMode == SearchMode.ANALOGOUS)
             {
                 prefilter = switch (this.prefilterTechnique) {    // TODO: PPR pre-filtering must be implemented
-                    case LSH_TYPES -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, typesLSH);
-                    case LSH_PREDICATES -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, predicatesLSH);
-                    case LSH_EMBEDDINGS -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, embeddingsLSH);
-                    case BM25 -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, bm25);
+                    case LSH_TYPES -> {
+                        SetLSHIndex typesLSH = indexReader.getTypesLSHIndex();
+                        typesLSH.useEntityLinker(linker);
+                        typesLSH.useEntityTable(entityTable);
+                        yield new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, typesLSH);
+                    }
+                    case LSH_PREDICATES -> {
+                        SetLSHIndex predicatesLSH = indexReader.getPredicatesLSHIndex();
+                        predicatesLSH.useEntityLinker(linker);
+                        predicatesLSH.useEntityTable(entityTable);
+                        yield new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, predicatesLSH);
+                    }
+                    case LSH_EMBEDDINGS -> {
+                        VectorLSHIndex embeddingsLSH = indexReader.getEmbeddingsLSHIndex();
+                        embeddingsLSH.useEntityLinker(linker);
+                        yield new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, embeddingsLSH);
+                    }
+                    case BM25 -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, new BM25(linker, entityTable, entityTableLink, embeddingsIdx));
+                    case ENTITY_LINK -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, this.rareTypeFrequency);
                     default -> null;
                 };
             }
@@ -323,7 +353,7 @@ public class SearchTables extends Command {
                         break;
 
                     case ANALOGOUS:
-                        analogousSearch(queryTable, queryName, linker, entityTable, entityTableLink, embeddingsIdx, prefilter, this.tableDir.toPath());
+                        analogousSearch(queryTable, queryName, linker, entityTable, entityTableLink, embeddingsIdx, prefilter, tableCorpus, this.tableDir.toPath());
                         break;
 
                     case PPR:
@@ -346,6 +376,41 @@ public class SearchTables extends Command {
             Logger.logNewLine(Logger.Level.ERROR, e.getMessage());
             return -1;
         }
+
+        finally
+        {
+            if (this.executionService != null)
+            {
+                this.executionService.close();
+                this.executionService = null;
+            }
+        }
+    }
+
+    /**
+     * All search modes link query entities with the entity linker, entity table, and embeddings and look them up in the entity-table link
+     * Only analogous search reads the table corpus and the LSH index of its pre-filter
+     */
+    static Set<IndexReader.Component> requiredComponents(boolean analogous, PrefilterTechnique prefilterTechnique)
+    {
+        Set<IndexReader.Component> components = EnumSet.of(IndexReader.Component.ENTITY_LINKER, IndexReader.Component.ENTITY_TABLE,
+                IndexReader.Component.ENTITY_TABLE_LINK, IndexReader.Component.EMBEDDINGS);
+
+        if (!analogous)
+            return components;
+
+        components.add(IndexReader.Component.TABLE_CORPUS);
+
+        if (prefilterTechnique == PrefilterTechnique.LSH_TYPES)
+            components.add(IndexReader.Component.TYPES_LSH);
+
+        else if (prefilterTechnique == PrefilterTechnique.LSH_PREDICATES)
+            components.add(IndexReader.Component.PREDICATES_LSH);
+
+        else if (prefilterTechnique == PrefilterTechnique.LSH_EMBEDDINGS)
+            components.add(IndexReader.Component.EMBEDDINGS_LSH);
+
+        return components;
     }
 
     public boolean ensureQueryEntitiesMapping(Table<String> query, EntityLinking linker, EntityTableLink tableLink)
@@ -371,10 +436,19 @@ public class SearchTables extends Command {
         return true;
     }
 
-    private boolean linkQueryEntities(Table<String> query, DBDriverBatch<List<Double>, String> embeddingsDB, Neo4jEndpoint neo4j,
+    private boolean linkQueryEntities(Table<String> query, DBDriverBatch<List<Double>, String> embeddingsDB, KnowledgeGraph neo4j,
                                       EntityLinking linker, EntityTable entityTable, EmbeddingsIndex<Id> embeddingsIdx)
     {
         int rowCount = query.rowCount();
+        Set<String> entities = new HashSet<>();
+
+        for (int row = 0; row < rowCount; row++)
+        {
+            query.getRow(row).forEach(entities::add);
+        }
+
+        CompletableFuture<Map<String, List<String>>> types = neo4j.batchSearchTypesAsync(entities).toCompletableFuture(),
+                predicates = neo4j.batchSearchPredicatesAsync(entities).toCompletableFuture();
 
         for (int row = 0; row < rowCount; row++)
         {
@@ -383,19 +457,20 @@ public class SearchTables extends Command {
             for (int column = 0; column < rowSize; column++)
             {
                 String entity = query.getRow(row).get(column), link = linker.getInputPrefix() + "q" + row + column;
-                List<String> entityTypes = neo4j.searchTypes(entity);
-                List<String> entityPredicates = neo4j.searchPredicates(entity);
                 linker.addMapping(link, entity);
+            }
+        }
 
-                Id entityId = linker.kgUriLookup(entity);
-                List<Double> embeddings = embeddingsDB.select(entity.replace("'", "''"));
-                entityTable.insert(entityId,
-                        new Entity(entity, entityTypes.stream().map(Type::new).collect(Collectors.toList()), entityPredicates));
+        for (String entity : entities)
+        {
+            Id entityId = linker.kgUriLookup(entity);
+            List<Double> embeddings = embeddingsDB.select(entity.replace("'", "''"));
+            entityTable.insert(entityId,
+                    new Entity(entity, types.join().get(entity).stream().map(Type::new).collect(Collectors.toList()), predicates.join().get(entity)));
 
-                if (embeddings != null)
-                {
-                    embeddingsIdx.insert(entityId, embeddings);
-                }
+            if (embeddings != null)
+            {
+                embeddingsIdx.insert(entityId, embeddings);
             }
         }
 
@@ -468,16 +543,13 @@ public class SearchTables extends Command {
 
     /**
      * Given a list of entities, return a ranked list of table candidates
+     * If a pre-linked table corpus is given, its tables are searched instead of the JSON tables in the table directory
      */
     public void analogousSearch(Table<String> query, String queryName, EntityLinking linker, EntityTable table,
                                 EntityTableLink tableLink, EmbeddingsIndex<Id> embeddingIdx, Prefilter prefilter,
-                                Path tableDir) throws IOException
+                                TableCorpus tableCorpus, Path tableDir) throws IOException
     {
         AnalogousSearch search;
-        Stream<Path> fileStream = Files.find(tableDir, Integer.MAX_VALUE,
-                (filePath, fileAttr) -> fileAttr.isRegularFile() && filePath.getFileName().toString().endsWith(".json"));
-        Set<Path> filePaths = fileStream.collect(Collectors.toSet());
-        filePaths = filePaths.stream().map(Path::toAbsolutePath).collect(Collectors.toSet());
         AnalogousSearch.EntitySimilarity entitySimilarity = this.simProperty == SimilarityProperty.TYPES ?
                 AnalogousSearch.EntitySimilarity.JACCARD_TYPES : AnalogousSearch.EntitySimilarity.JACCARD_PREDICATES;
 
@@ -502,7 +574,27 @@ public class SearchTables extends Command {
                     this.hungarianAlgorithmSameAlignmentAcrossTuples, AnalogousSearch.SimilarityMeasure.EUCLIDEAN, prefilter);
         }
 
-        search.setCorpus(filePaths.stream().map(Path::toString).collect(Collectors.toSet()));
+        if (this.executionService != null)
+        {
+            search.useExecutionService(this.executionService);
+        }
+
+        search.setQueryTimeout(this.queryTimeout);
+        search.usePruning(this.prune);
+
+        if (tableCorpus != null)
+        {
+            search.useTableCorpus(tableCorpus);
+            search.setCorpus(tableCorpus.tableNames());
+        }
+
+        else
+        {
+            Stream<Path> fileStream = Files.find(tableDir, Integer.MAX_VALUE,
+                    (filePath, fileAttr) -> fileAttr.isRegularFile() && filePath.getFileName().toString().endsWith(".json"));
+            Set<Path> filePaths = fileStream.collect(Collectors.toSet());
+            search.setCorpus(filePaths.stream().map(Path::toAbsolutePath).map(Path::toString).collect(Collectors.toSet()));
+        }
 
         Result result = search.search(query);
         Iterator<Pair<String, Double>> resultIter = result.getResults();
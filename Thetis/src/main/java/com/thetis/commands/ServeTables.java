@@ -0,0 +1,228 @@
+package com.thetis.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.thetis.loader.IndexReader;
+import com.thetis.search.AnalogousSearch;
+import com.thetis.search.BM25;
+import com.thetis.search.Prefilter;
+import com.thetis.server.SearchServer;
+import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTable;
+import com.thetis.store.EntityTableLink;
+import com.thetis.store.TableCorpus;
+import com.thetis.structures.Id;
+import com.thetis.system.ExecutionService;
+import com.thetis.system.Logger;
+
+import picocli.CommandLine;
+
+/**
+ * java -jar Thetis.1.0.jar serve --index-dir data/index/wikitables --table-dir data/tables/wikitables --port 4567
+ */
+@picocli.CommandLine.Command(name = "serve", description = "serves analogous table search over HTTP with indexes kept in memory")
+public class ServeTables extends Command {
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec; // injected by picocli
+
+    private File indexDir = null;
+    @CommandLine.Option(names = { "-i", "--index-dir" }, paramLabel = "INDEX_DIR", description = "Directory of loaded indexes", required = true)
+    public void setIndexDirectory(File value) {
+        if (!value.isDirectory()) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    String.format("Invalid value '%s' for option '--index-dir': " + "the path does not point to a directory.", value));
+        }
+
+        this.indexDir = value;
+    }
+
+    private File tableDir = null;
+    @CommandLine.Option(names = { "-td", "--table-dir"}, paramLabel = "TABLE_DIR", description = "Directory containing tables. It is searched when the index has no pre-linked table corpus")
+    public void setTableDirectory(File value) {
+        if (!value.isDirectory()) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    String.format("Invalid value '%s' for option '--table-dir': " + "the path does not point to a directory.", value));
+        }
+
+        this.tableDir = value;
+    }
+
+    @CommandLine.Option(names = {"-p", "--port"}, description = "Port to listen on", defaultValue = "4567")
+    private int port;
+
+    @CommandLine.Option(names = {"-t", "--threads"}, description = "Number of threads", defaultValue = "1")
+    private int threads;
+
+    @CommandLine.Option(names = { "-topK", "--topK"}, description = "Number of tables returned when a request does not specify it", defaultValue = "10")
+    private int topK;
+
+    @CommandLine.Option(names = {"-es", "--entity-similarity"}, description = "Entity similarity (JACCARD_TYPES, JACCARD_PREDICATES, EMBEDDINGS_NORM, EMBEDDINGS_ABS, EMBEDDINGS_ANG)", defaultValue = "JACCARD_TYPES")
+    private AnalogousSearch.EntitySimilarity entitySimilarity;
+
+    @CommandLine.Option(names = { "-scpqe", "--singleColumnPerQueryEntity"}, description = "If specified, each query tuple will be evaluated against only one entity")
+    private boolean singleColumnPerQueryEntity;
+
+    @CommandLine.Option(names = { "--hungarianAlgorithmSameAlignmentAcrossTuples"}, description = "If specified, the Hungarian algorithm uses the same alignment of columns to query entities across all query tuples")
+    private boolean hungarianAlgorithmSameAlignmentAcrossTuples;
+
+    @CommandLine.Option(names = { "-as", "--adjustedSimilarity"}, description = "If specified, the similarity score between two entities can only be 1.0 if the two entities compared are identical")
+    private boolean adjustedSimilarity;
+
+    @CommandLine.Option(names = { "-wjs", "--weightedJaccardSimilarity"}, description = "If specified, the a weighted Jaccard similarity between two entities is performed")
+    private boolean weightedJaccardSimilarity;
+
+    @CommandLine.Option(names = { "--useMaxSimilarityPerColumn"}, description = "If specified, instead of taking the average similarity across columns as a score the maximum value is used")
+    private boolean useMaxSimilarityPerColumn;
+
+    @CommandLine.Option(names = {"-qt", "--query-timeout"}, description = "Time limit in milliseconds for searching tables of each query", defaultValue = "0")
+    private long queryTimeout;
+
+    @CommandLine.Option(names = {"-pr", "--prune"}, description = "If specified, analogous search skips tables whose score upper bound is below the current top-K")
+    private boolean prune;
+
+    @CommandLine.Option(names = {"-pf", "--pre-filter"}, description = "Pre-filtering technique to reduce search space (LSH_TYPES, LSH_PREDICATES, LSH_EMBEDDINGS, BM25, ENTITY_LINK)")
+    private SearchTables.PrefilterTechnique prefilterTechnique = null;
+
+    @CommandLine.Option(names = {"-rtf", "--rare-type-frequency"}, description = "ENTITY_LINK pre-filtering also keeps tables sharing a type with the query that is assigned to at most this fraction of entities", defaultValue = "0.01")
+    private double rareTypeFrequency;
+
+    @CommandLine.Option(names = {"--mmap"}, description = "If specified, the entity linker, entity table, entity-table link, and embeddings are memory-mapped from the index file instead of read onto the heap")
+    private boolean memoryMapping;
+
+    @Override
+    public Integer call()
+    {
+        if (this.prefilterTechnique == SearchTables.PrefilterTechnique.PPR)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "PPR pre-filtering is not supported");
+            return -1;
+        }
+
+        try (ExecutionService executionService = new ExecutionService(this.threads))
+        {
+            long startTime = System.nanoTime();
+            IndexReader indexReader = new IndexReader(this.indexDir, true, true, SearchTables.requiredComponents(true, this.prefilterTechnique));
+            indexReader.useExecutionService(executionService);
+            indexReader.useMemoryMapping(this.memoryMapping);
+            indexReader.performIO();
+            Logger.logNewLine(Logger.Level.INFO, "Indexes loaded from disk in " + (System.nanoTime() - startTime) / 1e9 + " seconds");
+
+            EntityLinking linker = indexReader.getLinker();
+            EntityTable entityTable = indexReader.getEntityTable();
+            EntityTableLink entityTableLink = indexReader.getEntityTableLink();
+            EmbeddingsIndex<Id> embeddingsIdx = indexReader.getEmbeddingsIndex();
+            TableCorpus tableCorpus = indexReader.getTableCorpus();
+            Set<String> corpus = Set.copyOf(AnalogousSearch.corpusFileNames(corpus(tableCorpus)));   // Shared by all queries
+            Supplier<Prefilter> prefilter = prefilter(indexReader);
+
+            SearchServer server = new SearchServer(linker, entityTableLink, k -> {
+                AnalogousSearch search = new AnalogousSearch(linker, entityTable, entityTableLink, embeddingsIdx, k, this.threads,
+                        this.entitySimilarity, this.singleColumnPerQueryEntity, this.weightedJaccardSimilarity, this.adjustedSimilarity,
+                        this.useMaxSimilarityPerColumn, this.hungarianAlgorithmSameAlignmentAcrossTuples,
+                        AnalogousSearch.SimilarityMeasure.EUCLIDEAN, prefilter.get());
+                search.useExecutionService(executionService);
+                search.setQueryTimeout(this.queryTimeout);
+                search.usePruning(this.prune);
+                search.useCorpus(corpus);
+
+                if (tableCorpus != null)
+                    search.useTableCorpus(tableCorpus);
+
+                return search;
+            }, this.topK, this.tableDir != null ? this.tableDir.toPath() : null);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start(this.port);
+            server.join();
+
+            return 0;
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Failed to load indexes from disk");
+            return -1;
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+
+        catch (RuntimeException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Table names of the pre-linked corpus, or else the JSON tables in the table directory
+     */
+    private Set<String> corpus(TableCorpus tableCorpus) throws IOException
+    {
+        if (tableCorpus != null)
+            return tableCorpus.tableNames();
+
+        else if (this.tableDir == null)
+            throw new IllegalArgumentException("The index has no pre-linked table corpus, so '--table-dir' must be specified");
+
+        try (Stream<Path> fileStream = Files.find(this.tableDir.toPath(), Integer.MAX_VALUE,
+                (filePath, fileAttr) -> fileAttr.isRegularFile() && filePath.getFileName().toString().endsWith(".json")))
+        {
+            return fileStream.map(Path::toAbsolutePath).map(Path::toString).collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * The entity-table prefilter is shared between requests, as its rare type index is built once
+     * The other prefilters are cheap to construct and are created per request
+     */
+    private Supplier<Prefilter> prefilter(IndexReader indexReader)
+    {
+        EntityLinking linker = indexReader.getLinker();
+        EntityTable entityTable = indexReader.getEntityTable();
+        EntityTableLink entityTableLink = indexReader.getEntityTableLink();
+        EmbeddingsIndex<Id> embeddingsIdx = indexReader.getEmbeddingsIndex();
+
+        if (this.prefilterTechnique == null)
+            return () -> null;
+
+        switch (this.prefilterTechnique)
+        {
+            case ENTITY_LINK:
+                Prefilter shared = new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, this.rareTypeFrequency);
+                return () -> shared;
+
+            case BM25:
+                return () -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, new BM25(linker, entityTable, entityTableLink, embeddingsIdx));
+
+            case LSH_TYPES:
+                indexReader.getTypesLSHIndex().useEntityLinker(linker);
+                indexReader.getTypesLSHIndex().useEntityTable(entityTable);
+                return () -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, indexReader.getTypesLSHIndex());
+
+            case LSH_PREDICATES:
+                indexReader.getPredicatesLSHIndex().useEntityLinker(linker);
+                indexReader.getPredicatesLSHIndex().useEntityTable(entityTable);
+                return () -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, indexReader.getPredicatesLSHIndex());
+
+            case LSH_EMBEDDINGS:
+                indexReader.getEmbeddingsLSHIndex().useEntityLinker(linker);
+                return () -> new Prefilter(linker, entityTable, entityTableLink, embeddingsIdx, indexReader.getEmbeddingsLSHIndex());
+
+            default:
+                return () -> null;
+        }
+    }
+}
@@ -3,12 +3,24 @@ package com.thetis.connector;
 import com.thetis.system.Configuration;
 import com.thetis.connector.embeddings.EmbeddingDBWrapper;
 import com.thetis.connector.embeddings.EmbeddingStore;
-
+import com.thetis.connector.kg.KGStore;
+import com.thetis.connector.kg.LocalKnowledgeGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.ResultSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Factory
 {
+    private static final Map<String, KnowledgeGraph> SHARED_KNOWLEDGE_GRAPHS = new ConcurrentHashMap<>();
+
     public static DBDriver<ResultSet, String> makeRelational(String dbPath, String dbName)
     {
         return SQLite.init(dbName, dbPath);
@@ -69,4 +81,63 @@ public class Factory
 
         else throw new RuntimeException("Un-recognized DB type: '" + dbType + "'");
     }
+
+    /**
+     * Opens the KG of a KG configuration file
+     * The local KG store in the directory of property 'kg.local' is used if it is set, and Neo4j is used otherwise
+     * @param configFile KG configuration file
+     * @return Opened KG
+     * @throws IOException If the configuration file or the local KG store cannot be read
+     */
+    public static KnowledgeGraph knowledgeGraph(File configFile) throws IOException
+    {
+        if (!configFile.exists())
+            throw new FileNotFoundException("property file '" + configFile.getAbsolutePath() + "' not found");
+
+        Properties properties = new Properties();
+
+        try (InputStream input = new FileInputStream(configFile))
+        {
+            properties.load(input);
+        }
+
+        String localStore = properties.getProperty("kg.local");
+
+        if (localStore != null && !localStore.isBlank())
+            return new LocalKnowledgeGraph(configFile, KGStore.open(new File(localStore.trim())));
+
+        return new Neo4jEndpoint(configFile);
+    }
+
+    /**
+     * KG of a KG configuration file that is shared within the JVM
+     * It is opened on first use and closed when the JVM exits, so callers must not close it
+     * The Neo4j driver pools its connections, so the shared KG serves concurrent lookups
+     * @param configFile KG configuration file
+     * @return Shared KG
+     * @throws IOException If the KG cannot be opened
+     */
+    public static KnowledgeGraph sharedKnowledgeGraph(File configFile) throws IOException
+    {
+        String key = configFile.getCanonicalPath();
+        KnowledgeGraph kg = SHARED_KNOWLEDGE_GRAPHS.get(key);
+
+        if (kg != null)
+            return kg;
+
+        synchronized (SHARED_KNOWLEDGE_GRAPHS)
+        {
+            kg = SHARED_KNOWLEDGE_GRAPHS.get(key);
+
+            if (kg == null)
+            {
+                KnowledgeGraph opened = knowledgeGraph(configFile);
+                Runtime.getRuntime().addShutdownHook(new Thread(opened::close));
+                SHARED_KNOWLEDGE_GRAPHS.put(key, opened);
+                kg = opened;
+            }
+
+            return kg;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package com.thetis.connector;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Lookups of entities in the KG used when indexing tables and linking query entities
+ * Implemented by the Neo4j endpoint and by the local KG store
+ */
+public interface KnowledgeGraph extends AutoCloseable
+{
+    /**
+     * @return Configuration file the KG was opened from
+     */
+    File getConfigFile();
+
+    void testConnection();
+
+    /**
+     * @param link A Wikipedia link
+     * @return Entities that are the primary topic of the link
+     */
+    List<String> searchLink(String link);
+
+    /**
+     * @param entity Entity URI
+     * @return rdf__type URIs of the entity
+     */
+    List<String> searchTypes(String entity);
+
+    /**
+     * @param entity Entity URI
+     * @return Distinct predicates of relationships from the entity
+     */
+    List<String> searchPredicates(String entity);
+
+    /**
+     * @param node Entity URI
+     * @return Number of relationships from and to the node
+     */
+    Long getNumNeighbors(String node);
+
+    /**
+     * @return Map from each link to its possible entity matches, which are empty for unknown links
+     */
+    Map<String, List<String>> batchSearchLink(Collection<String> links);
+
+    /**
+     * @return Map from each entity to its types, which are empty for unknown entities
+     */
+    Map<String, List<String>> batchSearchTypes(Collection<String> entities);
+
+    /**
+     * @return Map from each entity to its predicates, which are empty for unknown entities
+     */
+    Map<String, List<String>> batchSearchPredicates(Collection<String> entities);
+
+    /**
+     * @return Map from each node to its number of neighbors. Nodes not in the KG are not mapped.
+     */
+    Map<String, Long> batchNumNeighbors(Collection<String> nodes);
+
+    default CompletionStage<Map<String, List<String>>> batchSearchLinkAsync(Collection<String> links)
+    {
+        return CompletableFuture.completedFuture(batchSearchLink(links));
+    }
+
+    default CompletionStage<Map<String, List<String>>> batchSearchTypesAsync(Collection<String> entities)
+    {
+        return CompletableFuture.completedFuture(batchSearchTypes(entities));
+    }
+
+    default CompletionStage<Map<String, List<String>>> batchSearchPredicatesAsync(Collection<String> entities)
+    {
+        return CompletableFuture.completedFuture(batchSearchPredicates(entities));
+    }
+
+    default CompletionStage<Map<String, Long>> batchNumNeighborsAsync(Collection<String> nodes)
+    {
+        return CompletableFuture.completedFuture(batchNumNeighbors(nodes));
+    }
+
+    @Override
+    void close();
+}
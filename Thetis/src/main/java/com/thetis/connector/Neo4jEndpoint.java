@@ -3,17 +3,22 @@ package com.thetis.connector;
 import com.thetis.structures.Pair;
 import org.neo4j.driver.*;
 import org.neo4j.driver.Record;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.ResultCursor;
 
 import java.nio.file.Paths;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 /**
  * Connects and query the KG in Neo4j
  */
-public class Neo4jEndpoint implements AutoCloseable {
+public class Neo4jEndpoint implements KnowledgeGraph {
     private final Driver driver;
     private final String dbUri;
     private final String dbUser;
@@ -27,6 +32,17 @@ public class Neo4jEndpoint implements AutoCloseable {
     private final String display;
     private final String officialName;
     private File configFile;
+    private static final String TYPES_QUERY = "UNWIND $uris AS uri" + "\n"
+            + "MATCH (a:Resource) -[l:rdf__type]-> (b:Resource)" + "\n"
+            + "WHERE a.uri = uri" + "\n"
+            + "RETURN uri, collect(b.uri) AS matches";
+    private static final String PREDICATES_QUERY = "UNWIND $uris AS uri" + "\n"
+            + "MATCH (a:Resource) -[l]-> (b)" + "\n"
+            + "WHERE a.uri = uri" + "\n"
+            + "RETURN uri, collect(DISTINCT TYPE(l)) AS matches";
+    private static final String NEIGHBORS_QUERY = "UNWIND $uris AS uri" + "\n"
+            + "MATCH (a:Resource) WHERE a.uri = uri" + "\n"
+            + "RETURN uri, apoc.node.degree(a) AS count";
 
     public Neo4jEndpoint(final String pathToConfigurationFile) throws IOException {
         this(new File(pathToConfigurationFile));
@@ -46,8 +62,13 @@ public class Neo4jEndpoint implements AutoCloseable {
         this.dbUri = prop.getProperty("neo4j.uri", "bolt://localhost:7687");
         this.dbUser = prop.getProperty("neo4j.user", "neo4j");
         this.dbPassword = prop.getProperty("neo4j.password", "admin");
-        this.driver = GraphDatabase.driver(dbUri, AuthTokens.basic(dbUser, dbPassword),
-                Config.builder().withLogging(Logging.javaUtilLogging(Level.WARNING)).build());
+        Config.ConfigBuilder config = Config.builder().withLogging(Logging.javaUtilLogging(Level.WARNING));
+
+        if (prop.containsKey("neo4j.pool.size")) {
+            config.withMaxConnectionPoolSize(Integer.parseInt(prop.getProperty("neo4j.pool.size").trim()));
+        }
+
+        this.driver = GraphDatabase.driver(dbUri, AuthTokens.basic(dbUser, dbPassword), config.build());
         this.isPrimaryTopicOf_rel_type_name = getPredicate("isPrimaryTopicOf");
         this.rdfsLabel = "rdfs__label";
         this.birthName = getPredicate("birthName");
@@ -218,6 +239,102 @@ public class Neo4jEndpoint implements AutoCloseable {
         }
     }
 
+    /**
+     * Batch variant of {@link #searchLink(String)} running a single query
+     * @param links Wikipedia links
+     * @return Map from each link to its possible entity matches, which are empty for unknown links
+     */
+    public Map<String, List<String>> batchSearchLink(Collection<String> links) {
+        return batchSearch(linkQuery(), links);
+    }
+
+    public CompletionStage<Map<String, List<String>>> batchSearchLinkAsync(Collection<String> links) {
+        return batchSearchAsync(linkQuery(), links);
+    }
+
+    /**
+     * Batch variant of {@link #searchTypes(String)} running a single query
+     * @param entities Entity URIs
+     * @return Map from each entity to its rdf__type URIs, which are empty for unknown entities
+     */
+    public Map<String, List<String>> batchSearchTypes(Collection<String> entities) {
+        return batchSearch(TYPES_QUERY, entities);
+    }
+
+    public CompletionStage<Map<String, List<String>>> batchSearchTypesAsync(Collection<String> entities) {
+        return batchSearchAsync(TYPES_QUERY, entities);
+    }
+
+    /**
+     * Batch variant of {@link #searchPredicates(String)} running a single query
+     * @param entities Entity URIs
+     * @return Map from each entity to its distinct outgoing predicates, which are empty for unknown entities
+     */
+    public Map<String, List<String>> batchSearchPredicates(Collection<String> entities) {
+        return batchSearch(PREDICATES_QUERY, entities);
+    }
+
+    public CompletionStage<Map<String, List<String>>> batchSearchPredicatesAsync(Collection<String> entities) {
+        return batchSearchAsync(PREDICATES_QUERY, entities);
+    }
+
+    private String linkQuery() {
+        return "UNWIND $uris AS uri" + "\n"
+                + "MATCH (a:Resource) -[l:" + this.isPrimaryTopicOf_rel_type_name + "]-> (b:Resource)" + "\n"
+                + "WHERE b.uri = uri" + "\n"
+                + "RETURN uri, collect(a.uri) AS matches";
+    }
+
+    private Map<String, List<String>> batchSearch(String query, Collection<String> uris) {
+        if (uris.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try (Session session = this.driver.session()) {
+            List<Record> records = session.readTransaction(tx -> tx.run(query, Map.of("uris", new ArrayList<>(uris))).list());
+            return toMatches(records, uris);
+        }
+    }
+
+    private CompletionStage<Map<String, List<String>>> batchSearchAsync(String query, Collection<String> uris) {
+        List<String> params = new ArrayList<>(uris);
+        return readAsync(query, Map.of("uris", params)).thenApply(records -> toMatches(records, params));
+    }
+
+    /**
+     * Every requested URI is mapped, so URIs without matches map to an empty list like the single-entity lookups
+     */
+    private static Map<String, List<String>> toMatches(List<Record> records, Collection<String> uris) {
+        Map<String, List<String>> matches = new HashMap<>(uris.size());
+
+        for (Record r : records) {
+            matches.put(r.get("uri").asString(), new ArrayList<>(r.get("matches").asList(Value::asString)));
+        }
+
+        for (String uri : uris) {
+            matches.putIfAbsent(uri, new ArrayList<>());
+        }
+
+        return matches;
+    }
+
+    /**
+     * Runs a read query in an async session, which is closed when the query completes or fails
+     */
+    private CompletionStage<List<Record>> readAsync(String query, Map<String, Object> params) {
+        AsyncSession session = this.driver.asyncSession();
+
+        return session.readTransactionAsync(tx -> tx.runAsync(query, params).thenCompose(ResultCursor::listAsync))
+                .handle((records, error) -> session.closeAsync().thenApply(closed -> {
+                    if (error != null) {
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                    }
+
+                    return records;
+                }))
+                .thenCompose(Function.identity());
+    }
+
     public List<Pair<String, String>> searchLinkMentions(List<String> links) {
 
         Map<String, Object> params = new HashMap<>();
@@ -325,4 +442,34 @@ public class Neo4jEndpoint implements AutoCloseable {
             return numNeighbors;
         } 
     }
-}
\ No newline at end of file
+
+    /**
+     * Batch variant of {@link #getNumNeighbors(String)} running a single query
+     * @param nodes Entity URIs
+     * @return Map from each node to its number of neighbors. Nodes not in the graph are not mapped.
+     */
+    public Map<String, Long> batchNumNeighbors(Collection<String> nodes) {
+        if (nodes.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        try (Session session = this.driver.session()) {
+            List<Record> records = session.readTransaction(tx -> tx.run(NEIGHBORS_QUERY, Map.of("uris", new ArrayList<>(nodes))).list());
+            return toCounts(records);
+        }
+    }
+
+    public CompletionStage<Map<String, Long>> batchNumNeighborsAsync(Collection<String> nodes) {
+        return readAsync(NEIGHBORS_QUERY, Map.of("uris", new ArrayList<>(nodes))).thenApply(Neo4jEndpoint::toCounts);
+    }
+
+    private static Map<String, Long> toCounts(List<Record> records) {
+        Map<String, Long> counts = new HashMap<>(records.size());
+
+        for (Record r : records) {
+            counts.put(r.get("uri").asString(), r.get("count").asLong());
+        }
+
+        return counts;
+    }
+}
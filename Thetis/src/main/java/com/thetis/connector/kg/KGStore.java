@@ -0,0 +1,492 @@
+package com.thetis.connector.kg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only KG of resources and the relationships between them, kept in memory
+ * Resource URIs are interned in a sorted dictionary, so the ID of a resource is its position in the dictionary
+ * Relationships are stored as CSR adjacency lists sorted by predicate, so the types and the predicates of a resource are contiguous
+ * Like the KG imported into Neo4j, literals are not stored and predicates are named by namespace prefix and local name, e.g. 'rdf__type'
+ * The store is fully heap-resident and holds at most {@link #MAX_RELATIONSHIPS} relationships, so larger KGs must stay in Neo4j
+ */
+public class KGStore
+{
+    public static final String FILE_NAME = "kg.bin";
+    public static final int MAX_RELATIONSHIPS = Integer.MAX_VALUE - 8;     // Bounded by the largest Java array
+    private static final int MAGIC = 0x54484b47, VERSION = 1;
+    private static final String TYPE_PREDICATE = "rdf__type", PRIMARY_TOPIC_PREDICATE = "isPrimaryTopicOf";
+    private static final Map<Path, KGStore> OPEN_STORES = new ConcurrentHashMap<>();
+
+    private final String[] resources;   // Sorted resource URIs
+    private final String[] predicates;
+    private final int[] offsets;        // Relationships from resource i are in [offsets[i], offsets[i + 1])
+    private final int[] relationshipPredicates, relationshipTargets;
+    private final int[] inDegrees;
+    private final int[] topicOffsets, topicEntities;    // Entities that are primary topic of each resource
+    private final int typePredicate;
+
+    private KGStore(String[] resources, String[] predicates, int[] offsets, int[] relationshipPredicates, int[] relationshipTargets,
+                    int[] inDegrees, int[] topicOffsets, int[] topicEntities)
+    {
+        this.resources = resources;
+        this.predicates = predicates;
+        this.offsets = offsets;
+        this.relationshipPredicates = relationshipPredicates;
+        this.relationshipTargets = relationshipTargets;
+        this.inDegrees = inDegrees;
+        this.topicOffsets = topicOffsets;
+        this.topicEntities = topicEntities;
+        this.typePredicate = Arrays.asList(predicates).indexOf(TYPE_PREDICATE);
+    }
+
+    /**
+     * Opens the store in the given directory
+     * A store is read from disk once and shared by all callers opening the same directory
+     * @param dir Directory the store was written to
+     * @return Opened store
+     * @throws IOException If the store cannot be read
+     */
+    public static KGStore open(File dir) throws IOException
+    {
+        Path path = dir.toPath().toAbsolutePath().normalize();
+
+        try
+        {
+            return OPEN_STORES.computeIfAbsent(path, p -> {
+                try
+                {
+                    return read(p.resolve(FILE_NAME));
+                }
+
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param uri Resource URI
+     * @return ID of resource, or -1 if the resource is not in the KG
+     */
+    public int resource(String uri)
+    {
+        int id = Arrays.binarySearch(this.resources, uri);
+        return id >= 0 ? id : -1;
+    }
+
+    public String uri(int resource)
+    {
+        return this.resources[resource];
+    }
+
+    public int resourceCount()
+    {
+        return this.resources.length;
+    }
+
+    public int relationshipCount()
+    {
+        return this.relationshipTargets.length;
+    }
+
+    /**
+     * @param uri Entity URI
+     * @return rdf__type URIs of the entity, which are empty for an unknown entity
+     */
+    public List<String> types(String uri)
+    {
+        int id = resource(uri);
+        List<String> types = new ArrayList<>();
+
+        if (id == -1 || this.typePredicate == -1)
+        {
+            return types;
+        }
+
+        for (int i = this.offsets[id]; i < this.offsets[id + 1] && this.relationshipPredicates[i] <= this.typePredicate; i++)
+        {
+            if (this.relationshipPredicates[i] == this.typePredicate)
+            {
+                types.add(this.resources[this.relationshipTargets[i]]);
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * @param uri Entity URI
+     * @return Distinct predicates of relationships from the entity, which are empty for an unknown entity
+     */
+    public List<String> predicates(String uri)
+    {
+        int id = resource(uri);
+        List<String> predicates = new ArrayList<>();
+
+        if (id == -1)
+        {
+            return predicates;
+        }
+
+        for (int i = this.offsets[id]; i < this.offsets[id + 1]; i++)
+        {
+            if (i == this.offsets[id] || this.relationshipPredicates[i] != this.relationshipPredicates[i - 1])
+            {
+                predicates.add(this.predicates[this.relationshipPredicates[i]]);
+            }
+        }
+
+        return predicates;
+    }
+
+    /**
+     * @param uri URI of a resource, e.g. a Wikipedia page
+     * @return Entities that are the primary topic of the resource
+     */
+    public List<String> primaryTopics(String uri)
+    {
+        int id = resource(uri);
+        List<String> entities = new ArrayList<>();
+
+        if (id == -1)
+        {
+            return entities;
+        }
+
+        for (int i = this.topicOffsets[id]; i < this.topicOffsets[id + 1]; i++)
+        {
+            entities.add(this.resources[this.topicEntities[i]]);
+        }
+
+        return entities;
+    }
+
+    /**
+     * @param uri Resource URI
+     * @return Number of relationships from and to the resource, or -1 for an unknown resource
+     */
+    public long degree(String uri)
+    {
+        int id = resource(uri);
+        return id == -1 ? -1 : this.offsets[id + 1] - this.offsets[id] + this.inDegrees[id];
+    }
+
+    /**
+     * Writes the store into the given directory
+     * @param dir Output directory
+     * @throws IOException If the store cannot be written
+     */
+    public void write(File dir) throws IOException
+    {
+        Files.createDirectories(dir.toPath());
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.toPath().resolve(FILE_NAME)), 1 << 16)))
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeStrings(output, this.resources);
+            writeStrings(output, this.predicates);
+            writeInts(output, this.offsets);
+            writeInts(output, this.relationshipPredicates);
+            writeInts(output, this.relationshipTargets);
+            writeInts(output, this.inDegrees);
+            writeInts(output, this.topicOffsets);
+            writeInts(output, this.topicEntities);
+        }
+    }
+
+    private static KGStore read(Path file) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16)))
+        {
+            if (input.readInt() != MAGIC)
+            {
+                throw new IOException("'" + file + "' is not a KG store");
+            }
+
+            else if (input.readInt() != VERSION)
+            {
+                throw new IOException("KG store '" + file + "' has an unsupported version");
+            }
+
+            return new KGStore(readStrings(input), readStrings(input), readInts(input), readInts(input), readInts(input),
+                    readInts(input), readInts(input), readInts(input));
+        }
+    }
+
+    private static void writeStrings(DataOutputStream output, String[] strings) throws IOException
+    {
+        output.writeInt(strings.length);
+
+        for (String string : strings)
+        {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream input) throws IOException
+    {
+        String[] strings = new String[input.readInt()];
+
+        for (int i = 0; i < strings.length; i++)
+        {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return strings;
+    }
+
+    private static void writeInts(DataOutputStream output, int[] ints) throws IOException
+    {
+        output.writeInt(ints.length);
+
+        for (int i : ints)
+        {
+            output.writeInt(i);
+        }
+    }
+
+    private static int[] readInts(DataInputStream input) throws IOException
+    {
+        int[] ints = new int[input.readInt()];
+
+        for (int i = 0; i < ints.length; i++)
+        {
+            ints[i] = input.readInt();
+        }
+
+        return ints;
+    }
+
+    /**
+     * Builds a store from a stream of RDF triples, e.g. from Jena's streaming parser
+     * Triples with a literal or blank node are skipped, and duplicate triples are stored once
+     */
+    public static class Builder extends StreamRDFBase
+    {
+        private static final Map<String, String> KNOWN_PREFIXES = Map.of(
+                "http://www.w3.org/1999/02/22-rdf-syntax-ns#", "rdf",
+                "http://www.w3.org/2000/01/rdf-schema#", "rdfs",
+                "http://www.w3.org/2002/07/owl#", "owl");
+
+        private final Map<String, Integer> resourceIds = new HashMap<>();
+        private final List<String> resources = new ArrayList<>();
+        private final Map<String, Integer> predicateIds = new HashMap<>();
+        private final List<String> predicates = new ArrayList<>();
+        private final Map<String, String> prefixes = new HashMap<>(KNOWN_PREFIXES);
+        private int[] subjects = new int[1024], relationshipPredicates = new int[1024], objects = new int[1024];
+        private int relationships = 0;
+        private long skipped = 0;
+
+        @Override
+        public void triple(Triple triple)
+        {
+            Node subject = triple.getSubject(), predicate = triple.getPredicate(), object = triple.getObject();
+
+            if (!subject.isURI() || !predicate.isURI() || !object.isURI())
+            {
+                this.skipped++;
+                return;
+            }
+
+            add(subject.getURI(), predicate.getURI(), object.getURI());
+        }
+
+        /**
+         * Adds a relationship between two resources
+         * @param subject Subject URI
+         * @param predicate Full predicate URI
+         * @param object Object URI
+         */
+        public void add(String subject, String predicate, String object)
+        {
+            if (this.relationships == MAX_RELATIONSHIPS)
+            {
+                throw new IllegalStateException("The KG has more than " + MAX_RELATIONSHIPS +
+                        " relationships between resources, which is the maximum of the in-memory KG store. Use Neo4j for this KG instead.");
+            }
+
+            else if (this.relationships == this.subjects.length)
+            {
+                int capacity = (int) Math.min(this.subjects.length * 2L, MAX_RELATIONSHIPS);
+                this.subjects = Arrays.copyOf(this.subjects, capacity);
+                this.relationshipPredicates = Arrays.copyOf(this.relationshipPredicates, capacity);
+                this.objects = Arrays.copyOf(this.objects, capacity);
+            }
+
+            this.subjects[this.relationships] = intern(subject, this.resourceIds, this.resources);
+            this.relationshipPredicates[this.relationships] = intern(predicateName(predicate), this.predicateIds, this.predicates);
+            this.objects[this.relationships] = intern(object, this.resourceIds, this.resources);
+            this.relationships++;
+        }
+
+        public long relationships()
+        {
+            return this.relationships;
+        }
+
+        /**
+         * @return Number of triples skipped because they have a literal or blank node
+         */
+        public long skipped()
+        {
+            return this.skipped;
+        }
+
+        private static int intern(String value, Map<String, Integer> ids, List<String> values)
+        {
+            Integer id = ids.get(value);
+
+            if (id == null)
+            {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+
+            return id;
+        }
+
+        /**
+         * Predicates are named 'prefix__localName'
+         * Namespaces without a known prefix are numbered in order of appearance
+         */
+        private String predicateName(String uri)
+        {
+            int split = Math.max(uri.lastIndexOf('#'), uri.lastIndexOf('/')) + 1;
+
+            if (split == 0 || split == uri.length())
+            {
+                return uri;
+            }
+
+            String prefix = this.prefixes.computeIfAbsent(uri.substring(0, split), ns -> "ns" + (this.prefixes.size() - KNOWN_PREFIXES.size()));
+            return prefix + "__" + uri.substring(split);
+        }
+
+        public KGStore build()
+        {
+            int resourceCount = this.resources.size();
+            String[] sorted = this.resources.toArray(new String[0]);
+            Arrays.sort(sorted);
+
+            int[] ids = new int[resourceCount];    // Maps from order of appearance to sorted ID
+
+            for (int i = 0; i < resourceCount; i++)
+            {
+                ids[i] = Arrays.binarySearch(sorted, this.resources.get(i));
+            }
+
+            this.resourceIds.clear();
+            this.resources.clear();
+
+            String[] predicates = this.predicates.toArray(new String[0]);
+            Integer primaryTopic = null;
+
+            for (int i = 0; i < predicates.length; i++)
+            {
+                if (predicates[i].endsWith("__" + PRIMARY_TOPIC_PREDICATE))
+                {
+                    primaryTopic = i;
+                }
+            }
+
+            // Relationships are grouped by subject with counting sort and then sorted by predicate and object within each group
+            int[] counts = new int[resourceCount + 1];
+
+            for (int i = 0; i < this.relationships; i++)
+            {
+                counts[ids[this.subjects[i]] + 1]++;
+            }
+
+            for (int i = 0; i < resourceCount; i++)
+            {
+                counts[i + 1] += counts[i];
+            }
+
+            long[] grouped = new long[this.relationships];
+            int[] next = Arrays.copyOf(counts, resourceCount);
+
+            for (int i = 0; i < this.relationships; i++)
+            {
+                grouped[next[ids[this.subjects[i]]]++] = ((long) this.relationshipPredicates[i] << 32) | ids[this.objects[i]];
+            }
+
+            this.subjects = this.relationshipPredicates = this.objects = null;
+
+            int[] offsets = new int[resourceCount + 1], inDegrees = new int[resourceCount], topicCounts = new int[resourceCount + 1];
+            int size = 0;
+
+            for (int resource = 0; resource < resourceCount; resource++)
+            {
+                Arrays.sort(grouped, counts[resource], counts[resource + 1]);
+                offsets[resource] = size;
+
+                for (int i = counts[resource]; i < counts[resource + 1]; i++)
+                {
+                    if (i == counts[resource] || grouped[i] != grouped[i - 1])
+                    {
+                        grouped[size++] = grouped[i];
+                    }
+                }
+            }
+
+            offsets[resourceCount] = size;
+
+            int[] relationshipPredicates = new int[size], relationshipTargets = new int[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                relationshipPredicates[i] = (int) (grouped[i] >>> 32);
+                relationshipTargets[i] = (int) grouped[i];
+                inDegrees[relationshipTargets[i]]++;
+
+                if (primaryTopic != null && relationshipPredicates[i] == primaryTopic)
+                {
+                    topicCounts[relationshipTargets[i] + 1]++;
+                }
+            }
+
+            for (int i = 0; i < resourceCount; i++)
+            {
+                topicCounts[i + 1] += topicCounts[i];
+            }
+
+            int[] topicEntities = new int[topicCounts[resourceCount]], topicNext = Arrays.copyOf(topicCounts, resourceCount);
+
+            for (int resource = 0; resource < resourceCount; resource++)
+            {
+                for (int i = offsets[resource]; i < offsets[resource + 1]; i++)
+                {
+                    if (primaryTopic != null && relationshipPredicates[i] == primaryTopic)
+                    {
+                        topicEntities[topicNext[relationshipTargets[i]]++] = resource;
+                    }
+                }
+            }
+
+            this.relationships = 0;
+            return new KGStore(sorted, predicates, offsets, relationshipPredicates, relationshipTargets, inDegrees, topicCounts, topicEntities);
+        }
+    }
+}
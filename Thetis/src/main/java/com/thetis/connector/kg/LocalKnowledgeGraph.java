@@ -0,0 +1,129 @@
+package com.thetis.connector.kg;
+
+import com.thetis.connector.KnowledgeGraph;
+import com.thetis.system.Logger;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * KG lookups answered from a local KG store instead of Neo4j
+ * Lookups are memory reads, so the batch lookups simply loop over their input
+ */
+public class LocalKnowledgeGraph implements KnowledgeGraph
+{
+    private final File configFile;
+    private final KGStore store;
+
+    /**
+     * @param configFile Configuration file the store directory was read from
+     * @param store Opened KG store
+     */
+    public LocalKnowledgeGraph(File configFile, KGStore store)
+    {
+        this.configFile = configFile;
+        this.store = store;
+    }
+
+    @Override
+    public File getConfigFile()
+    {
+        return this.configFile;
+    }
+
+    @Override
+    public void testConnection()
+    {
+        Logger.logNewLine(Logger.Level.INFO, "Local KG loaded. Num Nodes: " + this.store.resourceCount() +
+                ", Num Relationships: " + this.store.relationshipCount());
+    }
+
+    @Override
+    public List<String> searchLink(String link)
+    {
+        return this.store.primaryTopics(link);
+    }
+
+    @Override
+    public List<String> searchTypes(String entity)
+    {
+        return this.store.types(entity);
+    }
+
+    @Override
+    public List<String> searchPredicates(String entity)
+    {
+        return this.store.predicates(entity);
+    }
+
+    /**
+     * @throws NoSuchElementException If the node is not in the KG
+     */
+    @Override
+    public Long getNumNeighbors(String node)
+    {
+        long degree = this.store.degree(node);
+
+        if (degree == -1)
+        {
+            throw new NoSuchElementException("'" + node + "' is not in the KG");
+        }
+
+        return degree;
+    }
+
+    @Override
+    public Map<String, List<String>> batchSearchLink(Collection<String> links)
+    {
+        return batch(links, this::searchLink);
+    }
+
+    @Override
+    public Map<String, List<String>> batchSearchTypes(Collection<String> entities)
+    {
+        return batch(entities, this::searchTypes);
+    }
+
+    @Override
+    public Map<String, List<String>> batchSearchPredicates(Collection<String> entities)
+    {
+        return batch(entities, this::searchPredicates);
+    }
+
+    @Override
+    public Map<String, Long> batchNumNeighbors(Collection<String> nodes)
+    {
+        Map<String, Long> neighbors = new HashMap<>(nodes.size());
+
+        for (String node : nodes)
+        {
+            long degree = this.store.degree(node);
+
+            if (degree != -1)
+            {
+                neighbors.put(node, degree);
+            }
+        }
+
+        return neighbors;
+    }
+
+    private static Map<String, List<String>> batch(Collection<String> uris, Function<String, List<String>> lookup)
+    {
+        Map<String, List<String>> results = new HashMap<>(uris.size());
+
+        for (String uri : uris)
+        {
+            results.put(uri, lookup.apply(uri));
+        }
+
+        return results;
+    }
+
+    /**
+     * The store is shared between all users of the same directory and stays open
+     */
+    @Override
+    public void close() {}
+}
@@ -4,5 +4,9 @@ import java.io.IOException;
 
 public interface IndexIO
 {
+    // Names of sections in the index file
+    String ENTITY_LINKER = "entity_linker", ENTITY_TABLE = "entity_table", ENTITY_TO_TABLES = "entity_to_tables",
+            EMBEDDINGS = "embeddings", TYPES_LSH = "types_lsh", PREDICATES_LSH = "predicates_lsh", EMBEDDINGS_LSH = "embeddings_lsh";
+
     void performIO() throws IOException;
 }
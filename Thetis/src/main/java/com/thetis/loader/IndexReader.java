@@ -1,39 +1,72 @@
 package com.thetis.loader;
 
+import com.google.common.base.Suppliers;
+import com.thetis.store.DenseEmbeddingsIndex;
 import com.thetis.store.EmbeddingsIndex;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.IndexFile;
+import com.thetis.store.MappedEmbeddingsIndex;
+import com.thetis.store.MappedEntityLinking;
+import com.thetis.store.MappedEntityTable;
+import com.thetis.store.MappedEntityTableLink;
+import com.thetis.store.TableCorpus;
 import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.store.lsh.SetLSHIndex;
 import com.thetis.structures.Id;
 import com.thetis.system.Configuration;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
 
 import java.io.*;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * Main class responsible for reading indexes serialized on disk
+ * Required components are loaded in parallel by <code>performIO</code>, and other components are loaded on first access
  */
 public class IndexReader implements IndexIO
 {
-    private boolean multithreaded, logProgress;
+    /**
+     * Indexes that can be loaded independently
+     */
+    public enum Component
+    {
+        ENTITY_LINKER, ENTITY_TABLE, ENTITY_TABLE_LINK, EMBEDDINGS, TYPES_LSH, PREDICATES_LSH, EMBEDDINGS_LSH, TABLE_CORPUS
+    }
+
+    private boolean multithreaded, logProgress, memoryMapping = false, mapped = false;
     private File indexDir;
+    private final Set<Component> required;
 
     // Indexes
-    private EntityLinking linker;
-    private EntityTable entityTable;
-    private EntityTableLink entityTableLink;
-    private EmbeddingsIndex<Id> embeddingsIdx;
-    private SetLSHIndex typesLSHIndex, predicatesLSHIndex;
-    private VectorLSHIndex embeddingsLSHIndex;
-    private static final int INDEX_COUNT = 5;
+    private final Supplier<EntityLinking> linker = Suppliers.memoize(this::loadEntityLinker);
+    private final Supplier<EntityTable> entityTable = Suppliers.memoize(this::loadEntityTable);
+    private final Supplier<EntityTableLink> entityTableLink = Suppliers.memoize(this::loadEntityTableLink);
+    private final Supplier<EmbeddingsIndex<Id>> embeddingsIdx = Suppliers.memoize(this::loadEmbeddingsIndex);
+    private final Supplier<SetLSHIndex> typesLSHIndex = Suppliers.memoize(() -> (SetLSHIndex) loadLSHIndex(TYPES_LSH, Configuration.getTypesLSHIndexFile())),
+            predicatesLSHIndex = Suppliers.memoize(() -> (SetLSHIndex) loadLSHIndex(PREDICATES_LSH, Configuration.getPredicatesLSHIndexFile()));
+    private final Supplier<VectorLSHIndex> embeddingsLSHIndex = Suppliers.memoize(() -> (VectorLSHIndex) loadLSHIndex(EMBEDDINGS_LSH, Configuration.getEmbeddingsLSHFile()));
+    private final Supplier<TableCorpus> tableCorpus = Suppliers.memoize(this::loadTableCorpus);
+    private IndexFile indexFile = null;
+    private ExecutionService executionService = null;
 
     public IndexReader(File indexDir, boolean isMultithreaded, boolean logProgress)
+    {
+        this(indexDir, isMultithreaded, logProgress, EnumSet.allOf(Component.class));
+    }
+
+    /**
+     * @param indexDir Directory of indexes
+     * @param isMultithreaded Whether to load the required components in parallel
+     * @param logProgress Whether to log loading progress
+     * @param required Components to load in <code>performIO</code>
+     */
+    public IndexReader(File indexDir, boolean isMultithreaded, boolean logProgress, Set<Component> required)
     {
         if (!indexDir.isDirectory())
         {
@@ -48,44 +81,76 @@ public class IndexReader implements IndexIO
         this.indexDir = indexDir;
         this.multithreaded = isMultithreaded;
         this.logProgress = logProgress;
+        this.required = EnumSet.noneOf(Component.class);
+        this.required.addAll(required);
+    }
+
+    /**
+     * Loads indexes using the given execution service instead of a service owned by this reader
+     * @param executionService Shared execution service
+     */
+    public void useExecutionService(ExecutionService executionService)
+    {
+        this.executionService = executionService;
+    }
+
+    /**
+     * Maps the entity linker, entity table, entity-table link, and embeddings of the index file into memory instead of reading them onto the heap
+     * The mapped indexes are read-only, except for entities inserted at search time
+     * Index files written without the mapped layout are read onto the heap
+     * @param memoryMapping Whether to memory-map indexes
+     */
+    public void useMemoryMapping(boolean memoryMapping)
+    {
+        this.memoryMapping = memoryMapping;
     }
 
     /**
-     * Reads indexes from disk
+     * @return True if the indexes were memory-mapped when loaded
+     */
+    public boolean isMemoryMapped()
+    {
+        return this.mapped;
+    }
+
+    /**
+     * Reads the required indexes from disk
+     * Indexes are read from the sections of the index file, or from one serialized file per index when the directory has no index file
+     * This must be called before any index is accessed
      * @throws IOException
      */
     @Override
     public void performIO() throws IOException
     {
-        ExecutorService threadPoolService = Executors.newFixedThreadPool(this.multithreaded ? INDEX_COUNT : 1);
-        Future<?> f1 = threadPoolService.submit(this::loadEntityLinker);
-        Future<?> f2 = threadPoolService.submit(this::loadEntityTable);
-        Future<?> f3 = threadPoolService.submit(this::loadEntityTableLink);
-        Future<?> f4 = threadPoolService.submit(this::loadLSHIndexes);
-        Future<?> f5 = threadPoolService.submit(this::loadEmbeddingsIndex);
-        int completed = -1;
+        File indexFile = new File(this.indexDir + "/" + Configuration.getIndexFile());
 
-        while (!f1.isDone() || !f2.isDone() || !f3.isDone() || !f4.isDone() || !f5.isDone())
+        if (indexFile.exists())
         {
-            int tmpCompleted = (f1.isDone() ? 1 : 0) + (f2.isDone() ? 1 : 0) + (f3.isDone() ? 1 : 0) +
-                    (f4.isDone() ? 1 : 0) + (f5.isDone() ? 1 : 0);
+            this.indexFile = IndexFile.open(indexFile);
+        }
 
-            if (tmpCompleted != completed)
-            {
-                completed = tmpCompleted;
-                Logger.log(Logger.Level.INFO, "Loaded indexes: " + completed + "/" + INDEX_COUNT);
-            }
+        this.mapped = this.memoryMapping && this.indexFile != null && MappedEntityLinking.isMapped(this.indexFile);
+
+        if (this.memoryMapping && !this.mapped)
+        {
+            Logger.logNewLine(Logger.Level.INFO, "Indexes have no memory-mapped layout and are read onto the heap");
         }
 
-        Logger.log(Logger.Level.INFO, "Loaded indexes: " + INDEX_COUNT + "/" + INDEX_COUNT);
+        boolean ownsExecutionService = this.executionService == null;
+        ExecutionService executionService = ownsExecutionService ?
+                new ExecutionService(this.multithreaded ? Math.max(this.required.size(), 1) : 1) : this.executionService;
+        ExecutionService.Batch<Object> loaders = executionService.batch();
+
+        for (Component component : this.required)
+        {
+            loaders.submit(() -> component(component).get());
+        }
+
+        Logger.log(Logger.Level.INFO, "Loaded indexes: 0/" + this.required.size());
 
         try
         {
-            f1.get();
-            f2.get();
-            f3.get();
-            f4.get();
-            f5.get();
+            loaders.await(completed -> Logger.log(Logger.Level.INFO, "Loaded indexes: " + completed + "/" + this.required.size()));
         }
 
         catch (InterruptedException | ExecutionException e)
@@ -94,33 +159,149 @@ public class IndexReader implements IndexIO
             Logger.logNewLine(Logger.Level.ERROR, e.getMessage());
             throw new RuntimeException(e.getMessage());
         }
+
+        finally
+        {
+            if (ownsExecutionService)
+            {
+                executionService.close();
+            }
+        }
+    }
+
+    private Supplier<?> component(Component component)
+    {
+        return switch (component) {
+            case ENTITY_LINKER -> this.linker;
+            case ENTITY_TABLE -> this.entityTable;
+            case ENTITY_TABLE_LINK -> this.entityTableLink;
+            case EMBEDDINGS -> this.embeddingsIdx;
+            case TYPES_LSH -> this.typesLSHIndex;
+            case PREDICATES_LSH -> this.predicatesLSHIndex;
+            case EMBEDDINGS_LSH -> this.embeddingsLSHIndex;
+            case TABLE_CORPUS -> this.tableCorpus;
+        };
+    }
+
+    private EntityLinking loadEntityLinker()
+    {
+        if (this.mapped)
+        {
+            return mapSection(MappedEntityLinking::open);
+        }
+
+        return this.indexFile != null ?
+                readSection(ENTITY_LINKER, EntityLinking::read) :
+                (EntityLinking) readIndex(this.indexDir + "/" + Configuration.getEntityLinkerFile());
+    }
+
+    private EntityTable loadEntityTable()
+    {
+        if (this.mapped)
+        {
+            return mapSection(MappedEntityTable::open);
+        }
+
+        return this.indexFile != null ?
+                readSection(ENTITY_TABLE, EntityTable::read) :
+                (EntityTable) readIndex(this.indexDir + "/" + Configuration.getEntityTableFile());
     }
 
-    private void loadEntityLinker()
+    private EntityTableLink loadEntityTableLink()
     {
-        this.linker = (EntityLinking) readIndex(this.indexDir + "/" + Configuration.getEntityLinkerFile());
+        if (this.mapped)
+        {
+            return mapSection(MappedEntityTableLink::open);
+        }
+
+        EntityTableLink entityTableLink = this.indexFile != null ?
+                readSection(ENTITY_TO_TABLES, EntityTableLink::read) :
+                (EntityTableLink) readIndex(this.indexDir + "/" + Configuration.getEntityToTablesFile());
+
+        if (!entityTableLink.hasForwardIndex())    // Indexes written before the forward index existed
+        {
+            entityTableLink.buildForwardIndex();
+        }
+
+        return entityTableLink;
     }
 
-    private void loadEntityTable()
+    private EmbeddingsIndex<Id> loadEmbeddingsIndex()
     {
-        this.entityTable = (EntityTable) readIndex(this.indexDir + "/" + Configuration.getEntityTableFile());
+        if (this.mapped)
+        {
+            return mapSection(MappedEmbeddingsIndex::open);
+        }
+
+        return this.indexFile != null ?
+                readSection(EMBEDDINGS, DenseEmbeddingsIndex::read) :
+                (EmbeddingsIndex<Id>) readIndex(this.indexDir + "/" + Configuration.getEmbeddingsIndexFile());
     }
 
-    private void loadEntityTableLink()
+    private Object loadLSHIndex(String section, String file)
     {
-        this.entityTableLink = (EntityTableLink) readIndex(this.indexDir + "/" + Configuration.getEntityToTablesFile());
+        return this.indexFile != null ?
+                readSection(section, IndexFile::readObject) :
+                readIndex(this.indexDir + "/" + file);
     }
 
-    private void loadEmbeddingsIndex()
+    /**
+     * Indexes written before the pre-linked table corpus existed do not have a corpus file
+     * Search then falls back to parsing and linking JSON tables
+     */
+    private TableCorpus loadTableCorpus()
     {
-        this.embeddingsIdx = (EmbeddingsIndex<Id>) readIndex(this.indexDir + "/" + Configuration.getEmbeddingsIndexFile());
+        File corpusFile = new File(this.indexDir + "/" + Configuration.getTableCorpusFile());
+
+        if (!corpusFile.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            return TableCorpus.read(corpusFile);
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "IO error when reading table corpus");
+            throw new RuntimeException(e.getMessage());
+        }
     }
 
-    private void loadLSHIndexes()
+    private <T> T readSection(String section, IndexFile.SectionReader<T> reader)
     {
-        this.typesLSHIndex = (SetLSHIndex) readIndex(this.indexDir + "/" + Configuration.getTypesLSHIndexFile());
-        this.predicatesLSHIndex = (SetLSHIndex) readIndex(this.indexDir + "/" + Configuration.getPredicatesLSHIndexFile());
-        this.embeddingsLSHIndex = (VectorLSHIndex) readIndex(this.indexDir + "/" + Configuration.getEmbeddingsLSHFile());
+        try
+        {
+            return this.indexFile.read(section, reader);
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "IO error when reading index section '" + section + "'");
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface SectionMapper<T>
+    {
+        T map(IndexFile indexFile) throws IOException;
+    }
+
+    private <T> T mapSection(SectionMapper<T> mapper)
+    {
+        try
+        {
+            return mapper.map(this.indexFile);
+        }
+
+        catch (IOException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "IO error when memory-mapping index file");
+            throw new RuntimeException(e.getMessage());
+        }
     }
 
     private Object readIndex(String file)
@@ -154,36 +335,45 @@ public class IndexReader implements IndexIO
 
     public EntityLinking getLinker()
     {
-        return this.linker;
+        return this.linker.get();
     }
 
     public EntityTable getEntityTable()
     {
-        return this.entityTable;
+        return this.entityTable.get();
     }
 
     public EntityTableLink getEntityTableLink()
     {
-        return this.entityTableLink;
+        return this.entityTableLink.get();
     }
 
     public EmbeddingsIndex<Id> getEmbeddingsIndex()
     {
-        return this.embeddingsIdx;
+        return this.embeddingsIdx.get();
     }
 
     public SetLSHIndex getTypesLSHIndex()
     {
-        return this.typesLSHIndex;
+        return this.typesLSHIndex.get();
     }
 
     public SetLSHIndex getPredicatesLSHIndex()
     {
-        return this.predicatesLSHIndex;
+        return this.predicatesLSHIndex.get();
     }
 
     public VectorLSHIndex getEmbeddingsLSHIndex()
     {
-        return this.embeddingsLSHIndex;
+        return this.embeddingsLSHIndex.get();
+    }
+
+    /**
+     * Getter to corpus of pre-linked tables
+     * @return Table corpus or null if the index directory does not contain one
+     */
+    public TableCorpus getTableCorpus()
+    {
+        return this.tableCorpus.get();
     }
 }
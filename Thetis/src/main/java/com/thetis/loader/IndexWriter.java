@@ -8,7 +8,7 @@ import com.thetis.store.*;
 import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.commands.parser.TableParser;
 import com.thetis.connector.DBDriverBatch;
-import com.thetis.connector.Neo4jEndpoint;
+import com.thetis.connector.KnowledgeGraph;
 import com.thetis.store.lsh.HashFunction;
 import com.thetis.store.lsh.SetLSHIndex;
 import com.thetis.structures.Pair;
@@ -17,6 +17,7 @@ import com.thetis.structures.graph.Entity;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Type;
 import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.structures.table.Table;
 import com.thetis.system.Configuration;
 import com.thetis.system.Logger;
@@ -28,10 +29,10 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -46,26 +47,31 @@ public class IndexWriter implements IndexIO
     private int threads;
     private AtomicLong loadedTables = new AtomicLong(0);
     private AtomicInteger cellsWithLinks = new AtomicInteger(0), tableStatsCollected = new AtomicInteger(0);
-    private final Object lock = new Object(), incrementLock = new Object();
+    private final Object tableLinkLock = new Object();     // Guards the entity-table link, which is not safe for concurrent use
     private long elapsed = -1;
     private Map<Integer, Integer> cellToNumLinksFrequency = Collections.synchronizedMap(new HashMap<>());
     private Map<Integer, Integer> linkToNumEntitiesFrequency = Collections.synchronizedMap(new HashMap<>());
-    private Neo4jEndpoint neo4j;
+    private KnowledgeGraph neo4j;
     private Linker entityLinker;
     private SynchronizedLinker<String, String> linker;
     private SynchronizedIndex<Id, Entity> entityTable;
     private SynchronizedIndex<Id, List<String>> entityTableLink;
     private SynchronizedIndex<Id, List<Double>> embeddingsIdx;
+    private TableCorpus tableCorpus = new TableCorpus();
     private SetLSHIndex typesLSH, predicatesLSH;
     private VectorLSHIndex embeddingsLSH;
     private DBDriverBatch<List<Double>, String> embeddingsDB;
+    private final Map<String, CompletableFuture<String>> resolvedLinks = new ConcurrentHashMap<>();
+    private final Set<String> resolvedEntities = ConcurrentHashMap.newKeySet();
+    private volatile boolean batchEmbeddings = true;
     private BloomFilter<String> filter = BloomFilter.create(
             Funnels.stringFunnel(Charset.defaultCharset()),
             5_000_000,
             0.01);
-    private final Map<String, Stats> tableStats = new TreeMap<>();
+    private final Map<String, Stats> tableStats = new ConcurrentSkipListMap<>();
     private final Set<PairNonComparable<String, Table<String>>> tableEntities = Collections.synchronizedSet(new HashSet<>());
     private List<String> disallowedEntityTypes;
+    private static final int QUEUE_CAPACITY = 10_000, BATCH_SIZE = 100, PENDING_TABLES_PER_THREAD = 100;
     private static final HashFunction HASH_FUNCTION_NUMERIC = (obj, num) -> {
         List<Integer> sig = (List<Integer>) obj;
         int sum1 = 0, sum2 = 0, size = sig.size();
@@ -90,7 +96,7 @@ public class IndexWriter implements IndexIO
         return sum % num;
     };
 
-    public IndexWriter(List<Path> files, File outputDir, Linker entityLinker, Neo4jEndpoint neo4j, int threads,
+    public IndexWriter(List<Path> files, File outputDir, Linker entityLinker, KnowledgeGraph neo4j, int threads,
                        DBDriverBatch<List<Double>, String> embeddingStore, String wikiPrefix, String uriPrefix, String ... disallowedEntityTypes)
     {
         if (!outputDir.exists())
@@ -117,13 +123,19 @@ public class IndexWriter implements IndexIO
         this.linker = SynchronizedLinker.wrap(new EntityLinking(wikiPrefix, uriPrefix));
         this.disallowedEntityTypes = Arrays.asList(disallowedEntityTypes);
         this.entityTable = SynchronizedIndex.wrap(new EntityTable());
-        this.embeddingsIdx = SynchronizedIndex.wrap(new EmbeddingsIndex<>());
+        this.embeddingsIdx = SynchronizedIndex.wrap(new DenseEmbeddingsIndex<>());
         this.entityTableLink = SynchronizedIndex.wrap(new EntityTableLink());
         ((EntityTableLink) this.entityTableLink.getIndex()).setDirectory(files.get(0).toFile().getParent() + "/");
     }
 
     /**
      * Loading of tables to disk
+     * Tables are loaded by a pipeline of stages connected by bounded queues:
+     *   parse: tables are parsed and their distinct unseen links are passed on for resolution
+     *   resolve: links are resolved to KG entities in batches
+     *   metadata: types, predicates, and embeddings of new entities are fetched in batches
+     *   insert: a single writer inserts new entities into the entity and embeddings indexes
+     *   index: a table is indexed once all its links are resolved
      */
     @Override
     public void performIO() throws IOException
@@ -133,41 +145,30 @@ public class IndexWriter implements IndexIO
             throw new RuntimeException("Loading has already complete");
         }
 
-        int size = this.files.size();
-        ExecutorService threadPool = Executors.newFixedThreadPool(this.threads);
-        List<Future<Boolean>> tasks = new ArrayList<>(size);
-        long startTime = System.nanoTime(), prev = 0;
-
-        for (int i = 0; i < size; i++)
+        long startTime = System.nanoTime();
+        Semaphore pendingTables = new Semaphore(PENDING_TABLES_PER_THREAD * this.threads);
+        PipelineStage<PairNonComparable<Entity, List<Double>>> insertStage = new PipelineStage<>("insert", 1, QUEUE_CAPACITY, BATCH_SIZE, this::insertEntities);
+        PipelineStage<String> metadataStage = new PipelineStage<>("metadata", this.threads, QUEUE_CAPACITY, BATCH_SIZE,
+                entities -> fetchMetadata(entities, insertStage));
+        PipelineStage<PairNonComparable<String, JsonTable>> indexStage = new PipelineStage<>("index", this.threads, QUEUE_CAPACITY, 1,
+                tables -> tables.forEach(table -> indexTable(table, pendingTables)));
+        PipelineStage<String> resolveStage = new PipelineStage<>("resolve", this.threads, QUEUE_CAPACITY, BATCH_SIZE,
+                links -> resolveLinks(links, metadataStage));
+        PipelineStage<Path> parseStage = new PipelineStage<>("parse", this.threads, QUEUE_CAPACITY, 1,
+                files -> files.forEach(file -> parseTable(file, pendingTables, resolveStage, indexStage)));
+        List<PipelineStage<?>> stages = List.of(parseStage, resolveStage, indexStage, metadataStage, insertStage);
+        stages.forEach(PipelineStage::start);
+
+        for (Path file : this.files)
         {
-            final int index = i;
-            Future<Boolean> task = threadPool.submit(() -> load(this.files.get(index)));
-            tasks.add(task);
+            parseStage.put(file);
         }
 
-        while (this.loadedTables.get() < size)
-        {
-            synchronized (this.incrementLock)
-            {
-                this.loadedTables.set(tasks.stream().filter(Future::isDone).count());
-            }
-
-            if (this.loadedTables.get() - prev >= 100)
-            {
-                Logger.log(Logger.Level.INFO, "Processed " + this.loadedTables.get() + "/" + size + " files...");
-                prev = this.loadedTables.get();
-            }
-        }
+        stages.forEach(PipelineStage::finish);  // Each stage is finished after the stages feeding it
+        stages.forEach(PipelineStage::checkFailure);    // Entities of a failed batch would be linked but missing from the entity table
+        this.resolvedLinks.clear();
+        this.resolvedEntities.clear();
 
-        tasks.forEach(t ->
-        {
-            try
-            {
-                t.get();
-            }
-
-            catch (InterruptedException | ExecutionException ignored) {}
-        });
         Logger.log(Logger.Level.INFO, "Collecting IDF weights...");
         loadIDFs();
 
@@ -189,13 +190,19 @@ public class IndexWriter implements IndexIO
     private void loadLSHIndexes()
     {
         int permutations = Configuration.getPermutationVectors(), bandSize = Configuration.getBandSize();
-        int bucketGroups = permutations / bandSize, bucketsPerGroup = (int) Math.pow(2, bandSize);
-
         if (permutations % bandSize != 0)
         {
             throw new IllegalArgumentException("Number of permutation/projection vectors is not divisible by band size");
         }
 
+        else if (bandSize > 30)
+        {
+            throw new IllegalArgumentException("Band size must be at most 30");
+        }
+
+        // Bucket groups only materialize non-empty buckets, so the number of buckets per group does not determine memory
+        int bucketGroups = permutations / bandSize, bucketsPerGroup = 1 << bandSize;
+
         Logger.log(Logger.Level.INFO, "Loaded LSH index 0/3");
         this.typesLSH = new SetLSHIndex(this.neo4j.getConfigFile(), SetLSHIndex.EntitySet.TYPES, permutations, bandSize, 2,
                 this.tableEntities, HASH_FUNCTION_NUMERIC, bucketGroups, bucketsPerGroup, this.threads, new Random(0),
@@ -207,21 +214,239 @@ public class IndexWriter implements IndexIO
                 (EntityLinking) this.linker.getLinker(), (EntityTable) this.entityTable.getIndex(), false);
 
         Logger.log(Logger.Level.INFO, "Loaded LSH index 2/3");
-        this.embeddingsLSH = new VectorLSHIndex(bucketGroups, bucketsPerGroup, permutations, bandSize,
-                this.tableEntities, this.threads, (EntityLinking) this.linker.getLinker(), HASH_FUNCTION_BOOLEAN, new Random(0), false);
+        this.embeddingsLSH = new VectorLSHIndex(bucketGroups, bucketsPerGroup, permutations, bandSize, this.tableEntities,
+                this.embeddingsIdx.getIndex(), this.threads, (EntityLinking) this.linker.getLinker(), HASH_FUNCTION_BOOLEAN,
+                new Random(0), false);
         Logger.log(Logger.Level.INFO, "Loaded LSH index 3/3");
     }
 
-    private boolean load(Path tablePath)
+    private void parseTable(Path tablePath, Semaphore pendingTables, PipelineStage<String> resolveStage,
+                            PipelineStage<PairNonComparable<String, JsonTable>> indexStage)
     {
-        JsonTable table = TableParser.parse(tablePath);
+        JsonTable table;
+
+        try
+        {
+            table = TableParser.parse(tablePath);
+        }
+
+        catch (RuntimeException e)  // A single failing table does not stop the loading of remaining tables
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Failed loading '" + tablePath + "': " + e.getMessage());
+            table = null;
+        }
 
-        if (table == null ||  table._id == null || table.rows == null)
+        if (table == null || table._id == null || table.rows == null)
         {
-            return false;
+            tableProcessed();
+            return;
         }
 
-        String tableName = tablePath.getFileName().toString();
+        List<CompletableFuture<String>> links = new ArrayList<>();
+        Set<String> tableLinks = new HashSet<>();
+
+        for (List<JsonTable.TableCell> tableRow : table.rows)
+        {
+            for (JsonTable.TableCell cell : tableRow)
+            {
+                for (String link : cell.links)
+                {
+                    if (tableLinks.add(link))
+                    {
+                        CompletableFuture<String> resolved = new CompletableFuture<>();
+                        CompletableFuture<String> existing = this.resolvedLinks.putIfAbsent(link, resolved);
+
+                        if (existing == null)   // First time this link is seen
+                        {
+                            resolveStage.put(link);
+                            links.add(resolved);
+                        }
+
+                        else if (!existing.isDone())
+                        {
+                            links.add(existing);
+                        }
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            pendingTables.acquire();
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to index '" + tablePath + "'");
+        }
+
+        PairNonComparable<String, JsonTable> parsed = new PairNonComparable<>(tablePath.getFileName().toString(), table);
+        CompletableFuture.allOf(links.toArray(new CompletableFuture[0])).thenRun(() -> indexStage.put(parsed));
+    }
+
+    private void resolveLinks(List<String> links, PipelineStage<String> metadataStage)
+    {
+        Map<String, String> entities = new HashMap<>(links.size());
+
+        try
+        {
+            Map<String, List<String>> mentions = links.stream().collect(Collectors.groupingBy(link -> link.replace("http://www.", "http://en.")));
+
+            for (Map.Entry<String, String> linked : this.entityLinker.link(mentions.keySet()).entrySet())
+            {
+                String entity = linked.getValue();
+
+                for (String link : mentions.get(linked.getKey()))
+                {
+                    this.linker.addMapping(link, entity);
+                    this.linkToNumEntitiesFrequency.merge(1, 1, Integer::sum);
+                    entities.put(link, entity);
+                }
+
+                if (this.resolvedEntities.add(entity))
+                {
+                    metadataStage.put(entity);
+                }
+            }
+        }
+
+        catch (RuntimeException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Failed linking " + links.size() + " links: " + e.getMessage());
+        }
+
+        finally     // Tables waiting for these links are indexed even when linking fails
+        {
+            for (String link : links)
+            {
+                this.resolvedLinks.get(link).complete(entities.get(link));
+            }
+        }
+    }
+
+    /**
+     * Types and predicates of the batch are fetched concurrently with its embeddings
+     */
+    private void fetchMetadata(List<String> entities, PipelineStage<PairNonComparable<Entity, List<Double>>> insertStage)
+    {
+        CompletableFuture<Map<String, List<String>>> types = this.neo4j.batchSearchTypesAsync(entities).toCompletableFuture(),
+                predicates = this.neo4j.batchSearchPredicatesAsync(entities).toCompletableFuture();
+        Map<String, List<Double>> embeddings = embeddings(entities);
+
+        for (String entity : entities)
+        {
+            List<String> entityTypes = types.join().get(entity);
+            List<String> entityPredicates = predicates.join().get(entity);
+            entityTypes.removeAll(this.disallowedEntityTypes);
+            insertStage.put(new PairNonComparable<>(
+                    new Entity(entity, entityTypes.stream().map(Type::new).collect(Collectors.toList()), entityPredicates),
+                    embeddings.get(entity)));
+        }
+    }
+
+    /**
+     * Embeddings of a batch of entities
+     * Embedding stores not supporting batch selection are queried one entity at a time
+     */
+    private Map<String, List<Double>> embeddings(List<String> entities)
+    {
+        synchronized (this.embeddingsDB)
+        {
+            if (this.batchEmbeddings)
+            {
+                try
+                {
+                    List<String> iris = entities.stream().map(entity -> entity.replace("'", "''")).collect(Collectors.toList());
+                    Map<String, List<Double>> embeddings = this.embeddingsDB.batchSelect(iris);
+
+                    if (embeddings != null)
+                    {
+                        return embeddings;
+                    }
+                }
+
+                catch (UnsupportedOperationException e)
+                {
+                    this.batchEmbeddings = false;
+                }
+            }
+
+            Map<String, List<Double>> embeddings = new HashMap<>(entities.size());
+
+            for (String entity : entities)
+            {
+                List<Double> embedding = this.embeddingsDB.select(entity.replace("'", "''"));
+
+                if (embedding != null)
+                {
+                    embeddings.put(entity, embedding);
+                }
+            }
+
+            return embeddings;
+        }
+    }
+
+    private void insertEntities(List<PairNonComparable<Entity, List<Double>>> entities)
+    {
+        List<Id> entityIds = new ArrayList<>(entities.size());
+
+        synchronized (this.linker)
+        {
+            for (PairNonComparable<Entity, List<Double>> entity : entities)
+            {
+                entityIds.add(((EntityLinking) this.linker.getLinker()).kgUriLookup(entity.getFirst().getUri()));
+            }
+        }
+
+        for (int i = 0; i < entities.size(); i++)
+        {
+            this.entityTable.insert(entityIds.get(i), entities.get(i).getFirst());
+
+            if (entities.get(i).getSecond() != null)
+            {
+                this.embeddingsIdx.insert(entityIds.get(i), entities.get(i).getSecond());
+            }
+        }
+    }
+
+    private void indexTable(PairNonComparable<String, JsonTable> parsed, Semaphore pendingTables)
+    {
+        try
+        {
+            index(parsed.getFirst(), parsed.getSecond());
+        }
+
+        catch (RuntimeException e)
+        {
+            Logger.logNewLine(Logger.Level.ERROR, "Failed loading '" + parsed.getFirst() + "': " + e.getMessage());
+        }
+
+        finally
+        {
+            pendingTables.release();
+            tableProcessed();
+        }
+    }
+
+    private void tableProcessed()
+    {
+        long processed = this.loadedTables.incrementAndGet();
+
+        if (processed % 100 == 0)
+        {
+            Logger.log(Logger.Level.INFO, "Processed " + processed + "/" + this.files.size() + " files...");
+        }
+    }
+
+    /**
+     * Indexes a table whose links have all been resolved
+     */
+    private void index(String tableName, JsonTable table)
+    {
+        EntityLinking linker = (EntityLinking) this.linker.getLinker();
         Map<Pair<Integer, Integer>, List<String>> entityMatches = new HashMap<>();  // Maps a cell specified by RowNumber, ColumnNumber to the list of entities it matches to
         Table<String> parsedTable = new DynamicTable<>();   // The set of entities corresponding to this filename/table
         int row = 0;
@@ -241,68 +466,17 @@ public class IndexWriter implements IndexIO
 
                     for (String link : cell.links)
                     {
-                        if (this.linker.mapTo(link) != null)   // Check if we had already searched for it
-                        {
-                            matchesUris.add(this.linker.mapTo(link));
-                        }
+                        String entity = this.linker.mapTo(link);
 
-                        else
+                        if (entity != null)
                         {
-                            String entity = this.entityLinker.link(link.replace("http://www.", "http://en."));
-
-                            if (entity != null)
-                            {
-                                synchronized (this.lock)
-                                {
-                                    List<String> entityTypes = this.neo4j.searchTypes(entity);
-                                    List<String> entityPredicates = this.neo4j.searchPredicates(entity);
-                                    matchesUris.add(entity);
-                                    this.linker.addMapping(link, entity);
-                                    this.linkToNumEntitiesFrequency.merge(1, 1, Integer::sum);
-
-                                    for (String type : this.disallowedEntityTypes)
-                                    {
-                                        entityTypes.remove(type);
-                                    }
-
-                                    Id entityId = ((EntityLinking) this.linker.getLinker()).kgUriLookup(entity);
-                                    List<Double> embeddings = this.embeddingsDB.select(entity.replace("'", "''"));
-                                    this.entityTable.insert(entityId,
-                                            new Entity(entity, entityTypes.stream().map(Type::new).collect(Collectors.toList()), entityPredicates));
-
-                                    if (embeddings != null)
-                                    {
-                                        this.embeddingsIdx.insert(entityId, embeddings);
-                                    }
-                                }
-                            }
-                        }
-
-                        if (this.linker.mapTo(link) != null)
-                        {
-                            String entity = this.linker.mapTo(link);
-                            Id entityId = ((EntityLinking) this.linker.getLinker()).kgUriLookup(entity);
-                            Pair<Integer, Integer> location = new Pair<>(row, column);
-
-                            synchronized (this.lock)
-                            {
-                                ((EntityTableLink) this.entityTableLink.getIndex()).
-                                        addLocation(entityId, tableName, List.of(location));
-                            }
+                            matchesUris.add(entity);
+                            parsedRow.add(entity);
                         }
                     }
 
                     if (!matchesUris.isEmpty())
                     {
-                        for (String entity : matchesUris)
-                        {
-                            synchronized (this.lock)
-                            {
-                                this.filter.put(entity);
-                                parsedRow.add(entity);
-                            }
-                        }
-
                         entityMatches.put(new Pair<>(row, column), matchesUris);
                     }
                 }
@@ -314,22 +488,50 @@ public class IndexWriter implements IndexIO
             row++;
         }
 
-        synchronized (this.lock)
+        Map<String, Id> entityIds = new HashMap<>();
+        LinkedTable linkedTable;
+
+        synchronized (this.linker)  // Resolution of other tables adds mappings concurrently
         {
-            this.tableEntities.add(new PairNonComparable<>(tableName, parsedTable));
-            saveStats(table, FilenameUtils.removeExtension(tableName), parsedTable, entityMatches);
+            for (List<String> entities : entityMatches.values())
+            {
+                for (String entity : entities)
+                {
+                    entityIds.computeIfAbsent(entity, linker::kgUriLookup);
+                }
+            }
+
+            linkedTable = TableCorpus.link(table, linker);
         }
 
-        return true;
+        synchronized (this.tableLinkLock)
+        {
+            EntityTableLink tableLink = (EntityTableLink) this.entityTableLink.getIndex();
+
+            for (Map.Entry<Pair<Integer, Integer>, List<String>> match : entityMatches.entrySet())
+            {
+                for (String entity : match.getValue())
+                {
+                    tableLink.addLocation(entityIds.get(entity), tableName, List.of(match.getKey()));
+                }
+            }
+        }
+
+        entityIds.keySet().forEach(this.filter::put);     // Bloom filter insertion is thread-safe
+        this.tableCorpus.insert(tableName, linkedTable);
+        this.tableEntities.add(new PairNonComparable<>(tableName, parsedTable));
+        saveStats(table, FilenameUtils.removeExtension(tableName), parsedTable, entityMatches, entityIds);
     }
 
-    private void saveStats(JsonTable jTable, String tableFileName, Table<String> table, Map<Pair<Integer, Integer>, List<String>> entityMatches)
+    private void saveStats(JsonTable jTable, String tableFileName, Table<String> table,
+                           Map<Pair<Integer, Integer>, List<String>> entityMatches, Map<String, Id> entityIds)
     {
-        Stats stats = collectStats(jTable, tableFileName, table, entityMatches);
+        Stats stats = collectStats(jTable, tableFileName, table, entityMatches, entityIds);
         this.tableStats.put(tableFileName, stats);
     }
 
-    private Stats collectStats(JsonTable jTable, String tableFileName, Table<String> table, Map<Pair<Integer, Integer>, List<String>> entityMatches)
+    private Stats collectStats(JsonTable jTable, String tableFileName, Table<String> table,
+                               Map<Pair<Integer, Integer>, List<String>> entityMatches, Map<String, Id> entityIds)
     {
         List<Integer> numEntitiesPerRow = new ArrayList<>(Collections.nCopies(jTable.numDataRows, 0));
         List<Integer> numEntitiesPerCol = new ArrayList<>(Collections.nCopies(jTable.numCols, 0));
@@ -343,15 +545,19 @@ public class IndexWriter implements IndexIO
             for (int column = 0; column < table.getRow(row).size(); column++)
             {
                 entityCount++;
-                Id entityId = ((EntityLinking) this.linker.getLinker()).kgUriLookup(table.getRow(row).get(column));
+                Id entityId = entityIds.get(table.getRow(row).get(column));
 
                 if (entityId == null)
                 {
                     continue;
                 }
 
-                List<Pair<Integer, Integer>> locations =
-                        ((EntityTableLink) this.entityTableLink.getIndex()).getLocations(entityId, tableFileName);
+                List<Pair<Integer, Integer>> locations;
+
+                synchronized (this.tableLinkLock)
+                {
+                    locations = ((EntityTableLink) this.entityTableLink.getIndex()).getLocations(entityId, tableFileName);
+                }
 
                 if (locations != null)
                 {
@@ -496,52 +702,38 @@ public class IndexWriter implements IndexIO
                 }
             });
         }
+
+        ((EntityTable) this.entityTable.getIndex()).updateTypeIdfs();
     }
 
+    /**
+     * Writes all indexes as sections of a single index file followed by the pre-linked table corpus
+     * The LSH indexes hold their hash functions as objects and are therefore still written by Java serialization
+     * The entity linker, entity table, entity-table link, and embeddings are also written in the layout that search can memory-map
+     */
     private void flushToDisk() throws IOException
     {
-        // Entity linker
-        ObjectOutputStream outputStream =
-                new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityLinkerFile()));
-        outputStream.writeObject(this.linker.getLinker());
-        outputStream.flush();
-        outputStream.close();
-
-        // Entity table
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityTableFile()));
-        outputStream.writeObject(this.entityTable.getIndex());
-        outputStream.flush();
-        outputStream.close();
-
-        // Entity to tables inverted index
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEntityToTablesFile()));
-        outputStream.writeObject(this.entityTableLink.getIndex());
-        outputStream.flush();
-        outputStream.close();
-
-        // Embeddings index
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEmbeddingsIndexFile()));
-        outputStream.writeObject(this.embeddingsIdx.getIndex());
-        outputStream.flush();
-        outputStream.close();
-
-        // LSH of entity types
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getTypesLSHIndexFile()));
-        outputStream.writeObject(this.typesLSH);
-        outputStream.flush();
-        outputStream.close();
-
-        // LSH of entity predicates
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getPredicatesLSHIndexFile()));
-        outputStream.writeObject(this.predicatesLSH);
-        outputStream.flush();
-        outputStream.close();
-
-        // LSH of entity embeddings
-        outputStream = new ObjectOutputStream(new FileOutputStream(this.outputPath + "/" + Configuration.getEmbeddingsLSHFile()));
-        outputStream.writeObject(this.embeddingsLSH);
-        outputStream.flush();
-        outputStream.close();
+        EntityTableLink entityTableLink = (EntityTableLink) this.entityTableLink.getIndex();
+        entityTableLink.buildForwardIndex();
+
+        try (IndexFile.Writer indexFile = IndexFile.create(new File(this.outputPath + "/" + Configuration.getIndexFile())))
+        {
+            indexFile.section(ENTITY_LINKER, ((EntityLinking) this.linker.getLinker())::write);
+            indexFile.section(ENTITY_TABLE, ((EntityTable) this.entityTable.getIndex())::write);
+            indexFile.section(ENTITY_TO_TABLES, entityTableLink::write);
+            indexFile.section(EMBEDDINGS, ((DenseEmbeddingsIndex<Id>) this.embeddingsIdx.getIndex())::write);
+            indexFile.section(TYPES_LSH, output -> IndexFile.writeObject(output, this.typesLSH));
+            indexFile.section(PREDICATES_LSH, output -> IndexFile.writeObject(output, this.predicatesLSH));
+            indexFile.section(EMBEDDINGS_LSH, output -> IndexFile.writeObject(output, this.embeddingsLSH));
+
+            MappedEntityLinking.write(indexFile, (EntityLinking) this.linker.getLinker());
+            MappedEntityTable.write(indexFile, (EntityTable) this.entityTable.getIndex());
+            MappedEntityTableLink.write(indexFile, entityTableLink);
+            MappedEmbeddingsIndex.write(indexFile, (DenseEmbeddingsIndex<Id>) this.embeddingsIdx.getIndex());
+        }
+
+        // Pre-linked table corpus
+        this.tableCorpus.write(new File(this.outputPath + "/" + Configuration.getTableCorpusFile()));
 
         genNeo4jTableMappings();
     }
@@ -679,6 +871,15 @@ public class IndexWriter implements IndexIO
         return (EntityTableLink) this.entityTableLink.getIndex();
     }
 
+    /**
+     * Getter to corpus of pre-linked tables
+     * @return Loaded table corpus
+     */
+    public TableCorpus getTableCorpus()
+    {
+        return this.tableCorpus;
+    }
+
     public long getApproximateEntityMentions()
     {
         return this.filter.approximateElementCount();
@@ -1,6 +1,38 @@
 package com.thetis.loader;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 public interface Linker
 {
     String link(String mention);
+
+    /**
+     * Links a batch of mentions
+     * Mentions that cannot be linked are not mapped
+     * @param mentions Mentions to link
+     * @return Map from mention to linked entity
+     */
+    default Map<String, String> link(Collection<String> mentions)
+    {
+        Map<String, String> entities = new HashMap<>(mentions.size());
+
+        for (String mention : mentions)
+        {
+            try
+            {
+                String entity = link(mention);
+
+                if (entity != null)
+                {
+                    entities.put(mention, entity);
+                }
+            }
+
+            catch (IllegalArgumentException ignored) {}
+        }
+
+        return entities;
+    }
 }
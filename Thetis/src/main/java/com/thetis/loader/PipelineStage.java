@@ -0,0 +1,219 @@
+package com.thetis.loader;
+
+import com.thetis.system.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Stage of the index writing pipeline
+ * Items are put into a bounded queue, which blocks producers when the stage falls behind, and are handled in batches by the stage's own workers
+ * @param <T> Item type
+ */
+class PipelineStage<T>
+{
+    private static final long POLL_MILLIS = 50;
+
+    private final String name;
+    private final int workers;
+    private final int batchSize;
+    private final Consumer<List<T>> handler;
+    private final BlockingQueue<T> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private final LongAdder items = new LongAdder(), batches = new LongAdder(), busyNanos = new LongAdder();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>(null);
+    private volatile boolean finishing = false;
+    private long startTime = -1, elapsed = -1;
+
+    /**
+     * @param name Name of stage used in logging
+     * @param workers Number of worker threads
+     * @param capacity Number of items that can be queued before producers block
+     * @param batchSize Maximum number of items handled at once
+     * @param handler Handles a batch of items. A failing batch is logged and does not stop the stage, but fails {@link #checkFailure()}.
+     */
+    PipelineStage(String name, int workers, int capacity, int batchSize, Consumer<List<T>> handler)
+    {
+        if (workers <= 0 || capacity <= 0 || batchSize <= 0)
+        {
+            throw new IllegalArgumentException("Stage '" + name + "' must have positive number of workers, capacity, and batch size");
+        }
+
+        this.name = name;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public synchronized void start()
+    {
+        if (!this.threads.isEmpty())
+        {
+            throw new IllegalStateException("Stage '" + this.name + "' has already been started");
+        }
+
+        this.startTime = System.nanoTime();
+
+        for (int i = 0; i < this.workers; i++)
+        {
+            Thread worker = new Thread(this::work, "pipeline-" + this.name + "-" + i);
+            worker.setDaemon(true);
+            this.threads.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Enqueues an item and blocks while the queue is full
+     * @param item Item to be handled by this stage
+     */
+    public void put(T item)
+    {
+        if (this.finishing)
+        {
+            throw new IllegalStateException("Stage '" + this.name + "' is finishing and does not accept more items");
+        }
+
+        try
+        {
+            this.queue.put(item);
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while enqueuing into stage '" + this.name + "'");
+        }
+    }
+
+    /**
+     * Stops accepting items and waits until all queued items have been handled
+     * Producers of this stage must be finished before this is called
+     */
+    public void finish()
+    {
+        this.finishing = true;
+
+        try
+        {
+            for (Thread worker : this.threads)
+            {
+                worker.join();
+            }
+        }
+
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finishing stage '" + this.name + "'");
+        }
+
+        this.elapsed = System.nanoTime() - this.startTime;
+        Logger.logNewLine(Logger.Level.INFO, toString());
+    }
+
+    private void work()
+    {
+        List<T> batch = new ArrayList<>(this.batchSize);
+
+        while (true)
+        {
+            try
+            {
+                T first = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (first == null)
+                {
+                    if (this.finishing && this.queue.isEmpty())
+                    {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                batch.add(first);
+                this.queue.drainTo(batch, this.batchSize - 1);
+            }
+
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long start = System.nanoTime();
+
+            try
+            {
+                this.handler.accept(batch);
+            }
+
+            catch (RuntimeException e)
+            {
+                this.failure.compareAndSet(null, e);
+                Logger.logNewLine(Logger.Level.ERROR, "Stage '" + this.name + "' failed handling " + batch.size() + " items: " + e.getMessage());
+            }
+
+            this.busyNanos.add(System.nanoTime() - start);
+            this.items.add(batch.size());
+            this.batches.increment();
+            batch.clear();
+        }
+    }
+
+    public long items()
+    {
+        return this.items.sum();
+    }
+
+    public long batches()
+    {
+        return this.batches.sum();
+    }
+
+    /**
+     * Items handled per second of worker time
+     */
+    public double throughput()
+    {
+        long busy = this.busyNanos.sum();
+        return busy > 0 ? this.items.sum() / (busy / 1e9) : 0;
+    }
+
+    /**
+     * @return The first exception thrown by the handler, or null
+     */
+    public RuntimeException failure()
+    {
+        return this.failure.get();
+    }
+
+    /**
+     * Throws the first exception thrown by the handler, as the output of a stage with a failed batch is incomplete
+     * This should be called once the stage has finished
+     */
+    public void checkFailure()
+    {
+        RuntimeException failure = this.failure.get();
+
+        if (failure != null)
+        {
+            throw new RuntimeException("Stage '" + this.name + "' failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Stage '%s': %d items in %d batches by %d workers, %.1f items/s per worker, %.2f seconds elapsed",
+                this.name, items(), batches(), this.workers, throughput(), this.elapsed >= 0 ? this.elapsed / 1e9 : 0);
+    }
+}
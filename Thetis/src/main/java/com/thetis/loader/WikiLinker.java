@@ -1,14 +1,18 @@
 package com.thetis.loader;
 
-import com.thetis.connector.Neo4jEndpoint;
+import com.thetis.connector.KnowledgeGraph;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class WikiLinker implements Linker
 {
-    private Neo4jEndpoint neo4j;
+    private KnowledgeGraph neo4j;
 
-    public WikiLinker(Neo4jEndpoint neo4j)
+    public WikiLinker(KnowledgeGraph neo4j)
     {
         this.neo4j = neo4j;
     }
@@ -24,4 +28,24 @@ public class WikiLinker implements Linker
         List<String> links = this.neo4j.searchLink(mention);
         return !links.isEmpty() ? links.get(0) : null;
     }
+
+    /**
+     * Links all Wikipedia links of the batch in a single query
+     */
+    @Override
+    public Map<String, String> link(Collection<String> mentions)
+    {
+        List<String> links = mentions.stream().filter(mention -> mention.contains("wikipedia.org")).collect(Collectors.toList());
+        Map<String, String> entities = new HashMap<>(links.size());
+
+        for (Map.Entry<String, List<String>> matches : this.neo4j.batchSearchLink(links).entrySet())
+        {
+            if (!matches.getValue().isEmpty())
+            {
+                entities.put(matches.getKey(), matches.getValue().get(0));
+            }
+        }
+
+        return entities;
+    }
 }
@@ -5,14 +5,16 @@ import com.thetis.store.EmbeddingsIndex;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
+import com.thetis.store.TableCorpus;
 import com.thetis.commands.parser.TableParser;
 import com.thetis.similarity.JaccardSimilarity;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
 import com.thetis.structures.graph.Entity;
-import com.thetis.structures.graph.Type;
 import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.LinkedTable;
 import com.thetis.structures.table.Table;
+import com.thetis.system.ExecutionService;
 import com.thetis.system.Logger;
 import com.thetis.tables.JsonTable;
 import com.thetis.utilities.HungarianAlgorithm;
@@ -21,6 +23,8 @@ import com.thetis.utilities.Utils;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -75,7 +79,20 @@ public class AnalogousSearch extends AbstractSearch
     private Map<String, Stats> tableStats = new TreeMap<>();
     private final Object lockStats = new Object();
     private Set<String> corpus;
+    private TableCorpus tableCorpus = null;
     private Prefilter prefilter;
+    private final SimilarityCache similarityCache = new SimilarityCache();
+    private Id[] queryEntityIds;            // Distinct query entities of the current query
+    private int[][] queryEntityIndices;     // Query entity cell to index into 'queryEntityIds'
+    private ExecutionService executionService = null;
+    private long queryTimeoutNs = -1;
+    private boolean timedOut = false;
+    private boolean pruning = false;
+    private long skippedTables = 0;
+    private List<List<Double>> queryRowWeights;     // Normalized IDF weights of query entities per query row
+    private static final double ADJUSTED_MAX_SIMILARITY = 0.95;
+    private static final int[] NO_IDS = new int[0];
+    private static final double BOUND_EPSILON = 1e-9;   // Absorbs rounding differences between bounds and exact scores
 
     public AnalogousSearch(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink, EmbeddingsIndex<Id> embeddingIdx,
                            int topK, int threads, EntitySimilarity entitySimilarity, boolean singleColumnPerQueryEntity,
@@ -92,7 +109,7 @@ public class AnalogousSearch extends AbstractSearch
         this.hungarianAlgorithmSameAlignmentAcrossTuples = hungarianAlgorithmSameAlignmentAcrossTuples;
         this.useMaxSimilarityPerColumn = useMaxSimilarityPerColumn;
         this.measure = similarityMeasure;
-        this.corpus = distinctTables();
+        this.corpus = null;     // Found from the entity-table link on first use unless a corpus is given
         this.prefilter = null;
     }
 
@@ -110,8 +127,27 @@ public class AnalogousSearch extends AbstractSearch
 
     public void setCorpus(Set<String> tableFiles)
     {
-        this.corpus = tableFiles;
-        this.corpus = this.corpus.stream().map(t -> {
+        this.corpus = corpusFileNames(tableFiles);
+    }
+
+    /**
+     * Uses a corpus of table file names without directories as is
+     * The set is not modified, so one corpus can be shared between searches
+     * @param fileNames Table file names as returned by {@link #corpusFileNames(Set)}
+     */
+    public void useCorpus(Set<String> fileNames)
+    {
+        this.corpus = fileNames;
+    }
+
+    /**
+     * Removes directories from table files
+     * @param tableFiles Table files
+     * @return Table file names
+     */
+    public static Set<String> corpusFileNames(Set<String> tableFiles)
+    {
+        return tableFiles.stream().map(t -> {
             String[] split = t.split("/");
 
             if (split.length == 0)
@@ -121,20 +157,210 @@ public class AnalogousSearch extends AbstractSearch
         }).collect(Collectors.toSet());
     }
 
+    private Set<String> corpus()
+    {
+        if (this.corpus == null)
+            this.corpus = distinctTables();
+
+        return this.corpus;
+    }
+
+    /**
+     * Searches tables using the given execution service instead of a service created for each query
+     * @param executionService Execution service shared between queries
+     */
+    public void useExecutionService(ExecutionService executionService)
+    {
+        this.executionService = executionService;
+    }
+
+    /**
+     * Sets a deadline for each query
+     * When the deadline passes, remaining tables are skipped and the top-K tables found so far are returned
+     * @param timeoutMs Time limit in milliseconds, or zero or negative for no limit
+     */
+    public void setQueryTimeout(long timeoutMs)
+    {
+        this.queryTimeoutNs = timeoutMs > 0 ? timeoutMs * 1_000_000 : -1;
+    }
+
+    /**
+     * Enables upper-bound pruning
+     * Tables are searched in descending order of an upper bound of their score, and tables whose bound is below the
+     * K-th best score found so far are skipped. The result is identical to searching all tables.
+     * @param pruning True to enable pruning
+     */
+    public void usePruning(boolean pruning)
+    {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Searches pre-linked tables of the given corpus instead of parsing and linking JSON table files
+     * @param tableCorpus Corpus of pre-linked tables
+     */
+    public void useTableCorpus(TableCorpus tableCorpus)
+    {
+        this.tableCorpus = tableCorpus;
+    }
+
+    private LinkedTable loadTable(String table)
+    {
+        if (this.tableCorpus != null && this.tableCorpus.contains(table))
+            return this.tableCorpus.find(table);
+
+        JsonTable jTable = TableParser.parse(new File(this.getEntityTableLink().getDirectory() + table));
+        return jTable != null ? TableCorpus.link(jTable, getLinker()) : null;
+    }
+
     private void prefilterSearchSpace(Table<String> query)
     {
-        int initialSize = this.corpus.size();
+        int initialSize = corpus().size();
         Iterator<Pair<String, Double>> res = this.prefilter.search(query).getResults();
-        this.corpus.clear();
+        Set<String> filtered = new HashSet<>();   // The corpus may be shared, so it is replaced rather than cleared
 
         while (res.hasNext())
         {
-            this.corpus.add(res.next().getFirst());
+            filtered.add(res.next().getFirst());
         }
 
+        this.corpus = filtered;
         this.reduction = initialSize > 0 ? (1 - ((double) this.corpus.size() / initialSize)) : 0;
     }
 
+    /**
+     * Assigns an index to each distinct query entity
+     * These indexes key the similarity cache, which is shared between all tables searched for the query
+     */
+    private void indexQueryEntities(Table<String> query)
+    {
+        Map<Id, Integer> indices = new LinkedHashMap<>();
+        this.queryEntityIndices = new int[query.rowCount()][];
+
+        for (int row = 0; row < query.rowCount(); row++)
+        {
+            int rowSize = query.getRow(row).size();
+            this.queryEntityIndices[row] = new int[rowSize];
+
+            for (int column = 0; column < rowSize; column++)
+            {
+                Id id = getLinker().kgUriLookup(query.getRow(row).get(column));
+                this.queryEntityIndices[row][column] = id != null ? indices.computeIfAbsent(id, k -> indices.size()) : -1;
+            }
+        }
+
+        this.queryEntityIds = indices.keySet().toArray(new Id[0]);
+        this.similarityCache.clear();
+    }
+
+    /**
+     * Similarity score between a query entity and a table entity
+     * Scores are computed once per query and cached
+     * @param queryRow Query row index
+     * @param queryColumn Query column index
+     * @param tableEntity Table entity ID
+     * @return A score within [0, 1]
+     */
+    private double querySimilarityScore(int queryRow, int queryColumn, Id tableEntity)
+    {
+        int index = this.queryEntityIndices[queryRow][queryColumn];
+
+        if (index == -1)
+            return entitySimilarityScore(null, tableEntity);
+
+        Id queryEntity = this.queryEntityIds[index];
+        return this.similarityCache.get(index, tableEntity.getId(), () -> entitySimilarityScore(queryEntity, tableEntity));
+    }
+
+    /**
+     * Cells of a table reduced to the distinct entities they link to
+     * Similarities to the query entities are computed once per distinct entity and shared by all cells linking to it
+     */
+    private final class DistinctEntityScores
+    {
+        private final int columns;
+        private final int[] cells;          // Distinct entity index of each cell in row-major order, or -1
+        private final Id[] entities;
+        private final double[][] scores;    // Indexed by query entity index and distinct entity index. The last row is for query entities without an ID.
+
+        private DistinctEntityScores(LinkedTable table)
+        {
+            int[] tableEntities = table.entities();
+            Map<Integer, Integer> indices = new HashMap<>();
+            this.columns = table.columnCount();
+            this.cells = new int[tableEntities.length];
+
+            for (int cell = 0; cell < tableEntities.length; cell++)
+            {
+                this.cells[cell] = tableEntities[cell] == LinkedTable.NO_ENTITY ? -1 :
+                        indices.computeIfAbsent(tableEntities[cell], e -> indices.size());
+            }
+
+            this.entities = new Id[indices.size()];
+            indices.forEach((entity, index) -> this.entities[index] = new Id(entity));
+            this.scores = new double[AnalogousSearch.this.queryEntityIds.length + 1][];
+        }
+
+        /**
+         * @return Distinct entity index of cell or -1 if the cell does not link to a known entity
+         */
+        private int entity(int row, int column)
+        {
+            return this.cells[row * this.columns + column];
+        }
+
+        private Id id(int entity)
+        {
+            return this.entities[entity];
+        }
+
+        private boolean isRowMapped(int row)
+        {
+            for (int column = 0; column < this.columns; column++)
+            {
+                if (entity(row, column) != -1)
+                    return true;
+            }
+
+            return false;
+        }
+
+        private Map<Integer, Id> columnToEntity(int row)
+        {
+            Map<Integer, Id> columnToEntity = new HashMap<>();
+
+            for (int column = 0; column < this.columns; column++)
+            {
+                if (entity(row, column) != -1)
+                    columnToEntity.put(column, id(entity(row, column)));
+            }
+
+            return columnToEntity;
+        }
+
+        private double score(int queryRow, int queryColumn, int entity)
+        {
+            int index = AnalogousSearch.this.queryEntityIndices[queryRow][queryColumn];
+            int slot = index == -1 ? this.scores.length - 1 : index;
+
+            if (this.scores[slot] == null)
+            {
+                this.scores[slot] = new double[this.entities.length];
+                Arrays.fill(this.scores[slot], Double.NaN);
+            }
+
+            double score = this.scores[slot][entity];
+
+            if (Double.isNaN(score))
+            {
+                score = querySimilarityScore(queryRow, queryColumn, this.entities[entity]);
+                this.scores[slot][entity] = score;
+            }
+
+            return score;
+        }
+    }
+
     private static boolean useEmbeddings(EntitySimilarity sim)
     {
         return sim == EntitySimilarity.EMBEDDINGS_ABS || sim == EntitySimilarity.EMBEDDINGS_NORM ||
@@ -157,55 +383,82 @@ public class AnalogousSearch extends AbstractSearch
             Logger.logNewLine(Logger.Level.INFO, "Pre-filtered corpus in " + this.prefilter.elapsedNanoSeconds() + "ns");
         }
 
+        indexQueryEntities(query);
+
         try
         {
-            Logger.logNewLine(Logger.Level.INFO, "There are " + this.corpus.size() + " files to be processed.");
-            ExecutorService threadPool = Executors.newFixedThreadPool(this.threads);
-            List<Future<Pair<String, Double>>> parsed = new ArrayList<>(this.corpus.size());
-
-            for (String table : this.corpus)
+            Logger.logNewLine(Logger.Level.INFO, "There are " + corpus().size() + " files to be processed.");
+            this.queryRowWeights = queryRowWeights(query);
+            List<String> tables = new ArrayList<>(corpus());
+            Map<String, Double> bounds = this.pruning ? scoreUpperBounds(query, tables) : null;
+            AtomicLong skipped = new AtomicLong(0);
+
+            if (bounds != null)
+                tables.sort(Comparator.comparingDouble((String table) -> bounds.get(table)).reversed());
+
+            boolean ownsExecutionService = this.executionService == null;
+            ExecutionService executionService = ownsExecutionService ? new ExecutionService(this.threads) : this.executionService;
+            ExecutionService.Batch<Object> parsed = executionService.batch();
+            TopKCollector topK = new TopKCollector(this.topK);
+            AtomicLong scoredTables = new AtomicLong(0);
+            long corpusSize = corpus().size(), deadline = this.queryTimeoutNs > 0 ? start + this.queryTimeoutNs : -1;
+            this.timedOut = false;
+
+            for (String table : tables)   // Tasks run in submission order, so bounds of later tables can only be lower
             {
-                Future<Pair<String, Double>> future = threadPool.submit(() -> searchTable(query, table));
-                parsed.add(future);
-            }
+                double bound = bounds != null ? bounds.get(table) : Double.POSITIVE_INFINITY;
+                parsed.submit(() -> {
+                    if (topK.threshold() > bound + BOUND_EPSILON)
+                    {
+                        skipped.incrementAndGet();
+                        return;
+                    }
 
-            long done = 1, prev = 0, corpusSize = this.corpus.size();
+                    Pair<String, Double> tableScore = searchTable(query, table, parsed::isCancelled);
 
-            while (done != corpusSize)
-            {
-                done = parsed.stream().filter(Future::isDone).count();
+                    if (tableScore != null)
+                    {
+                        topK.offer(tableScore.getFirst(), tableScore.getSecond());
+                        scoredTables.incrementAndGet();
+                    }
+                });
+            }
 
-                if (done - prev >= 100)
-                {
-                    Logger.log(Logger.Level.INFO, "Processed " + done + "/" + corpusSize + " files...");
-                    prev = done;
-                }
+            try
+            {
+                parsed.await(deadline, done -> {
+                    if (done % 100 == 0)
+                        Logger.log(Logger.Level.INFO, "Processed " + done + "/" + corpusSize + " files...");
+                });
             }
 
-            List<Pair<String, Double>> scores = new ArrayList<>();
-            long parsedTables = parsed.stream().filter(f -> {
-                try
-                {
-                    Pair<String, Double> tableScore = f.get();
+            catch (TimeoutException e)
+            {
+                this.timedOut = true;
+                Logger.logNewLine(Logger.Level.ERROR, "Query deadline passed: " + e.getMessage() + ". Returning the top-K tables found so far");
+            }
 
-                    if (tableScore != null)
-                    {
-                        scores.add(tableScore);
-                        return true;
-                    }
+            catch (InterruptedException | ExecutionException e)
+            {
+                throw new RuntimeException(e.getMessage());
+            }
 
-                    return false;
-                }
+            finally
+            {
+                if (ownsExecutionService)
+                    executionService.close();
+            }
 
-                catch (InterruptedException | ExecutionException e)
-                {
-                    throw new RuntimeException(e.getMessage());
-                }
-            }).count();
+            long parsedTables = scoredTables.get();
 
             this.elapsed = System.nanoTime() - start;
             this.parsedTables = parsedTables;
+            this.skippedTables = skipped.get();
             Logger.logNewLine(Logger.Level.INFO, "A total of " + parsedTables + " tables were parsed.");
+
+            if (this.pruning)
+                Logger.logNewLine(Logger.Level.INFO, "A total of " + this.skippedTables + " tables were skipped by upper-bound pruning.");
+
             Logger.logNewLine(Logger.Level.INFO, "Elapsed time: " + this.elapsed / 1e9 + " seconds\n");
 
             if (useEmbeddings(this.entitySimilarityMeasure))
@@ -222,7 +475,8 @@ public class AnalogousSearch extends AbstractSearch
                 Logger.logNewLine(Logger.Level.INFO, "Query Entities with missing embedding coverage: " + this.queryEntitiesMissingCoverage + "\n");
             }
 
-            return new Result(this.topK, scores);
+            this.similarityCache.clear();
+            return topK.toResult();
         }
 
         catch (RuntimeException e)
@@ -232,19 +486,26 @@ public class AnalogousSearch extends AbstractSearch
         }
     }
 
-    private Pair<String, Double> searchTable(Table<String> query, String table)
+    /**
+     * Scores a table against the query
+     * @param cancelled Whether the query has been cancelled, e.g. because its deadline passed, which stops scoring early
+     * @return Table and its score, or null if the table has no data rows or the query has been cancelled
+     */
+    private Pair<String, Double> searchTable(Table<String> query, String table, BooleanSupplier cancelled)
     {
-        JsonTable jTable = TableParser.parse(new File(this.getEntityTableLink().getDirectory() + table));
+        LinkedTable linkedTable = loadTable(table);
         Stats.StatBuilder statBuilder = Stats.build();
 
-        if (jTable == null || jTable.numDataRows == 0)
+        if (linkedTable == null || linkedTable.dataRows() == 0 || cancelled.getAsBoolean())
             return null;
 
+        DistinctEntityScores entityScores = new DistinctEntityScores(linkedTable);
+
         List<List<Integer>> queryRowToColumnMappings = new ArrayList<>();  // If each query entity needs to map to only one column find the best mapping
 
         if (this.singleColumnPerQueryEntity)
         {
-            queryRowToColumnMappings = getQueryToColumnMapping(query, jTable);
+            queryRowToColumnMappings = getQueryToColumnMapping(query, linkedTable, entityScores);
             List<List<String>> queryRowToColumnNames = new ArrayList<>(); // Log in the `statisticsMap` the column names aligned with each query row
 
             for (int queryRow = 0; queryRow < queryRowToColumnMappings.size(); queryRow++)
@@ -255,8 +516,8 @@ public class AnalogousSearch extends AbstractSearch
                 {
                     int alignedColNum = queryRowToColumnMappings.get(queryRow).get(entityId);
 
-                    if ((jTable.headers.size() > alignedColNum) && (alignedColNum >= 0))    // Ensure that `table` has headers that we can index them
-                        queryRowToColumnNames.get(queryRow).add(jTable.headers.get(alignedColNum).text);
+                    if ((linkedTable.headers().length > alignedColNum) && (alignedColNum >= 0))    // Ensure that `table` has headers that we can index them
+                        queryRowToColumnNames.get(queryRow).add(linkedTable.headers()[alignedColNum]);
                 }
             }
 
@@ -274,56 +535,45 @@ public class AnalogousSearch extends AbstractSearch
 
             for (int i = 0; i < queryRowSize; i++)
             {
-                queryRowsScores.add(new ArrayList<>(jTable.rows.size()));
+                queryRowsScores.add(new ArrayList<>(linkedTable.rowCount()));
             }
 
-            for (List<JsonTable.TableCell> tableRow : jTable.rows)
+            for (int tableRow = 0; tableRow < linkedTable.rowCount(); tableRow++)
             {
-                Map<Integer, String> columnToEntity = new HashMap<>();
-
-                for (int tableColumn = 0; tableColumn < tableRow.size(); tableColumn++)
-                {
-                    for (String link : tableRow.get(tableColumn).links)
-                    {
-                        String uri = getLinker().mapTo(link);
+                if (cancelled.getAsBoolean())   // Tasks left running after a deadline must not compete with later queries
+                    return null;
 
-                        if (uri != null)
-                        {
-                            columnToEntity.put(tableColumn, uri);
-                            break;
-                        }
-                    }
-                }
-
-                if (columnToEntity.isEmpty())   // Compute similarity vectors only for rows that map to at least one entity
+                if (!entityScores.isRowMapped(tableRow))   // Compute similarity vectors only for rows that map to at least one entity
                     continue;
 
                 numEntityMappedRows++;
 
                 if (!useEmbeddings(this.entitySimilarityMeasure) ||
-                        hasEmbeddingCoverage(query.getRow(queryRowCounter), columnToEntity, queryRowToColumnMappings, queryRowCounter))
+                        hasEmbeddingCoverage(query.getRow(queryRowCounter), entityScores.columnToEntity(tableRow), queryRowToColumnMappings, queryRowCounter))
                 {
                     for (int queryColumn = 0; queryColumn < queryRowSize; queryColumn++)
                     {
-                        String queryEntity = query.getRow(queryRowCounter).get(queryColumn);
                         double bestSimScore = 0.0;
 
                         if (this.singleColumnPerQueryEntity)
                         {
                             int assignedColumn = queryRowToColumnMappings.get(queryRowCounter).get(queryColumn);
 
-                            if (columnToEntity.containsKey(assignedColumn))
+                            if (assignedColumn >= 0 && assignedColumn < linkedTable.columnCount() &&
+                                    entityScores.entity(tableRow, assignedColumn) != -1)
                             {
-                                bestSimScore = entitySimilarityScore(queryEntity, columnToEntity.get(assignedColumn));
+                                bestSimScore = entityScores.score(queryRowCounter, queryColumn, entityScores.entity(tableRow, assignedColumn));
                             }
                         }
 
                         else
                         {
-                            for (String rowEntity : columnToEntity.values()) // Loop over each entity in the table row
+                            for (int tableColumn = 0; tableColumn < linkedTable.columnCount(); tableColumn++) // Loop over each entity in the table row
                             {
-                                double simScore = entitySimilarityScore(queryEntity, rowEntity);
-                                bestSimScore = Math.max(bestSimScore, simScore);
+                                int rowEntity = entityScores.entity(tableRow, tableColumn);
+
+                                if (rowEntity != -1)
+                                    bestSimScore = Math.max(bestSimScore, entityScores.score(queryRowCounter, queryColumn, rowEntity));
                             }
                         }
 
@@ -337,9 +587,13 @@ public class AnalogousSearch extends AbstractSearch
 
         // Update Statistics
         statBuilder.entityMappedRows(numEntityMappedRows);
-        statBuilder.fractionOfEntityMappedRows((double) numEntityMappedRows / jTable.numDataRows);
+        statBuilder.fractionOfEntityMappedRows((double) numEntityMappedRows / linkedTable.dataRows());
         Double score = aggregateTableSimilarities(query, scores, statBuilder);
-        this.tableStats.put(table, statBuilder.finish());
+
+        synchronized (this.lockStats)
+        {
+            this.tableStats.put(table, statBuilder.finish());
+        }
 
         return new Pair<>(table, score);
     }
@@ -348,7 +602,7 @@ public class AnalogousSearch extends AbstractSearch
      * Initialize multi-dimensional array indexed by (tupleID, entityID, columnID) mapping to the
      * aggregated score for that query entity with respect to the column
      */
-    private List<List<Integer>> getQueryToColumnMapping(Table<String> query, JsonTable table)
+    private List<List<Integer>> getQueryToColumnMapping(Table<String> query, LinkedTable table, DistinctEntityScores entityScores)
     {
         List<List<List<Double>>> entityToColumnScore = new ArrayList<>();
         int queryRows = query.rowCount();
@@ -360,45 +614,29 @@ public class AnalogousSearch extends AbstractSearch
 
             for (int rowEntity = 0; rowEntity < rowSize; rowEntity++)
             {
-                entityToColumnScore.get(row).add(new ArrayList<>(Collections.nCopies(table.numCols, 0.0)));
+                entityToColumnScore.get(row).add(new ArrayList<>(Collections.nCopies(table.columnCount(), 0.0)));
             }
         }
 
         // Loop over every cell in a table and populate 'entityToColumnScore'
-        for (List<JsonTable.TableCell> row : table.rows)
+        // A cell value may map to multiple entities. The pre-linked table holds the first one. TODO: Consider all of them?
+        for (int row = 0; row < table.rowCount(); row++)
         {
-            int colCounter = 0;
-
-            for (JsonTable.TableCell cell : row)
+            for (int colCounter = 0; colCounter < table.columnCount(); colCounter++)
             {
-                if(!cell.links.isEmpty())   // A cell value may map to multiple entities. Currently use the first one. TODO: Consider all of them?
-                {
-                    String curEntity = null;
+                int curEntity = entityScores.entity(row, colCounter);
 
-                    for (String link : cell.links)
+                if (curEntity != -1)    // Only consider cells for which we have a known entity mapping
+                {
+                    for (int queryRow = 0; queryRow < queryRows; queryRow++)    // Loop over each query tuple and each entity in a tuple and compute a score between the query entity and 'curEntity'
                     {
-                        if (getLinker().mapTo(link) != null)    // Only consider links for which we have a known entity mapping
+                        for (int queryEntityCounter = 0; queryEntityCounter < query.getRow(queryRow).size(); queryEntityCounter++)
                         {
-                            curEntity = getLinker().mapTo(link);
-                            break;
-                        }
-                    }
-
-                    if (curEntity != null)
-                    {
-                        for (int queryRow = 0; queryRow < queryRows; queryRow++)    // Loop over each query tuple and each entity in a tuple and compute a score between the query entity and 'curEntity'
-                        {
-                            for (int queryEntityCounter = 0; queryEntityCounter < query.getRow(queryRow).size(); queryEntityCounter++)
-                            {
-                                String queryEntity = query.getRow(queryRow).get(queryEntityCounter);
-                                Double score = entitySimilarityScore(queryEntity, curEntity);
-                                entityToColumnScore.get(queryRow).get(queryEntityCounter).set(colCounter, entityToColumnScore.get(queryRow).get(queryEntityCounter).get(colCounter) + score);
-                            }
+                            double score = entityScores.score(queryRow, queryEntityCounter, curEntity);
+                            entityToColumnScore.get(queryRow).get(queryEntityCounter).set(colCounter, entityToColumnScore.get(queryRow).get(queryEntityCounter).get(colCounter) + score);
                         }
                     }
                 }
-
-                colCounter++;
             }
         }
 
@@ -428,11 +666,11 @@ public class AnalogousSearch extends AbstractSearch
      * If 'usePretrainedEmbeddings' is not specified but 'adjustedJaccardSimilarity' is specified then
      * an adjusted Jaccard similarity between two entities is used where the similarity score is 1 only if the two entities are identical.
      * Otherwise a maximum similarity score is placed if the two entities are different
-     * @param ent1 entity URI
-     * @param ent2 entity URI
+     * @param ent1 entity ID
+     * @param ent2 entity ID
      * @return A score within [0, 1]
      */
-    private double entitySimilarityScore(String ent1, String ent2)
+    private double entitySimilarityScore(Id ent1, Id ent2)
     {
         double sim = 0;
 
@@ -452,67 +690,46 @@ public class AnalogousSearch extends AbstractSearch
         }
 
         if (this.adjustedSimilarity)
-            return ent1.equals(ent2) ? 1.0 : Math.min(0.95, sim);
+            return Objects.equals(ent1, ent2) ? 1.0 : Math.min(ADJUSTED_MAX_SIMILARITY, sim);
 
         return sim;
     }
 
-    private double jaccardSimilarity(String ent1, String ent2)
+    /**
+     * Merges the sorted type or predicate IDs interned by the entity table, so no sets are allocated per comparison
+     */
+    private double jaccardSimilarity(Id ent1Id, Id ent2Id)
     {
-        Set<Type> entTypes1 = new HashSet<>(), entTypes2 = new HashSet<>();
-        Set<String> entPredicates1 = new HashSet<>(), entPredicates2 = new HashSet<>();
-        Id ent1Id = getLinker().kgUriLookup(ent1), ent2Id = getLinker().kgUriLookup(ent2);
+        Entity entity1 = getEntityTable().find(ent1Id), entity2 = getEntityTable().find(ent2Id);
 
-        if (getEntityTable().contains(ent1Id))
-        {
-            Entity entity = getEntityTable().find(ent1Id);
-            entTypes1 = new HashSet<>(entity.getTypes());
-            entPredicates1 = new HashSet<>(entity.getPredicates());
-        }
+        if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_PREDICATES)
+            return JaccardSimilarity.similarity(predicateIds(entity1), predicateIds(entity2));
 
-        if (getEntityTable().contains(ent2Id))
-        {
-            Entity entity = getEntityTable().find(ent2Id);
-            entTypes2 = new HashSet<>(entity.getTypes());
-            entPredicates2 = new HashSet<>(entity.getPredicates());
-        }
+        else if (this.weightedJaccard)   // Run weighted Jaccard Similarity
+            return JaccardSimilarity.similarity(typeIds(entity1), typeIds(entity2), getEntityTable().getTypeIdfs());
 
-        double jaccardScore = 0.0;
-
-        if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_TYPES && this.weightedJaccard)   // Run weighted Jaccard Similarity
-        {
-            Set<Pair<Type, Double>> weights = entTypes1.stream().map(t -> new Pair<>(t, t.getIdf())).collect(Collectors.toSet());
-            weights.addAll(entTypes2.stream().map(t -> new Pair<>(t, t.getIdf())).collect(Collectors.toSet()));
-            weights = weights.stream().filter(p -> p.getSecond() >= 0).collect(Collectors.toSet());
-            jaccardScore = JaccardSimilarity.make(entTypes1, entTypes2, weights).similarity();
-        }
-
-        else
-        {
-            if (this.entitySimilarityMeasure == EntitySimilarity.JACCARD_PREDICATES)
-                jaccardScore = JaccardSimilarity.make(entPredicates1, entPredicates2).similarity();
-
-            else
-                jaccardScore = JaccardSimilarity.make(entTypes1, entTypes2).similarity();
-        }
+        return JaccardSimilarity.similarity(typeIds(entity1), typeIds(entity2));
+    }
 
-        return jaccardScore;
+    private static int[] typeIds(Entity entity)
+    {
+        return entity != null && entity.getTypeIds() != null ? entity.getTypeIds() : NO_IDS;
     }
 
-    private double cosineSimilarity(String ent1, String ent2)
+    private static int[] predicateIds(Entity entity)
     {
-        Id id1 = getLinker().kgUriLookup(ent1), id2 = getLinker().kgUriLookup(ent2);
+        return entity != null && entity.getPredicateIds() != null ? entity.getPredicateIds() : NO_IDS;
+    }
 
+    private double cosineSimilarity(Id id1, Id id2)
+    {
         if (id1 == null || id2 == null)
             return 0.0;
 
-        List<Double> ent1Embeddings = getEmbeddingsIndex().find(id1),
-                ent2Embeddings = getEmbeddingsIndex().find(id2);
-
-        if (ent1Embeddings == null || ent2Embeddings == null)
+        if (!getEmbeddingsIndex().contains(id1) || !getEmbeddingsIndex().contains(id2))
             return 0.0;
 
-        double cosineSim = Utils.cosineSimilarity(ent1Embeddings, ent2Embeddings),
+        double cosineSim = getEmbeddingsIndex().cosineSimilarity(id1, id2),
                 simScore = 0.0;
 
         if (this.entitySimilarityMeasure == EntitySimilarity.EMBEDDINGS_NORM)
@@ -541,8 +758,7 @@ public class AnalogousSearch extends AbstractSearch
     {
         try
         {
-            Id id = getLinker().kgUriLookup(entity);
-            return id != null && getEmbeddingsIndex().contains(id);
+            return entityExists(getLinker().kgUriLookup(entity));
         }
 
         catch (IllegalArgumentException exc)
@@ -551,6 +767,11 @@ public class AnalogousSearch extends AbstractSearch
         }
     }
 
+    private boolean entityExists(Id id)
+    {
+        return id != null && getEmbeddingsIndex().contains(id);
+    }
+
     /**
      * Mapping of the matched columnIDs for each entity in each query tuple
      * Indexed by (tupleID, entityID) mapping to the columnID. If a columnID is -1 then that entity is not chosen for assignment
@@ -585,7 +806,7 @@ public class AnalogousSearch extends AbstractSearch
      * of the table columns to the query entities if any and the id of the query tuple; identify
      * if there exist pre-trained embeddings for each query entity and each matching row entity
      */
-    private boolean hasEmbeddingCoverage(Table.Row<String> queryRow, Map<Integer, String> columnToEntity,
+    private boolean hasEmbeddingCoverage(Table.Row<String> queryRow, Map<Integer, Id> columnToEntity,
                                          List<List<Integer>> tupleToColumnMappings, Integer queryRowIndex)
     {
         for (int i = 0; i < queryRow.size(); i++)   // Ensure that all query entities have an embedding
@@ -600,7 +821,7 @@ public class AnalogousSearch extends AbstractSearch
 
         // If `singleColumnPerQueryEntity` is true then ensure that all row entities that are
         // in the chosen columns (i.e. tupleToColumnMappings.get(queryTupleID) ) need to be mappable
-        List<String> relevantRowEntities = new ArrayList<>();
+        List<Id> relevantRowEntities = new ArrayList<>();
 
         if (this.singleColumnPerQueryEntity)
         {
@@ -614,7 +835,7 @@ public class AnalogousSearch extends AbstractSearch
         else    // All entities in `rowEntities` are relevant
             relevantRowEntities = new ArrayList<>(columnToEntity.values());
 
-        for (String rowEnt : relevantRowEntities)   // Loop over all relevant row entities and ensure there is a pre-trained embedding mapping for each one
+        for (Id rowEnt : relevantRowEntities)   // Loop over all relevant row entities and ensure there is a pre-trained embedding mapping for each one
         {
             if (!entityExists(rowEnt))
             {
@@ -642,23 +863,6 @@ public class AnalogousSearch extends AbstractSearch
      */
     private Double aggregateTableSimilarities(Table<String> query, Table<List<Double>> scores, Stats.StatBuilder statBuilder)
     {
-        // Compute the weighted vector (i.e. considers IDF scores of query entities) for each query tuple
-        Map<Integer, List<Double>> queryRowToWeightVector = new HashMap<>();
-
-        for (int queryRow = 0; queryRow < query.rowCount(); queryRow++)
-        {
-            int rowSize = query.getRow(queryRow).size();
-            List<Double> curRowIDFScores  = new ArrayList<>(rowSize);
-
-            for (int column = 0; column < rowSize; column++)
-            {
-                Id entityId = getLinker().kgUriLookup(query.getRow(queryRow).get(column));
-                curRowIDFScores.add(getEntityTable().find(entityId).getIDF());
-            }
-
-            queryRowToWeightVector.put(queryRow, Utils.normalizeVector(curRowIDFScores));
-        }
-
         // Compute a score for the current file with respect to each query tuple
         // The score takes into account the weight vector associated with each tuple
         Map<Integer, Double> tupleIDToScore = new HashMap<>();
@@ -676,18 +880,7 @@ public class AnalogousSearch extends AbstractSearch
                 else
                     curQueryRowVec = Utils.getAverageVector(scores.getRow(queryRow));
 
-                List<Double> identityVector = new ArrayList<>(Collections.nCopies(curQueryRowVec.size(), 1.0));
-                double score = 0.0;
-
-                if (this.measure == SimilarityMeasure.COSINE)   // Note: Cosine similarity doesn't make sense if we are operating in a vector similarity space
-                    score = Utils.cosineSimilarity(curQueryRowVec, identityVector);
-
-                else if (this.measure == SimilarityMeasure.EUCLIDEAN)   // Perform weighted euclidean distance between the `curTupleVec` and `identity
-                {
-                    score = Utils.euclideanDistance(curQueryRowVec, identityVector, queryRowToWeightVector.get(queryRow));
-                    score = 1 / (score + 1);    // Convert euclidean distance to similarity, high similarity (i.e. close to 1) means euclidean distance is small
-                }
-
+                double score = queryRowScore(queryRow, curQueryRowVec);
                 tupleIDToScore.put(queryRow, score);
                 queryRowVectors.add(curQueryRowVec);  // Update the tupleVectors array
             }
@@ -708,6 +901,127 @@ public class AnalogousSearch extends AbstractSearch
         return 0.0;
     }
 
+    /**
+     * Computes the weighted vector (i.e. considers IDF scores of query entities) for each query tuple
+     */
+    private List<List<Double>> queryRowWeights(Table<String> query)
+    {
+        List<List<Double>> weights = new ArrayList<>(query.rowCount());
+
+        for (int queryRow = 0; queryRow < query.rowCount(); queryRow++)
+        {
+            int rowSize = query.getRow(queryRow).size();
+            List<Double> curRowIDFScores  = new ArrayList<>(rowSize);
+
+            for (int column = 0; column < rowSize; column++)
+            {
+                Id entityId = getLinker().kgUriLookup(query.getRow(queryRow).get(column));
+                curRowIDFScores.add(getEntityTable().find(entityId).getIDF());
+            }
+
+            weights.add(Utils.normalizeVector(curRowIDFScores));
+        }
+
+        return weights;
+    }
+
+    /**
+     * Score of a table with respect to a single query tuple
+     * @param queryRow Query row index
+     * @param curQueryRowVec Aggregated similarity scores of the query row entities
+     * @return Query row score
+     */
+    private double queryRowScore(int queryRow, List<Double> curQueryRowVec)
+    {
+        List<Double> identityVector = new ArrayList<>(Collections.nCopies(curQueryRowVec.size(), 1.0));
+        double score = 0.0;
+
+        if (this.measure == SimilarityMeasure.COSINE)   // Note: Cosine similarity doesn't make sense if we are operating in a vector similarity space
+            score = Utils.cosineSimilarity(curQueryRowVec, identityVector);
+
+        else if (this.measure == SimilarityMeasure.EUCLIDEAN)   // Perform weighted euclidean distance between the `curTupleVec` and `identity
+        {
+            score = Utils.euclideanDistance(curQueryRowVec, identityVector, this.queryRowWeights.get(queryRow));
+            score = 1 / (score + 1);    // Convert euclidean distance to similarity, high similarity (i.e. close to 1) means euclidean distance is small
+        }
+
+        return score;
+    }
+
+    /**
+     * Upper bounds of table scores derived from which query entities each table contains
+     * Tables containing the same query entities share the same bound
+     * @param query Query table
+     * @param tables Tables to compute bounds for
+     * @return Map from table to upper bound of its score
+     */
+    private Map<String, Double> scoreUpperBounds(Table<String> query, Collection<String> tables)
+    {
+        int distinctEntities = this.queryEntityIds.length;
+        Map<String, BitSet> overlaps = new HashMap<>();
+
+        for (int i = 0; i < distinctEntities; i++)
+        {
+            for (String table : getEntityTableLink().find(this.queryEntityIds[i]))
+            {
+                overlaps.computeIfAbsent(table, t -> new BitSet(distinctEntities)).set(i);
+            }
+        }
+
+        BitSet noOverlap = new BitSet(distinctEntities);
+        Map<BitSet, Double> overlapBounds = new HashMap<>();
+        Map<String, Double> bounds = new HashMap<>(tables.size());
+
+        for (String table : tables)
+        {
+            BitSet overlap = overlaps.getOrDefault(table, noOverlap);
+            bounds.put(table, overlapBounds.computeIfAbsent(overlap, o -> scoreUpperBound(query, o)));
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Upper bound of a table score
+     * A query entity contained in the table can have similarity 1, and any other query entity can at most have the
+     * highest similarity possible between two distinct entities
+     * The bound is aggregated in the same way as exact scores, which is monotone in each similarity for the Euclidean measure
+     * @param query Query table
+     * @param overlap Indexes of distinct query entities contained in the table
+     * @return Upper bound of table score
+     */
+    private double scoreUpperBound(Table<String> query, BitSet overlap)
+    {
+        int rows = query.rowCount();
+
+        if (rows == 0)
+            return 0.0;
+
+        if (this.measure != SimilarityMeasure.EUCLIDEAN)
+            return Double.POSITIVE_INFINITY;
+
+        double maxDistinctSimilarity = this.adjustedSimilarity ? ADJUSTED_MAX_SIMILARITY : 1.0, sum = 0.0;
+
+        for (int queryRow = 0; queryRow < rows; queryRow++)
+        {
+            int rowSize = query.getRow(queryRow).size();
+            List<Double> boundVector = new ArrayList<>(rowSize);
+
+            for (int column = 0; column < rowSize; column++)
+            {
+                int index = this.queryEntityIndices[queryRow][column];
+                boundVector.add(index != -1 && overlap.get(index) ? 1.0 : maxDistinctSimilarity);
+            }
+
+            if (this.queryRowWeights.get(queryRow).stream().anyMatch(w -> w < 0))    // Negative weights break monotonicity
+                return Double.POSITIVE_INFINITY;
+
+            sum += Math.max(0.0, queryRowScore(queryRow, boundVector));
+        }
+
+        return sum / rows;
+    }
+
     private <E> boolean tableRowExists(Table.Row<E> row, Predicate<E> function)
     {
         for (int i = 0; i < row.size(); i++)
@@ -777,4 +1091,22 @@ public class AnalogousSearch extends AbstractSearch
     {
         return this.reduction;
     }
+
+    /**
+     * Number of tables skipped by upper-bound pruning in the last query
+     * @return Number of skipped tables
+     */
+    public long getSkippedTables()
+    {
+        return this.skippedTables;
+    }
+
+    /**
+     * Whether the deadline of the last query passed before all tables were searched
+     * @return True if the last query timed out
+     */
+    public boolean hasTimedOut()
+    {
+        return this.timedOut;
+    }
 }
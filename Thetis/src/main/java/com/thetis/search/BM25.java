@@ -19,8 +19,14 @@ import org.elasticsearch.client.RestClient;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * BM25 search of tables indexed in Elasticsearch
+ * Each query entity is searched separately, and the scores of a table are summed over the query entities it matches
+ */
 public class BM25 extends AbstractSearch
 {
     private long elapsedNs = -1;
@@ -39,7 +45,7 @@ public class BM25 extends AbstractSearch
 
         try (RestClient restClient = RestClient.builder(new HttpHost("localhost", 9200)).build())
         {
-            List<Pair<String, Double>> results = new ArrayList<>();
+            Map<String, Double> tableScores = new HashMap<>();
             ElasticsearchTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
             ElasticsearchClient client = new ElasticsearchClient(transport);
 
@@ -60,13 +66,13 @@ public class BM25 extends AbstractSearch
 
                     for (Hit<JsonData> hit : search.hits().hits())
                     {
-                        String table = hit.id();
-                        double score = hit.score();
-                        results.add(new Pair<>(table, score));
+                        tableScores.merge(hit.id(), hit.score(), Double::sum);
                     }
                 }
             }
 
+            List<Pair<String, Double>> results = new ArrayList<>(tableScores.size());
+            tableScores.forEach((table, score) -> results.add(new Pair<>(table, score)));
             this.elapsedNs = System.nanoTime() - start;
             return new Result(results.size(), results);
         }
@@ -6,7 +6,6 @@ import com.thetis.store.EntityTable;
 import com.thetis.store.EntityTableLink;
 import com.thetis.connector.Neo4jEndpoint;
 import com.thetis.structures.Id;
-import com.thetis.structures.Pair;
 import com.thetis.structures.table.Table;
 import com.thetis.system.Logger;
 import com.thetis.utilities.Ppr;
@@ -81,9 +80,10 @@ public class PPRSearch extends AbstractSearch
         this.elapsedTime = (System.nanoTime() - startTime) / 1e9;
         Logger.logNewLine(Logger.Level.INFO, "\n\nFinished running PPR over the given Query Tuple(s)");
         Logger.logNewLine(Logger.Level.INFO, "Elapsed time: " + this.elapsedTime + " seconds\n");
-        tableScores = sortByValue(tableScores);
+        TopKCollector topK = new TopKCollector(this.topK);
+        tableScores.forEach(topK::offer);
 
-        return new Result(this.topK, toScorePairs(tableScores));
+        return topK.toResult();
     }
 
     private Map<String, Double> getIDFMapping()
@@ -101,37 +101,6 @@ public class PPRSearch extends AbstractSearch
         return entityToIDF;
     }
 
-    private static Map<String, Double> sortByValue(Map<String, Double> hm)
-    {
-        Map<String, Double> temp = new LinkedHashMap<>();
-        List<Map.Entry<String, Double> > list = new LinkedList<Map.Entry<String, Double> >(hm.entrySet());
-        Collections.sort(list, new Comparator<Map.Entry<String, Double> >() {
-            public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2) {
-                int i = (o1.getValue()).compareTo(o2.getValue());
-                if(i != 0) return -i;
-                return i;
-            }
-        });
-
-        for (Map.Entry<String, Double> aa : list) {
-            temp.put(aa.getKey(), aa.getValue());
-        }
-
-        return temp;
-    }
-
-    private static List<Pair<String, Double>> toScorePairs(Map<String, Double> scores)
-    {
-        List<Pair<String, Double>> scorePairs = new ArrayList<>(scores.size());
-
-        for (Map.Entry<String, Double> entry : scores.entrySet())
-        {
-            scorePairs.add(new Pair<>(entry.getKey(), entry.getValue()));
-        }
-
-        return scorePairs;
-    }
-
     @Override
     protected long abstractElapsedNanoSeconds()
     {
@@ -8,13 +8,16 @@ import com.thetis.store.lsh.SetLSHIndex;
 import com.thetis.store.lsh.VectorLSHIndex;
 import com.thetis.structures.Id;
 import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
 import com.thetis.structures.table.DynamicTable;
 import com.thetis.structures.table.Table;
+import com.thetis.utilities.Utils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Searches corpus using specified LSH index
+ * Searches corpus using specified LSH index, BM25, or the entity-table inverted index
  * This class is used for pre-filtering the search space
  */
 public class Prefilter extends AbstractSearch
@@ -23,6 +26,8 @@ public class Prefilter extends AbstractSearch
     private SetLSHIndex setLSH;
     private VectorLSHIndex vectorsLSH;
     private BM25 bm25;
+    private Map<String, Set<Id>> rareTypeEntities = null;   // Entities of each rare type, keyed by type URI
+    private final Map<String, Set<String>> rareTypeTables = new ConcurrentHashMap<>();
     private static final int SIZE_THRESHOLD = 8;
     private static final int SPLITS_SIZE = 3;
     private static final int MIN_EXISTS_IN = 2;
@@ -59,11 +64,56 @@ public class Prefilter extends AbstractSearch
         this.bm25 = bm25;
     }
 
+    /**
+     * Candidate generation from the entity-table inverted index, which requires neither an LSH index nor a KG endpoint
+     * Candidates are all tables sharing at least one entity or one rare entity type with the query
+     * @param maxTypeFrequency A type is rare when it is assigned to at most this fraction of entities. When 0, only shared entities are used.
+     */
+    public Prefilter(EntityLinking linker, EntityTable entityTable, EntityTableLink entityTableLink,
+                     EmbeddingsIndex<Id> embeddingsIndex, double maxTypeFrequency)
+    {
+        this(linker, entityTable, entityTableLink, embeddingsIndex);
+        this.vectorsLSH = null;
+        this.setLSH = null;
+        this.bm25 = null;
+        this.rareTypeEntities = rareTypes(entityTable, maxTypeFrequency);
+    }
+
+    /**
+     * Type IDFs are log2 of the number of entities over the type frequency, so a type is rare when its IDF is at least log2(1 / maxTypeFrequency)
+     */
+    private static Map<String, Set<Id>> rareTypes(EntityTable entityTable, double maxTypeFrequency)
+    {
+        Map<String, Set<Id>> rareTypeEntities = new HashMap<>();
+
+        if (maxTypeFrequency <= 0)
+        {
+            return rareTypeEntities;
+        }
+
+        double minIdf = Utils.log2(1 / maxTypeFrequency);
+        entityTable.forEachTypeOccurrence((entityId, type, idf) -> {
+            if (idf >= minIdf)
+            {
+                rareTypeEntities.computeIfAbsent(type, t -> new HashSet<>()).add(Id.copy(entityId));
+            }
+        });
+
+        return rareTypeEntities;
+    }
+
     @Override
     protected Result abstractSearch(Table<String> query)
     {
         long start = System.nanoTime();
-        List<Pair<String, Double>> candidates = new ArrayList<>();
+
+        if (this.rareTypeEntities != null)
+        {
+            Result result = searchEntityTableLink(query);
+            this.elapsed = System.nanoTime() - start;
+            return result;
+        }
+
         List<Table<String>> subQueries = List.of(query);
         Map<String, Integer> tableCounter = new HashMap<>();
         boolean isQuerySplit = false;
@@ -80,6 +130,8 @@ public class Prefilter extends AbstractSearch
             subCandidates.forEach(t -> tableCounter.put(t, tableCounter.containsKey(t) ? tableCounter.get(t) + 1 : 1));
         }
 
+        List<Pair<String, Double>> candidates = new ArrayList<>(tableCounter.size());
+
         for (Map.Entry<String, Integer> entry : tableCounter.entrySet())
         {
             if (isQuerySplit && entry.getValue() >= MIN_EXISTS_IN)
@@ -134,6 +186,61 @@ public class Prefilter extends AbstractSearch
         return candidates;
     }
 
+    /**
+     * The query is not split, as every table overlapping with any query entity is a candidate
+     */
+    private Result searchEntityTableLink(Table<String> query)
+    {
+        Set<String> candidates = new HashSet<>();
+        Set<String> queryTypes = new HashSet<>();
+        int rows = query.rowCount();
+
+        for (int row = 0; row < rows; row++)
+        {
+            for (String uri : query.getRow(row))
+            {
+                Id id = getLinker().kgUriLookup(uri);
+
+                if (id == null)
+                {
+                    continue;
+                }
+
+                candidates.addAll(getEntityTableLink().find(id));
+                Entity entity = getEntityTable().find(id);
+
+                if (entity != null)
+                {
+                    entity.getTypes().forEach(t -> queryTypes.add(t.getType()));
+                }
+            }
+        }
+
+        for (String type : queryTypes)
+        {
+            if (this.rareTypeEntities.containsKey(type))
+            {
+                candidates.addAll(this.rareTypeTables.computeIfAbsent(type, this::typeTables));
+            }
+        }
+
+        List<Pair<String, Double>> tables = new ArrayList<>(candidates.size());
+        candidates.forEach(t -> tables.add(new Pair<>(t, -1.0)));
+        return new Result(tables.size(), tables);
+    }
+
+    private Set<String> typeTables(String type)
+    {
+        Set<String> tables = new HashSet<>();
+
+        for (Id id : this.rareTypeEntities.get(type))
+        {
+            tables.addAll(getEntityTableLink().find(id));
+        }
+
+        return tables;
+    }
+
     private static List<Table<String>> split(Table<String> table, int splitSize)
     {
         List<Table<String>> subTables = new ArrayList<>();
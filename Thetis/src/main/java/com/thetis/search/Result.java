@@ -2,22 +2,22 @@ package com.thetis.search;
 
 import com.thetis.structures.Pair;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  * Container of top-K search result in sorted descending order
+ * Only the top-K entries are kept, and ties in score are ordered by table name
  */
 public class Result
 {
-    private int k, size;
+    private int k;
     private List<Pair<String, Double>> tableScores;
 
     public Result(int k, List<Pair<String, Double>> tableScores)
     {
-        this.k = k;
-        this.size = Math.min(k, tableScores.size());
-        this.tableScores = tableScores;
+        this(collect(k, tableScores));
     }
 
     public Result(int k, Pair<String, Double> ... tableScores)
@@ -25,6 +25,19 @@ public class Result
         this(k, List.of(tableScores));
     }
 
+    public Result(TopKCollector collector)
+    {
+        this.k = collector.getK();
+        this.tableScores = Collections.unmodifiableList(collector.ranked());
+    }
+
+    private static TopKCollector collect(int k, List<Pair<String, Double>> tableScores)
+    {
+        TopKCollector collector = new TopKCollector(k);
+        tableScores.forEach(p -> collector.offer(p.getFirst(), p.getSecond()));
+        return collector;
+    }
+
     public int getK()
     {
         return this.k;
@@ -32,21 +45,11 @@ public class Result
 
     public int getSize()
     {
-        return this.size;
+        return this.tableScores.size();
     }
 
     public Iterator<Pair<String, Double>> getResults()
     {
-        this.tableScores.sort((e1, e2) -> {
-            if (e1.getSecond().equals(e2.getSecond()))
-                return 0;
-
-            return e1.getSecond() > e2.getSecond() ? -1 : 1;
-        });
-
-        if (this.tableScores.size() < this.k + 1)
-            return this.tableScores.iterator();
-
-        return this.tableScores.subList(0, this.k).iterator();
+        return this.tableScores.iterator();
     }
 }
@@ -0,0 +1,172 @@
+package com.thetis.search;
+
+import java.util.Arrays;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Concurrent cache of similarity scores between query entities and table entities
+ * Keys are pairs of query entity index and entity ID packed into a long, and scores are stored as primitive doubles
+ * The cache is split into segments, each an open-addressing hash table guarded by its own lock
+ */
+public class SimilarityCache
+{
+    private static final int SEGMENTS = 64, INITIAL_CAPACITY = 64;
+    private static final long EMPTY = -1;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private static class Segment
+    {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size = 0;
+
+        Segment()
+        {
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        private void reset()
+        {
+            this.keys = new long[INITIAL_CAPACITY];
+            this.values = new double[INITIAL_CAPACITY];
+            this.size = 0;
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        private int slot(long key, int hash)
+        {
+            int mask = this.keys.length - 1, slot = hash & mask;
+
+            while (this.keys[slot] != EMPTY && this.keys[slot] != key)
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        private void grow()
+        {
+            long[] oldKeys = this.keys;
+            double[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new double[oldValues.length * 2];
+            Arrays.fill(this.keys, EMPTY);
+
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != EMPTY)
+                {
+                    int slot = slot(oldKeys[i], hash(oldKeys[i]));
+                    this.keys[slot] = oldKeys[i];
+                    this.values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    public SimilarityCache()
+    {
+        for (int i = 0; i < SEGMENTS; i++)
+        {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    private static long key(int queryEntityIndex, int entityId)
+    {
+        if (queryEntityIndex < 0 || entityId < 0)
+        {
+            throw new IllegalArgumentException("Query entity index and entity ID must be non-negative");
+        }
+
+        return ((long) queryEntityIndex << 32) | entityId;
+    }
+
+    private static int hash(long key)
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private Segment segment(int hash)
+    {
+        return this.segments[(hash >>> 26) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Returns cached similarity score or computes and caches it if the pair has not been seen before
+     * The score is computed while holding the lock of the pair's segment, so each pair is computed exactly once
+     * @param queryEntityIndex Index of query entity
+     * @param entityId ID of table entity
+     * @param similarity Computes similarity score of the pair
+     * @return Similarity score of the pair
+     */
+    public double get(int queryEntityIndex, int entityId, DoubleSupplier similarity)
+    {
+        long key = key(queryEntityIndex, entityId);
+        int hash = hash(key);
+        Segment segment = segment(hash);
+
+        synchronized (segment)
+        {
+            int slot = segment.slot(key, hash);
+
+            if (segment.keys[slot] == key)
+            {
+                return segment.values[slot];
+            }
+
+            double score = similarity.getAsDouble();
+            segment.keys[slot] = key;
+            segment.values[slot] = score;
+
+            if (++segment.size * 2 > segment.keys.length)
+            {
+                segment.grow();
+            }
+
+            return score;
+        }
+    }
+
+    public boolean contains(int queryEntityIndex, int entityId)
+    {
+        long key = key(queryEntityIndex, entityId);
+        int hash = hash(key);
+        Segment segment = segment(hash);
+
+        synchronized (segment)
+        {
+            return segment.keys[segment.slot(key, hash)] == key;
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+
+        for (Segment segment : this.segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size;
+            }
+        }
+
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : this.segments)
+        {
+            synchronized (segment)
+            {
+                segment.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.thetis.search;
+
+import com.thetis.structures.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Thread-safe collector of the K highest scoring tables
+ * Tables are kept in a bounded min-heap, so memory and ordering cost scale with K and not with the number of scored tables
+ * Tables with equal scores are ranked by table name in ascending order
+ */
+public class TopKCollector
+{
+    /**
+     * Ranking order of search results: descending score, then ascending table name
+     */
+    public static final Comparator<Pair<String, Double>> RANKING = (e1, e2) -> {
+        int comparison = Double.compare(e2.getSecond(), e1.getSecond());
+        return comparison != 0 ? comparison : e1.getFirst().compareTo(e2.getFirst());
+    };
+
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private final int k;
+    private final PriorityQueue<Pair<String, Double>> heap;     // Lowest ranked table at the head
+    private volatile double threshold = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param k Maximum number of tables to keep
+     */
+    public TopKCollector(int k)
+    {
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, MAX_INITIAL_CAPACITY)), RANKING.reversed());
+    }
+
+    public int getK()
+    {
+        return this.k;
+    }
+
+    /**
+     * Offers a scored table to the collector
+     * Scores below the current K-th score are rejected without locking
+     * @param table Table name
+     * @param score Table score
+     * @return True if the table is currently among the top-K tables
+     */
+    public boolean offer(String table, double score)
+    {
+        if (this.k <= 0 || score < this.threshold)
+        {
+            return false;
+        }
+
+        Pair<String, Double> entry = new Pair<>(table, score);
+
+        synchronized (this.heap)
+        {
+            if (this.heap.size() < this.k)
+            {
+                this.heap.add(entry);
+            }
+
+            else if (RANKING.compare(entry, this.heap.peek()) < 0)
+            {
+                this.heap.poll();
+                this.heap.add(entry);
+            }
+
+            else
+            {
+                return false;
+            }
+
+            if (this.heap.size() == this.k)
+            {
+                this.threshold = this.heap.peek().getSecond();
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Current lowest score among the top-K tables
+     * @return Lowest top-K score or negative infinity if fewer than K tables have been collected
+     */
+    public double threshold()
+    {
+        return this.threshold;
+    }
+
+    public int size()
+    {
+        synchronized (this.heap)
+        {
+            return this.heap.size();
+        }
+    }
+
+    /**
+     * Collected tables in ranking order
+     * @return List of at most K table scores, highest score first
+     */
+    public List<Pair<String, Double>> ranked()
+    {
+        List<Pair<String, Double>> ranked;
+
+        synchronized (this.heap)
+        {
+            ranked = new ArrayList<>(this.heap);
+        }
+
+        ranked.sort(RANKING);
+        return ranked;
+    }
+
+    public Result toResult()
+    {
+        return new Result(this);
+    }
+}
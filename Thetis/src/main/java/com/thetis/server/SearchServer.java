@@ -0,0 +1,335 @@
+package com.thetis.server;
+
+import com.google.common.reflect.TypeToken;
+import com.google.gson.*;
+import com.thetis.search.Result;
+import com.thetis.search.TableSearch;
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTableLink;
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import com.thetis.system.Logger;
+import com.thetis.tables.JsonTable;
+import com.thetis.utilities.Utils;
+import spark.ModelAndView;
+import spark.Request;
+import spark.Response;
+import spark.Service;
+import spark.template.mustache.MustacheTemplateEngine;
+
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+
+/**
+ * HTTP server searching tables with indexes that are loaded once and kept in memory
+ * Queries are searched in-process, either through the JSON API or the web interface
+ *
+ * JSON API:
+ *   POST /api/search with body <code>{"queries": [["uri1", "uri2"], ...], "k": 10}</code>, where "k" is optional
+ *   GET /api/status
+ */
+public class SearchServer implements AutoCloseable
+{
+    private static final int WEB_RESULTS = 20;
+    private static final Type QUERY_TYPE = new TypeToken<List<List<String>>>(){}.getType();
+
+    private final EntityLinking linker;
+    private final EntityTableLink tableLink;
+    private final IntFunction<TableSearch> searchFactory;
+    private final int defaultK;
+    private final Path tableDir;
+    private final Gson gson = new Gson();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private Service http = null;
+
+    /**
+     * Thrown when a query cannot be searched
+     * The message and the unknown query entities are returned to the client
+     */
+    public static class InvalidQueryException extends RuntimeException
+    {
+        private final List<String> unknownEntities;
+
+        public InvalidQueryException(String message, List<String> unknownEntities)
+        {
+            super(message);
+            this.unknownEntities = unknownEntities;
+        }
+
+        public List<String> getUnknownEntities()
+        {
+            return this.unknownEntities;
+        }
+    }
+
+    /**
+     * @param linker Entity linker of loaded indexes
+     * @param tableLink Entity to table index of loaded indexes
+     * @param searchFactory Creates a table search returning the top-K tables for a given K. It is called once per query.
+     * @param defaultK Number of tables returned when the request does not specify it
+     * @param tableDir Directory of JSON tables used to show page titles in the web interface, or null
+     */
+    public SearchServer(EntityLinking linker, EntityTableLink tableLink, IntFunction<TableSearch> searchFactory, int defaultK, Path tableDir)
+    {
+        this.linker = linker;
+        this.tableLink = tableLink;
+        this.searchFactory = searchFactory;
+        this.defaultK = defaultK;
+        this.tableDir = tableDir;
+    }
+
+    /**
+     * Starts serving requests and waits until the server is ready
+     * @param port Port to listen on, or 0 for any free port
+     */
+    public synchronized void start(int port)
+    {
+        if (this.http != null)
+        {
+            throw new IllegalStateException("Server has already been started");
+        }
+
+        this.http = Service.ignite().port(port);
+        this.http.staticFiles.location("/public");
+        this.http.get("/", (req, res) -> render(new HashMap<>(Map.of("queryString", "")), "index.html"));
+        this.http.post("/query_submit", this::webSearch);
+        this.http.get("/api/status", this::status);
+        this.http.post("/api/search", this::apiSearch);
+        this.http.exception(InvalidQueryException.class, (e, req, res) -> {
+            JsonObject error = new JsonObject();
+            error.addProperty("error", e.getMessage());
+            error.add("invalidEntities", this.gson.toJsonTree(e.getUnknownEntities()));
+            res.status(400);
+            res.type("application/json");
+            res.body(error.toString());
+        });
+        this.http.awaitInitialization();
+        Logger.logNewLine(Logger.Level.INFO, "Search server listening on port " + this.http.port());
+    }
+
+    public int port()
+    {
+        return this.http.port();
+    }
+
+    /**
+     * Blocks until the server is closed
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    public void join() throws InterruptedException
+    {
+        this.stopped.await();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (this.http != null)
+        {
+            this.http.stop();
+            this.http.awaitStop();
+            this.http = null;
+        }
+
+        this.stopped.countDown();
+    }
+
+    /**
+     * Query entities that are not linked to any table in the index
+     * @param query Query of KG entity URIs
+     * @return Unknown entities in order of appearance
+     */
+    public List<String> unknownEntities(Table<String> query)
+    {
+        List<String> unknown = new ArrayList<>();
+        String prefix = this.linker.getKgEntityPrefix();
+
+        for (int row = 0; row < query.rowCount(); row++)
+        {
+            for (String entity : query.getRow(row))
+            {
+                Id id = entity != null && entity.startsWith(prefix) ? this.linker.kgUriLookup(entity) : null;
+
+                if (id == null || !this.tableLink.contains(id))
+                    unknown.add(entity);
+            }
+        }
+
+        return unknown;
+    }
+
+    /**
+     * Searches tables for a query using the resident indexes
+     * @param query Query of KG entity URIs
+     * @param k Number of tables to return
+     * @return Top-K tables
+     * @throws InvalidQueryException If the query is empty or contains entities that are not in the index
+     */
+    public Result search(Table<String> query, int k)
+    {
+        if (query.rowCount() == 0)
+        {
+            throw new InvalidQueryException("Query has no rows", List.of());
+        }
+
+        else if (k <= 0)
+        {
+            throw new InvalidQueryException("K must be positive", List.of());
+        }
+
+        List<String> unknown = unknownEntities(query);
+
+        if (!unknown.isEmpty())
+        {
+            throw new InvalidQueryException("Query entities are not in the index", unknown);
+        }
+
+        return this.searchFactory.apply(k).search(query);
+    }
+
+    private Table<String> parseQuery(JsonElement queries)
+    {
+        try
+        {
+            List<List<String>> rows = queries != null && queries.isJsonArray() ? this.gson.fromJson(queries, QUERY_TYPE) : null;
+
+            if (rows == null)
+            {
+                throw new InvalidQueryException("Missing array of query tuples 'queries'", List.of());
+            }
+
+            return new DynamicTable<>(rows);
+        }
+
+        catch (JsonParseException e)
+        {
+            throw new InvalidQueryException("Query tuples must be arrays of entity URIs", List.of());
+        }
+    }
+
+    private JsonObject parseBody(String body)
+    {
+        try
+        {
+            JsonElement element = JsonParser.parseString(body);
+
+            if (!element.isJsonObject())
+            {
+                throw new InvalidQueryException("Request body must be a JSON object", List.of());
+            }
+
+            return element.getAsJsonObject();
+        }
+
+        catch (JsonParseException e)
+        {
+            throw new InvalidQueryException("Request body is not valid JSON", List.of());
+        }
+    }
+
+    private String apiSearch(Request req, Response res)
+    {
+        JsonObject body = parseBody(req.body());
+        Table<String> query = parseQuery(body.get("queries"));
+        int k = this.defaultK;
+
+        try
+        {
+            if (body.has("k"))
+                k = body.get("k").getAsInt();
+        }
+
+        catch (ClassCastException | IllegalStateException | UnsupportedOperationException | NumberFormatException e)
+        {
+            throw new InvalidQueryException("K must be an integer", List.of());
+        }
+
+        long start = System.nanoTime();
+        Result result = search(query, k);
+        JsonObject response = new JsonObject();
+        JsonArray scores = new JsonArray();
+        Iterator<Pair<String, Double>> results = result.getResults();
+
+        while (results.hasNext())
+        {
+            Pair<String, Double> next = results.next();
+            JsonObject score = new JsonObject();
+            score.addProperty("tableID", next.getFirst());
+            score.addProperty("score", next.getSecond());
+            scores.add(score);
+        }
+
+        response.addProperty("k", k);
+        response.addProperty("runtime", System.nanoTime() - start);
+        response.add("scores", scores);
+        res.type("application/json");
+
+        return response.toString();
+    }
+
+    private String status(Request req, Response res)
+    {
+        JsonObject status = new JsonObject();
+        status.addProperty("entities", this.tableLink.size());
+        status.addProperty("defaultK", this.defaultK);
+        res.type("application/json");
+
+        return status.toString();
+    }
+
+    /**
+     * The web interface submits query tuples as comma-separated JSON arrays of entity URIs
+     */
+    private String webSearch(Request req, Response res)
+    {
+        String rawQueryString = req.queryParams("query");
+        Map<String, Object> model = new HashMap<>();
+        model.put("queryString", rawQueryString != null ? rawQueryString : "");
+
+        try
+        {
+            Table<String> query = parseQuery(parseBody("{\"queries\": [" + rawQueryString + "]}").get("queries"));
+            Iterator<Pair<String, Double>> results = search(query, WEB_RESULTS).getResults();
+            List<Map<String, Object>> tableToScore = new ArrayList<>();
+
+            while (results.hasNext())
+            {
+                Pair<String, Double> next = results.next();
+                Map<String, Object> score = new HashMap<>();
+                score.put("tableID", next.getFirst());
+                score.put("score", next.getSecond());
+
+                JsonTable table = this.tableDir != null ? Utils.getTableFromPath(this.tableDir.resolve(next.getFirst())) : null;
+
+                if (table != null && table.pgTitle != null)
+                {
+                    score.put("pgTitle", table.pgTitle);
+                    score.put("tableURL", "https://en.wikipedia.org/wiki/" + table.pgTitle.replace(' ', '_'));
+                }
+
+                tableToScore.add(score);
+            }
+
+            model.put("tableToScore", tableToScore);
+            model.put("show_table", true);
+        }
+
+        catch (InvalidQueryException e)
+        {
+            model.put("invalidEntities", true);
+            model.put("invalidEntitiesList", e.getUnknownEntities().isEmpty() ? List.of(e.getMessage()) : e.getUnknownEntities());
+        }
+
+        return render(model, "index.html");
+    }
+
+    private static String render(Map<String, Object> model, String templatePath)
+    {
+        return new MustacheTemplateEngine().render(new ModelAndView(model, templatePath));
+    }
+}
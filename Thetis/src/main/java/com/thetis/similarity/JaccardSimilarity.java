@@ -40,6 +40,76 @@ public class JaccardSimilarity<E extends Comparable<E>> implements Similarity
         return new JaccardSimilarity<E>(s1, s2, weights);
     }
 
+    /**
+     * Jaccard similarity between two sorted sets of distinct integer IDs, computed by merging
+     * @return Size of intersection over size of union, or 0 if both sets are empty
+     */
+    public static double similarity(int[] s1, int[] s2)
+    {
+        int i = 0, j = 0, intersection = 0;
+
+        while (i < s1.length && j < s2.length)
+        {
+            if (s1[i] == s2[j])
+            {
+                intersection++;
+                i++;
+                j++;
+            }
+
+            else if (s1[i] < s2[j])
+                i++;
+
+            else
+                j++;
+        }
+
+        int union = s1.length + s2.length - intersection;
+        return union == 0 ? 0 : (double) intersection / union;
+    }
+
+    /**
+     * Weighted Jaccard similarity between two sorted sets of distinct integer IDs, computed by merging
+     * @param weights Weights indexed by ID, where negative weights are ignored
+     * @return Weight sum of intersection over weight sum of union, or 0 if the weight sum of the union is 0
+     */
+    public static double similarity(int[] s1, int[] s2, double[] weights)
+    {
+        int i = 0, j = 0;
+        double numeratorSum = 0.0, denominatorSum = 0.0;
+
+        while (i < s1.length || j < s2.length)
+        {
+            int element;
+            boolean shared = false;
+
+            if (j == s2.length || (i < s1.length && s1[i] < s2[j]))
+                element = s1[i++];
+
+            else if (i == s1.length || s2[j] < s1[i])
+                element = s2[j++];
+
+            else
+            {
+                element = s1[i++];
+                j++;
+                shared = true;
+            }
+
+            double weight = weights[element];
+
+            if (weight >= 0)
+            {
+                denominatorSum += weight;
+
+                if (shared)
+                    numeratorSum += weight;
+            }
+        }
+
+        return denominatorSum != 0 ? numeratorSum / denominatorSum : 0.0;
+    }
+
     @Override
     public double similarity()
     {
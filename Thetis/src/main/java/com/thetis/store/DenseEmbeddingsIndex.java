@@ -0,0 +1,399 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embeddings index storing all vectors in a single row-major float matrix
+ * Vectors are L2-normalized when inserted, so <code>find</code> returns unit vectors and cosine similarity is a dot product
+ * Rows are looked up by the integer value of entity IDs
+ * The matrix is a single array, so the number of vectors is limited to the maximum array size divided by the dimension
+ * Clusters are stored as in <code>EmbeddingsIndex</code>
+ */
+public class DenseEmbeddingsIndex<C> extends EmbeddingsIndex<C>
+{
+    private static final int INITIAL_ROWS = 1024;
+    static final int MAX_MATRIX_LENGTH = Integer.MAX_VALUE - 8;     // Largest array size supported by common JVMs
+    static final int NO_ROW = -1;
+
+    int dimension = -1, rows = 0;
+    float[] matrix = new float[0];
+    int[] idToRow = new int[0], rowToId = new int[0];
+    transient ReadWriteLock lock = new ReentrantReadWriteLock();
+    transient int maxMatrixLength = MAX_MATRIX_LENGTH;
+
+    /**
+     * Read-only view of a single vector
+     * Values are boxed on access
+     */
+    static class FloatVector extends AbstractList<Double> implements RandomAccess
+    {
+        private final float[] values;
+
+        FloatVector(float[] values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public Double get(int index)
+        {
+            return (double) this.values[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return this.values.length;
+        }
+    }
+
+    /**
+     * Trims unused matrix capacity before serializing
+     */
+    private void writeObject(ObjectOutputStream stream) throws IOException
+    {
+        this.lock.writeLock().lock();
+
+        try
+        {
+            this.matrix = Arrays.copyOf(this.matrix, this.rows * Math.max(this.dimension, 0));
+            this.rowToId = Arrays.copyOf(this.rowToId, this.rows);
+            stream.defaultWriteObject();
+        }
+
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException
+    {
+        stream.defaultReadObject();
+        this.lock = new ReentrantReadWriteLock();
+        this.maxMatrixLength = MAX_MATRIX_LENGTH;
+    }
+
+    private int row(Id key)
+    {
+        int id = key.getId();
+        return id >= 0 && id < this.idToRow.length ? this.idToRow[id] : NO_ROW;
+    }
+
+    private void ensureCapacity(int id)
+    {
+        if (id >= this.idToRow.length)
+        {
+            int oldLength = this.idToRow.length;
+            this.idToRow = Arrays.copyOf(this.idToRow, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(this.idToRow, oldLength, this.idToRow.length, NO_ROW);
+        }
+
+        if (this.rows == this.rowToId.length)
+        {
+            int maxRows = this.dimension > 0 ? this.maxMatrixLength / this.dimension : this.maxMatrixLength;
+
+            if (this.rows >= maxRows)
+            {
+                throw new IllegalStateException("Embeddings index cannot hold more than " + maxRows + " vectors of dimension " + this.dimension);
+            }
+
+            int newRows = (int) Math.min(Math.max(INITIAL_ROWS, this.rows * 2L), maxRows);
+            this.rowToId = Arrays.copyOf(this.rowToId, newRows);
+            this.matrix = Arrays.copyOf(this.matrix, Math.multiplyExact(newRows, this.dimension));
+        }
+    }
+
+    /**
+     * Inserts L2-normalized copy of vector
+     * @param key Entity ID
+     * @param value Embedding vector, which must have the same dimension as previously inserted vectors
+     */
+    @Override
+    public void insert(Id key, List<Double> value)
+    {
+        if (key.getId() < 0)
+        {
+            throw new IllegalArgumentException("Entity ID must be non-negative");
+        }
+
+        this.lock.writeLock().lock();
+
+        try
+        {
+            if (this.dimension == -1)
+            {
+                this.dimension = value.size();
+            }
+
+            else if (value.size() != this.dimension)
+            {
+                throw new IllegalArgumentException("Embedding dimension " + value.size() + " does not match index dimension " + this.dimension);
+            }
+
+            int row = row(key);
+
+            if (row == NO_ROW)
+            {
+                ensureCapacity(key.getId());
+                row = this.rows++;
+                this.idToRow[key.getId()] = row;
+                this.rowToId[row] = key.getId();
+            }
+
+            double norm = 0;
+
+            for (Double element : value)
+            {
+                norm += element * element;
+            }
+
+            norm = norm > 0 ? Math.sqrt(norm) : 1;
+
+            int offset = row * this.dimension;
+
+            for (int i = 0; i < this.dimension; i++)
+            {
+                this.matrix[offset + i] = (float) (value.get(i) / norm);
+            }
+        }
+
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes vector by moving the last row into its place
+     * @param key Entity ID
+     * @return True if the vector was removed
+     */
+    @Override
+    public boolean remove(Id key)
+    {
+        this.lock.writeLock().lock();
+
+        try
+        {
+            int row = row(key);
+
+            if (row == NO_ROW)
+            {
+                return false;
+            }
+
+            int last = --this.rows;
+
+            if (row != last)
+            {
+                System.arraycopy(this.matrix, last * this.dimension, this.matrix, row * this.dimension, this.dimension);
+                this.rowToId[row] = this.rowToId[last];
+                this.idToRow[this.rowToId[row]] = row;
+            }
+
+            this.idToRow[key.getId()] = NO_ROW;
+            return true;
+        }
+
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the L2-normalized vector of an entity
+     * @param key Entity ID
+     * @return Copy of normalized vector or null if the entity has no embedding
+     */
+    @Override
+    public List<Double> find(Id key)
+    {
+        this.lock.readLock().lock();
+
+        try
+        {
+            int row = row(key);
+
+            if (row == NO_ROW)
+            {
+                return null;
+            }
+
+            int offset = row * this.dimension;
+            return new FloatVector(Arrays.copyOfRange(this.matrix, offset, offset + this.dimension));
+        }
+
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Id key)
+    {
+        this.lock.readLock().lock();
+
+        try
+        {
+            return row(key) != NO_ROW;
+        }
+
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        this.lock.readLock().lock();
+
+        try
+        {
+            return this.rows;
+        }
+
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        this.lock.writeLock().lock();
+
+        try
+        {
+            this.dimension = -1;
+            this.rows = 0;
+            this.matrix = new float[0];
+            this.idToRow = new int[0];
+            this.rowToId = new int[0];
+        }
+
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cosine similarity as dot product of the normalized vectors
+     * @param key1 First entity ID
+     * @param key2 Second entity ID
+     * @return Cosine similarity within [-1, 1] or 0 if either entity has no embedding
+     */
+    @Override
+    public double cosineSimilarity(Id key1, Id key2)
+    {
+        this.lock.readLock().lock();
+
+        try
+        {
+            int row1 = row(key1), row2 = row(key2);
+
+            if (row1 == NO_ROW || row2 == NO_ROW)
+            {
+                return 0.0;
+            }
+
+            int offset1 = row1 * this.dimension, offset2 = row2 * this.dimension;
+            double dot = 0;
+
+            for (int i = 0; i < this.dimension; i++)
+            {
+                dot += this.matrix[offset1 + i] * this.matrix[offset2 + i];
+            }
+
+            return Math.max(-1.0, Math.min(1.0, dot));
+        }
+
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Dimension of vectors in index
+     * @return Vector dimension or -1 if the index is empty
+     */
+    public int dimension()
+    {
+        return this.dimension;
+    }
+
+    /**
+     * Writes the vectors in binary as the row-to-ID mapping followed by the float matrix
+     * Clusters are not written
+     * @param output Output to write to
+     * @throws IOException
+     */
+    public void write(DataOutput output) throws IOException
+    {
+        this.lock.readLock().lock();
+
+        try
+        {
+            output.writeInt(this.dimension);
+            output.writeInt(this.rows);
+            IndexFile.writeInts(output, this.rowToId, this.rows);
+            IndexFile.writeFloats(output, this.matrix, this.rows * Math.max(this.dimension, 0));
+        }
+
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads index written by <code>write</code>
+     * @param input Input to read from
+     * @return Read embeddings index
+     * @throws IOException
+     */
+    public static <C> DenseEmbeddingsIndex<C> read(DataInput input) throws IOException
+    {
+        DenseEmbeddingsIndex<C> index = new DenseEmbeddingsIndex<>();
+        index.dimension = input.readInt();
+        index.rows = input.readInt();
+        index.rowToId = IndexFile.readInts(input, index.rows);
+        index.matrix = IndexFile.readFloats(input, Math.multiplyExact(index.rows, Math.max(index.dimension, 0)));
+
+        int maxId = -1;
+
+        for (int id : index.rowToId)
+        {
+            maxId = Math.max(maxId, id);
+        }
+
+        index.idToRow = new int[maxId + 1];
+        Arrays.fill(index.idToRow, NO_ROW);
+
+        for (int row = 0; row < index.rows; row++)
+        {
+            index.idToRow[index.rowToId[row]] = row;
+        }
+
+        return index;
+    }
+}
@@ -1,6 +1,7 @@
 package com.thetis.store;
 
 import com.thetis.structures.Id;
+import com.thetis.utilities.Utils;
 
 import java.io.Serializable;
 import java.util.HashMap;
@@ -49,6 +50,24 @@ public class EmbeddingsIndex<C> implements ClusteredIndex<C, Id, List<Double>>,
         this.embeddingsMap.clear();
     }
 
+    /**
+     * Cosine similarity between the embeddings of two entities
+     * @param key1 First entity ID
+     * @param key2 Second entity ID
+     * @return Cosine similarity within [-1, 1] or 0 if either entity has no embedding
+     */
+    public double cosineSimilarity(Id key1, Id key2)
+    {
+        List<Double> embeddings1 = find(key1), embeddings2 = find(key2);
+
+        if (embeddings1 == null || embeddings2 == null)
+        {
+            return 0.0;
+        }
+
+        return Utils.cosineSimilarity(embeddings1, embeddings2);
+    }
+
     @Override
     public void clusterInsert(C cluster, Id key, List<Double> value)
     {
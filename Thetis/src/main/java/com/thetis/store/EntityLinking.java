@@ -3,6 +3,9 @@ package com.thetis.store;
 import com.thetis.structures.Id;
 import com.thetis.structures.IdDictionary;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -159,4 +162,87 @@ public class EntityLinking implements Linker<String, String>, Serializable
     {
         return this.kgEntityPrefix;
     }
+
+    /**
+     * Writes the dictionaries and mappings in binary
+     * @param output Output to write to
+     * @throws IOException
+     */
+    public void write(DataOutput output) throws IOException
+    {
+        output.writeUTF(this.inputPrefix);
+        output.writeUTF(this.kgEntityPrefix);
+        writeDictionary(this.t1Ids, output);
+        writeDictionary(this.t2Ids, output);
+        writeMapping(this.inputToKGEntity, output);
+        writeMapping(this.kgEntityToInput, output);
+    }
+
+    /**
+     * Reads linker written by <code>write</code>
+     * @param input Input to read from
+     * @return Read linker
+     * @throws IOException
+     */
+    public static EntityLinking read(DataInput input) throws IOException
+    {
+        EntityLinking linker = new EntityLinking(input.readUTF(), input.readUTF());
+        linker.t1Ids = readDictionary(input);
+        linker.t2Ids = readDictionary(input);
+        linker.inputToKGEntity = readMapping(input);
+        linker.kgEntityToInput = readMapping(input);
+
+        return linker;
+    }
+
+    private static void writeDictionary(IdDictionary<String> dictionary, DataOutput output) throws IOException
+    {
+        Enumeration<String> keys = dictionary.keys();
+        output.writeInt(dictionary.size());
+
+        while (keys.hasMoreElements())
+        {
+            String key = keys.nextElement();
+            output.writeUTF(key);
+            output.writeInt(dictionary.get(key).getId());
+        }
+    }
+
+    private static IdDictionary<String> readDictionary(DataInput input) throws IOException
+    {
+        int size = input.readInt();
+        IdDictionary<String> dictionary = new IdDictionary<>(false, size);
+
+        for (int i = 0; i < size; i++)
+        {
+            String key = input.readUTF();
+            dictionary.put(key, Id.copy(input.readInt()));
+        }
+
+        return dictionary;
+    }
+
+    private static void writeMapping(Map<Id, Id> mapping, DataOutput output) throws IOException
+    {
+        output.writeInt(mapping.size());
+
+        for (Map.Entry<Id, Id> entry : mapping.entrySet())
+        {
+            output.writeInt(entry.getKey().getId());
+            output.writeInt(entry.getValue().getId());
+        }
+    }
+
+    private static Map<Id, Id> readMapping(DataInput input) throws IOException
+    {
+        int size = input.readInt();
+        Map<Id, Id> mapping = new HashMap<>(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            mapping.put(Id.copy(input.readInt()), Id.copy(input.readInt()));
+        }
+
+        return mapping;
+    }
 }
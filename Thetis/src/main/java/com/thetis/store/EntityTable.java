@@ -4,22 +4,108 @@ import com.thetis.structures.graph.Entity;
 import com.thetis.structures.Id;
 import com.thetis.structures.graph.Type;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
 /**
  * Indexing of entities containing types
+ * Types and predicates are interned into dense integer IDs on insertion, and the type IDFs are stored by type ID
  */
 public class EntityTable implements Index<Id, Entity>, Serializable
 {
-    private Map<Id, Entity> idx = new HashMap<>();
+    Map<Id, Entity> idx = new HashMap<>();
+    Map<String, Integer> typeIds = new HashMap<>(), predicateIds = new HashMap<>();
+    double[] typeIdfs = new double[0];
 
     @Override
     public void insert(Id key, Entity value)
     {
+        List<String> types = new ArrayList<>(value.getTypes().size());
+        value.getTypes().forEach(t -> types.add(t.getType()));
+
+        int[] entityTypeIds = intern(types, this.typeIds), entityPredicateIds = intern(value.getPredicates(), this.predicateIds);
+        value.setInternedIds(entityTypeIds, entityPredicateIds);
+        setTypeIdfs(value);
         this.idx.put(key, value);
     }
 
+    private static int[] intern(List<String> elements, Map<String, Integer> dictionary)
+    {
+        int[] ids = new int[elements.size()];
+        int count = 0;
+
+        for (String element : elements)
+        {
+            ids[count++] = dictionary.computeIfAbsent(element, e -> dictionary.size());
+        }
+
+        return sortedDistinct(ids);
+    }
+
+    static int[] sortedDistinct(int[] ids)
+    {
+        int count = ids.length;
+        Arrays.sort(ids);
+        int distinct = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (distinct == 0 || ids[distinct - 1] != ids[i])
+                ids[distinct++] = ids[i];
+        }
+
+        return distinct == count ? ids : Arrays.copyOf(ids, distinct);
+    }
+
+    private void setTypeIdfs(Entity entity)
+    {
+        if (this.typeIdfs.length < this.typeIds.size())
+        {
+            int oldLength = this.typeIdfs.length;
+            this.typeIdfs = Arrays.copyOf(this.typeIdfs, Math.max(this.typeIds.size(), oldLength * 2));
+            Arrays.fill(this.typeIdfs, oldLength, this.typeIdfs.length, -1);
+        }
+
+        for (Type type : entity.getTypes())
+        {
+            if (type.getIdf() >= 0)     // Types of query entities have no IDF and must not overwrite the IDF of the corpus
+            {
+                this.typeIdfs[this.typeIds.get(type.getType())] = type.getIdf();
+            }
+        }
+    }
+
+    /**
+     * Copies the IDFs of entity types into the array of IDFs by type ID
+     * This must be called after type IDFs of inserted entities have changed
+     */
+    public void updateTypeIdfs()
+    {
+        this.idx.values().forEach(this::setTypeIdfs);
+    }
+
+    /**
+     * The returned array is shared and must not be modified
+     * @return IDFs indexed by type ID, where -1 means the IDF is unknown
+     */
+    public double[] getTypeIdfs()
+    {
+        return this.typeIdfs;
+    }
+
+    public int typeCount()
+    {
+        return this.typeIds.size();
+    }
+
+    public int predicateCount()
+    {
+        return this.predicateIds.size();
+    }
+
     @Override
     public boolean remove(Id key)
     {
@@ -78,4 +164,154 @@ public class EntityTable implements Index<Id, Entity>, Serializable
     {
         return this.idx.keySet().iterator();
     }
+
+    /**
+     * Receiver of the types of entities
+     */
+    public interface TypeOccurrenceConsumer
+    {
+        void accept(int entityId, String type, double idf);
+    }
+
+    /**
+     * Passes every type of every entity to the consumer together with the entity ID and the type IDF
+     * This does not require the entities to be materialized
+     * @param consumer Receiver of the types of entities
+     */
+    public void forEachTypeOccurrence(TypeOccurrenceConsumer consumer)
+    {
+        this.idx.forEach((id, entity) -> {
+            for (Type type : entity.getTypes())
+            {
+                consumer.accept(id.getId(), type.getType(), type.getIdf());
+            }
+        });
+    }
+
+    /**
+     * Writes the type and predicate dictionaries, type IDFs, and entities in binary
+     * Types and predicates of entities are written by their interned IDs
+     * @param output Output to write to
+     * @throws IOException
+     */
+    public void write(DataOutput output) throws IOException
+    {
+        String[] types = names(this.typeIds), predicates = names(this.predicateIds);
+        writeNames(types, output);
+        writeNames(predicates, output);
+        output.writeInt(this.typeIdfs.length);
+
+        for (double idf : this.typeIdfs)
+        {
+            output.writeDouble(idf);
+        }
+
+        output.writeInt(this.idx.size());
+
+        for (Map.Entry<Id, Entity> entry : this.idx.entrySet())
+        {
+            Entity entity = entry.getValue();
+            output.writeInt(entry.getKey().getId());
+            output.writeUTF(entity.getUri());
+            output.writeDouble(entity.getIDF());
+            output.writeInt(entity.getTypes().size());
+
+            for (Type type : entity.getTypes())
+            {
+                output.writeInt(this.typeIds.get(type.getType()));
+                output.writeDouble(type.getIdf());
+            }
+
+            output.writeInt(entity.getPredicates().size());
+
+            for (String predicate : entity.getPredicates())
+            {
+                output.writeInt(this.predicateIds.get(predicate));
+            }
+        }
+    }
+
+    /**
+     * Reads entity table written by <code>write</code>
+     * Interned type and predicate IDs are the same as when the table was written
+     * @param input Input to read from
+     * @return Read entity table
+     * @throws IOException
+     */
+    public static EntityTable read(DataInput input) throws IOException
+    {
+        EntityTable table = new EntityTable();
+        String[] types = readNames(input, table.typeIds), predicates = readNames(input, table.predicateIds);
+        table.typeIdfs = new double[input.readInt()];
+
+        for (int i = 0; i < table.typeIdfs.length; i++)
+        {
+            table.typeIdfs[i] = input.readDouble();
+        }
+
+        int entities = input.readInt();
+        table.idx = new HashMap<>(entities);
+
+        for (int i = 0; i < entities; i++)
+        {
+            Id id = Id.copy(input.readInt());
+            String uri = input.readUTF();
+            double idf = input.readDouble();
+            int typeCount = input.readInt();
+            List<Type> entityTypes = new ArrayList<>(typeCount);
+            int[] typeIds = new int[typeCount];
+
+            for (int j = 0; j < typeCount; j++)
+            {
+                typeIds[j] = input.readInt();
+                entityTypes.add(new Type(types[typeIds[j]], input.readDouble()));
+            }
+
+            int predicateCount = input.readInt();
+            List<String> entityPredicates = new ArrayList<>(predicateCount);
+            int[] predicateIds = new int[predicateCount];
+
+            for (int j = 0; j < predicateCount; j++)
+            {
+                predicateIds[j] = input.readInt();
+                entityPredicates.add(predicates[predicateIds[j]]);
+            }
+
+            Entity entity = new Entity(uri, idf, entityTypes, entityPredicates);
+            entity.setInternedIds(sortedDistinct(typeIds), sortedDistinct(predicateIds));
+            table.idx.put(id, entity);
+        }
+
+        return table;
+    }
+
+    static String[] names(Map<String, Integer> dictionary)
+    {
+        String[] names = new String[dictionary.size()];
+        dictionary.forEach((name, id) -> names[id] = name);
+        return names;
+    }
+
+    static void writeNames(String[] names, DataOutput output) throws IOException
+    {
+        output.writeInt(names.length);
+
+        for (String name : names)
+        {
+            output.writeUTF(name);
+        }
+    }
+
+    static String[] readNames(DataInput input, Map<String, Integer> dictionary) throws IOException
+    {
+        String[] names = new String[input.readInt()];
+
+        for (int i = 0; i < names.length; i++)
+        {
+            names[i] = input.readUTF();
+            dictionary.put(names[i], i);
+        }
+
+        return names;
+    }
 }
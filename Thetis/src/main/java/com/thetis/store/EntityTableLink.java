@@ -8,18 +8,186 @@ import java.util.*;
 
 /**
  * Inverted indexing of entities' link to table names
- * TODO: We can reduce space by storing a separate structure of table names
- *       The index should point by index to the table name in that separate structure along its location within
- *       This way, we remove duplicating table names
+ * Table names are stored once in a dictionary of dense table IDs
+ * Each entity has a posting list of sorted table IDs, and its locations in the tables are packed into a parallel array of longs
+ * A forward index from table ID to the sorted IDs of its entities and their locations can be built once loading is complete
  */
 public class EntityTableLink implements Index<Id, List<String>>, Externalizable
 {
-    private Map<Id, Map<String, List<Pair<Integer, Integer>>>> idx;   // Indexing from entity to table file names of locations where the entity is found
+    private static final String FORMAT = "packed-postings-v2", FORMAT_V1 = "packed-postings-v1";
+
+    /**
+     * Tables and locations of one entity, or entities and locations of one table in the forward index
+     * The locations in table tables[i] are locations[starts[i]] to locations[starts[i + 1]] exclusive
+     */
+    static class Postings
+    {
+        int size = 0;
+        int[] tables;
+        int[] starts;
+        long[] locations;
+
+        Postings(int tableCapacity, int locationCapacity)
+        {
+            this.tables = new int[tableCapacity];
+            this.starts = new int[tableCapacity + 1];
+            this.locations = new long[locationCapacity];
+        }
+
+        int indexOf(int table)
+        {
+            if (this.size > 0 && this.tables[this.size - 1] == table)   // Locations are mostly added to the latest table
+                return this.size - 1;
+
+            return Arrays.binarySearch(this.tables, 0, this.size, table);
+        }
+
+        /**
+         * @return Index of table, which is inserted if missing
+         */
+        int add(int table)
+        {
+            int index = indexOf(table);
+
+            if (index >= 0)
+                return index;
+
+            index = -index - 1;
+
+            if (this.size == this.tables.length)
+            {
+                int capacity = Math.max(2, this.tables.length * 2);
+                this.tables = Arrays.copyOf(this.tables, capacity);
+                this.starts = Arrays.copyOf(this.starts, capacity + 1);
+            }
+
+            System.arraycopy(this.tables, index, this.tables, index + 1, this.size - index);
+            System.arraycopy(this.starts, index + 1, this.starts, index + 2, this.size - index);
+            this.tables[index] = table;
+            this.starts[index + 1] = this.starts[index];
+            this.size++;
+
+            return index;
+        }
+
+        void addLocation(int index, long location)
+        {
+            int count = this.starts[this.size], end = this.starts[index + 1];
+
+            if (count == this.locations.length)
+                this.locations = Arrays.copyOf(this.locations, Math.max(2, this.locations.length * 2));
+
+            System.arraycopy(this.locations, end, this.locations, end + 1, count - end);
+            this.locations[end] = location;
+
+            for (int i = index + 1; i <= this.size; i++)
+            {
+                this.starts[i]++;
+            }
+        }
+
+        List<Pair<Integer, Integer>> locations(int index)
+        {
+            List<Pair<Integer, Integer>> locations = new ArrayList<>(this.starts[index + 1] - this.starts[index]);
+
+            for (int i = this.starts[index]; i < this.starts[index + 1]; i++)
+            {
+                locations.add(new Pair<>(row(this.locations[i]), column(this.locations[i])));
+            }
+
+            return locations;
+        }
+
+        /**
+         * Appends a key larger than all current keys together with its locations
+         */
+        void append(int key, long[] locations, int from, int to)
+        {
+            int count = this.starts[this.size];
+            this.tables[this.size] = key;
+            System.arraycopy(locations, from, this.locations, count, to - from);
+            this.starts[++this.size] = count + to - from;
+        }
+
+        void write(DataOutput out) throws IOException
+        {
+            int locationCount = this.starts[this.size];
+            out.writeInt(this.size);
+            out.writeInt(locationCount);
+
+            for (int i = 0; i < this.size; i++)
+            {
+                out.writeInt(this.tables[i]);
+                out.writeInt(this.starts[i + 1]);
+            }
+
+            for (int i = 0; i < locationCount; i++)
+            {
+                out.writeLong(this.locations[i]);
+            }
+        }
+
+        static Postings read(DataInput in) throws IOException
+        {
+            int size = in.readInt(), locationCount = in.readInt();
+            Postings postings = new Postings(size, locationCount);
+            postings.size = size;
+
+            for (int i = 0; i < size; i++)
+            {
+                postings.tables[i] = in.readInt();
+                postings.starts[i + 1] = in.readInt();
+            }
+
+            for (int i = 0; i < locationCount; i++)
+            {
+                postings.locations[i] = in.readLong();
+            }
+
+            return postings;
+        }
+    }
+
+    Map<Id, Postings> idx;   // Indexing from entity to table IDs and locations where the entity is found
+    List<String> tableNames;
+    private Map<String, Integer> tableIds;
+    volatile Postings[] forward = null;     // Indexing from table ID to entity IDs and their locations in the table
     private String dir = null;
 
     public EntityTableLink()
     {
         this.idx = new HashMap<>();
+        this.tableNames = new ArrayList<>();
+        this.tableIds = new HashMap<>();
+    }
+
+    private static long pack(int row, int column)
+    {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    static int row(long location)
+    {
+        return (int) (location >> 32);
+    }
+
+    static int column(long location)
+    {
+        return (int) location;
+    }
+
+    private int tableId(String fileName)
+    {
+        Integer id = this.tableIds.get(fileName);
+
+        if (id == null)
+        {
+            id = this.tableNames.size();
+            this.tableIds.put(fileName, id);
+            this.tableNames.add(fileName);
+        }
+
+        return id;
     }
 
     public void setDirectory(String dir)
@@ -40,19 +208,19 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public void insert(Id key, List<String> fileNames)
     {
-        if (!this.idx.containsKey(key))
-            this.idx.put(key, new HashMap<>());
+        Postings postings = this.idx.computeIfAbsent(key, k -> new Postings(fileNames.size(), 0));
+        this.forward = null;
 
         for (String fileName : fileNames)
         {
-            if (!this.idx.get(key).containsKey(fileName))
-                this.idx.get(key).put(fileName, new ArrayList<>());
+            postings.add(tableId(fileName));
         }
     }
 
     @Override
     public boolean remove(Id key)
     {
+        this.forward = null;
         return this.idx.remove(key) != null;
     }
 
@@ -66,12 +234,19 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public List<String> find(Id key)
     {
-        Map<String, List<Pair<Integer, Integer>>> tablesLocations = this.idx.get(key);
+        Postings postings = this.idx.get(key);
 
-        if (tablesLocations == null)
+        if (postings == null)
             return new ArrayList<>();
 
-        return new ArrayList<>(tablesLocations.keySet());
+        List<String> tables = new ArrayList<>(postings.size);
+
+        for (int i = 0; i < postings.size; i++)
+        {
+            tables.add(this.tableNames.get(postings.tables[i]));
+        }
+
+        return tables;
     }
 
     @Override
@@ -86,6 +261,14 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
         return this.idx.size();
     }
 
+    /**
+     * @return Number of distinct tables in the index
+     */
+    public int tableCount()
+    {
+        return this.tableNames.size();
+    }
+
     /**
      * Adds location of entity in given table file name
      * @param key Entity ID
@@ -94,21 +277,13 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
      */
     public void addLocation(Id key, String fileName, List<Pair<Integer, Integer>> locations)
     {
-        if (this.idx.containsKey(key))
-        {
-            if (!this.idx.get(key).containsKey(fileName))
-                this.idx.get(key).put(fileName, new ArrayList<>(locations.size()));
-
-            locations.forEach(l -> this.idx.get(key).get(fileName).add(l));
-        }
+        Postings postings = this.idx.computeIfAbsent(key, k -> new Postings(1, locations.size()));
+        int index = postings.add(tableId(fileName));
+        this.forward = null;
 
-        else
+        for (Pair<Integer, Integer> location : locations)
         {
-            Map<String, List<Pair<Integer, Integer>>> fileNamesLocations = new HashMap<>();
-            List<Pair<Integer, Integer>> locationsCopy = new ArrayList<>(locations.size());
-            locationsCopy.addAll(locations);
-            fileNamesLocations.put(fileName, locationsCopy);
-            this.idx.put(key, fileNamesLocations);
+            postings.addLocation(index, pack(location.getFirst(), location.getSecond()));
         }
     }
 
@@ -116,19 +291,77 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
      * Gets all locations of entity in table file
      * @param key Entity ID
      * @param fileName Name of table file
-     * @return List of locations of the given entity in given table file
+     * @return List of locations of the given entity in given table file, or null if the entity is not linked to the table
      */
     public List<Pair<Integer, Integer>> getLocations(Id key, String fileName)
     {
-        if (!this.idx.containsKey(key))
+        Postings postings = this.idx.get(key);
+        Integer table = this.tableIds.get(fileName);
+
+        if (postings == null || table == null)
             return null;
 
-        return this.idx.get(key).get(fileName);
+        int index = postings.indexOf(table);
+        return index >= 0 ? postings.locations(index) : null;
+    }
+
+    /**
+     * Builds the forward index from table to entities
+     * The forward index is dropped again when the index is modified
+     */
+    public synchronized void buildForwardIndex()
+    {
+        int tableCount = this.tableNames.size();
+        int[] entityCounts = new int[tableCount], locationCounts = new int[tableCount];
+        int[] entities = new int[this.idx.size()];
+        Map<Integer, Postings> postings = new HashMap<>(this.idx.size());
+        int i = 0;
+
+        for (Map.Entry<Id, Postings> entry : this.idx.entrySet())
+        {
+            Postings entityPostings = entry.getValue();
+            entities[i++] = entry.getKey().getId();
+            postings.put(entry.getKey().getId(), entityPostings);
+
+            for (int j = 0; j < entityPostings.size; j++)
+            {
+                entityCounts[entityPostings.tables[j]]++;
+                locationCounts[entityPostings.tables[j]] += entityPostings.starts[j + 1] - entityPostings.starts[j];
+            }
+        }
+
+        Postings[] forward = new Postings[tableCount];
+        Arrays.sort(entities);
+
+        for (int table = 0; table < tableCount; table++)
+        {
+            forward[table] = new Postings(entityCounts[table], locationCounts[table]);
+        }
+
+        for (int entity : entities)     // Entities are appended in increasing order, so each table's entities are sorted
+        {
+            Postings entityPostings = postings.get(entity);
+
+            for (int j = 0; j < entityPostings.size; j++)
+            {
+                forward[entityPostings.tables[j]].append(entity, entityPostings.locations, entityPostings.starts[j], entityPostings.starts[j + 1]);
+            }
+        }
+
+        this.forward = forward;
+    }
+
+    /**
+     * @return True if the forward index from table to entities is built and up to date
+     */
+    public boolean hasForwardIndex()
+    {
+        return this.forward != null;
     }
 
     /**
      * Mapping from table file name to set of entities to which the table is linked
-     * This method can be slow
+     * This is a constant time lookup when the forward index is built and otherwise a scan of all entities
      * This is a substitution for the tableIDTOEntities map
      * @param fileName Table file name
      * @return Set of entities the table links to
@@ -136,16 +369,60 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     public Set<Id> tableToEntities(String fileName)
     {
         Set<Id> entities = new HashSet<>();
+        Integer table = this.tableIds.get(fileName);
+        Postings[] forward = this.forward;
+
+        if (table == null)
+            return entities;
 
-        for (Map.Entry<Id, Map<String, List<Pair<Integer, Integer>>>> entry : this.idx.entrySet())
+        else if (forward != null)
         {
-            if (this.idx.get(entry.getKey()).containsKey(fileName))
+            Postings tablePostings = forward[table];
+
+            for (int i = 0; i < tablePostings.size; i++)
+            {
+                entities.add(Id.copy(tablePostings.tables[i]));
+            }
+
+            return entities;
+        }
+
+        for (Map.Entry<Id, Postings> entry : this.idx.entrySet())
+        {
+            if (entry.getValue().indexOf(table) >= 0)
                 entities.add(entry.getKey());
         }
 
         return entities;
     }
 
+    /**
+     * Locations of all entities in a table taken from the forward index
+     * @param fileName Table file name
+     * @return Map from the entities of the table to their locations in the table, or null if the forward index is not built
+     */
+    public Map<Id, List<Pair<Integer, Integer>>> tableLocations(String fileName)
+    {
+        Integer table = this.tableIds.get(fileName);
+        Postings[] forward = this.forward;
+
+        if (forward == null)
+            return null;
+
+        else if (table == null)
+            return new HashMap<>();
+
+        Postings tablePostings = forward[table];
+        Map<Id, List<Pair<Integer, Integer>>> locations = new HashMap<>(tablePostings.size);
+
+        for (int i = 0; i < tablePostings.size; i++)
+        {
+            locations.put(Id.copy(tablePostings.tables[i]), tablePostings.locations(i));
+        }
+
+        return locations;
+    }
+
     /**
      * Clears index
      */
@@ -153,6 +430,9 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     public void clear()
     {
         this.idx.clear();
+        this.forward = null;
+        this.tableNames.clear();
+        this.tableIds.clear();
     }
 
     /**
@@ -164,37 +444,15 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public void writeExternal(ObjectOutput out) throws IOException
     {
-        List<Pair<Id, Pair<String, Pair<Integer, Integer>>>> tuples = new ArrayList<>();
-
-        for (Id id : this.idx.keySet())
-        {
-            for (String fileName : this.idx.get(id).keySet())
-            {
-                if (this.idx.get(id).get(fileName).isEmpty())
-                {
-                    tuples.add(new Pair<>(id, new Pair<>(fileName, new Pair<>(-1, -1))));
-                    continue;
-                }
-
-                for (Pair<Integer, Integer> location : this.idx.get(id).get(fileName))
-                {
-                    tuples.add(new Pair<>(id, new Pair<>(fileName, new Pair<>(location.getFirst(), location.getSecond()))));
-                }
-            }
-        }
-
-        out.writeObject(tuples);
-
-        if (this.idx == null)
-            out.writeObject("null");
-
-        else
-            out.writeObject(this.dir);
+        out.writeObject(FORMAT);
+        out.writeObject(this.dir == null ? "null" : this.dir);
+        writePostings(out);
     }
 
     /**
      * This method should not be called by client
      * This is used to read class object from a stream
+     * Indexes written without a forward index or as lists of entity, table, and location tuples are also read
      * @param in the stream to read data from in order to restore the object
      * @throws IOException
      * @throws ClassNotFoundException
@@ -202,9 +460,117 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
     {
-        List<Pair<Id, Pair<String, Pair<Integer, Integer>>>> tuples =
-                (List<Pair<Id, Pair<String, Pair<Integer, Integer>>>>) in.readObject();
+        Object header = in.readObject();
 
+        if (!FORMAT.equals(header) && !FORMAT_V1.equals(header))
+        {
+            readTuples((List<Pair<Id, Pair<String, Pair<Integer, Integer>>>>) header);
+            String dir = (String) in.readObject();
+            this.dir = dir.equals("null") ? null : dir;
+            return;
+        }
+
+        String dir = (String) in.readObject();
+        this.dir = dir.equals("null") ? null : dir;
+        readPostings(in, FORMAT.equals(header));
+    }
+
+    /**
+     * Writes the index in binary without Java serialization
+     * @param output Output to write to
+     * @throws IOException
+     */
+    public void write(DataOutput output) throws IOException
+    {
+        output.writeBoolean(this.dir != null);
+
+        if (this.dir != null)
+        {
+            output.writeUTF(this.dir);
+        }
+
+        writePostings(output);
+    }
+
+    /**
+     * Reads index written by <code>write</code>
+     * @param input Input to read from
+     * @return Read index
+     * @throws IOException
+     */
+    public static EntityTableLink read(DataInput input) throws IOException
+    {
+        EntityTableLink link = new EntityTableLink();
+        link.dir = input.readBoolean() ? input.readUTF() : null;
+        link.readPostings(input, true);
+
+        return link;
+    }
+
+    private void writePostings(DataOutput out) throws IOException
+    {
+        out.writeInt(this.tableNames.size());
+
+        for (String tableName : this.tableNames)
+        {
+            out.writeUTF(tableName);
+        }
+
+        out.writeInt(this.idx.size());
+
+        for (Map.Entry<Id, Postings> entry : this.idx.entrySet())
+        {
+            out.writeInt(entry.getKey().getId());
+            entry.getValue().write(out);
+        }
+
+        Postings[] forward = this.forward;
+        out.writeBoolean(forward != null);
+
+        if (forward != null)
+        {
+            for (Postings tablePostings : forward)
+            {
+                tablePostings.write(out);
+            }
+        }
+    }
+
+    private void readPostings(DataInput in, boolean hasForwardIndex) throws IOException
+    {
+        int tableCount = in.readInt();
+        this.tableNames = new ArrayList<>(tableCount);
+        this.tableIds = new HashMap<>(tableCount);
+
+        for (int i = 0; i < tableCount; i++)
+        {
+            tableId(in.readUTF());
+        }
+
+        int entityCount = in.readInt();
+        this.idx = new HashMap<>(entityCount);
+
+        for (int i = 0; i < entityCount; i++)
+        {
+            Id id = Id.copy(in.readInt());
+            this.idx.put(id, Postings.read(in));
+        }
+
+        if (hasForwardIndex && in.readBoolean())
+        {
+            Postings[] forward = new Postings[tableCount];
+
+            for (int i = 0; i < tableCount; i++)
+            {
+                forward[i] = Postings.read(in);
+            }
+
+            this.forward = forward;
+        }
+    }
+
+    private void readTuples(List<Pair<Id, Pair<String, Pair<Integer, Integer>>>> tuples)
+    {
         for (Pair<Id, Pair<String, Pair<Integer, Integer>>> tuple : tuples)
         {
             if (tuple.getSecond().getSecond().getFirst() == -1 && tuple.getSecond().getSecond().getSecond() == -1)
@@ -213,13 +579,5 @@ public class EntityTableLink implements Index<Id, List<String>>, Externalizable
             else
                 addLocation(tuple.getFirst(), tuple.getSecond().getFirst(), List.of(tuple.getSecond().getSecond()));
         }
-
-        String dir = (String) in.readObject();
-
-        if (dir.equals("null"))
-            this.dir = null;
-
-        else
-            this.dir = dir;
     }
 }
@@ -0,0 +1,427 @@
+package com.thetis.store;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file of named index sections
+ * The file starts with a magic number and a format version followed by the sections, a section table, and a trailing pointer to the section table
+ * Each entry of the section table holds the name, offset, length, and CRC32 checksum of a section
+ * Sections are streamed through buffers on a file channel and are verified against their checksum when read
+ */
+public final class IndexFile
+{
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x54484958;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES, BUFFER_SIZE = 1 << 16, CHUNK_BYTES = 8192;
+
+    @FunctionalInterface
+    public interface SectionWriter
+    {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface SectionReader<T>
+    {
+        T read(DataInputStream input) throws IOException;
+    }
+
+    private static final class Section
+    {
+        private final long offset, length, checksum;
+
+        private Section(long offset, long length, long checksum)
+        {
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    private final Path path;
+    private final int version;
+    private final Map<String, Section> sections;
+
+    private IndexFile(Path path, int version, Map<String, Section> sections)
+    {
+        this.path = path;
+        this.version = version;
+        this.sections = sections;
+    }
+
+    /**
+     * Creates an index file, which is complete once the returned writer is closed
+     * An existing file is only replaced once the new file has been written completely
+     * @param file Output file
+     * @return Writer of sections
+     * @throws IOException
+     */
+    public static Writer create(File file) throws IOException
+    {
+        return new Writer(file);
+    }
+
+    /**
+     * Opens an index file by reading its section table
+     * Sections are read on demand, and different sections can be read concurrently
+     * @param file Index file
+     * @return Opened index file
+     * @throws IOException If the file is not an index file or its version is not supported
+     */
+    public static IndexFile open(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES), trailer = ByteBuffer.allocate(Long.BYTES);
+
+            if (size < HEADER_BYTES + Integer.BYTES + Long.BYTES)
+            {
+                throw new IOException("'" + file + "' is not an index file");
+            }
+
+            channel.read(header, 0);
+            channel.read(trailer, size - Long.BYTES);
+
+            if (header.getInt(0) != MAGIC)
+            {
+                throw new IOException("'" + file + "' is not an index file");
+            }
+
+            else if (header.getInt(Integer.BYTES) > VERSION)
+            {
+                throw new IOException("Index file '" + file + "' has version " + header.getInt(Integer.BYTES) +
+                        ", but only versions up to " + VERSION + " are supported");
+            }
+
+            long tableOffset = trailer.getLong(0);
+
+            if (tableOffset < HEADER_BYTES || tableOffset > size - Long.BYTES)
+            {
+                throw new IOException("Index file '" + file + "' has a corrupt section table pointer");
+            }
+
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(tableOffset))));
+            int count = input.readInt();
+            Map<String, Section> sections = new LinkedHashMap<>(count);
+
+            for (int i = 0; i < count; i++)
+            {
+                String name = input.readUTF();
+                sections.put(name, new Section(input.readLong(), input.readLong(), input.readLong()));
+            }
+
+            return new IndexFile(file.toPath(), header.getInt(Integer.BYTES), sections);
+        }
+    }
+
+    public int version()
+    {
+        return this.version;
+    }
+
+    /**
+     * @return Names of sections in the order they were written
+     */
+    public Set<String> sections()
+    {
+        return Collections.unmodifiableSet(this.sections.keySet());
+    }
+
+    public boolean contains(String section)
+    {
+        return this.sections.containsKey(section);
+    }
+
+    /**
+     * Reads a section, which must be consumed entirely by the given reader
+     * @param name Section name
+     * @param reader Parser of the section
+     * @return Parsed section
+     * @throws IOException If the section is missing, is not consumed entirely, or does not match its checksum
+     */
+    public <T> T read(String name, SectionReader<T> reader) throws IOException
+    {
+        Section section = this.sections.get(name);
+
+        if (section == null)
+        {
+            throw new IOException("Index file '" + this.path + "' has no section '" + name + "'");
+        }
+
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ))
+        {
+            CheckedInputStream checked = new CheckedInputStream(
+                    ByteStreams.limit(Channels.newInputStream(channel.position(section.offset)), section.length), new CRC32());
+            DataInputStream input = new DataInputStream(new BufferedInputStream(checked, BUFFER_SIZE));
+            T value = reader.read(input);
+            long remaining = ByteStreams.exhaust(input);
+
+            if (remaining > 0)
+            {
+                throw new IOException("Section '" + name + "' has " + remaining + " unread bytes");
+            }
+
+            else if (checked.getChecksum().getValue() != section.checksum)
+            {
+                throw new IOException("Section '" + name + "' of index file '" + this.path + "' does not match its checksum");
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Maps a section read-only into memory
+     * The section is not verified against its checksum, as that would read all of its pages
+     * @param name Section name
+     * @return Mapped section, which stays valid after this file is no longer used
+     * @throws IOException If the section is missing
+     */
+    MappedSection map(String name) throws IOException
+    {
+        Section section = this.sections.get(name);
+
+        if (section == null)
+        {
+            throw new IOException("Index file '" + this.path + "' has no section '" + name + "'");
+        }
+
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ))
+        {
+            return new MappedSection(channel, section.offset, section.length);
+        }
+    }
+
+    /**
+     * Writer of sections to an index file
+     * Sections are written to a temporary file next to the index file
+     * The section table is written when the writer is closed, after which the temporary file atomically replaces the index file
+     */
+    public static final class Writer implements Closeable
+    {
+        private final Path target, temp;
+        private final FileChannel channel;
+        private final CountingOutputStream output;
+        private final Map<String, Section> sections = new LinkedHashMap<>();
+        private boolean failed = false;
+
+        private Writer(File file) throws IOException
+        {
+            this.target = file.getAbsoluteFile().toPath();
+            this.temp = this.target.resolveSibling(file.getName() + ".tmp");
+
+            try
+            {
+                this.channel = FileChannel.open(this.temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                this.output = new CountingOutputStream(Channels.newOutputStream(this.channel));
+
+                DataOutputStream header = new DataOutputStream(this.output);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+            }
+
+            catch (IOException | RuntimeException e)
+            {
+                Files.deleteIfExists(this.temp);
+                throw e;
+            }
+        }
+
+        /**
+         * Appends a section
+         * @param name Unique section name
+         * @param writer Writes the content of the section
+         * @throws IOException
+         */
+        public void section(String name, SectionWriter writer) throws IOException
+        {
+            if (this.sections.containsKey(name))
+            {
+                throw new IllegalArgumentException("Section '" + name + "' has already been written");
+            }
+
+            long start = this.output.getCount();
+            CheckedOutputStream checked = new CheckedOutputStream(this.output, new CRC32());
+            DataOutputStream sectionOutput = new DataOutputStream(new BufferedOutputStream(checked, BUFFER_SIZE));
+
+            try
+            {
+                writer.write(sectionOutput);
+                sectionOutput.flush();
+            }
+
+            catch (IOException | RuntimeException e)
+            {
+                this.failed = true;
+                throw e;
+            }
+
+            this.sections.put(name, new Section(start, this.output.getCount() - start, checked.getChecksum().getValue()));
+        }
+
+        /**
+         * Writes the section table and replaces the index file unless writing a section has failed
+         * If writing has failed, the temporary file is deleted and an existing index file is left untouched
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException
+        {
+            boolean committed = false;
+
+            try
+            {
+                try (this.channel)
+                {
+                    if (this.failed)
+                    {
+                        return;
+                    }
+
+                    long tableOffset = this.output.getCount();
+                    DataOutputStream table = new DataOutputStream(new BufferedOutputStream(this.output));
+                    table.writeInt(this.sections.size());
+
+                    for (Map.Entry<String, Section> entry : this.sections.entrySet())
+                    {
+                        table.writeUTF(entry.getKey());
+                        table.writeLong(entry.getValue().offset);
+                        table.writeLong(entry.getValue().length);
+                        table.writeLong(entry.getValue().checksum);
+                    }
+
+                    table.writeLong(tableOffset);
+                    table.flush();
+                    this.channel.force(true);
+                }
+
+                try
+                {
+                    Files.move(this.temp, this.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(this.temp, this.target, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                committed = true;
+            }
+
+            finally
+            {
+                if (!committed)
+                {
+                    Files.deleteIfExists(this.temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an object by Java serialization
+     * This is for indexes that do not have a binary encoding of their own
+     */
+    public static void writeObject(DataOutputStream output, Object object) throws IOException
+    {
+        ObjectOutputStream stream = new ObjectOutputStream(output);
+        stream.writeObject(object);
+        stream.flush();
+    }
+
+    public static Object readObject(DataInputStream input) throws IOException
+    {
+        try
+        {
+            return new ObjectInputStream(input).readObject();
+        }
+
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Unknown class in serialized section: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the first <code>count</code> values in bulk
+     */
+    public static void writeInts(DataOutput output, int[] values, int count) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+
+        for (int i = 0; i < count; )
+        {
+            int chunk = Math.min(count - i, CHUNK_BYTES / Integer.BYTES);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, i, chunk);
+            output.write(buffer.array(), 0, chunk * Integer.BYTES);
+            i += chunk;
+        }
+    }
+
+    public static int[] readInts(DataInput input, int count) throws IOException
+    {
+        int[] values = new int[count];
+        byte[] bytes = new byte[CHUNK_BYTES];
+
+        for (int i = 0; i < count; )
+        {
+            int chunk = Math.min(count - i, CHUNK_BYTES / Integer.BYTES);
+            input.readFully(bytes, 0, chunk * Integer.BYTES);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(values, i, chunk);
+            i += chunk;
+        }
+
+        return values;
+    }
+
+    /**
+     * Writes the first <code>count</code> values in bulk
+     */
+    public static void writeFloats(DataOutput output, float[] values, int count) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+
+        for (int i = 0; i < count; )
+        {
+            int chunk = Math.min(count - i, CHUNK_BYTES / Float.BYTES);
+            buffer.clear();
+            buffer.asFloatBuffer().put(values, i, chunk);
+            output.write(buffer.array(), 0, chunk * Float.BYTES);
+            i += chunk;
+        }
+    }
+
+    public static float[] readFloats(DataInput input, int count) throws IOException
+    {
+        float[] values = new float[count];
+        byte[] bytes = new byte[CHUNK_BYTES];
+
+        for (int i = 0; i < count; )
+        {
+            int chunk = Math.min(count - i, CHUNK_BYTES / Float.BYTES);
+            input.readFully(bytes, 0, chunk * Float.BYTES);
+            ByteBuffer.wrap(bytes).asFloatBuffer().get(values, i, chunk);
+            i += chunk;
+        }
+
+        return values;
+    }
+}
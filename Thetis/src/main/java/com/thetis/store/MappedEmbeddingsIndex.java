@@ -0,0 +1,205 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Read-only embeddings index queried in place from a memory-mapped float matrix of an index file
+ * Vectors are stored L2-normalized as in <code>DenseEmbeddingsIndex</code>, so cosine similarity of mapped vectors is a dot product
+ * Vectors inserted at search time are kept in a heap overlay and take precedence over mapped vectors
+ */
+public class MappedEmbeddingsIndex<C> extends EmbeddingsIndex<C>
+{
+    private static final String PREFIX = "mapped.embeddings", HEADER = PREFIX + ".header", ID_TO_ROW = PREFIX + ".idToRow",
+            MATRIX = PREFIX + ".matrix";
+
+    private final MappedSection idToRow, matrix;
+    private final int dimension, rows, maxId;
+    private final DenseEmbeddingsIndex<C> overlay = new DenseEmbeddingsIndex<>();
+
+    private MappedEmbeddingsIndex(IndexFile file, int dimension, int rows) throws IOException
+    {
+        this.idToRow = file.map(ID_TO_ROW);
+        this.matrix = file.map(MATRIX);
+        this.dimension = dimension;
+        this.rows = rows;
+        this.maxId = (int) (this.idToRow.length() / Integer.BYTES) - 1;
+    }
+
+    /**
+     * Maps the embeddings index of an index file written by <code>write</code>
+     * @param file Index file
+     * @return Mapped embeddings index
+     * @throws IOException
+     */
+    public static <C> MappedEmbeddingsIndex<C> open(IndexFile file) throws IOException
+    {
+        int[] header = file.read(HEADER, input -> new int[]{input.readInt(), input.readInt()});
+        return new MappedEmbeddingsIndex<>(file, header[0], header[1]);
+    }
+
+    /**
+     * Writes an embeddings index in the mapped layout
+     * The row lookup is written as a dense array over entity IDs, so a mapped lookup is a single read
+     * @param writer Index file writer
+     * @param index Embeddings index to write
+     * @throws IOException
+     */
+    public static void write(IndexFile.Writer writer, DenseEmbeddingsIndex<?> index) throws IOException
+    {
+        index.lock.readLock().lock();
+
+        try
+        {
+            int maxId = -1;
+
+            for (int row = 0; row < index.rows; row++)
+            {
+                maxId = Math.max(maxId, index.rowToId[row]);
+            }
+
+            int idCount = maxId + 1;
+            writer.section(HEADER, output -> {
+                output.writeInt(index.dimension);
+                output.writeInt(index.rows);
+            });
+            writer.section(ID_TO_ROW, output -> IndexFile.writeInts(output, index.idToRow, idCount));
+            writer.section(MATRIX, output -> IndexFile.writeFloats(output, index.matrix, index.rows * Math.max(index.dimension, 0)));
+        }
+
+        finally
+        {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    private int row(Id key)
+    {
+        int id = key.getId();
+        return id >= 0 && id <= this.maxId ? this.idToRow.getInt(id) : DenseEmbeddingsIndex.NO_ROW;
+    }
+
+    @Override
+    public void insert(Id key, List<Double> value)
+    {
+        this.overlay.insert(key, value);
+    }
+
+    /**
+     * Only vectors inserted at search time can be removed
+     */
+    @Override
+    public boolean remove(Id key)
+    {
+        if (!this.overlay.contains(key) && row(key) != DenseEmbeddingsIndex.NO_ROW)
+        {
+            throw new UnsupportedOperationException("Vectors of a memory-mapped embeddings index cannot be removed");
+        }
+
+        return this.overlay.remove(key);
+    }
+
+    /**
+     * Finds the L2-normalized vector of an entity
+     * @param key Entity ID
+     * @return Copy of normalized vector or null if the entity has no embedding
+     */
+    @Override
+    public List<Double> find(Id key)
+    {
+        List<Double> inserted = this.overlay.find(key);
+
+        if (inserted != null)
+        {
+            return inserted;
+        }
+
+        int row = row(key);
+
+        if (row == DenseEmbeddingsIndex.NO_ROW)
+        {
+            return null;
+        }
+
+        float[] vector = new float[this.dimension];
+        long offset = (long) row * this.dimension;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            vector[i] = this.matrix.getFloat(offset + i);
+        }
+
+        return new DenseEmbeddingsIndex.FloatVector(vector);
+    }
+
+    @Override
+    public boolean contains(Id key)
+    {
+        return this.overlay.contains(key) || row(key) != DenseEmbeddingsIndex.NO_ROW;
+    }
+
+    @Override
+    public int size()
+    {
+        int inserted = 0;
+
+        for (int row = 0; row < this.overlay.size(); row++)
+        {
+            if (row(Id.copy(this.overlay.rowToId[row])) == DenseEmbeddingsIndex.NO_ROW)
+            {
+                inserted++;
+            }
+        }
+
+        return this.rows + inserted;
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Memory-mapped embeddings index is read-only");
+    }
+
+    /**
+     * Cosine similarity as dot product of the mapped normalized vectors
+     * @param key1 First entity ID
+     * @param key2 Second entity ID
+     * @return Cosine similarity within [-1, 1] or 0 if either entity has no embedding
+     */
+    @Override
+    public double cosineSimilarity(Id key1, Id key2)
+    {
+        if (this.overlay.contains(key1) || this.overlay.contains(key2))
+        {
+            return super.cosineSimilarity(key1, key2);
+        }
+
+        int row1 = row(key1), row2 = row(key2);
+
+        if (row1 == DenseEmbeddingsIndex.NO_ROW || row2 == DenseEmbeddingsIndex.NO_ROW)
+        {
+            return 0.0;
+        }
+
+        long offset1 = (long) row1 * this.dimension, offset2 = (long) row2 * this.dimension;
+        double dot = 0;
+
+        for (int i = 0; i < this.dimension; i++)
+        {
+            dot += this.matrix.getFloat(offset1 + i) * this.matrix.getFloat(offset2 + i);
+        }
+
+        return Math.max(-1.0, Math.min(1.0, dot));
+    }
+
+    /**
+     * Dimension of vectors in index
+     * @return Vector dimension or -1 if the index is empty
+     */
+    public int dimension()
+    {
+        return this.dimension;
+    }
+}
@@ -0,0 +1,415 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only entity linker queried in place from memory-mapped sections of an index file
+ * Mappings added at search time, such as for query entities, are kept in a small heap overlay
+ */
+public class MappedEntityLinking extends EntityLinking
+{
+    private static final String PREFIX = "mapped.linker", PREFIXES = PREFIX + ".prefixes",
+            KG = PREFIX + ".kg", INPUT = PREFIX + ".input", INPUT_TO_KG = PREFIX + ".inputToKg", KG_TO_INPUT = PREFIX + ".kgToInput";
+
+    /**
+     * Dictionary of URIs without prefix sorted by their UTF-8 bytes
+     */
+    private static final class Dictionary
+    {
+        private final MappedStrings keys;
+        private final MappedSection ids, sortedIds, keyOfId;
+
+        Dictionary(IndexFile file, String name) throws IOException
+        {
+            this.keys = new MappedStrings(file, name + ".keys");
+            this.ids = file.map(name + ".ids");
+            this.sortedIds = file.map(name + ".sortedIds");
+            this.keyOfId = file.map(name + ".keyOfId");
+        }
+
+        int size()
+        {
+            return this.keys.size();
+        }
+
+        Id get(String key)
+        {
+            int index = this.keys.indexOf(key, null);
+            return index < 0 ? null : Id.copy(this.ids.getInt(index));
+        }
+
+        String get(Id id)
+        {
+            long index = this.sortedIds.binarySearch(0, size(), id.getId());
+            return index < 0 ? null : this.keys.get(this.keyOfId.getInt(index));
+        }
+
+        Iterator<Id> ids()
+        {
+            return new Iterator<>()
+            {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return this.next < size();
+                }
+
+                @Override
+                public Id next()
+                {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+
+                    return Id.copy(sortedIds.getInt(this.next++));
+                }
+            };
+        }
+
+        /**
+         * Observes the largest ID, so IDs allocated for the overlay are not in the dictionary
+         */
+        void observeIds()
+        {
+            if (size() > 0)
+            {
+                Id.copy(this.sortedIds.getInt(size() - 1));
+            }
+        }
+
+        static void write(IndexFile.Writer writer, String name, Map<Id, String> keysById) throws IOException
+        {
+            List<Id> idList = new ArrayList<>(keysById.keySet());
+
+            String[] keys = new String[idList.size()];
+            int[] idValues = new int[idList.size()];
+
+            for (int i = 0; i < keys.length; i++)
+            {
+                keys[i] = keysById.get(idList.get(i));
+                idValues[i] = idList.get(i).getId();
+            }
+
+            int[] keyOrder = MappedStrings.sortedOrder(keys), sortedKeyIds = new int[keys.length], keyPositions = new int[keys.length];
+
+            for (int i = 0; i < keyOrder.length; i++)
+            {
+                sortedKeyIds[i] = idValues[keyOrder[i]];
+                keyPositions[keyOrder[i]] = i;
+            }
+
+            Integer[] idOrder = new Integer[keys.length];
+
+            for (int i = 0; i < idOrder.length; i++)
+            {
+                idOrder[i] = i;
+            }
+
+            Arrays.sort(idOrder, Comparator.comparingInt(i -> idValues[i]));
+            int[] sortedIds = new int[keys.length], keyOfId = new int[keys.length];
+
+            for (int i = 0; i < idOrder.length; i++)
+            {
+                sortedIds[i] = idValues[idOrder[i]];
+                keyOfId[i] = keyPositions[idOrder[i]];
+            }
+
+            MappedStrings.write(writer, name + ".keys", keys, keyOrder);
+            writer.section(name + ".ids", output -> IndexFile.writeInts(output, sortedKeyIds, sortedKeyIds.length));
+            writer.section(name + ".sortedIds", output -> IndexFile.writeInts(output, sortedIds, sortedIds.length));
+            writer.section(name + ".keyOfId", output -> IndexFile.writeInts(output, keyOfId, keyOfId.length));
+        }
+    }
+
+    /**
+     * Mapping between IDs sorted by the ID mapped from
+     */
+    private static final class Mapping
+    {
+        private final MappedSection from, to;
+        private final int size;
+
+        Mapping(IndexFile file, String name) throws IOException
+        {
+            this.from = file.map(name + ".from");
+            this.to = file.map(name + ".to");
+            this.size = (int) (this.from.length() / Integer.BYTES);
+        }
+
+        Id get(Id id)
+        {
+            long index = this.from.binarySearch(0, this.size, id.getId());
+            return index < 0 ? null : Id.copy(this.to.getInt(index));
+        }
+
+        static void write(IndexFile.Writer writer, String name, SortedMap<Integer, Integer> mapping) throws IOException
+        {
+            writer.section(name + ".from", output -> {
+                for (int from : mapping.keySet())
+                {
+                    output.writeInt(from);
+                }
+            });
+            writer.section(name + ".to", output -> {
+                for (int to : mapping.values())
+                {
+                    output.writeInt(to);
+                }
+            });
+        }
+    }
+
+    private final Dictionary kgIds, inputIds;
+    private final Mapping inputToKGEntity, kgEntityToInput;
+    private final Map<String, Id> kgOverlay = new ConcurrentHashMap<>(), inputOverlay = new ConcurrentHashMap<>();
+    private final Map<Id, String> kgOverlayKeys = new ConcurrentHashMap<>(), inputOverlayKeys = new ConcurrentHashMap<>();
+    private final Map<Id, Id> inputToKGOverlay = new ConcurrentHashMap<>(), kgToInputOverlay = new ConcurrentHashMap<>();
+
+    private MappedEntityLinking(IndexFile file, String inputPrefix, String kgEntityPrefix) throws IOException
+    {
+        super(inputPrefix, kgEntityPrefix);
+        this.kgIds = new Dictionary(file, KG);
+        this.inputIds = new Dictionary(file, INPUT);
+        this.inputToKGEntity = new Mapping(file, INPUT_TO_KG);
+        this.kgEntityToInput = new Mapping(file, KG_TO_INPUT);
+        this.kgIds.observeIds();
+        this.inputIds.observeIds();
+    }
+
+    /**
+     * @return True if the index file contains the mapped layout of an entity linker
+     */
+    public static boolean isMapped(IndexFile file)
+    {
+        return file.contains(PREFIXES);
+    }
+
+    /**
+     * Maps the entity linker of an index file written by <code>write</code>
+     * @param file Index file
+     * @return Mapped entity linker
+     * @throws IOException
+     */
+    public static MappedEntityLinking open(IndexFile file) throws IOException
+    {
+        String[] prefixes = file.read(PREFIXES, input -> new String[]{input.readUTF(), input.readUTF()});
+        return new MappedEntityLinking(file, prefixes[0], prefixes[1]);
+    }
+
+    /**
+     * Writes an entity linker in the mapped layout
+     * @param writer Index file writer
+     * @param linker Entity linker to write
+     * @throws IOException
+     */
+    public static void write(IndexFile.Writer writer, EntityLinking linker) throws IOException
+    {
+        Map<Id, String> kgKeys = new HashMap<>(), inputKeys = new HashMap<>();
+        SortedMap<Integer, Integer> inputToKG = new TreeMap<>(), kgToInput = new TreeMap<>();
+        int kgPrefixLength = linker.getKgEntityPrefix().length(), inputPrefixLength = linker.getInputPrefix().length();
+        linker.kgUriIds().forEachRemaining(id -> kgKeys.put(id, linker.kgUriLookup(id).substring(kgPrefixLength)));
+        linker.inputUriIds().forEachRemaining(id -> inputKeys.put(id, linker.inputUriLookup(id).substring(inputPrefixLength)));
+
+        for (Map.Entry<Id, String> input : inputKeys.entrySet())
+        {
+            String kgEntity = linker.mapTo(linker.getInputPrefix() + input.getValue());
+
+            if (kgEntity != null)
+            {
+                inputToKG.put(input.getKey().getId(), linker.kgUriLookup(kgEntity).getId());
+            }
+        }
+
+        for (Map.Entry<Id, String> kgEntity : kgKeys.entrySet())
+        {
+            String input = linker.mapFrom(linker.getKgEntityPrefix() + kgEntity.getValue());
+
+            if (input != null)
+            {
+                kgToInput.put(kgEntity.getKey().getId(), linker.inputUriLookup(input).getId());
+            }
+        }
+
+        writer.section(PREFIXES, output -> {
+            output.writeUTF(linker.getInputPrefix());
+            output.writeUTF(linker.getKgEntityPrefix());
+        });
+        Dictionary.write(writer, KG, kgKeys);
+        Dictionary.write(writer, INPUT, inputKeys);
+        Mapping.write(writer, INPUT_TO_KG, inputToKG);
+        Mapping.write(writer, KG_TO_INPUT, kgToInput);
+    }
+
+    private Id kgId(String key)
+    {
+        Id id = this.kgOverlay.get(key);
+        return id != null ? id : this.kgIds.get(key);
+    }
+
+    private String kgKey(Id id)
+    {
+        String key = this.kgOverlayKeys.get(id);
+        return key != null ? key : this.kgIds.get(id);
+    }
+
+    private Id inputId(String key)
+    {
+        Id id = this.inputOverlay.get(key);
+        return id != null ? id : this.inputIds.get(key);
+    }
+
+    private String inputKey(Id id)
+    {
+        String key = this.inputOverlayKeys.get(id);
+        return key != null ? key : this.inputIds.get(id);
+    }
+
+    @Override
+    public Id kgUriLookup(String kgEntity)
+    {
+        return kgId(kgEntity.substring(this.kgEntityPrefix.length()));
+    }
+
+    @Override
+    public String kgUriLookup(Id id)
+    {
+        return this.kgEntityPrefix + kgKey(id);
+    }
+
+    @Override
+    public Id inputUriLookup(String inputEntity)
+    {
+        return inputId(inputEntity.substring(this.inputPrefix.length()));
+    }
+
+    @Override
+    public String inputUriLookup(Id id)
+    {
+        return this.inputPrefix + inputKey(id);
+    }
+
+    @Override
+    public Iterator<Id> kgUriIds()
+    {
+        return concat(this.kgIds.ids(), this.kgOverlayKeys.keySet());
+    }
+
+    @Override
+    public Iterator<Id> inputUriIds()
+    {
+        return concat(this.inputIds.ids(), this.inputOverlayKeys.keySet());
+    }
+
+    private static Iterator<Id> concat(Iterator<Id> mapped, Set<Id> overlay)
+    {
+        List<Id> overlayIds = new ArrayList<>(overlay);
+
+        return new Iterator<>()
+        {
+            private int overlayNext = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return mapped.hasNext() || this.overlayNext < overlayIds.size();
+            }
+
+            @Override
+            public Id next()
+            {
+                return mapped.hasNext() ? mapped.next() : overlayIds.get(this.overlayNext++);
+            }
+        };
+    }
+
+    @Override
+    public String mapTo(String inputEntity)
+    {
+        if (!inputEntity.startsWith(this.inputPrefix))
+            throw new IllegalArgumentException("Input entity URI '" + inputEntity + "' does not start with specified prefix");
+
+        Id inputId = inputId(inputEntity.substring(this.inputPrefix.length()));
+
+        if (inputId == null)
+            return null;
+
+        Id kgId = this.inputToKGEntity.get(inputId);
+
+        if (kgId == null && (kgId = this.inputToKGOverlay.get(inputId)) == null)
+            return null;
+
+        return this.kgEntityPrefix + kgKey(kgId);
+    }
+
+    @Override
+    public String mapFrom(String kgUri)
+    {
+        if (!kgUri.startsWith(this.kgEntityPrefix))
+            throw new IllegalArgumentException("KG entity URI does not start with specified prefix");
+
+        Id kgId = kgId(kgUri.substring(this.kgEntityPrefix.length()));
+
+        if (kgId == null)
+            return null;
+
+        Id inputId = this.kgEntityToInput.get(kgId);
+
+        if (inputId == null && (inputId = this.kgToInputOverlay.get(kgId)) == null)
+            return null;
+
+        return this.inputPrefix + inputKey(inputId);
+    }
+
+    /**
+     * Adds mapping to the heap overlay
+     * As for the heap linker, existing mappings are not replaced
+     */
+    @Override
+    public synchronized void addMapping(String inputEntity, String kgEntity)
+    {
+        if (!inputEntity.startsWith(this.inputPrefix) || !kgEntity.startsWith(this.kgEntityPrefix))
+            throw new IllegalArgumentException("Input entity URI and/or KG entity URI do not start with given prefix");
+
+        String inputNoPrefix = inputEntity.substring(this.inputPrefix.length()),
+                kgUriNoPrefix = kgEntity.substring(this.kgEntityPrefix.length());
+        Id inputId = inputId(inputNoPrefix), uriId = kgId(kgUriNoPrefix);
+
+        if (inputId == null)
+        {
+            inputId = Id.alloc();
+            this.inputOverlay.put(inputNoPrefix, inputId);
+            this.inputOverlayKeys.put(inputId, inputNoPrefix);
+        }
+
+        if (uriId == null)
+        {
+            uriId = Id.alloc();
+            this.kgOverlay.put(kgUriNoPrefix, uriId);
+            this.kgOverlayKeys.put(uriId, kgUriNoPrefix);
+        }
+
+        if (this.inputToKGEntity.get(inputId) == null)
+            this.inputToKGOverlay.putIfAbsent(inputId, uriId);
+
+        if (this.kgEntityToInput.get(uriId) == null)
+            this.kgToInputOverlay.putIfAbsent(uriId, inputId);
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity linker is read-only");
+    }
+
+    @Override
+    public void write(DataOutput output)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity linker cannot be written");
+    }
+}
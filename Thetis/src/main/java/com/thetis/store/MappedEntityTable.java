@@ -0,0 +1,328 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Read-only entity table queried in place from memory-mapped sections of an index file
+ * The type and predicate dictionaries and the type IDFs are small and are read onto the heap
+ * Entities are materialized on every lookup and are not kept, so the heap does not grow with the number of entities looked up
+ * Entities inserted at search time, such as query entities, are kept on the heap and take precedence over mapped entities
+ */
+public class MappedEntityTable extends EntityTable
+{
+    private static final String PREFIX = "mapped.entities", DICTIONARIES = PREFIX + ".dictionaries", IDS = PREFIX + ".ids",
+            URIS = PREFIX + ".uris", IDFS = PREFIX + ".idfs", TYPE_STARTS = PREFIX + ".typeStarts", TYPES = PREFIX + ".types",
+            TYPE_IDFS = PREFIX + ".typeOccurrenceIdfs", PREDICATE_STARTS = PREFIX + ".predicateStarts", PREDICATES = PREFIX + ".predicates";
+
+    private final MappedSection ids, idfs, typeStarts, types, typeOccurrenceIdfs, predicateStarts, predicates;
+    private final MappedStrings uris;
+    private final int entityCount;
+    private String[] typeNames, predicateNames;
+
+    private MappedEntityTable(IndexFile file) throws IOException
+    {
+        this.ids = file.map(IDS);
+        this.uris = new MappedStrings(file, URIS);
+        this.idfs = file.map(IDFS);
+        this.typeStarts = file.map(TYPE_STARTS);
+        this.types = file.map(TYPES);
+        this.typeOccurrenceIdfs = file.map(TYPE_IDFS);
+        this.predicateStarts = file.map(PREDICATE_STARTS);
+        this.predicates = file.map(PREDICATES);
+        this.entityCount = (int) (this.ids.length() / Integer.BYTES);
+    }
+
+    /**
+     * Maps the entity table of an index file written by <code>write</code>
+     * @param file Index file
+     * @return Mapped entity table
+     * @throws IOException
+     */
+    public static MappedEntityTable open(IndexFile file) throws IOException
+    {
+        MappedEntityTable table = new MappedEntityTable(file);
+        file.read(DICTIONARIES, input -> {
+            table.typeNames = readNames(input, table.typeIds);
+            table.predicateNames = readNames(input, table.predicateIds);
+            table.typeIdfs = new double[input.readInt()];
+
+            for (int i = 0; i < table.typeIdfs.length; i++)
+            {
+                table.typeIdfs[i] = input.readDouble();
+            }
+
+            return table;
+        });
+
+        return table;
+    }
+
+    /**
+     * Writes an entity table in the mapped layout
+     * @param writer Index file writer
+     * @param table Entity table to write
+     * @throws IOException
+     */
+    public static void write(IndexFile.Writer writer, EntityTable table) throws IOException
+    {
+        int[] ids = new int[table.idx.size()];
+        Entity[] entities = new Entity[ids.length];
+        String[] uris = new String[ids.length];
+        int i = 0;
+
+        for (Id id : table.idx.keySet())
+        {
+            ids[i++] = id.getId();
+        }
+
+        Arrays.sort(ids);
+
+        for (i = 0; i < ids.length; i++)
+        {
+            entities[i] = table.idx.get(Id.copy(ids[i]));
+            uris[i] = entities[i].getUri();
+        }
+
+        writer.section(DICTIONARIES, output -> {
+            writeNames(names(table.typeIds), output);
+            writeNames(names(table.predicateIds), output);
+            output.writeInt(table.typeIdfs.length);
+
+            for (double idf : table.typeIdfs)
+            {
+                output.writeDouble(idf);
+            }
+        });
+        writer.section(IDS, output -> IndexFile.writeInts(output, ids, ids.length));
+        MappedStrings.write(writer, URIS, uris, null);
+        writer.section(IDFS, output -> {
+            for (Entity entity : entities)
+            {
+                output.writeDouble(entity.getIDF());
+            }
+        });
+        writer.section(TYPE_STARTS, output -> {
+            long start = 0;
+            output.writeLong(start);
+
+            for (Entity entity : entities)
+            {
+                start += entity.getTypes().size();
+                output.writeLong(start);
+            }
+        });
+        writer.section(TYPES, output -> {
+            for (Entity entity : entities)
+            {
+                for (Type type : entity.getTypes())
+                {
+                    output.writeInt(table.typeIds.get(type.getType()));
+                }
+            }
+        });
+        writer.section(TYPE_IDFS, output -> {
+            for (Entity entity : entities)
+            {
+                for (Type type : entity.getTypes())
+                {
+                    output.writeDouble(type.getIdf());
+                }
+            }
+        });
+        writer.section(PREDICATE_STARTS, output -> {
+            long start = 0;
+            output.writeLong(start);
+
+            for (Entity entity : entities)
+            {
+                start += entity.getPredicates().size();
+                output.writeLong(start);
+            }
+        });
+        writer.section(PREDICATES, output -> {
+            for (Entity entity : entities)
+            {
+                for (String predicate : entity.getPredicates())
+                {
+                    output.writeInt(table.predicateIds.get(predicate));
+                }
+            }
+        });
+    }
+
+    private int index(Id key)
+    {
+        return (int) this.ids.binarySearch(0, this.entityCount, key.getId());
+    }
+
+    private Entity materialize(int index)
+    {
+        long typeStart = this.typeStarts.getLong(index), typeEnd = this.typeStarts.getLong(index + 1),
+                predicateStart = this.predicateStarts.getLong(index), predicateEnd = this.predicateStarts.getLong(index + 1);
+        List<Type> entityTypes = new ArrayList<>((int) (typeEnd - typeStart));
+        List<String> entityPredicates = new ArrayList<>((int) (predicateEnd - predicateStart));
+        int[] typeIds = new int[(int) (typeEnd - typeStart)], predicateIds = new int[(int) (predicateEnd - predicateStart)];
+
+        for (long i = typeStart; i < typeEnd; i++)
+        {
+            int type = this.types.getInt(i);
+            typeIds[(int) (i - typeStart)] = type;
+            entityTypes.add(new Type(this.typeNames[type], this.typeOccurrenceIdfs.getDouble(i)));
+        }
+
+        for (long i = predicateStart; i < predicateEnd; i++)
+        {
+            int predicate = this.predicates.getInt(i);
+            predicateIds[(int) (i - predicateStart)] = predicate;
+            entityPredicates.add(this.predicateNames[predicate]);
+        }
+
+        Entity entity = new Entity(this.uris.get(index), this.idfs.getDouble(index), entityTypes, entityPredicates);
+        entity.setInternedIds(sortedDistinct(typeIds), sortedDistinct(predicateIds));
+
+        return entity;
+    }
+
+    @Override
+    public Entity find(Id key)
+    {
+        Entity entity = super.find(key);
+
+        if (entity != null)
+            return entity;
+
+        int index = index(key);
+        return index < 0 ? null : materialize(index);
+    }
+
+    @Override
+    public boolean contains(Id key)
+    {
+        return super.contains(key) || index(key) >= 0;
+    }
+
+    @Override
+    public int size()
+    {
+        int inserted = 0;
+
+        for (Iterator<Id> ids = super.allIds(); ids.hasNext(); )
+        {
+            if (index(ids.next()) < 0)
+                inserted++;
+        }
+
+        return this.entityCount + inserted;
+    }
+
+    /**
+     * Only entities inserted at search time can be removed
+     */
+    @Override
+    public boolean remove(Id key)
+    {
+        if (index(key) >= 0)
+            throw new UnsupportedOperationException("Entities of a memory-mapped entity table cannot be removed");
+
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity table is read-only");
+    }
+
+    @Override
+    public Iterator<Type> allTypes()
+    {
+        Set<Type> types = new HashSet<>();
+        long occurrences = this.typeStarts.getLong(this.entityCount);
+
+        for (long i = 0; i < occurrences; i++)
+        {
+            types.add(new Type(this.typeNames[this.types.getInt(i)], this.typeOccurrenceIdfs.getDouble(i)));
+        }
+
+        super.allTypes().forEachRemaining(types::add);
+        return types.iterator();
+    }
+
+    @Override
+    public void forEachTypeOccurrence(TypeOccurrenceConsumer consumer)
+    {
+        for (int index = 0; index < this.entityCount; index++)
+        {
+            int entityId = this.ids.getInt(index);
+            long typeEnd = this.typeStarts.getLong(index + 1);
+
+            for (long i = this.typeStarts.getLong(index); i < typeEnd; i++)
+            {
+                consumer.accept(entityId, this.typeNames[this.types.getInt(i)], this.typeOccurrenceIdfs.getDouble(i));
+            }
+        }
+
+        super.forEachTypeOccurrence((entityId, type, idf) -> {
+            if (index(Id.copy(entityId)) < 0)
+                consumer.accept(entityId, type, idf);
+        });
+    }
+
+    @Override
+    public Iterator<String> allPredicates()
+    {
+        Set<String> predicates = new HashSet<>();
+        long occurrences = this.predicateStarts.getLong(this.entityCount);
+
+        for (long i = 0; i < occurrences; i++)
+        {
+            predicates.add(this.predicateNames[this.predicates.getInt(i)]);
+        }
+
+        super.allPredicates().forEachRemaining(predicates::add);
+        return predicates.iterator();
+    }
+
+    @Override
+    public Iterator<Id> allIds()
+    {
+        List<Id> inserted = new ArrayList<>();
+        super.allIds().forEachRemaining(id -> {
+            if (index(id) < 0)
+                inserted.add(id);
+        });
+
+        return new Iterator<>()
+        {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return this.next < entityCount + inserted.size();
+            }
+
+            @Override
+            public Id next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                int index = this.next++;
+                return index < entityCount ? Id.copy(ids.getInt(index)) : inserted.get(index - entityCount);
+            }
+        };
+    }
+
+    @Override
+    public void write(DataOutput output)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity table cannot be written");
+    }
+}
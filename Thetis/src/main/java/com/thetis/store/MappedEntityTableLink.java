@@ -0,0 +1,327 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.util.*;
+
+/**
+ * Read-only entity-table link queried in place from memory-mapped sections of an index file
+ * Both the postings from entity to tables and the forward index from table to entities are mapped
+ * Each posting list is stored as a range of sorted keys with a parallel range of location offsets into one array of packed locations
+ */
+public class MappedEntityTableLink extends EntityTableLink
+{
+    private static final String PREFIX = "mapped.link", DIR = PREFIX + ".dir", TABLES = PREFIX + ".tables",
+            TABLE_ORDER = PREFIX + ".tableOrder", ENTITIES = PREFIX + ".entities", ENTITY_POSTINGS = PREFIX + ".entityPostings",
+            TABLE_POSTINGS = PREFIX + ".tablePostings";
+
+    /**
+     * Posting lists of a sequence of keys
+     */
+    private static final class MappedPostings
+    {
+        private final MappedSection starts, keys, locationStarts, locations;
+
+        MappedPostings(IndexFile file, String name) throws IOException
+        {
+            this.starts = file.map(name + ".starts");
+            this.keys = file.map(name + ".keys");
+            this.locationStarts = file.map(name + ".locationStarts");
+            this.locations = file.map(name + ".locations");
+        }
+
+        long start(int list)
+        {
+            return this.starts.getLong(list);
+        }
+
+        long end(int list)
+        {
+            return this.starts.getLong(list + 1);
+        }
+
+        int key(long posting)
+        {
+            return this.keys.getInt(posting);
+        }
+
+        long indexOf(int list, int key)
+        {
+            return this.keys.binarySearch(start(list), end(list), key);
+        }
+
+        List<Pair<Integer, Integer>> locations(long posting)
+        {
+            long start = this.locationStarts.getLong(posting), end = this.locationStarts.getLong(posting + 1);
+            List<Pair<Integer, Integer>> locations = new ArrayList<>((int) (end - start));
+
+            for (long i = start; i < end; i++)
+            {
+                long location = this.locations.getLong(i);
+                locations.add(new Pair<>(row(location), column(location)));
+            }
+
+            return locations;
+        }
+
+        static void write(IndexFile.Writer writer, String name, Postings[] postings) throws IOException
+        {
+            writer.section(name + ".starts", output -> {
+                long start = 0;
+                output.writeLong(start);
+
+                for (Postings list : postings)
+                {
+                    start += list.size;
+                    output.writeLong(start);
+                }
+            });
+            writer.section(name + ".keys", output -> {
+                for (Postings list : postings)
+                {
+                    IndexFile.writeInts(output, list.tables, list.size);
+                }
+            });
+            writer.section(name + ".locationStarts", output -> {
+                long start = 0;
+                output.writeLong(start);
+
+                for (Postings list : postings)
+                {
+                    for (int i = 0; i < list.size; i++)
+                    {
+                        output.writeLong(start + list.starts[i + 1]);
+                    }
+
+                    start += list.starts[list.size];
+                }
+            });
+            writer.section(name + ".locations", output -> {
+                for (Postings list : postings)
+                {
+                    for (int i = 0; i < list.starts[list.size]; i++)
+                    {
+                        output.writeLong(list.locations[i]);
+                    }
+                }
+            });
+        }
+    }
+
+    private final MappedStrings tables;
+    private final MappedSection tableOrder, entities;
+    private final MappedPostings entityPostings, tablePostings;
+    private final int entityCount;
+
+    private MappedEntityTableLink(IndexFile file) throws IOException
+    {
+        this.tables = new MappedStrings(file, TABLES);
+        this.tableOrder = file.map(TABLE_ORDER);
+        this.entities = file.map(ENTITIES);
+        this.entityPostings = new MappedPostings(file, ENTITY_POSTINGS);
+        this.tablePostings = new MappedPostings(file, TABLE_POSTINGS);
+        this.entityCount = (int) (this.entities.length() / Integer.BYTES);
+    }
+
+    /**
+     * Maps the entity-table link of an index file written by <code>write</code>
+     * @param file Index file
+     * @return Mapped entity-table link
+     * @throws IOException
+     */
+    public static MappedEntityTableLink open(IndexFile file) throws IOException
+    {
+        MappedEntityTableLink link = new MappedEntityTableLink(file);
+        link.setDirectory(file.read(DIR, input -> input.readBoolean() ? input.readUTF() : null));
+
+        return link;
+    }
+
+    /**
+     * Writes an entity-table link in the mapped layout
+     * The forward index is built if it is missing
+     * @param writer Index file writer
+     * @param link Entity-table link to write
+     * @throws IOException
+     */
+    public static void write(IndexFile.Writer writer, EntityTableLink link) throws IOException
+    {
+        if (!link.hasForwardIndex())
+        {
+            link.buildForwardIndex();
+        }
+
+        String[] tables = link.tableNames.toArray(new String[0]);
+        int[] tableOrder = MappedStrings.sortedOrder(tables), entities = new int[link.idx.size()];
+        Postings[] postings = new Postings[entities.length];
+        int i = 0;
+
+        for (Id id : link.idx.keySet())
+        {
+            entities[i++] = id.getId();
+        }
+
+        Arrays.sort(entities);
+
+        for (i = 0; i < entities.length; i++)
+        {
+            postings[i] = link.idx.get(Id.copy(entities[i]));
+        }
+
+        writer.section(DIR, output -> {
+            output.writeBoolean(link.getDirectory() != null);
+
+            if (link.getDirectory() != null)
+            {
+                output.writeUTF(link.getDirectory());
+            }
+        });
+        MappedStrings.write(writer, TABLES, tables, null);
+        writer.section(TABLE_ORDER, output -> IndexFile.writeInts(output, tableOrder, tableOrder.length));
+        writer.section(ENTITIES, output -> IndexFile.writeInts(output, entities, entities.length));
+        MappedPostings.write(writer, ENTITY_POSTINGS, postings);
+        MappedPostings.write(writer, TABLE_POSTINGS, link.forward);
+    }
+
+    private int entityIndex(Id key)
+    {
+        return (int) this.entities.binarySearch(0, this.entityCount, key.getId());
+    }
+
+    private int tableId(String fileName)
+    {
+        return this.tables.indexOf(fileName, this.tableOrder);
+    }
+
+    @Override
+    public List<String> find(Id key)
+    {
+        int entity = entityIndex(key);
+
+        if (entity < 0)
+            return new ArrayList<>();
+
+        long start = this.entityPostings.start(entity), end = this.entityPostings.end(entity);
+        List<String> tables = new ArrayList<>((int) (end - start));
+
+        for (long posting = start; posting < end; posting++)
+        {
+            tables.add(this.tables.get(this.entityPostings.key(posting)));
+        }
+
+        return tables;
+    }
+
+    @Override
+    public boolean contains(Id key)
+    {
+        return entityIndex(key) >= 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.entityCount;
+    }
+
+    @Override
+    public int tableCount()
+    {
+        return this.tables.size();
+    }
+
+    @Override
+    public List<Pair<Integer, Integer>> getLocations(Id key, String fileName)
+    {
+        int entity = entityIndex(key), table = tableId(fileName);
+
+        if (entity < 0 || table < 0)
+            return null;
+
+        long posting = this.entityPostings.indexOf(entity, table);
+        return posting >= 0 ? this.entityPostings.locations(posting) : null;
+    }
+
+    @Override
+    public boolean hasForwardIndex()
+    {
+        return true;
+    }
+
+    @Override
+    public void buildForwardIndex() {}
+
+    @Override
+    public Set<Id> tableToEntities(String fileName)
+    {
+        Set<Id> entities = new HashSet<>();
+        int table = tableId(fileName);
+
+        if (table < 0)
+            return entities;
+
+        for (long posting = this.tablePostings.start(table); posting < this.tablePostings.end(table); posting++)
+        {
+            entities.add(Id.copy(this.tablePostings.key(posting)));
+        }
+
+        return entities;
+    }
+
+    @Override
+    public Map<Id, List<Pair<Integer, Integer>>> tableLocations(String fileName)
+    {
+        Map<Id, List<Pair<Integer, Integer>>> locations = new HashMap<>();
+        int table = tableId(fileName);
+
+        if (table < 0)
+            return locations;
+
+        for (long posting = this.tablePostings.start(table); posting < this.tablePostings.end(table); posting++)
+        {
+            locations.put(Id.copy(this.tablePostings.key(posting)), this.tablePostings.locations(posting));
+        }
+
+        return locations;
+    }
+
+    @Override
+    public void insert(Id key, List<String> fileNames)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link is read-only");
+    }
+
+    @Override
+    public boolean remove(Id key)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link is read-only");
+    }
+
+    @Override
+    public void addLocation(Id key, String fileName, List<Pair<Integer, Integer>> locations)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link is read-only");
+    }
+
+    @Override
+    public void clear()
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link is read-only");
+    }
+
+    @Override
+    public void write(DataOutput output)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link cannot be written");
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out)
+    {
+        throw new UnsupportedOperationException("Memory-mapped entity-table link cannot be written");
+    }
+}
@@ -0,0 +1,109 @@
+package com.thetis.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a section of an index file
+ * A section is mapped in chunks of 1 GB, so primitive values written at multiples of their size never cross chunks
+ * All reads are absolute, so a section can be read by many threads
+ */
+final class MappedSection
+{
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final long length;
+
+    MappedSection(FileChannel channel, long offset, long length) throws IOException
+    {
+        int count = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+        this.chunks = new ByteBuffer[count];
+        this.length = length;
+
+        for (int i = 0; i < count; i++)
+        {
+            long start = (long) i << CHUNK_SHIFT;
+            this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(length - start, 1L << CHUNK_SHIFT));
+        }
+    }
+
+    /**
+     * @return Length of section in bytes
+     */
+    long length()
+    {
+        return this.length;
+    }
+
+    int getInt(long index)
+    {
+        long position = index * Integer.BYTES;
+        return this.chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    long getLong(long index)
+    {
+        long position = index * Long.BYTES;
+        return this.chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    float getFloat(long index)
+    {
+        long position = index * Float.BYTES;
+        return this.chunks[(int) (position >>> CHUNK_SHIFT)].getFloat((int) (position & CHUNK_MASK));
+    }
+
+    double getDouble(long index)
+    {
+        long position = index * Double.BYTES;
+        return this.chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) (position & CHUNK_MASK));
+    }
+
+    /**
+     * Copies bytes, which may cross chunks
+     * @param position Byte position in section
+     * @param bytes Destination, which is filled entirely
+     */
+    void get(long position, byte[] bytes)
+    {
+        int copied = 0;
+
+        while (copied < bytes.length)
+        {
+            long current = position + copied;
+            ByteBuffer chunk = this.chunks[(int) (current >>> CHUNK_SHIFT)];
+            int offset = (int) (current & CHUNK_MASK), length = Math.min(bytes.length - copied, chunk.capacity() - offset);
+            chunk.get(offset, bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Binary search in a sorted range of ints
+     * @return Index of key, or <code>-(insertion point) - 1</code> if the key is not found
+     */
+    long binarySearch(long from, long to, int key)
+    {
+        long low = from, high = to - 1;
+
+        while (low <= high)
+        {
+            long mid = (low + high) >>> 1;
+            int value = getInt(mid);
+
+            if (value < key)
+                low = mid + 1;
+
+            else if (value > key)
+                high = mid - 1;
+
+            else
+                return mid;
+        }
+
+        return -(low + 1);
+    }
+}
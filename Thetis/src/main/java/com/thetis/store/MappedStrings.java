@@ -0,0 +1,117 @@
+package com.thetis.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Memory-mapped array of strings
+ * Strings are stored as concatenated UTF-8 bytes in one section and their start offsets in another
+ */
+final class MappedStrings
+{
+    private final MappedSection offsets, bytes;
+    private final int size;
+
+    MappedStrings(IndexFile file, String name) throws IOException
+    {
+        this.offsets = file.map(name + ".offsets");
+        this.bytes = file.map(name + ".bytes");
+        this.size = (int) (this.offsets.length() / Long.BYTES) - 1;
+    }
+
+    int size()
+    {
+        return this.size;
+    }
+
+    String get(long index)
+    {
+        return new String(bytes(index), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytes(long index)
+    {
+        long start = this.offsets.getLong(index);
+        byte[] string = new byte[(int) (this.offsets.getLong(index + 1) - start)];
+        this.bytes.get(start, string);
+
+        return string;
+    }
+
+    /**
+     * Binary search for a string
+     * The strings must either be written in the order of <code>sortedOrder</code>, or that order must be given
+     * @param string String to find
+     * @param order Section of string indexes in sorted order, or null if the strings themselves are sorted
+     * @return Index of string, or a negative number if it is not found
+     */
+    int indexOf(String string, MappedSection order)
+    {
+        byte[] key = string.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = this.size - 1;
+
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1, index = order == null ? mid : order.getInt(mid);
+            int comparison = Arrays.compareUnsigned(bytes(index), key);
+
+            if (comparison < 0)
+                low = mid + 1;
+
+            else if (comparison > 0)
+                high = mid - 1;
+
+            else
+                return index;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indexes of strings in the order used by <code>indexOf</code>
+     */
+    static int[] sortedOrder(String[] strings)
+    {
+        byte[][] encoded = new byte[strings.length][];
+
+        for (int i = 0; i < strings.length; i++)
+        {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        return IntStream.range(0, strings.length).boxed()
+                .sorted((i1, i2) -> Arrays.compareUnsigned(encoded[i1], encoded[i2]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Writes strings in the given order
+     * @param writer Index file writer
+     * @param name Name prefix of the sections
+     * @param strings Strings to write
+     * @param order Indexes of strings in the order they are written, or null to write them in their given order
+     * @throws IOException
+     */
+    static void write(IndexFile.Writer writer, String name, String[] strings, int[] order) throws IOException
+    {
+        writer.section(name + ".offsets", output -> {
+            long offset = 0;
+            output.writeLong(offset);
+
+            for (int i = 0; i < strings.length; i++)
+            {
+                offset += strings[order == null ? i : order[i]].getBytes(StandardCharsets.UTF_8).length;
+                output.writeLong(offset);
+            }
+        });
+        writer.section(name + ".bytes", output -> {
+            for (int i = 0; i < strings.length; i++)
+            {
+                output.write(strings[order == null ? i : order[i]].getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+}
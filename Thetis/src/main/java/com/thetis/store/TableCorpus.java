@@ -0,0 +1,313 @@
+package com.thetis.store;
+
+import com.google.common.io.CountingOutputStream;
+import com.thetis.structures.Id;
+import com.thetis.structures.table.LinkedTable;
+import com.thetis.tables.JsonTable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Corpus of pre-linked tables keyed by table file name
+ * Tables are either held in memory while indexing or read on demand from a corpus file written by <code>write</code>
+ * The corpus file contains the table blocks followed by an offset table and a trailing pointer to the offset table
+ */
+public class TableCorpus implements Index<String, LinkedTable>
+{
+    private static final int MAGIC = 0x54424c43;
+
+    private final Map<String, LinkedTable> tables = new ConcurrentHashMap<>();
+    private final Map<String, long[]> offsets = new HashMap<>();  // Table name to block offset and length in corpus file
+    private FileChannel channel = null;
+
+    public TableCorpus() {}
+
+    private TableCorpus(FileChannel channel)
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Links every cell of a JSON table to the first of its links that map to a known KG entity
+     * @param table JSON table
+     * @param linker Linker from input links to KG entities
+     * @return Pre-linked table
+     */
+    public static LinkedTable link(JsonTable table, EntityLinking linker)
+    {
+        int rows = table.rows.size(), columns = table.numCols;
+
+        for (List<JsonTable.TableCell> row : table.rows)
+        {
+            columns = Math.max(columns, row.size());
+        }
+
+        String[] headers = new String[table.headers != null ? table.headers.size() : 0];
+
+        for (int i = 0; i < headers.length; i++)
+        {
+            String text = table.headers.get(i).text;
+            headers[i] = text != null ? text : "";
+        }
+
+        LinkedTable linked = new LinkedTable(rows, columns, table.numDataRows, headers);
+
+        for (int row = 0; row < rows; row++)
+        {
+            List<JsonTable.TableCell> tableRow = table.rows.get(row);
+
+            for (int column = 0; column < tableRow.size(); column++)
+            {
+                for (String link : tableRow.get(column).links)
+                {
+                    String uri = linker.mapTo(link);
+
+                    if (uri != null)
+                    {
+                        Id entityId = linker.kgUriLookup(uri);
+
+                        if (entityId != null)
+                        {
+                            linked.setEntity(row, column, entityId.getId());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        return linked;
+    }
+
+    @Override
+    public void insert(String tableName, LinkedTable table)
+    {
+        this.tables.put(tableName, table);
+    }
+
+    @Override
+    public boolean remove(String tableName)
+    {
+        boolean removed = this.tables.remove(tableName) != null;
+
+        synchronized (this.offsets)
+        {
+            return this.offsets.remove(tableName) != null || removed;
+        }
+    }
+
+    /**
+     * Finds pre-linked table
+     * Tables not held in memory are read from the corpus file
+     * @param tableName Table file name excluding directory
+     * @return Pre-linked table or null if the table is not in the corpus
+     */
+    @Override
+    public LinkedTable find(String tableName)
+    {
+        LinkedTable table = this.tables.get(tableName);
+
+        if (table != null || this.channel == null)
+        {
+            return table;
+        }
+
+        long[] location;
+
+        synchronized (this.offsets)
+        {
+            location = this.offsets.get(tableName);
+        }
+
+        if (location == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            ByteBuffer block = ByteBuffer.allocate((int) location[1]);
+
+            while (block.hasRemaining())
+            {
+                if (this.channel.read(block, location[0] + block.position()) == -1)
+                {
+                    throw new EOFException("Corpus file ended before table '" + tableName + "'");
+                }
+            }
+
+            return readTable(new DataInputStream(new ByteArrayInputStream(block.array())));
+        }
+
+        catch (IOException e)
+        {
+            throw new RuntimeException("Failed reading table '" + tableName + "' from corpus: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean contains(String tableName)
+    {
+        if (this.tables.containsKey(tableName))
+        {
+            return true;
+        }
+
+        synchronized (this.offsets)
+        {
+            return this.offsets.containsKey(tableName);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return tableNames().size();
+    }
+
+    @Override
+    public void clear()
+    {
+        this.tables.clear();
+
+        synchronized (this.offsets)
+        {
+            this.offsets.clear();
+        }
+    }
+
+    /**
+     * Names of all tables in corpus
+     * @return Set of table file names
+     */
+    public Set<String> tableNames()
+    {
+        Set<String> names = new HashSet<>(this.tables.keySet());
+
+        synchronized (this.offsets)
+        {
+            names.addAll(this.offsets.keySet());
+        }
+
+        return names;
+    }
+
+    /**
+     * Writes all tables to a single corpus file
+     * @param file Output corpus file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException
+    {
+        Map<String, long[]> blocks = new LinkedHashMap<>();
+
+        try (CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+             DataOutputStream output = new DataOutputStream(counter))
+        {
+            output.writeInt(MAGIC);
+
+            for (String tableName : tableNames())
+            {
+                long start = counter.getCount();
+                writeTable(find(tableName), output);
+                blocks.put(tableName, new long[]{start, counter.getCount() - start});
+            }
+
+            long directory = counter.getCount();
+            output.writeInt(blocks.size());
+
+            for (Map.Entry<String, long[]> entry : blocks.entrySet())
+            {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue()[0]);
+                output.writeInt((int) entry.getValue()[1]);
+            }
+
+            output.writeLong(directory);
+            output.flush();
+        }
+    }
+
+    /**
+     * Opens a corpus file written by <code>write</code>
+     * Only the offset table is read into memory, and tables are read when requested
+     * @param file Corpus file
+     * @return Corpus backed by the given file
+     * @throws IOException
+     */
+    public static TableCorpus read(File file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        TableCorpus corpus = new TableCorpus(channel);
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES), trailer = ByteBuffer.allocate(Long.BYTES);
+        channel.read(header, 0);
+        channel.read(trailer, size - Long.BYTES);
+
+        if (header.getInt(0) != MAGIC)
+        {
+            channel.close();
+            throw new IOException("'" + file + "' is not a table corpus file");
+        }
+
+        // The stream is not closed as this would close the channel used to read tables later on
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(trailer.getLong(0)))));
+        int count = input.readInt();
+
+        for (int i = 0; i < count; i++)
+        {
+            String tableName = input.readUTF();
+            long offset = input.readLong();
+            int length = input.readInt();
+            corpus.offsets.put(tableName, new long[]{offset, length});
+        }
+
+        return corpus;
+    }
+
+    private static void writeTable(LinkedTable table, DataOutputStream output) throws IOException
+    {
+        String[] headers = table.headers();
+        int[] entities = table.entities();
+        output.writeInt(table.rowCount());
+        output.writeInt(table.columnCount());
+        output.writeInt(table.dataRows());
+        output.writeInt(headers.length);
+
+        for (String header : headers)
+        {
+            output.writeUTF(header);
+        }
+
+        for (int entity : entities)
+        {
+            output.writeInt(entity);
+        }
+    }
+
+    private static LinkedTable readTable(DataInputStream input) throws IOException
+    {
+        int rows = input.readInt(), columns = input.readInt(), dataRows = input.readInt();
+        String[] headers = new String[input.readInt()];
+
+        for (int i = 0; i < headers.length; i++)
+        {
+            headers[i] = input.readUTF();
+        }
+
+        int[] entities = new int[rows * columns];
+
+        for (int i = 0; i < entities.length; i++)
+        {
+            entities[i] = input.readInt();
+        }
+
+        return new LinkedTable(rows, columns, dataRows, headers, entities);
+    }
+}
@@ -1,28 +1,94 @@
 package com.thetis.store.lsh;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
 
+/**
+ * Sparse group of buckets, where only non-empty buckets are materialized
+ * During build, buckets are stored in an open-addressing table keyed by bucket index
+ * Once frozen, buckets are stored in compressed sparse row form of sorted bucket indices, offsets, and sorted value IDs
+ */
 public class BucketGroup<K, V> implements Serializable
 {
-    private List<Bucket<K, V>> buckets;
+    private static final int EMPTY_SLOT = -1, INITIAL_SLOTS = 16;
+    private static final int[] EMPTY = new int[0];
+    private final int bucketCount;
+
+    // Build form
+    private int[] slotKeys;
+    private Bucket<K, V>[] slotBuckets;
+    private int used = 0;
+
+    // Frozen form
+    private int[] frozenKeys = null, offsets = null, frozenValues = null;
+    private Map<Integer, int[]> frozenOverlay = null;  // Buckets that have been added to after freezing
 
     public BucketGroup(int buckets)
     {
-        this.buckets = new ArrayList<>(buckets);
+        this.bucketCount = buckets;
+        allocateSlots(INITIAL_SLOTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocateSlots(int slots)
+    {
+        this.slotKeys = new int[slots];
+        this.slotBuckets = (Bucket<K, V>[]) new Bucket[slots];
+        Arrays.fill(this.slotKeys, EMPTY_SLOT);
+    }
 
-        for (int i = 0; i < buckets; i++)
+    private static int mix(int idx)
+    {
+        int h = idx * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Slot of a bucket index in the open-addressing table
+     * @return Slot of bucket or the empty slot where it would be inserted
+     */
+    private int slot(int idx)
+    {
+        int mask = this.slotKeys.length - 1, slot = mix(idx) & mask;
+
+        while (this.slotKeys[slot] != EMPTY_SLOT && this.slotKeys[slot] != idx)
         {
-            this.buckets.add(new Bucket<>());
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow()
+    {
+        int[] keys = this.slotKeys;
+        Bucket<K, V>[] buckets = this.slotBuckets;
+        allocateSlots(keys.length * 2);
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != EMPTY_SLOT)
+            {
+                int slot = slot(keys[i]);
+                this.slotKeys[slot] = keys[i];
+                this.slotBuckets[slot] = buckets[i];
+            }
         }
     }
 
     @Override
     public String toString()
     {
-        return "{" + this.buckets.toString() + "}";
+        StringBuilder builder = new StringBuilder("{");
+
+        for (int idx : bucketIndices())
+        {
+            builder.append(idx).append('=').append(isFrozen() ? Arrays.toString(valueIds(idx)) : get(idx)).append(' ');
+        }
+
+        return builder.toString().trim() + "}";
     }
 
     /**
@@ -33,7 +99,134 @@ public class BucketGroup<K, V> implements Serializable
      */
     public void add(int idx, K key, V value)
     {
-        this.buckets.get(idx).add(key, value);
+        if (isFrozen())
+        {
+            throw new RuntimeException("Cannot add key-value pair to frozen bucket group");
+        }
+
+        Objects.checkIndex(idx, this.bucketCount);
+        int slot = slot(idx);
+
+        if (this.slotKeys[slot] == EMPTY_SLOT)
+        {
+            if ((this.used + 1) * 2 > this.slotKeys.length)
+            {
+                grow();
+                slot = slot(idx);
+            }
+
+            this.slotKeys[slot] = idx;
+            this.slotBuckets[slot] = new Bucket<>();
+            this.used++;
+        }
+
+        this.slotBuckets[slot].add(key, value);
+    }
+
+    /**
+     * Adds a value ID to a bucket of a frozen group
+     * The bucket is copied, so concurrent readers keep seeing a consistent bucket
+     * @param idx Index of bucket to add value ID in
+     * @param valueId ID of value to be added
+     */
+    public void addFrozen(int idx, int valueId)
+    {
+        Objects.checkIndex(idx, this.bucketCount);
+        int[] bucket = valueIds(idx);
+        int position = Arrays.binarySearch(bucket, valueId);
+
+        if (position >= 0)
+        {
+            return;
+        }
+
+        position = -position - 1;
+        int[] extended = new int[bucket.length + 1];
+        System.arraycopy(bucket, 0, extended, 0, position);
+        extended[position] = valueId;
+        System.arraycopy(bucket, position, extended, position + 1, bucket.length - position);
+        this.frozenOverlay.put(idx, extended);
+    }
+
+    /**
+     * Replaces all buckets by compressed sparse rows of sorted and de-duplicated value IDs
+     * Keys are dropped, as only values are needed when searching
+     * @param valueIds Mapping from value to value ID
+     */
+    public void freeze(ToIntFunction<V> valueIds)
+    {
+        freeze(valueIds, new long[0], 0);
+    }
+
+    /**
+     * Freezes the group together with additional entries packed by {@link BucketPartial}
+     * @param valueIds Mapping from value to value ID
+     * @param entries Packed bucket index and value ID entries, which may be sorted in place
+     * @param count Number of entries to use
+     */
+    void freeze(ToIntFunction<V> valueIds, long[] entries, int count)
+    {
+        if (isFrozen())
+        {
+            return;
+        }
+
+        for (int idx : bucketIndices())
+        {
+            for (V value : get(idx))
+            {
+                if (count == entries.length)
+                {
+                    entries = Arrays.copyOf(entries, Math.max(16, count * 2));
+                }
+
+                entries[count++] = BucketPartial.pack(idx, valueIds.applyAsInt(value));
+            }
+        }
+
+        Arrays.sort(entries, 0, count);
+        int rows = 0, distinct = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (i == 0 || entries[i] != entries[i - 1])
+            {
+                if (distinct == 0 || BucketPartial.bucketIndex(entries[i]) != BucketPartial.bucketIndex(entries[distinct - 1]))
+                {
+                    rows++;
+                }
+
+                entries[distinct++] = entries[i];
+            }
+        }
+
+        int[] keys = new int[rows], offsets = new int[rows + 1], values = new int[distinct];
+
+        for (int i = 0, row = -1; i < distinct; i++)
+        {
+            int idx = BucketPartial.bucketIndex(entries[i]);
+
+            if (row == -1 || keys[row] != idx)
+            {
+                keys[++row] = Objects.checkIndex(idx, this.bucketCount);
+                offsets[row] = i;
+            }
+
+            values[i] = BucketPartial.valueId(entries[i]);
+        }
+
+        offsets[rows] = distinct;
+        this.offsets = offsets;
+        this.frozenValues = values;
+        this.frozenOverlay = new ConcurrentHashMap<>();
+        this.frozenKeys = keys;
+        this.slotKeys = null;
+        this.slotBuckets = null;
+    }
+
+    public boolean isFrozen()
+    {
+        return this.frozenKeys != null;
     }
 
     /**
@@ -42,7 +235,28 @@ public class BucketGroup<K, V> implements Serializable
      */
     public int size()
     {
-        return this.buckets.size();
+        return this.bucketCount;
+    }
+
+    /**
+     * Sorted indices of non-empty buckets
+     * @return Indices of non-empty buckets
+     */
+    public int[] bucketIndices()
+    {
+        if (isFrozen())
+        {
+            if (this.frozenOverlay.isEmpty())
+            {
+                return this.frozenKeys.clone();
+            }
+
+            Set<Integer> indices = new TreeSet<>(this.frozenOverlay.keySet());
+            Arrays.stream(this.frozenKeys).forEach(indices::add);
+            return indices.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        return Arrays.stream(this.slotKeys).filter(key -> key != EMPTY_SLOT).sorted().toArray();
     }
 
     /**
@@ -52,15 +266,81 @@ public class BucketGroup<K, V> implements Serializable
      */
     public Set<V> get(int idx)
     {
-        return this.buckets.get(idx).all();
+        if (isFrozen())
+        {
+            throw new RuntimeException("Values of frozen bucket group must be read by their IDs");
+        }
+
+        Objects.checkIndex(idx, this.bucketCount);
+        int slot = slot(idx);
+        return this.slotKeys[slot] == EMPTY_SLOT ? new HashSet<>() : this.slotBuckets[slot].all();
     }
 
     /**
-     * All buckets in group
-     * @return All buckets in group
+     * Sorted value IDs in bucket at specified index of a frozen group
+     * @param idx Bucket index
+     * @return Value IDs in bucket
+     */
+    public int[] valueIds(int idx)
+    {
+        if (!this.frozenOverlay.isEmpty())
+        {
+            int[] overlay = this.frozenOverlay.get(idx);
+
+            if (overlay != null)
+            {
+                return overlay;
+            }
+        }
+
+        int row = Arrays.binarySearch(this.frozenKeys, idx);
+        return row < 0 ? EMPTY : Arrays.copyOfRange(this.frozenValues, this.offsets[row], this.offsets[row + 1]);
+    }
+
+    /**
+     * Votes for every value ID in bucket at specified index of a frozen group without copying the bucket
+     * @param idx Bucket index
+     * @param counter Vote counter of the current search
+     */
+    void vote(int idx, VoteCounter counter)
+    {
+        if (!this.frozenOverlay.isEmpty())
+        {
+            int[] overlay = this.frozenOverlay.get(idx);
+
+            if (overlay != null)
+            {
+                counter.vote(overlay, 0, overlay.length);
+                return;
+            }
+        }
+
+        int row = Arrays.binarySearch(this.frozenKeys, idx);
+
+        if (row >= 0)
+        {
+            counter.vote(this.frozenValues, this.offsets[row], this.offsets[row + 1]);
+        }
+    }
+
+    /**
+     * Non-empty buckets in group
+     * @return Non-empty buckets in group ordered by bucket index
      */
     public List<Bucket<K, V>> buckets()
     {
-        return this.buckets;
+        if (isFrozen())
+        {
+            throw new RuntimeException("Buckets of frozen bucket group have been replaced by value IDs");
+        }
+
+        List<Bucket<K, V>> buckets = new ArrayList<>(this.used);
+
+        for (int idx : bucketIndices())
+        {
+            buckets.add(this.slotBuckets[slot(idx)]);
+        }
+
+        return buckets;
     }
 }
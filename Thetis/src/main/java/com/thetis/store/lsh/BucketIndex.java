@@ -2,11 +2,27 @@ package com.thetis.store.lsh;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Bucket groups are filled with key-value pairs during build and then frozen into sorted arrays of value IDs
+ * A parallel build lets every worker fill its own partial buckets, which are merged per bucket group at the end
+ * Searching a frozen index counts votes per value ID in a per-thread array, so probing buckets does not allocate
+ * Searches do not lock: frozen buckets are published by the volatile frozen flag, and a value added after freezing is
+ * published by replacing the value list before the bucket containing it is published by its group
+ */
 public abstract class BucketIndex<K, V> implements Serializable
 {
     private List<BucketGroup<K, V>> groups;
+    private volatile List<V> values = new ArrayList<>();    // Replaced rather than appended to once frozen
+    private Map<V, Integer> valueIds = new HashMap<>();
+    private volatile boolean frozen = false;
+    private transient ThreadLocal<BucketPartial> partials = null;
+    private transient List<BucketPartial> workerPartials = null;
+    private static final ThreadLocal<VoteCounter> VOTES = ThreadLocal.withInitial(VoteCounter::new);
 
     protected BucketIndex(int groups, int groupBuckets)
     {
@@ -54,7 +70,171 @@ public abstract class BucketIndex<K, V> implements Serializable
      */
     protected void add(int group, int bucketIndex, K key, V value)
     {
-        this.groups.get(group).add(bucketIndex, key, value);
+        if (!this.frozen)
+        {
+            synchronized (this)
+            {
+                if (!this.frozen)
+                {
+                    this.groups.get(group).add(bucketIndex, key, value);
+                    return;
+                }
+            }
+        }
+
+        synchronized (this)
+        {
+            this.groups.get(group).addFrozen(bucketIndex, valueId(value));
+        }
+    }
+
+    private int valueId(V value)
+    {
+        Integer id = this.valueIds.get(value);
+
+        if (id == null)
+        {
+            id = this.values.size();
+
+            if (this.frozen)
+            {
+                List<V> values = new ArrayList<>(this.values);   // Concurrent searches keep reading the old list
+                values.add(value);
+                this.values = values;
+            }
+
+            else
+            {
+                this.values.add(value);
+            }
+
+            this.valueIds.put(value, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Freezes all bucket groups into sorted arrays of value IDs
+     * This should be called once the index has been built, and it is otherwise called by the first search
+     * Key-value pairs can still be added after freezing
+     */
+    public synchronized void freeze()
+    {
+        if (this.frozen)
+        {
+            return;
+        }
+
+        for (BucketGroup<K, V> group : this.groups)
+        {
+            group.freeze(this::valueId);
+        }
+
+        this.frozen = true;
+    }
+
+    public boolean isFrozen()
+    {
+        return this.frozen;
+    }
+
+    /**
+     * ID of a value, which is assigned on first use
+     * Workers should look up the ID once per value rather than once per added entry
+     * @param value Value to find ID of
+     * @return ID of value
+     */
+    protected synchronized int valueIdOf(V value)
+    {
+        return valueId(value);
+    }
+
+    /**
+     * Starts a parallel build, where every worker thread adds to its own partial buckets without locking
+     */
+    protected void beginPartials()
+    {
+        List<BucketPartial> workerPartials = Collections.synchronizedList(new ArrayList<>());
+        this.workerPartials = workerPartials;
+        this.partials = ThreadLocal.withInitial(() -> {
+            BucketPartial partial = new BucketPartial(this.groups.size());
+            workerPartials.add(partial);
+            return partial;
+        });
+    }
+
+    /**
+     * Adds a value ID to the partial buckets of the calling worker thread
+     * @param group Group containing bucket to be populated
+     * @param bucketIndex Index of bucket within group to be populated
+     * @param valueId ID of value as returned by {@link #valueIdOf(Object)}
+     */
+    protected void addPartial(int group, int bucketIndex, int valueId)
+    {
+        this.partials.get().add(group, bucketIndex, valueId);
+    }
+
+    /**
+     * Merges the partial buckets of all workers into the bucket groups and freezes the index
+     * All workers must have finished adding, and bucket groups are merged in parallel
+     * @param threads Number of threads to merge bucket groups with
+     */
+    protected void mergePartials(int threads)
+    {
+        List<BucketPartial> workerPartials = this.workerPartials != null ? this.workerPartials : List.of();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<?>> futures = new ArrayList<>(this.groups.size());
+        this.partials = null;
+        this.workerPartials = null;
+
+        for (int group = 0; group < this.groups.size(); group++)
+        {
+            int mergeGroup = group;
+            futures.add(executor.submit(() -> mergeGroup(mergeGroup, workerPartials)));
+        }
+
+        try
+        {
+            for (Future<?> f : futures)
+            {
+                f.get();
+            }
+        }
+
+        catch (InterruptedException | ExecutionException e)
+        {
+            throw new RuntimeException("Error in multi-threaded merging of LSH buckets: " + e.getMessage());
+        }
+
+        finally
+        {
+            executor.shutdown();
+        }
+
+        this.frozen = true;
+    }
+
+    private void mergeGroup(int group, List<BucketPartial> workerPartials)
+    {
+        int count = 0;
+
+        for (BucketPartial partial : workerPartials)
+        {
+            count += partial.size(group);
+        }
+
+        long[] entries = new long[count];
+        int offset = 0;
+
+        for (BucketPartial partial : workerPartials)
+        {
+            System.arraycopy(partial.entries(group), 0, entries, offset, partial.size(group));
+            offset += partial.size(group);
+            partial.clear(group);
+        }
+
+        this.groups.get(group).freeze(this::valueIdOf, entries, count);
     }
 
     /**
@@ -65,7 +245,21 @@ public abstract class BucketIndex<K, V> implements Serializable
      */
     protected Set<V> get(int group, int bucketIndex)
     {
-        return this.groups.get(group).get(bucketIndex);
+        if (!this.frozen)
+        {
+            return this.groups.get(group).get(bucketIndex);
+        }
+
+        int[] ids = this.groups.get(group).valueIds(bucketIndex);
+        List<V> values = this.values;
+        Set<V> bucketValues = new HashSet<>(ids.length);
+
+        for (int id : ids)
+        {
+            bucketValues.add(values.get(id));
+        }
+
+        return bucketValues;
     }
 
     @Override
@@ -94,18 +288,43 @@ public abstract class BucketIndex<K, V> implements Serializable
         return keys;
     }
 
+    /**
+     * Finds values that occur in at least a given number of the buckets of the keys
+     * @param keys Bucket index per bucket group
+     * @param vote Minimum number of buckets a value must occur in
+     * @return Values that occur in enough buckets
+     */
     protected Set<V> search(List<Integer> keys, int vote)
     {
-        Map<V, Integer> occurrences = new HashMap<>();
+        if (!this.frozen)
+        {
+            freeze();
+        }
+
+        VoteCounter counter = VOTES.get();
+        counter.ensureCapacity(this.values.size());
 
         for (int group = 0; group < keys.size(); group++)
         {
-            Set<V> bucketTables = get(group, keys.get(group));
-            bucketTables.forEach(t -> occurrences.put(t, occurrences.containsKey(t) ? occurrences.get(t) + 1 : 1));
+            this.groups.get(group).vote(keys.get(group), counter);
+        }
+
+        Set<V> result = new HashSet<>();
+        List<V> values = this.values;   // Read after voting, so it contains every value found in the buckets
+
+        for (int i = 0; i < counter.touchedCount; i++)
+        {
+            int id = counter.touched[i];
+
+            if (counter.counts[id] >= vote)
+            {
+                result.add(values.get(id));
+            }
+
+            counter.counts[id] = 0;
         }
 
-        return occurrences.entrySet().stream()
-                .filter(e -> e.getValue() >= vote)
-                .map(Map.Entry::getKey).collect(Collectors.toSet());
+        counter.touchedCount = 0;
+        return result;
     }
 }
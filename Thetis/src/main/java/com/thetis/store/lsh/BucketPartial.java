@@ -0,0 +1,60 @@
+package com.thetis.store.lsh;
+
+import java.util.Arrays;
+
+/**
+ * Bucket entries added by a single build worker, one growable array per bucket group
+ * An entry packs the bucket index into the upper and the value ID into the lower 32 bits, so sorting groups entries by bucket
+ */
+final class BucketPartial
+{
+    private final long[][] entries;
+    private final int[] sizes;
+
+    BucketPartial(int groups)
+    {
+        this.entries = new long[groups][16];
+        this.sizes = new int[groups];
+    }
+
+    static long pack(int bucketIndex, int valueId)
+    {
+        return ((long) bucketIndex << 32) | (valueId & 0xFFFFFFFFL);
+    }
+
+    static int bucketIndex(long entry)
+    {
+        return (int) (entry >>> 32);
+    }
+
+    static int valueId(long entry)
+    {
+        return (int) entry;
+    }
+
+    void add(int group, int bucketIndex, int valueId)
+    {
+        if (this.sizes[group] == this.entries[group].length)
+        {
+            this.entries[group] = Arrays.copyOf(this.entries[group], this.sizes[group] * 2);
+        }
+
+        this.entries[group][this.sizes[group]++] = pack(bucketIndex, valueId);
+    }
+
+    long[] entries(int group)
+    {
+        return this.entries[group];
+    }
+
+    int size(int group)
+    {
+        return this.sizes[group];
+    }
+
+    void clear(int group)
+    {
+        this.entries[group] = new long[0];
+        this.sizes[group] = 0;
+    }
+}
@@ -1,10 +1,13 @@
 package com.thetis.store.lsh;
 
+import com.google.common.primitives.Ints;
 import com.thetis.store.EntityLinking;
 import com.thetis.store.EntityTable;
-import com.thetis.connector.Neo4jEndpoint;
+import com.thetis.connector.Factory;
+import com.thetis.connector.KnowledgeGraph;
 import com.thetis.structures.Id;
 import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.graph.Entity;
 import com.thetis.structures.graph.Type;
 import com.thetis.structures.table.Aggregator;
 import com.thetis.structures.table.ColumnAggregator;
@@ -14,6 +17,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -22,6 +26,8 @@ import java.util.stream.Collectors;
 
 /**
  * BucketIndex key is RDF type and value is table ID
+ * Types and predicates of entities are read from the entity table, and the KG is only queried for entities not in the entity table
+ * MinHash signatures use seeded universal hash functions over shingle IDs, so no permutations of the shingle universe are stored
  */
 public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<String, String>, Serializable
 {
@@ -33,22 +39,22 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
     private EntitySet setType;
     private File neo4jConfFile;
     private int shingles, permutationVectors, bandSize;
-    private List<List<Integer>> permutations;
-    private List<PairNonComparable<Id, List<Integer>>> signature;
+    private int[] hashA, hashB;     // MinHash function i is (hashA[i] * x + hashB[i]) mod MERSENNE_PRIME
     private Map<String, Integer> universeElements;
     private HashFunction hash;
     private Random randomGen;
     private transient int threads;
-    private transient final Object lock = new Object();
     private transient EntityLinking linker = null;
-    private final Map<Id, Integer> entityToSigIndex = new HashMap<>();
+    private transient EntityTable entityTable = null;
+    private final Map<Id, int[]> signatures = new ConcurrentHashMap<>();
     private boolean aggregateColumns;
     private Set<String> unimportantElements;
     private static final double UNIMPORTANT_TABLE_PERCENTAGE = 0.5;
+    private static final long MERSENNE_PRIME = (1L << 31) - 1;
 
     /**
      * @param neo4jConfigFile Neo4J connector configuration file
-     * @param permutationVectors Number of permutation vectors used to create min-hash signature (this determines the signature dimension for each entity)
+     * @param permutationVectors Number of MinHash functions used to create min-hash signature (this determines the signature dimension for each entity)
      * @param tables Set of tables containing  entities to be loaded
      * @param hash A hash function to be applied on min-hash signature to compute bucket index
      * @param bucketCount Number of LSH buckets (this determines runtime and accuracy!)
@@ -74,26 +80,17 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
         this.neo4jConfFile = neo4jConfigFile;
         this.shingles = shingleSize;
         this.permutationVectors = permutationVectors;
-        this.signature = new ArrayList<>();
         this.bandSize = bandSize;
         this.hash = hash;
         this.threads = threads;
         this.randomGen = randomGenerator;
         this.linker = linker;
+        this.entityTable = entityTable;
         this.aggregateColumns = aggregateColumns;
 
         Set<Table<String>> linkedTables = tables.stream().map(PairNonComparable::getSecond).collect(Collectors.toSet());
         loadElements(entityTable, linkedTables, linker);
-
-        try
-        {
-            build(tables);
-        }
-
-        catch (IOException e)
-        {
-            throw new RuntimeException("Could not initialize Neo4J connector: " + e.getMessage());
-        }
+        build(tables);
     }
 
     public void useEntityLinker(EntityLinking linker)
@@ -101,6 +98,16 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
         this.linker = linker;
     }
 
+    /**
+     * Entity table to read types and predicates of entities from when searching
+     * Without it, the KG is queried for every entity that has no stored signature
+     * @param entityTable Entity table the index was built from
+     */
+    public void useEntityTable(EntityTable entityTable)
+    {
+        this.entityTable = entityTable;
+    }
+
     private void loadElements(EntityTable entityTable, Set<Table<String>> linkedTables, EntityLinking linker)
     {
         int counter = 0;
@@ -122,10 +129,10 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
     }
 
     /**
-     * Instead of storing actual matrix, we only store the smallest index per entity
+     * Instead of storing actual matrix, we only store the smallest hash value per MinHash function and entity
      * as this is all we need when computing the signature
      */
-    private void build(Set<PairNonComparable<String, Table<String>>> tables) throws IOException
+    private void build(Set<PairNonComparable<String, Table<String>>> tables)
     {
         if (this.linker == null)
         {
@@ -134,19 +141,12 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
         ExecutorService executor = Executors.newFixedThreadPool(this.threads);
         List<Future<?>> futures = new ArrayList<>(tables.size());
-        Neo4jEndpoint neo4j = new Neo4jEndpoint(this.neo4jConfFile);
-        int elementsDimension = this.universeElements.size();
-
-        for (int i = 1; i < this.shingles; i++)
-        {
-            elementsDimension = concat(elementsDimension, this.universeElements.size());
-        }
-
-        this.permutations = createPermutations(this.permutationVectors, ++elementsDimension, this.randomGen);
+        createHashFunctions(this.permutationVectors, this.randomGen);
+        beginPartials();
 
         for (PairNonComparable<String, Table<String>> table : tables)
         {
-            futures.add(executor.submit(() -> loadTable(table, neo4j)));
+            futures.add(executor.submit(() -> loadTable(table)));
         }
 
         try
@@ -162,19 +162,24 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             throw new RuntimeException("Error in multi-threaded loading of LSH index: " + e.getMessage());
         }
 
-        neo4j.close();
+        finally
+        {
+            executor.shutdown();
+        }
+
+        mergePartials(this.threads);
     }
 
-    private void loadTable(PairNonComparable<String, Table<String>> table, Neo4jEndpoint neo4j)
+    private void loadTable(PairNonComparable<String, Table<String>> table)
     {
-        String tableName = table.getFirst();
-        List<PairNonComparable<Id, Set<Integer>>> matrix = new ArrayList<>();
+        int tableId = valueIdOf(table.getFirst());
+        Set<Id> loaded = new HashSet<>();
         Table<String> t = table.getSecond();
         int rows = t.rowCount();
 
         if (this.aggregateColumns)
         {
-            loadByColumns(tableName, t, neo4j);
+            loadByColumns(tableId, t);
             return;
         }
 
@@ -186,29 +191,27 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             {
                 String entity = t.getRow(row).get(column);
                 Id entityId = this.linker.kgUriLookup(entity);
-                Set<Integer> entityBitVector = bitVector(entity, neo4j);
 
-                if (!entityBitVector.isEmpty())
+                if (entityId == null || !loaded.add(entityId))
                 {
-                    matrix.add(new PairNonComparable<>(entityId, entityBitVector));
+                    continue;
                 }
-            }
-        }
 
-        synchronized (this.lock)
-        {
-            extendSignature(this.signature, matrix, this.permutations, this.entityToSigIndex);
-        }
+                int[] entitySignature = createOrGetSignature(entity, entityId);
 
-        insertIntoBuckets(matrix, tableName);
+                if (entitySignature != null)
+                {
+                    insertIntoPartials(entitySignature, tableId);
+                }
+            }
+        }
     }
 
-    private void loadByColumns(String tableName, Table<String> table, Neo4jEndpoint neo4j)
+    private void loadByColumns(int tableId, Table<String> table)
     {
-        List<PairNonComparable<Id, Set<Integer>>> matrix = new ArrayList<>();
         Aggregator<String> aggregator = new ColumnAggregator<>(table);
         List<Set<String>> aggregatedColumns =
-                aggregator.aggregate(cell -> elements(cell, neo4j),
+                aggregator.aggregate(cell -> elements(cell, this.linker.kgUriLookup(cell)),
                         coll -> {
                             Set<String> elements = new HashSet<>();
                             coll.forEach(elements::addAll);
@@ -217,160 +220,168 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
         for (Set<String> column : aggregatedColumns)
         {
-            if (!column.isEmpty())
-            {
-                Set<Integer> bitVector = bitVector(column);
+            long[] shingleIds = shingleIds(column);
 
-                if (!bitVector.isEmpty())
-                {
-                    matrix.add(new PairNonComparable<>(Id.alloc(), bitVector));
-                }
+            if (shingleIds.length > 0)
+            {
+                insertIntoPartials(signature(shingleIds), tableId);
             }
         }
-
-        synchronized (this.lock)
-        {
-            extendSignature(this.signature, matrix, this.permutations, this.entityToSigIndex);
-        }
-
-        insertIntoBuckets(matrix, tableName);
     }
 
-    private void insertIntoBuckets(List<PairNonComparable<Id, Set<Integer>>> matrix, String tableName)
+    /**
+     * Inserts into the partial buckets of the calling build worker, so no lock is taken
+     */
+    private void insertIntoPartials(int[] signature, int tableId)
     {
-        Set<Integer> newSignatures = matrix.stream().map(e -> this.entityToSigIndex.get(e.getFirst())).collect(Collectors.toSet());
+        List<Integer> keys = createKeys(signature.length, this.bandSize, Ints.asList(signature), groupSize(), this.hash);
+        int keysCount = keys.size();
 
-        for (int entityIdx : newSignatures)
+        for (int group = 0; group < keysCount; group++)
         {
-            List<Integer> keys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entityIdx).getSecond(), groupSize(), this.hash);
-            int keysCount = keys.size();
-            Id entityId = this.signature.get(entityIdx).getFirst();
-
-            for (int group = 0; group < keysCount; group++)
-            {
-                synchronized (this.lock)
-                {
-                    add(group, keys.get(group), entityId, tableName);
-                }
-            }
+            addPartial(group, keys.get(group), tableId);
         }
     }
 
-    private Set<Integer> bitVector(String entity, Neo4jEndpoint neo4j)
+    private void insertIntoBuckets(Id entityId, int[] signature, String tableName)
     {
-        Set<String> elements = elements(entity, neo4j);
-        return bitVector(elements);
+        List<Integer> keys = createKeys(signature.length, this.bandSize, Ints.asList(signature), groupSize(), this.hash);
+        int keysCount = keys.size();
+
+        for (int group = 0; group < keysCount; group++)
+        {
+            add(group, keys.get(group), entityId, tableName);
+        }
     }
 
-    private Set<Integer> bitVector(Set<String> elements)
+    /**
+     * IDs of the shingles of a set of elements
+     * A shingle ID combines the sorted universe IDs of its elements in base of the universe size modulo the MinHash prime
+     * Reducing after every element keeps the ID from overflowing for any universe and shingle size, and as MinHash reduces
+     * its input modulo the same prime, the IDs of shingles whose combination fits in a long are unchanged
+     */
+    private long[] shingleIds(Set<String> elements)
     {
         elements = elements.stream().filter(e -> !this.unimportantElements.contains(e) &&
                     this.universeElements.containsKey(e)).collect(Collectors.toSet());
         Set<List<String>> shingles = ElementShingles.shingles(elements, this.shingles);
-        Set<Integer> indices = new HashSet<>();
+        Set<Long> ids = new HashSet<>();
+        long base = this.universeElements.size();
 
         for (List<String> shingle : shingles)
         {
-            List<Integer> shingleIds = new ArrayList<>(shingle.stream().map(s -> this.universeElements.get(s)).toList());
-            shingleIds.sort(Comparator.comparingInt(v -> v));
+            int[] elementIds = new int[shingle.size()];
 
-            int concatenated = shingleIds.get(0);
+            for (int i = 0; i < elementIds.length; i++)
+            {
+                elementIds[i] = this.universeElements.get(shingle.get(i));
+            }
+
+            Arrays.sort(elementIds);
 
-            for (int i = 1; i < shingleIds.size(); i++)
+            long id = 0;
+
+            for (int elementId : elementIds)
             {
-                concatenated = concat(concatenated, shingleIds.get(i));
+                id = (id * base + elementId) % MERSENNE_PRIME;
             }
 
-            indices.add(concatenated);
+            ids.add(id);
         }
 
-        return indices;
+        return ids.stream().mapToLong(Long::longValue).toArray();
     }
 
-    private synchronized Set<String> elements(String entity, Neo4jEndpoint neo4j)
+    /**
+     * Types or predicates of an entity from the entity table, or from the shared KG if the entity is not in the entity table
+     */
+    private Set<String> elements(String entity, Id entityId)
     {
-        return new HashSet<>(this.setType == EntitySet.TYPES ? neo4j.searchTypes(entity) : neo4j.searchPredicates(entity));
-    }
+        Entity stored = this.entityTable != null && entityId != null ? this.entityTable.find(entityId) : null;
 
-    private static List<List<Integer>> createPermutations(int vectors, int dimension, Random random)
-    {
-        List<List<Integer>> permutations = new ArrayList<>();
-        Set<Integer> indices = new HashSet<>(dimension);
+        if (stored != null)
+        {
+            return this.setType == EntitySet.TYPES ?
+                    stored.getTypes().stream().map(Type::getType).collect(Collectors.toSet()) : new HashSet<>(stored.getPredicates());
+        }
 
-        for (int i = 0; i < dimension; i++)
+        try
         {
-            indices.add(i);
+            KnowledgeGraph kg = Factory.sharedKnowledgeGraph(this.neo4jConfFile);
+            return new HashSet<>(this.setType == EntitySet.TYPES ? kg.searchTypes(entity) : kg.searchPredicates(entity));
         }
 
-        for (int i = 0; i < vectors; i++)
+        catch (IOException e)
         {
-            List<Integer> permutation = new ArrayList<>(indices);
-            Collections.shuffle(permutation, random);
-            permutations.add(permutation);
+            throw new RuntimeException("Failed initializing KG connector: " + e.getMessage());
         }
+    }
 
-        return permutations;
+    private void createHashFunctions(int count, Random random)
+    {
+        this.hashA = new int[count];
+        this.hashB = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            this.hashA[i] = 1 + random.nextInt((int) MERSENNE_PRIME - 1);
+            this.hashB[i] = random.nextInt((int) MERSENNE_PRIME);
+        }
     }
 
-    private static List<PairNonComparable<Id, List<Integer>>> extendSignature(List<PairNonComparable<Id, List<Integer>>> signature,
-                                                                     List<PairNonComparable<Id, Set<Integer>>> entityMatrix,
-                                                                     List<List<Integer>> permutations,
-                                                                     Map<Id, Integer> entityToSigIdx)
+    /**
+     * MinHash signature of a non-empty set of shingle IDs
+     */
+    private int[] signature(long[] shingleIds)
     {
-        for (PairNonComparable<Id, Set<Integer>> entity : entityMatrix)
+        int[] signature = new int[this.hashA.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        for (long shingleId : shingleIds)
         {
-            List<Integer> entitySignature;
-            Id entityId = entity.getFirst();
+            long x = shingleId % MERSENNE_PRIME;
 
-            if (!entityToSigIdx.containsKey(entityId))
+            for (int i = 0; i < signature.length; i++)
             {
-                Set<Integer> bitVector = entity.getSecond();
+                int hash = (int) ((this.hashA[i] * x + this.hashB[i]) % MERSENNE_PRIME);
 
-                if (bitVector.isEmpty())
+                if (hash < signature[i])
                 {
-                    entitySignature = new ArrayList<>(Collections.nCopies(permutations.size(), 0));
+                    signature[i] = hash;
                 }
-
-                else
-                {
-                    entitySignature = new ArrayList<>(permutations.size());
-
-                    for (List<Integer> permutation : permutations)
-                    {
-                        int reArrangedMin = reArrangeMin(bitVector, permutation);
-                        entitySignature.add(permutation.get(reArrangedMin));
-                    }
-                }
-
-                signature.add(new PairNonComparable<>(entity.getFirst(), entitySignature));
-                entityToSigIdx.put(entityId, signature.size() - 1);
             }
         }
 
         return signature;
     }
 
-    private static int reArrangeMin(Set<Integer> bitVector, List<Integer> permutation)
+    /**
+     * Signature of an entity, which is computed and stored if the entity has no stored signature
+     * @return Signature or null if the entity has no types or predicates in the index universe
+     */
+    private int[] createOrGetSignature(String entity, Id entityId)
     {
-        Iterator<Integer> iter = bitVector.iterator();
-        int smallest = Integer.MAX_VALUE;
+        int[] signature = this.signatures.get(entityId);
 
-        while (iter.hasNext())
+        if (signature != null)
         {
-            int idx = iter.next();
-            int permuted = permutation.get(idx);
+            return signature;
+        }
 
-            if (permuted < smallest)
-            {
-                smallest = permuted;
-            }
+        long[] shingleIds = shingleIds(elements(entity, entityId));
+
+        if (shingleIds.length == 0)
+        {
+            return null;
         }
 
-        return smallest;
+        // Computed outside the map, so workers do not block each other on a shared bin of the map
+        signature = signature(shingleIds);
+        int[] stored = this.signatures.putIfAbsent(entityId, signature);
+        return stored != null ? stored : signature;
     }
 
-    private int createOrGetSignature(String entity)
+    private int[] createOrGetSignature(String entity)
     {
         Id entityId = this.linker.kgUriLookup(entity);
 
@@ -379,28 +390,7 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
             throw new RuntimeException("Entity does not exist in EntityLinker object");
         }
 
-        try (Neo4jEndpoint neo4j = new Neo4jEndpoint(this.neo4jConfFile))
-        {
-            Set<Integer> entityBitVector = bitVector(entity, neo4j);
-            return createOrGetSignature(entityId, entityBitVector);
-        }
-
-        catch (IOException e)
-        {
-            throw new RuntimeException("Failed initializing Neo4J connector");
-        }
-    }
-
-    private int createOrGetSignature(Id entityId, Set<Integer> bitVector)
-    {
-        if (bitVector.isEmpty())
-        {
-            return -1;
-        }
-
-        extendSignature(this.signature, List.of(new PairNonComparable<>(entityId, bitVector)),
-                this.permutations, this.entityToSigIndex);
-        return this.entityToSigIndex.get(entityId);
+        return createOrGetSignature(entity, entityId);
     }
 
     /**
@@ -426,24 +416,14 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
         try
         {
-            int entitySignature = createOrGetSignature(entity);
+            int[] entitySignature = createOrGetSignature(entity, entityId);
 
-            if (entitySignature == -1)
+            if (entitySignature == null)
             {
                 return false;
             }
 
-            List<Integer> bucketKeys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entitySignature).getSecond(), groupSize(), this.hash);
-
-            for (int group = 0; group < bucketKeys.size(); group++)
-            {
-                synchronized (this.lock)
-                {
-                    add(group, bucketKeys.get(group), entityId, table);
-                }
-            }
-
+            insertIntoBuckets(entityId, entitySignature, table);
             return true;
         }
 
@@ -468,12 +448,11 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
     @Override
     public Set<String> search(String entity, int vote)
     {
-        int entitySignatureIdx = createOrGetSignature(entity);
+        int[] entitySignature = createOrGetSignature(entity);
 
-        if (entitySignatureIdx != -1)
+        if (entitySignature != null)
         {
-            List<Integer> keys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(entitySignatureIdx).getSecond(), groupSize(), this.hash);
+            List<Integer> keys = createKeys(entitySignature.length, this.bandSize, Ints.asList(entitySignature), groupSize(), this.hash);
             return super.search(keys, vote);
         }
 
@@ -493,6 +472,7 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
 
     /**
      * Aggregates all keys into one by merging all sets of types per key into one super-set
+     * The signature of the merged set is only used for this search and is not stored
      * @param vote Number of duplicated per table for the table to be included in the result set
      * @param keys Query entities to be aggregated
      * @return Set of tables
@@ -500,36 +480,22 @@ public class SetLSHIndex extends BucketIndex<Id, String> implements LSHIndex<Str
     @Override
     public Set<String> agggregatedSearch(int vote, String ... keys)
     {
-        Set<String> mergedTypes = new HashSet<>();
+        Set<String> mergedElements = new HashSet<>();
 
-        try (Neo4jEndpoint neo4j = new Neo4jEndpoint(this.neo4jConfFile))
+        for (String key : keys)
         {
-            for (String key : keys)
-            {
-                mergedTypes.addAll(neo4j.searchTypes(key));
-            }
+            mergedElements.addAll(elements(key, this.linker != null ? this.linker.kgUriLookup(key) : null));
         }
 
-        catch (IOException e)
-        {
-            throw new RuntimeException("Failed initializing Neo4J connector");
-        }
-
-        Set<Integer> aggregatedBitVector = bitVector(mergedTypes);
-        int signatureIdx = createOrGetSignature(Id.alloc(), aggregatedBitVector);
+        long[] shingleIds = shingleIds(mergedElements);
 
-        if (signatureIdx != -1)
+        if (shingleIds.length > 0)
         {
-            List<Integer> bandKeys = createKeys(this.permutations.size(), this.bandSize,
-                    this.signature.get(signatureIdx).getSecond(), groupSize(), this.hash);
+            List<Integer> bandKeys = createKeys(this.hashA.length, this.bandSize,
+                    Ints.asList(signature(shingleIds)), groupSize(), this.hash);
             return super.search(bandKeys, vote);
         }
 
         return new HashSet<>();
     }
-
-    private static int concat(int a, int b)
-    {
-        return (int) (b + a * Math.pow(10, Math.ceil(Math.log10(b + 1))));
-    }
 }
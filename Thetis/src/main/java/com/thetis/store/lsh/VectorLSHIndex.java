@@ -3,6 +3,7 @@ package com.thetis.store.lsh;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.thetis.store.EntityLinking;
+import com.thetis.store.Index;
 import com.thetis.connector.DBDriver;
 import com.thetis.connector.Factory;
 import com.thetis.structures.Id;
@@ -23,6 +24,7 @@ import java.util.random.RandomGenerator;
 /**
  * LSH index of entity embeddings
  * Mapping from string entity to set of tables candidate entities by cosine similarity originate from
+ * The index is built from an in-memory embeddings index, while embeddings of inserted and searched entities are selected from the embeddings database
  */
 public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<String, String>, Serializable
 {
@@ -30,7 +32,6 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
     private int bandSize;
     private boolean aggregateColumns;
     private transient int threads;
-    private transient final Object lock = new Object();
     private transient EntityLinking linker = null;
     private HashFunction hash;
     private RandomGenerator randomGen;
@@ -40,11 +41,13 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
      * @param bucketCount Number of LSH index buckets
      * @param projections Number of projections, which determines hash size
      * @param tables Set of tables containing entities to be loaded
+     * @param embeddings Embeddings of table entities, which is read concurrently by the loading threads
      * @param hash Hash function applied to bit vector representations of entities
      */
     public VectorLSHIndex(int bucketGroups, int bucketCount, int projections, int bandSize,
-                          Set<PairNonComparable<String, Table<String>>> tables, int threads, EntityLinking linker,
-                          HashFunction hash, RandomGenerator randomGenerator, boolean aggregateColumns)
+                          Set<PairNonComparable<String, Table<String>>> tables, Index<Id, List<Double>> embeddings,
+                          int threads, EntityLinking linker, HashFunction hash, RandomGenerator randomGenerator,
+                          boolean aggregateColumns)
     {
         super(bucketGroups, bucketCount);
         this.bandSize = bandSize;
@@ -54,7 +57,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         this.randomGen = randomGenerator;
         this.aggregateColumns = aggregateColumns;
         this.cache = CacheBuilder.newBuilder().maximumSize(500).build();
-        load(tables, projections);
+        load(tables, embeddings, projections);
     }
 
     public void useEntityLinker(EntityLinking linker)
@@ -62,9 +65,8 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         this.linker = linker;
     }
 
-    private void load(Set<PairNonComparable<String, Table<String>>> tables, int projections)
+    private void load(Set<PairNonComparable<String, Table<String>>> tables, Index<Id, List<Double>> embeddings, int projections)
     {
-        DBDriver<List<Double>, String> embeddingsDB = Factory.fromConfig(false);
         ExecutorService executor = Executors.newFixedThreadPool(this.threads);
         List<Future<?>> futures = new ArrayList<>(tables.size());
 
@@ -73,7 +75,7 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             throw new RuntimeException("No tables to load LSH index of embeddings");
         }
 
-        int dimension = embeddingsDimension(tables.iterator().next().getSecond(), embeddingsDB);
+        int dimension = embeddingsDimension(tables.iterator().next().getSecond(), embeddings);
 
         if (dimension == -1)
         {
@@ -81,10 +83,11 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         }
 
         this.projections = createProjections(projections, dimension, this.randomGen);
+        beginPartials();
 
         for (PairNonComparable<String, Table<String>> table : tables)
         {
-            futures.add(executor.submit(() -> loadTable(table, embeddingsDB)));
+            futures.add(executor.submit(() -> loadTable(table, embeddings)));
         }
 
         try
@@ -100,18 +103,23 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
             throw new RuntimeException("Error in multi-threaded loading of LSH index: " + e.getMessage());
         }
 
-        embeddingsDB.close();
+        finally
+        {
+            executor.shutdown();
+        }
+
+        mergePartials(this.threads);
     }
 
-    private void loadTable(PairNonComparable<String, Table<String>> table, DBDriver<List<Double>, String> embeddingsDB)
+    private void loadTable(PairNonComparable<String, Table<String>> table, Index<Id, List<Double>> embeddings)
     {
-        String tableName = table.getFirst();
+        int tableId = valueIdOf(table.getFirst());
         Table<String> t = table.getSecond();
         int rows = t.rowCount();
 
         if (this.aggregateColumns)
         {
-            loadByColumns(tableName, t, embeddingsDB);
+            loadByColumns(tableId, t, embeddings);
             return;
         }
 
@@ -119,47 +127,61 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         {
             for (int column = 0; column < t.getRow(row).size(); column++)
             {
-                String entity = t.getRow(row).get(column);
-                List<Double> embedding;
-                Id entityId = this.linker.kgUriLookup(entity);
+                Id entityId = this.linker.kgUriLookup(t.getRow(row).get(column));
                 List<Integer> keys;
 
-                if ((keys = this.cache.getIfPresent(entityId)) != null)
+                if (entityId == null)
                 {
-                    insertEntity(entityId, keys, tableName);
                     continue;
                 }
 
-                synchronized (this.lock)
+                else if ((keys = this.cache.getIfPresent(entityId)) != null)
                 {
-                    embedding = embeddingsDB.select(entity);
+                    insertIntoPartials(keys, tableId);
+                    continue;
+                }
+
+                List<Double> embedding = embeddings.find(entityId);
 
-                    if (embedding == null)
-                    {
-                        continue;
-                    }
+                if (embedding == null)
+                {
+                    continue;
                 }
 
                 List<Integer> bitVector = bitVector(embedding);
                 keys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
                 this.cache.put(entityId, keys);
-                insertEntity(entityId, keys, tableName);
+                insertIntoPartials(keys, tableId);
             }
         }
     }
 
-    private void loadByColumns(String tableName, Table<String> table, DBDriver<List<Double>, String> embeddingsDB)
+    private void loadByColumns(int tableId, Table<String> table, Index<Id, List<Double>> embeddings)
     {
         Aggregator<String> aggregator = new ColumnAggregator<>(table);
         List<List<Double>> aggregatedColumns =
-                aggregator.aggregate(embeddingsDB::select,
+                aggregator.aggregate(entity -> {
+                            Id entityId = this.linker.kgUriLookup(entity);
+                            return entityId != null ? embeddings.find(entityId) : null;
+                        },
                         coll -> Utils.averageVector(new ArrayList<>(coll)));
 
         for (List<Double> averageEmbedding : aggregatedColumns)
         {
             List<Integer> bitVector = bitVector(averageEmbedding);
             List<Integer> keys = createKeys(this.projections.size(), this.bandSize, bitVector, groupSize(), this.hash);
-            insertEntity(Id.any(), keys, tableName);
+            insertIntoPartials(keys, tableId);
+        }
+    }
+
+    /**
+     * Inserts into the partial buckets of the calling build worker, so no lock is taken
+     */
+    private void insertIntoPartials(List<Integer> keys, int tableId)
+    {
+        for (int group = 0; group < keys.size(); group++)
+        {
+            addPartial(group, keys.get(group), tableId);
         }
     }
 
@@ -167,14 +189,11 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
     {
         for (int group = 0; group < keys.size(); group++)
         {
-            synchronized (this.lock)
-            {
-                add(group, keys.get(group), entityId, tableName);
-            }
+            add(group, keys.get(group), entityId, tableName);
         }
     }
 
-    private int embeddingsDimension(Table<String> table, DBDriver<List<Double>, String> embeddingsDB)
+    private int embeddingsDimension(Table<String> table, Index<Id, List<Double>> embeddings)
     {
         int dimension = -1;
 
@@ -182,7 +201,8 @@ public class VectorLSHIndex extends BucketIndex<Id, String> implements LSHIndex<
         {
             for (int column = 0; column < table.getRow(row).size(); column++)
             {
-                List<Double> embedding = embeddingsDB.select(table.getRow(row).get(column));
+                Id entityId = this.linker.kgUriLookup(table.getRow(row).get(column));
+                List<Double> embedding = entityId != null ? embeddings.find(entityId) : null;
 
                 if (embedding != null && !embedding.isEmpty())
                 {
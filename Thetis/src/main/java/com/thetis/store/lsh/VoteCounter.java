@@ -0,0 +1,43 @@
+package com.thetis.store.lsh;
+
+import java.util.Arrays;
+
+/**
+ * Vote counts per value ID and the value IDs that have been voted for in the current search
+ * A counter is reused across searches by one thread, so it must be reset after each search
+ */
+final class VoteCounter
+{
+    int[] counts = new int[0];
+    int[] touched = new int[0];
+    int touchedCount = 0;
+
+    void ensureCapacity(int values)
+    {
+        if (this.counts.length < values)
+        {
+            int capacity = Math.max(values, this.counts.length * 2);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.touched = Arrays.copyOf(this.touched, capacity);
+        }
+    }
+
+    // Values may be added by concurrent inserts after the capacity has been ensured
+    void vote(int valueId)
+    {
+        ensureCapacity(valueId + 1);
+
+        if (this.counts[valueId]++ == 0)
+        {
+            this.touched[this.touchedCount++] = valueId;
+        }
+    }
+
+    void vote(int[] valueIds, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            vote(valueIds[i]);
+        }
+    }
+}
@@ -3,33 +3,77 @@ package com.thetis.structures;
 import com.thetis.system.Configuration;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ID of entities
  * IDs are allocated in incrementing order
- * The largest ID is stored in a configuration file so no entities are given the same ID
+ * The end of the block of reserved IDs is stored in a configuration file so no entities are given the same ID
  */
 public class Id implements Serializable, Comparable<Id>
 {
+    /**
+     * IDs are allocated by a single atomic increment
+     * IDs are reserved in blocks, and only the end of the reserved block is persisted, so a restart continues after the last block
+     */
     private static class IdAllocator
     {
-        private static int allocatedId = -1;
+        private static final int BLOCK_SIZE = 1 << 16;
+        private static final AtomicInteger nextId = new AtomicInteger(0);
+        private static volatile int reservedUntil = 0;  // Exclusive end of the reserved block
+        private static volatile boolean initialized = false;
+
+        public static Id allocId()
+        {
+            if (!initialized)
+            {
+                init();
+            }
+
+            int id = nextId.getAndIncrement();
 
-        public Id allocId()
+            if (id >= reservedUntil)
+            {
+                reserve(id);
+            }
+
+            return new Id(id, false);
+        }
+
+        private static synchronized void init()
         {
-            if (allocatedId == -1)
+            if (!initialized)
             {
                 String id = Configuration.getLargestId();
 
-                if (id == null)
-                    allocatedId = 0;
+                if (id != null)
+                {
+                    observe(Integer.parseInt(id));
+                }
 
-                else
-                    allocatedId = Integer.parseInt(id) + 1;
+                initialized = true;
             }
+        }
 
-            Configuration.setLargestId(String.valueOf(allocatedId));
-            return Id.copy(allocatedId++);
+        private static synchronized void reserve(int id)
+        {
+            if (id >= reservedUntil)
+            {
+                reservedUntil = Math.max(id + 1, nextId.get()) + BLOCK_SIZE;
+                Configuration.setLargestId(String.valueOf(reservedUntil - 1));
+                Configuration.flush();
+            }
+        }
+
+        /**
+         * Ensures that an existing ID is never allocated
+         */
+        private static void observe(int id)
+        {
+            if (id >= nextId.get())     // Most copies are of allocated IDs, which are read without contention
+            {
+                nextId.accumulateAndGet(id + 1, Math::max);
+            }
         }
     }
 
@@ -46,7 +90,7 @@ public class Id implements Serializable, Comparable<Id>
      */
     public static Id alloc()
     {
-        return new IdAllocator().allocId();
+        return IdAllocator.allocId();
     }
 
     /**
@@ -59,9 +103,18 @@ public class Id implements Serializable, Comparable<Id>
     }
 
     public Id(int id)
+    {
+        this(id, true);
+    }
+
+    private Id(int id, boolean existing)
     {
         this.id = id;
-        IdAllocator.allocatedId = id + 1;
+
+        if (existing)
+        {
+            IdAllocator.observe(id);
+        }
     }
 
     public int getId()
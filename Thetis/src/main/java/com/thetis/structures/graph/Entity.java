@@ -15,6 +15,7 @@ public class Entity implements Comparable<Entity>, Serializable
     private List<Type> types;
     private List<String> predicates;
     private double idf = -1;
+    private int[] typeIds = null, predicateIds = null;  // Sorted interned IDs assigned by EntityTable
 
     public Entity(String uri)
     {
@@ -59,6 +60,28 @@ public class Entity implements Comparable<Entity>, Serializable
         this.idf = idf;
     }
 
+    /**
+     * @return Sorted distinct type IDs, or null if the entity has not been inserted into an EntityTable
+     */
+    public int[] getTypeIds()
+    {
+        return this.typeIds;
+    }
+
+    /**
+     * @return Sorted distinct predicate IDs, or null if the entity has not been inserted into an EntityTable
+     */
+    public int[] getPredicateIds()
+    {
+        return this.predicateIds;
+    }
+
+    public void setInternedIds(int[] typeIds, int[] predicateIds)
+    {
+        this.typeIds = typeIds;
+        this.predicateIds = predicateIds;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -0,0 +1,86 @@
+package com.thetis.structures.table;
+
+import java.util.Arrays;
+
+/**
+ * Pre-linked representation of a corpus table
+ * Each cell holds the integer ID of the first KG entity its links map to, or <code>NO_ENTITY</code> if none of them map
+ * Cells are stored in row-major order
+ */
+public class LinkedTable
+{
+    public static final int NO_ENTITY = -1;
+
+    private final int rows, columns, dataRows;
+    private final String[] headers;
+    private final int[] entities;
+
+    public LinkedTable(int rows, int columns, int dataRows, String[] headers)
+    {
+        this(rows, columns, dataRows, headers, new int[rows * columns]);
+        Arrays.fill(this.entities, NO_ENTITY);
+    }
+
+    public LinkedTable(int rows, int columns, int dataRows, String[] headers, int[] entities)
+    {
+        if (entities.length != rows * columns)
+        {
+            throw new IllegalArgumentException("Entity matrix does not match table dimensions");
+        }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.dataRows = dataRows;
+        this.headers = headers;
+        this.entities = entities;
+    }
+
+    public int rowCount()
+    {
+        return this.rows;
+    }
+
+    public int columnCount()
+    {
+        return this.columns;
+    }
+
+    /**
+     * Number of data rows as reported by the original table
+     * @return Number of data rows
+     */
+    public int dataRows()
+    {
+        return this.dataRows;
+    }
+
+    public String[] headers()
+    {
+        return this.headers;
+    }
+
+    /**
+     * Entity ID of a cell
+     * @param row Row index
+     * @param column Column index
+     * @return Entity ID or <code>NO_ENTITY</code> if the cell does not link to a known entity
+     */
+    public int entity(int row, int column)
+    {
+        return this.entities[row * this.columns + column];
+    }
+
+    public void setEntity(int row, int column, int entityId)
+    {
+        this.entities[row * this.columns + column] = entityId;
+    }
+
+    /**
+     * The underlying row-major entity matrix
+     * @return Entity ID matrix
+     */
+    public int[] entities()
+    {
+        return this.entities;
+    }
+}
@@ -1,10 +1,15 @@
 package com.thetis.system;
 
 import java.io.*;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Container of system configuration as well as serialization and de-serialization of system configuration
+ * The configuration is read from disk once and kept as an immutable snapshot, so reading a value does not touch the disk
  */
 public class Configuration
 {
@@ -60,21 +65,164 @@ public class Configuration
     }
 
     private static final File CONF_FILE = new File(".config.conf");
+    private static final Object LOCK = new Object();
+    private static volatile Map<String, String> snapshot = Map.of();    // Immutable, and replaced on every update
+    private static final Map<String, String> pending = new HashMap<>();  // Locally updated keys that have not been flushed
+    private static long writtenModified = -1, writtenLength = -1;
 
     static
     {
         addDefaults();
+        Runtime.getRuntime().addShutdownHook(new Thread(Configuration::flush));
+        watch();
     }
 
+    /**
+     * Reloads the configuration from disk and adds default values
+     * Updates that have not been flushed are discarded
+     */
     public static void reloadConfiguration()
     {
         addDefaults();
     }
 
+    /**
+     * Writes updates of the configuration to disk
+     * Updates are otherwise written when the JVM shuts down
+     * Updates that could not be written are kept and written on the next flush
+     */
+    public static void flush()
+    {
+        synchronized (LOCK)
+        {
+            if (!pending.isEmpty())
+            {
+                // Only locally updated keys are written on top of the file, so updates by other processes are kept
+                // If the file cannot be read, the current snapshot is written instead of only the updated keys
+                Properties read = readProperties();
+                Map<String, String> properties = read != null ? toMap(read) : new HashMap<>(snapshot);
+                properties.putAll(pending);
+
+                try
+                {
+                    writeProperties(toProperties(properties));
+                }
+
+                catch (IOException | RuntimeException e)
+                {
+                    Logger.logNewLine(Logger.Level.ERROR, "Could not write configuration: " + e.getMessage());
+                    return;
+                }
+
+                snapshot = Collections.unmodifiableMap(properties);
+                writtenModified = CONF_FILE.lastModified();
+                writtenLength = CONF_FILE.length();
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Reloads the configuration when the file is changed by another process
+     */
+    private static void watch()
+    {
+        File dir = CONF_FILE.getAbsoluteFile().getParentFile();
+        WatchService watcher;
+
+        try
+        {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+
+        catch (IOException | UnsupportedOperationException e)
+        {
+            return;     // Changes by other processes are then only seen on explicit reload
+        }
+
+        Thread thread = new Thread(() -> {
+            while (true)
+            {
+                WatchKey key;
+
+                try
+                {
+                    key = watcher.take();
+                }
+
+                catch (InterruptedException | ClosedWatchServiceException e)
+                {
+                    return;
+                }
+
+                boolean changed = key.pollEvents().stream()
+                        .anyMatch(event -> CONF_FILE.getName().equals(String.valueOf(event.context())));
+
+                if (changed)
+                {
+                    reloadIfChanged();
+                }
+
+                if (!key.reset())
+                {
+                    return;
+                }
+            }
+        }, "configuration-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reloads the configuration if the file has been changed since it was last written by this process
+     * Local updates that have not been flushed are kept on top of the reloaded configuration
+     * The current configuration is kept if the file cannot be read
+     */
+    static void reloadIfChanged()
+    {
+        synchronized (LOCK)
+        {
+            if (CONF_FILE.lastModified() != writtenModified || CONF_FILE.length() != writtenLength)
+            {
+                Properties read = readProperties();
+
+                if (read == null)
+                    return;
+
+                Map<String, String> properties = toMap(read);
+                properties.putAll(pending);
+                snapshot = Collections.unmodifiableMap(properties);
+                writtenModified = CONF_FILE.lastModified();
+                writtenLength = CONF_FILE.length();
+            }
+        }
+    }
+
+    private static Map<String, String> toMap(Properties properties)
+    {
+        Map<String, String> map = new HashMap<>();
+        properties.stringPropertyNames().forEach(key -> map.put(key, properties.getProperty(key)));
+        return map;
+    }
+
+    private static Properties toProperties(Map<String, String> map)
+    {
+        Properties properties = new Properties();
+        properties.putAll(map);
+        return properties;
+    }
+
     private static void addDefaults()
     {
         Properties props = readProperties();
 
+        if (props == null)
+            props = toProperties(snapshot);
+
+        Map<String, String> read = toMap(props);
+
         if (!props.contains("EntityTable"))
             props.setProperty("EntityTable", "entity_table.ser");
 
@@ -96,6 +244,12 @@ public class Configuration
         if (!props.contains("EmbeddingsLSH"))
             props.setProperty("EmbeddingsLSH", "embeddings_lsh.ser");
 
+        if (!props.contains("IndexFile"))
+            props.setProperty("IndexFile", "index.bin");
+
+        if (!props.contains("TableCorpus"))
+            props.setProperty("TableCorpus", "table_corpus.bin");
+
         if (!props.contains("TableToEntities"))
             props.setProperty("TableToEntities", "tableIDToEntities.ttl");
 
@@ -117,9 +271,23 @@ public class Configuration
         if (!props.contains("LuceneDir"))
             props.setProperty("LuceneDir", ".lucene/");
 
-        writeProperties(props);
+        synchronized (LOCK)
+        {
+            Map<String, String> properties = toMap(props);
+            pending.clear();
+            properties.forEach((key, value) -> {
+                if (!value.equals(read.get(key)))
+                    pending.put(key, value);
+            });
+            snapshot = Collections.unmodifiableMap(properties);
+            flush();
+        }
     }
 
+    /**
+     * Reads the configuration file
+     * @return Empty properties if there is no configuration file, or null if the file exists but cannot be read
+     */
     private static synchronized Properties readProperties()
     {
         try
@@ -127,27 +295,64 @@ public class Configuration
             return (new ConfigurationIO(new FileInputStream(CONF_FILE))).read();
         }
 
-        catch (FileNotFoundException | RuntimeException e)
+        catch (FileNotFoundException e)
+        {
+            return CONF_FILE.exists() ? null : new Properties();
+        }
+
+        catch (RuntimeException e)
         {
-            return new Properties();
+            return null;
         }
     }
 
-    private static synchronized void writeProperties(Properties properties)
+    /**
+     * Writes the configuration to a temporary file that atomically replaces the configuration file
+     * Readers therefore never see a partially written configuration
+     */
+    private static synchronized void writeProperties(Properties properties) throws IOException
     {
+        Path target = CONF_FILE.getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(CONF_FILE.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+
         try
         {
-            (new ConfigurationIO(new FileOutputStream(CONF_FILE))).save(properties);
+            (new ConfigurationIO(Files.newOutputStream(temp))).save(properties);
+
+            try
+            {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
         }
 
-        catch (FileNotFoundException e) {}
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
     }
 
+    /**
+     * Copy-on-write update of the configuration, where the key is written to disk on flush
+     */
     private static void addProperty(String key, String value)
     {
-        Properties properties = readProperties();
-        properties.setProperty(key, value);
-        writeProperties(properties);
+        synchronized (LOCK)
+        {
+            Map<String, String> properties = new HashMap<>(snapshot);
+            properties.put(key, value);
+            snapshot = Collections.unmodifiableMap(properties);
+            pending.put(key, value);
+        }
+    }
+
+    private static String get(String key)
+    {
+        return snapshot.get(key);
     }
 
     public static void setDB(String db)
@@ -157,7 +362,7 @@ public class Configuration
 
     public static String getDB()
     {
-        return readProperties().getProperty("db");
+        return get("db");
     }
 
     public static void setDBPath(String path)
@@ -167,7 +372,7 @@ public class Configuration
 
     public static String getDBPath()
     {
-        return readProperties().getProperty("DBPath");
+        return get("DBPath");
     }
 
     public static void setDBName(String name)
@@ -177,7 +382,7 @@ public class Configuration
 
     public static String getDBName()
     {
-        return readProperties().getProperty("DBName");
+        return get("DBName");
     }
 
     public static void setDBHost(String host)
@@ -187,7 +392,7 @@ public class Configuration
 
     public static String getDBHost()
     {
-        return readProperties().getProperty("DBHost");
+        return get("DBHost");
     }
 
     public static void setDBPort(int port)
@@ -197,7 +402,7 @@ public class Configuration
 
     public static int getDBPort()
     {
-        return Integer.parseInt(readProperties().getProperty("DBPort"));
+        return Integer.parseInt(get("DBPort"));
     }
 
     public static void setEmbeddingsDimension(int dimension)
@@ -207,7 +412,7 @@ public class Configuration
 
     public static int getEmbeddingsDimension()
     {
-        return Integer.parseInt(readProperties().getProperty("EmbeddingsDim"));
+        return Integer.parseInt(get("EmbeddingsDim"));
     }
 
     public static void setDBUsername(String username)
@@ -217,7 +422,7 @@ public class Configuration
 
     public static String getDBUsername()
     {
-        return readProperties().getProperty("DBUsername");
+        return get("DBUsername");
     }
 
     public static void setDBPassword(String password)
@@ -227,7 +432,7 @@ public class Configuration
 
     public static String getDBPassword()
     {
-        return readProperties().getProperty("DBPassword");
+        return get("DBPassword");
     }
 
     public static void setLargestId(String id)
@@ -237,67 +442,77 @@ public class Configuration
 
     public static String getLargestId()
     {
-        return readProperties().getProperty("LargestID");
+        return get("LargestID");
     }
 
     public static String getEntityTableFile()
     {
-        return readProperties().getProperty("EntityTable");
+        return get("EntityTable");
     }
 
     public static String getEntityLinkerFile()
     {
-        return readProperties().getProperty("EntityLinker");
+        return get("EntityLinker");
     }
 
     public static String getEntityToTablesFile()
     {
-        return readProperties().getProperty("EntityToTables");
+        return get("EntityToTables");
     }
 
     public static String getEmbeddingsIndexFile()
     {
-        return readProperties().getProperty("EmbeddingsIndex");
+        return get("EmbeddingsIndex");
     }
 
     public static String getTypesLSHIndexFile()
     {
-        return readProperties().getProperty("TypesLSH");
+        return get("TypesLSH");
     }
 
     public static String getPredicatesLSHIndexFile()
     {
-        return readProperties().getProperty("PredicatesLSH");
+        return get("PredicatesLSH");
     }
 
     public static String getEmbeddingsLSHFile()
     {
-        return readProperties().getProperty("EmbeddingsLSH");
+        return get("EmbeddingsLSH");
+    }
+
+    public static String getIndexFile()
+    {
+        return get("IndexFile");
+    }
+
+    public static String getTableCorpusFile()
+    {
+        return get("TableCorpus");
     }
 
     public static String getTableToEntitiesFile()
     {
-        return readProperties().getProperty("TableToEntities");
+        return get("TableToEntities");
     }
 
     public static String getTableToTypesFile()
     {
-        return readProperties().getProperty("TableToTypes");
+        return get("TableToTypes");
     }
 
     public static String getWikiLinkToEntitiesFrequencyFile()
     {
-        return readProperties().getProperty("WikiLinkToEntitiesFrequency");
+        return get("WikiLinkToEntitiesFrequency");
     }
 
     public static String getCellToNumLinksFrequencyFile()
     {
-        return readProperties().getProperty("CellToNumLinksFrequency");
+        return get("CellToNumLinksFrequency");
     }
 
     public static String getTableStatsFile()
     {
-        return readProperties().getProperty("TableStats");
+        return get("TableStats");
     }
 
     public static void setLogLevel(Logger.Level level)
@@ -307,7 +522,7 @@ public class Configuration
 
     public static String getLogLevel()
     {
-        return readProperties().getProperty("LogLevel");
+        return get("LogLevel");
     }
 
     public static void setPermutationVectors(int num)
@@ -317,7 +532,7 @@ public class Configuration
 
     public static int getPermutationVectors()
     {
-        return Integer.parseInt(readProperties().getProperty("PermutationVectors"));
+        return Integer.parseInt(get("PermutationVectors"));
     }
 
     public static void setBandSize(int value)
@@ -327,7 +542,7 @@ public class Configuration
 
     public static int getBandSize()
     {
-        return Integer.parseInt(readProperties().getProperty("BandSize"));
+        return Integer.parseInt(get("BandSize"));
     }
 
     public static void setLuceneDir(String dir)
@@ -337,6 +552,6 @@ public class Configuration
 
     public static String getLuceneDir()
     {
-        return readProperties().getProperty("LuceneDir");
+        return get("LuceneDir");
     }
 }
@@ -0,0 +1,250 @@
+package com.thetis.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Long-lived worker pool shared between queries and index loading
+ * Work is submitted in batches, and completion of tasks is signalled to the waiting thread instead of being polled
+ */
+public class ExecutionService implements AutoCloseable
+{
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * Batch of tasks submitted to the service
+     * Progress is counted when each task completes, and the waiting thread is woken by a completion queue
+     * @param <T> Task result type
+     */
+    public class Batch<T>
+    {
+        private final List<Future<T>> futures = new ArrayList<>();
+        private final BlockingQueue<Future<T>> completionQueue = new LinkedBlockingQueue<>();
+        private final LongAdder completed = new LongAdder();
+        private volatile boolean cancelled = false;
+
+        private Batch() {}
+
+        public Future<T> submit(Callable<T> task)
+        {
+            FutureTask<T> future = new FutureTask<>(task) {
+                @Override
+                protected void done()
+                {
+                    Batch.this.completed.increment();
+                    Batch.this.completionQueue.add(this);
+                }
+            };
+
+            synchronized (this.futures)
+            {
+                this.futures.add(future);
+            }
+
+            if (this.cancelled)
+            {
+                future.cancel(false);
+            }
+
+            else
+            {
+                try
+                {
+                    ExecutionService.this.pool.execute(future);
+                }
+
+                catch (RejectedExecutionException e)
+                {
+                    future.cancel(false);
+                    throw e;
+                }
+            }
+
+            return future;
+        }
+
+        public Future<T> submit(Runnable task)
+        {
+            return submit(Executors.callable(task, null));
+        }
+
+        /**
+         * Number of completed tasks, including failed and cancelled tasks
+         * @return Number of completed tasks
+         */
+        public long completed()
+        {
+            return this.completed.sum();
+        }
+
+        public int size()
+        {
+            synchronized (this.futures)
+            {
+                return this.futures.size();
+            }
+        }
+
+        /**
+         * Cancels all tasks that have not yet started
+         * Running tasks are not interrupted, as interrupting a thread blocked on a shared file channel would close the channel
+         */
+        public void cancel()
+        {
+            this.cancelled = true;
+
+            synchronized (this.futures)
+            {
+                this.futures.forEach(f -> f.cancel(false));
+            }
+        }
+
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+
+        /**
+         * Waits until all submitted tasks have completed
+         * @param progress Called from the waiting thread with the number of completed tasks each time a task completes, or null
+         * @return Results of tasks in submission order
+         * @throws ExecutionException If any task failed, in which case the remaining tasks are cancelled
+         * @throws InterruptedException If the waiting thread is interrupted
+         */
+        public List<T> await(LongConsumer progress) throws ExecutionException, InterruptedException
+        {
+            try
+            {
+                return await(-1, progress);
+            }
+
+            catch (TimeoutException e)
+            {
+                throw new IllegalStateException("Batch without deadline timed out");
+            }
+        }
+
+        /**
+         * Waits until all submitted tasks have completed or the deadline has passed
+         * @param deadline Deadline as given by <code>System.nanoTime()</code>, or negative for no deadline
+         * @param progress Called from the waiting thread with the number of completed tasks each time a task completes, or null
+         * @return Results of tasks in submission order
+         * @throws TimeoutException If the deadline passed, in which case the remaining tasks are cancelled
+         * @throws ExecutionException If any task failed, in which case the remaining tasks are cancelled
+         * @throws InterruptedException If the waiting thread is interrupted
+         */
+        public List<T> await(long deadline, LongConsumer progress) throws TimeoutException, ExecutionException, InterruptedException
+        {
+            int size = size();
+
+            try
+            {
+                for (int taken = 0; taken < size; taken++)
+                {
+                    Future<T> next;
+
+                    if (deadline < 0)
+                    {
+                        next = this.completionQueue.take();
+                    }
+
+                    else
+                    {
+                        next = this.completionQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                        if (next == null)
+                        {
+                            cancel();
+                            throw new TimeoutException("Deadline passed after " + completed() + "/" + size + " tasks");
+                        }
+                    }
+
+                    if (!next.isCancelled())
+                    {
+                        next.get();
+                    }
+
+                    if (progress != null)
+                    {
+                        progress.accept(taken + 1);
+                    }
+                }
+            }
+
+            catch (ExecutionException | InterruptedException e)
+            {
+                cancel();
+                throw e;
+            }
+
+            List<T> results = new ArrayList<>(size);
+
+            synchronized (this.futures)
+            {
+                for (Future<T> future : this.futures)
+                {
+                    results.add(future.isCancelled() ? null : future.get());
+                }
+            }
+
+            return results;
+        }
+    }
+
+    /**
+     * @param threads Number of worker threads
+     */
+    public ExecutionService(int threads)
+    {
+        int poolId = POOL_COUNTER.incrementAndGet();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.threads = Math.max(1, threads);
+        this.pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "thetis-" + poolId + "-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    public <T> Batch<T> batch()
+    {
+        return new Batch<>();
+    }
+
+    public boolean isShutdown()
+    {
+        return this.pool.isShutdown();
+    }
+
+    /**
+     * Stops accepting tasks and waits for running tasks to finish
+     */
+    @Override
+    public void close()
+    {
+        this.pool.shutdown();
+
+        try
+        {
+            this.pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        catch (InterruptedException e)
+        {
+            this.pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -94,13 +94,18 @@ public class Ppr {
 
         // Compute edge ratio scores
         // (i.e., the ration of the number of edges of a node divided by the mean number of edges per node)
+        // Neighbor counts of all query nodes are fetched in one query. Nodes not in the graph have no neighbors.
+        Set<String> queryNodes = new HashSet<>();
+        queryEntities.forEach(queryNodes::addAll);
+        Map<String, Long> numNeighbors = connector.batchNumNeighbors(queryNodes);
+
         List<List<Double>> edge_ratio_scores = new ArrayList<>();
         for (List<String> queryTuple :  queryEntities) {
             List<Double> edge_scores_per_q_tuple = new ArrayList<>();
             for (String queryNode : queryTuple) {
                 // TODO: Currently the number of edges for query nodes is too high compared to the mean
                 // so maybe scale the rations by a log factor instead?
-                Double ratio = connector.getNumNeighbors(queryNode) / meanEdgesPerNode;
+                Double ratio = numNeighbors.getOrDefault(queryNode, 0L) / meanEdgesPerNode;
 
                 if (ratio > 1.0) {
                     // Adjust the ratio by a log factor
@@ -0,0 +1,90 @@
+package com.thetis.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class Neo4jEndpointTest
+{
+    private static final List<String> ENTITIES = List.of("http://dbpedia.org/resource/Boston_Bruins",
+            "http://dbpedia.org/resource/Windows_Phone_7", "http://dbpedia.org/resource/1963_Formula_One_season");
+    private static final String UNKNOWN = "http://dbpedia.org/resource/Unknown_entity";
+    private Neo4jEndpoint endpoint;
+
+    @Before
+    public void setup() throws IOException
+    {
+        this.endpoint = new Neo4jEndpoint("config.properties");
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.endpoint.close();
+    }
+
+    private static void assertSameElements(List<String> expected, List<String> actual)
+    {
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertEquals(expected.size(), actual.size());
+    }
+
+    @Test
+    public void testBatchSearchTypes()
+    {
+        List<String> entities = new ArrayList<>(ENTITIES);
+        entities.add(UNKNOWN);
+        Map<String, List<String>> types = this.endpoint.batchSearchTypes(entities),
+                asyncTypes = this.endpoint.batchSearchTypesAsync(entities).toCompletableFuture().join();
+
+        assertEquals(entities.size(), types.size());
+        assertTrue(types.get(UNKNOWN).isEmpty());
+
+        for (String entity : ENTITIES)
+        {
+            assertSameElements(this.endpoint.searchTypes(entity), types.get(entity));
+            assertSameElements(types.get(entity), asyncTypes.get(entity));
+        }
+    }
+
+    @Test
+    public void testBatchSearchPredicates()
+    {
+        Map<String, List<String>> predicates = this.endpoint.batchSearchPredicates(ENTITIES),
+                asyncPredicates = this.endpoint.batchSearchPredicatesAsync(ENTITIES).toCompletableFuture().join();
+
+        for (String entity : ENTITIES)
+        {
+            assertSameElements(this.endpoint.searchPredicates(entity), predicates.get(entity));
+            assertSameElements(predicates.get(entity), asyncPredicates.get(entity));
+        }
+    }
+
+    @Test
+    public void testBatchSearchLink()
+    {
+        List<String> links = List.of("http://en.wikipedia.org/wiki/Windows_Phone_7", "http://en.wikipedia.org/wiki/Boston_Bruins");
+        Map<String, List<String>> entities = this.endpoint.batchSearchLink(links);
+
+        for (String link : links)
+        {
+            assertSameElements(this.endpoint.searchLink(link), entities.get(link));
+        }
+
+        assertEquals(entities, this.endpoint.batchSearchLinkAsync(links).toCompletableFuture().join());
+        assertTrue(this.endpoint.batchSearchLink(List.of()).isEmpty());
+    }
+
+    @Test
+    public void testBatchNumNeighbors()
+    {
+        Map<String, Long> neighbors = this.endpoint.batchNumNeighbors(List.of(ENTITIES.get(0), UNKNOWN));
+        assertEquals(this.endpoint.getNumNeighbors(ENTITIES.get(0)), neighbors.get(ENTITIES.get(0)));
+        assertFalse(neighbors.containsKey(UNKNOWN));
+    }
+}
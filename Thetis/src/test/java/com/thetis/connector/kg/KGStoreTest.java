@@ -0,0 +1,105 @@
+package com.thetis.connector.kg;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class KGStoreTest
+{
+    private static final String TTL = "@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n" +
+            "@prefix dbo: <http://dbpedia.org/ontology/> .\n" +
+            "@prefix dbr: <http://dbpedia.org/resource/> .\n" +
+            "@prefix foaf: <http://xmlns.com/foaf/0.1/> .\n" +
+            "dbr:Boston_Bruins rdf:type dbo:SportsTeam , dbo:Organisation ;\n" +
+            "    dbo:city dbr:Boston ;\n" +
+            "    dbo:name \"Boston Bruins\" ;\n" +
+            "    foaf:isPrimaryTopicOf <http://en.wikipedia.org/wiki/Boston_Bruins> .\n" +
+            "dbr:Boston rdf:type dbo:City ;\n" +
+            "    foaf:isPrimaryTopicOf <http://en.wikipedia.org/wiki/Boston> .\n" +
+            "dbr:Boston_Bruins dbo:city dbr:Boston .\n";
+    private static final String BRUINS = "http://dbpedia.org/resource/Boston_Bruins", BOSTON = "http://dbpedia.org/resource/Boston";
+
+    private KGStore store;
+    private File dir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        KGStore.Builder builder = new KGStore.Builder();
+        RDFParser.fromString(TTL).lang(Lang.TTL).parse(builder);
+        assertEquals(1, builder.skipped());
+
+        this.dir = Files.createTempDirectory("kg").toFile();
+        builder.build().write(this.dir);
+        this.store = KGStore.open(this.dir);
+    }
+
+    @After
+    public void tearDown()
+    {
+        new File(this.dir, KGStore.FILE_NAME).delete();
+        this.dir.delete();
+    }
+
+    @Test
+    public void testTypes()
+    {
+        assertEquals(Set.of("http://dbpedia.org/ontology/SportsTeam", "http://dbpedia.org/ontology/Organisation"), Set.copyOf(this.store.types(BRUINS)));
+        assertEquals(List.of("http://dbpedia.org/ontology/City"), this.store.types(BOSTON));
+        assertTrue(this.store.types("http://dbpedia.org/resource/Unknown").isEmpty());
+    }
+
+    @Test
+    public void testPredicates()
+    {
+        List<String> predicates = this.store.predicates(BRUINS);
+        assertEquals(3, predicates.size());
+        assertTrue(predicates.contains("rdf__type"));
+        assertTrue(predicates.stream().anyMatch(p -> p.endsWith("__city")));
+        assertTrue(predicates.stream().anyMatch(p -> p.endsWith("__isPrimaryTopicOf")));
+    }
+
+    @Test
+    public void testPrimaryTopics()
+    {
+        assertEquals(List.of(BRUINS), this.store.primaryTopics("http://en.wikipedia.org/wiki/Boston_Bruins"));
+        assertEquals(List.of(BOSTON), this.store.primaryTopics("http://en.wikipedia.org/wiki/Boston"));
+        assertTrue(this.store.primaryTopics(BRUINS).isEmpty());
+    }
+
+    @Test
+    public void testDegree()
+    {
+        assertEquals(4, this.store.degree(BRUINS));     // Duplicate relationship to Boston is stored once
+        assertEquals(3, this.store.degree(BOSTON));
+        assertEquals(-1, this.store.degree("http://dbpedia.org/resource/Unknown"));
+    }
+
+    @Test
+    public void testSharedStore() throws IOException
+    {
+        assertSame(this.store, KGStore.open(this.dir));
+    }
+
+    @Test
+    public void testLocalKnowledgeGraph()
+    {
+        LocalKnowledgeGraph kg = new LocalKnowledgeGraph(null, this.store);
+        Map<String, List<String>> links = kg.batchSearchLink(List.of("http://en.wikipedia.org/wiki/Boston", "http://en.wikipedia.org/wiki/Unknown"));
+        assertEquals(List.of(BOSTON), links.get("http://en.wikipedia.org/wiki/Boston"));
+        assertTrue(links.get("http://en.wikipedia.org/wiki/Unknown").isEmpty());
+        assertEquals(kg.searchTypes(BRUINS), kg.batchSearchTypesAsync(List.of(BRUINS)).toCompletableFuture().join().get(BRUINS));
+        assertEquals(Map.of(BOSTON, 3L), kg.batchNumNeighbors(List.of(BOSTON, "http://dbpedia.org/resource/Unknown")));
+    }
+}
@@ -0,0 +1,72 @@
+package com.thetis.loader;
+
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTable;
+import com.thetis.store.IndexFile;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.system.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexReaderComponentsTest
+{
+    private final File dir = new File("testing/output_components");
+
+    @Before
+    public void setup() throws IOException
+    {
+        Configuration.reloadConfiguration();
+        this.dir.mkdirs();
+
+        EntityLinking linker = new EntityLinking("wiki:", "uri:");
+        linker.addMapping("wiki:a", "uri:A");
+
+        EntityTable entityTable = new EntityTable();
+        entityTable.insert(linker.kgUriLookup("uri:A"), new Entity("uri:A", List.of(new Type("t1")), List.of("p1")));
+
+        try (IndexFile.Writer writer = IndexFile.create(new File(this.dir, Configuration.getIndexFile())))
+        {
+            writer.section(IndexIO.ENTITY_LINKER, linker::write);
+            writer.section(IndexIO.ENTITY_TABLE, entityTable::write);
+        }
+    }
+
+    @After
+    public void cleanup()
+    {
+        new File(this.dir, Configuration.getIndexFile()).delete();
+        this.dir.delete();
+    }
+
+    @Test
+    public void testLazyComponents() throws IOException
+    {
+        IndexReader reader = new IndexReader(this.dir, true, false, EnumSet.of(IndexReader.Component.ENTITY_LINKER));
+        reader.performIO();
+
+        EntityLinking linker = reader.getLinker();
+        assertEquals("uri:A", linker.mapTo("wiki:a"));
+        assertSame(linker, reader.getLinker());
+
+        EntityTable entityTable = reader.getEntityTable();
+        assertEquals("uri:A", entityTable.find(linker.kgUriLookup("uri:A")).getUri());
+        assertSame(entityTable, reader.getEntityTable());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingComponent() throws IOException
+    {
+        IndexReader reader = new IndexReader(this.dir, false, false, EnumSet.of(IndexReader.Component.ENTITY_LINKER));
+        reader.performIO();
+        reader.getTypesLSHIndex();
+    }
+}
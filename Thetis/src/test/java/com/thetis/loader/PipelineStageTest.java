@@ -0,0 +1,174 @@
+package com.thetis.loader;
+
+import com.thetis.system.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PipelineStageTest
+{
+    @Before
+    public void setup()
+    {
+        Configuration.reloadConfiguration();
+    }
+
+    @Test
+    public void testAllItemsHandled()
+    {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger maxBatch = new AtomicInteger(0);
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 3, 10, 4, batch -> {
+            maxBatch.accumulateAndGet(batch.size(), Math::max);
+            handled.addAll(batch);
+        });
+        stage.start();
+
+        for (int i = 0; i < 1000; i++)
+        {
+            stage.put(i);
+        }
+
+        stage.finish();
+        Collections.sort(handled);
+
+        assertEquals(1000, handled.size());
+        assertEquals(1000, stage.items());
+        assertTrue(stage.batches() >= 250);
+        assertTrue(maxBatch.get() <= 4);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(i, handled.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testChainedStages()
+    {
+        AtomicInteger sum = new AtomicInteger(0);
+        PipelineStage<Integer> second = new PipelineStage<>("second", 1, 5, 10, batch -> batch.forEach(sum::addAndGet));
+        PipelineStage<Integer> first = new PipelineStage<>("first", 2, 5, 1, batch -> batch.forEach(i -> second.put(i * 2)));
+        first.start();
+        second.start();
+
+        for (int i = 1; i <= 100; i++)
+        {
+            first.put(i);
+        }
+
+        first.finish();
+        second.finish();
+        assertEquals(2 * 5050, sum.get());
+        assertEquals(100, first.items());
+        assertEquals(100, second.items());
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<>("blocked", 1, 2, 1, batch -> {
+            try
+            {
+                release.await();
+            }
+
+            catch (InterruptedException ignored) {}
+        });
+        stage.start();
+
+        CountDownLatch enqueued = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++)
+            {
+                stage.put(i);
+            }
+
+            enqueued.countDown();
+        });
+        producer.start();
+
+        assertFalse(enqueued.await(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+
+        stage.finish();
+        assertEquals(10, stage.items());
+    }
+
+    @Test
+    public void testFailingBatch()
+    {
+        AtomicInteger handled = new AtomicInteger(0);
+        PipelineStage<Integer> stage = new PipelineStage<>("failing", 1, 10, 1, batch -> {
+            if (batch.get(0) == 3)
+                throw new IllegalStateException("failure");
+
+            handled.incrementAndGet();
+        });
+        stage.start();
+
+        for (int i = 0; i < 10; i++)
+        {
+            stage.put(i);
+        }
+
+        stage.finish();
+        assertEquals(9, handled.get());
+        assertEquals(10, stage.items());
+        assertTrue(stage.failure() instanceof IllegalStateException);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPutAfterFinish()
+    {
+        PipelineStage<Integer> stage = new PipelineStage<>("finished", 1, 1, 1, batch -> {});
+        stage.start();
+        stage.finish();
+        stage.put(1);
+    }
+
+    @Test
+    public void testHandlerFailure()
+    {
+        AtomicInteger handled = new AtomicInteger(0);
+        PipelineStage<Integer> stage = new PipelineStage<>("failing", 2, 10, 1, batch -> {
+            if (batch.contains(5))
+            {
+                throw new RuntimeException("timeout");
+            }
+
+            handled.addAndGet(batch.size());
+        });
+        stage.start();
+
+        for (int i = 0; i < 10; i++)
+        {
+            stage.put(i);
+        }
+
+        stage.finish();
+        assertEquals(9, handled.get());
+        assertEquals("timeout", stage.failure().getMessage());
+
+        try
+        {
+            stage.checkFailure();
+            fail("Failed stage must not pass");
+        }
+
+        catch (RuntimeException e)
+        {
+            assertSame(stage.failure(), e.getCause());
+        }
+    }
+}
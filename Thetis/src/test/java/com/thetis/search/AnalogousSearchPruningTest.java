@@ -0,0 +1,139 @@
+package com.thetis.search;
+
+import com.thetis.store.*;
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import com.thetis.system.Configuration;
+import com.thetis.tables.JsonTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AnalogousSearchPruningTest
+{
+    private static final int ENTITIES = 30, TABLES = 60;
+    private final EntityLinking linker = new EntityLinking("wiki:", "uri:");
+    private final EntityTable entityTable = new EntityTable();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private final EmbeddingsIndex<Id> embeddings = new EmbeddingsIndex<>();
+    private final TableCorpus corpus = new TableCorpus();
+    private Table<String> query;
+
+    @Before
+    public void setup()
+    {
+        Configuration.reloadConfiguration();
+        Random random = new Random(42);
+
+        for (int i = 0; i < ENTITIES; i++)
+        {
+            this.linker.addMapping("wiki:e" + i, "uri:e" + i);
+            List<Type> types = new ArrayList<>();
+
+            for (int t = 0; t < 6; t++)
+            {
+                if (random.nextBoolean())
+                    types.add(new Type("t" + t));
+            }
+
+            this.entityTable.insert(this.linker.kgUriLookup("uri:e" + i),
+                    new Entity("uri:e" + i, 1 + random.nextDouble(), types, List.of()));
+        }
+
+        this.query = new DynamicTable<>(List.of(List.of("uri:e0", "uri:e1"), List.of("uri:e2", "uri:e3")));
+
+        for (int table = 0; table < TABLES; table++)
+        {
+            List<List<String>> rows = new ArrayList<>();
+            int rowCount = 2 + random.nextInt(4);
+
+            for (int row = 0; row < rowCount; row++)
+            {
+                if (table < 5)  // Tables containing the query tuples
+                    rows.add(List.of("e" + (2 * (row % 2)), "e" + (2 * (row % 2) + 1), "e" + random.nextInt(ENTITIES)));
+
+                else
+                    rows.add(List.of("e" + random.nextInt(ENTITIES), "e" + random.nextInt(ENTITIES), "e" + random.nextInt(ENTITIES)));
+            }
+
+            addTable("table" + table + ".json", rows);
+        }
+    }
+
+    private void addTable(String name, List<List<String>> rows)
+    {
+        List<List<JsonTable.TableCell>> cells = new ArrayList<>();
+
+        for (int row = 0; row < rows.size(); row++)
+        {
+            List<JsonTable.TableCell> rowCells = new ArrayList<>();
+
+            for (int column = 0; column < rows.get(row).size(); column++)
+            {
+                String entity = rows.get(row).get(column);
+                rowCells.add(new JsonTable.TableCell(entity, false, List.of("wiki:" + entity)));
+                this.tableLink.addLocation(this.linker.kgUriLookup("uri:" + entity), name, List.of(new Pair<>(row, column)));
+            }
+
+            cells.add(rowCells);
+        }
+
+        List<JsonTable.TableCell> headers = List.of(new JsonTable.TableCell("a", false, List.of()),
+                new JsonTable.TableCell("b", false, List.of()), new JsonTable.TableCell("c", false, List.of()));
+        JsonTable table = new JsonTable(name, 3, rows.size(), 0, name, 0, name, headers, cells);
+        this.corpus.insert(name, TableCorpus.link(table, this.linker));
+    }
+
+    private AnalogousSearch search(boolean pruning, boolean singleColumnPerQueryEntity, boolean useMaxSimilarityPerColumn, int threads)
+    {
+        AnalogousSearch search = new AnalogousSearch(this.linker, this.entityTable, this.tableLink, this.embeddings, 3, threads,
+                AnalogousSearch.EntitySimilarity.JACCARD_TYPES, singleColumnPerQueryEntity, false, true,
+                useMaxSimilarityPerColumn, false, AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
+        search.useTableCorpus(this.corpus);
+        search.setCorpus(this.corpus.tableNames());
+        search.usePruning(pruning);
+        return search;
+    }
+
+    private static List<Pair<String, Double>> results(Result result)
+    {
+        List<Pair<String, Double>> results = new ArrayList<>();
+        result.getResults().forEachRemaining(results::add);
+        return results;
+    }
+
+    @Test
+    public void testIdenticalResults()
+    {
+        for (boolean singleColumn : List.of(false, true))
+        {
+            for (boolean maxPerColumn : List.of(false, true))
+            {
+                AnalogousSearch exhaustive = search(false, singleColumn, maxPerColumn, 1),
+                        pruned = search(true, singleColumn, maxPerColumn, 2);
+                List<Pair<String, Double>> expected = results(exhaustive.search(this.query)),
+                        actual = results(pruned.search(this.query));
+
+                assertEquals(3, expected.size());
+                assertEquals(expected, actual);
+                assertEquals(0, exhaustive.getSkippedTables());
+                assertEquals(TABLES, pruned.getParsedTables() + pruned.getSkippedTables());
+            }
+        }
+    }
+
+    @Test
+    public void testSkipsTables()
+    {
+        AnalogousSearch pruned = search(true, false, true, 1);
+        pruned.search(this.query);
+        assertTrue(pruned.getSkippedTables() > 0);
+    }
+}
@@ -0,0 +1,89 @@
+package com.thetis.search;
+
+import com.thetis.store.EmbeddingsIndex;
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTable;
+import com.thetis.store.EntityTableLink;
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import com.thetis.utilities.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class EntityLinkPrefilterTest
+{
+    private static final int ENTITIES = 100;
+    private final EntityLinking linker = new EntityLinking("wiki:", "uri:");
+    private final EntityTable entityTable = new EntityTable();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private final EmbeddingsIndex<Id> embeddings = new EmbeddingsIndex<>();
+
+    @Before
+    public void setup()
+    {
+        // Type 'common' is assigned to all entities, and type 'rare' only to e98 and e99
+        for (int i = 0; i < ENTITIES; i++)
+        {
+            List<Type> types = new ArrayList<>(List.of(new Type("common", 0.0)));
+
+            if (i >= 98)
+                types.add(new Type("rare", Utils.log2(ENTITIES / 2.0)));
+
+            this.linker.addMapping("wiki:e" + i, "uri:e" + i);
+            this.entityTable.insert(this.linker.kgUriLookup("uri:e" + i), new Entity("uri:e" + i, types, List.of()));
+        }
+
+        addTable("shared.json", "e0", "e1");
+        addTable("other.json", "e2", "e3");
+        addTable("rare.json", "e4", "e99");
+    }
+
+    private void addTable(String name, String ... entities)
+    {
+        for (int column = 0; column < entities.length; column++)
+        {
+            this.tableLink.addLocation(this.linker.kgUriLookup("uri:" + entities[column]), name, List.of(new Pair<>(0, column)));
+        }
+    }
+
+    private Set<String> search(double maxTypeFrequency, Table<String> query)
+    {
+        Prefilter prefilter = new Prefilter(this.linker, this.entityTable, this.tableLink, this.embeddings, maxTypeFrequency);
+        Iterator<Pair<String, Double>> results = prefilter.search(query).getResults();
+        Set<String> tables = new HashSet<>();
+        results.forEachRemaining(p -> tables.add(p.getFirst()));
+        assertTrue(prefilter.elapsedNanoSeconds() >= 0);
+
+        return tables;
+    }
+
+    @Test
+    public void testSharedEntities()
+    {
+        Table<String> query = new DynamicTable<>(List.of(List.of("uri:e1", "uri:e50")));
+        assertEquals(Set.of("shared.json"), search(0, query));
+    }
+
+    @Test
+    public void testRareTypes()
+    {
+        Table<String> query = new DynamicTable<>(List.of(List.of("uri:e0"), List.of("uri:e98")));
+        assertEquals(Set.of("shared.json", "rare.json"), search(0.05, query));
+        assertEquals(Set.of("shared.json"), search(0.01, query));
+    }
+
+    @Test
+    public void testUnknownEntities()
+    {
+        Table<String> query = new DynamicTable<>(List.of(List.of("uri:unknown")));
+        assertTrue(search(0.05, query).isEmpty());
+    }
+}
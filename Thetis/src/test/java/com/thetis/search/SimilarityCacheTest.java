@@ -0,0 +1,78 @@
+package com.thetis.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SimilarityCacheTest
+{
+    @Test
+    public void testGet()
+    {
+        SimilarityCache cache = new SimilarityCache();
+        AtomicInteger computations = new AtomicInteger(0);
+
+        assertEquals(0.5, cache.get(0, 10, () -> { computations.incrementAndGet(); return 0.5; }), 0.0);
+        assertEquals(0.5, cache.get(0, 10, () -> { computations.incrementAndGet(); return 0.9; }), 0.0);
+        assertEquals(0.9, cache.get(1, 10, () -> { computations.incrementAndGet(); return 0.9; }), 0.0);
+        assertEquals(2, computations.get());
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains(1, 10));
+        assertFalse(cache.contains(1, 11));
+    }
+
+    @Test
+    public void testGrowAndClear()
+    {
+        SimilarityCache cache = new SimilarityCache();
+
+        for (int i = 0; i < 10000; i++)
+        {
+            final int id = i;
+            cache.get(i % 3, id, () -> id / 10000.0);
+        }
+
+        assertEquals(10000, cache.size());
+
+        for (int i = 0; i < 10000; i++)
+        {
+            assertEquals(i / 10000.0, cache.get(i % 3, i, () -> -1), 0.0);
+        }
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.contains(0, 0));
+    }
+
+    @Test
+    public void testConcurrentComputeOnce() throws InterruptedException
+    {
+        SimilarityCache cache = new SimilarityCache();
+        AtomicInteger computations = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++)
+        {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++)
+                {
+                    cache.get(0, i, () -> { computations.incrementAndGet(); return 1.0; });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertEquals(1000, computations.get());
+        assertEquals(1000, cache.size());
+    }
+}
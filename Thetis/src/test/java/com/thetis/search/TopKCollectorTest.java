@@ -0,0 +1,89 @@
+package com.thetis.search;
+
+import com.thetis.structures.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TopKCollectorTest
+{
+    @Test
+    public void testBounded()
+    {
+        TopKCollector collector = new TopKCollector(3);
+
+        for (int i = 0; i < 100; i++)
+        {
+            collector.offer("table" + i, i);
+        }
+
+        assertEquals(3, collector.size());
+        assertEquals(97.0, collector.threshold(), 0.0);
+        assertEquals(List.of(new Pair<>("table99", 99.0), new Pair<>("table98", 98.0), new Pair<>("table97", 97.0)), collector.ranked());
+        assertFalse(collector.offer("table100", 1.0));
+    }
+
+    @Test
+    public void testTieBreak()
+    {
+        TopKCollector collector = new TopKCollector(2);
+        collector.offer("c", 1.0);
+        collector.offer("b", 1.0);
+        collector.offer("a", 1.0);
+        collector.offer("d", 0.5);
+
+        assertEquals(List.of(new Pair<>("a", 1.0), new Pair<>("b", 1.0)), collector.ranked());
+    }
+
+    @Test
+    public void testResult()
+    {
+        Result result = new Result(2, List.of(new Pair<>("t1", 0.1), new Pair<>("t2", 0.9), new Pair<>("t3", 0.5)));
+        assertEquals(2, result.getK());
+        assertEquals(2, result.getSize());
+
+        Iterator<Pair<String, Double>> results = result.getResults();
+        assertEquals("t2", results.next().getFirst());
+        assertEquals("t3", results.next().getFirst());
+        assertFalse(results.hasNext());
+
+        assertEquals(0, new Result(-1, List.of(new Pair<>("t1", 0.1))).getSize());
+    }
+
+    @Test
+    public void testConcurrentOffer() throws InterruptedException
+    {
+        TopKCollector collector = new TopKCollector(10);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++)
+        {
+            final int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = offset; i < 10000; i += 4)
+                {
+                    collector.offer("table" + i, i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        List<Pair<String, Double>> ranked = collector.ranked();
+        assertEquals(10, ranked.size());
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(9999.0 - i, ranked.get(i).getSecond(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.thetis.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thetis.search.AnalogousSearch;
+import com.thetis.store.*;
+import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.system.Configuration;
+import com.thetis.tables.JsonTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SearchServerTest
+{
+    private final EntityLinking linker = new EntityLinking("wiki:", "uri:");
+    private final EntityTable entityTable = new EntityTable();
+    private final EntityTableLink tableLink = new EntityTableLink();
+    private final TableCorpus corpus = new TableCorpus();
+    private final AtomicInteger searches = new AtomicInteger(0);
+    private final HttpClient client = HttpClient.newHttpClient();
+    private SearchServer server;
+
+    @Before
+    public void setup()
+    {
+        Configuration.reloadConfiguration();
+
+        for (int i = 0; i < 6; i++)
+        {
+            this.linker.addMapping("wiki:e" + i, "uri:e" + i);
+            this.entityTable.insert(this.linker.kgUriLookup("uri:e" + i),
+                    new Entity("uri:e" + i, List.of(new Type("t" + (i % 2))), List.of()));
+        }
+
+        addTable("table0.json", List.of("e0", "e1"), List.of("e2", "e3"));
+        addTable("table1.json", List.of("e4", "e5"), List.of("e4", "e5"));
+
+        this.server = new SearchServer(this.linker, this.tableLink, k -> {
+            this.searches.incrementAndGet();
+            AnalogousSearch search = new AnalogousSearch(this.linker, this.entityTable, this.tableLink, new EmbeddingsIndex<>(),
+                    k, 1, AnalogousSearch.EntitySimilarity.JACCARD_TYPES, false, false, true, false, false,
+                    AnalogousSearch.SimilarityMeasure.EUCLIDEAN);
+            search.useTableCorpus(this.corpus);
+            search.setCorpus(this.corpus.tableNames());
+            return search;
+        }, 2, null);
+        this.server.start(0);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.close();
+    }
+
+    private void addTable(String name, List<String> ... rows)
+    {
+        List<List<JsonTable.TableCell>> cells = new ArrayList<>();
+
+        for (int row = 0; row < rows.length; row++)
+        {
+            List<JsonTable.TableCell> rowCells = new ArrayList<>();
+
+            for (int column = 0; column < rows[row].size(); column++)
+            {
+                String entity = rows[row].get(column);
+                rowCells.add(new JsonTable.TableCell(entity, false, List.of("wiki:" + entity)));
+                this.tableLink.addLocation(this.linker.kgUriLookup("uri:" + entity), name, List.of(new Pair<>(row, column)));
+            }
+
+            cells.add(rowCells);
+        }
+
+        List<JsonTable.TableCell> headers = List.of(new JsonTable.TableCell("a", false, List.of()), new JsonTable.TableCell("b", false, List.of()));
+        this.corpus.insert(name, TableCorpus.link(new JsonTable(name, 2, rows.length, 0, name, 0, name, headers, cells), this.linker));
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.server.port() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return this.client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testSearch() throws IOException, InterruptedException
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            HttpResponse<String> response = post("/api/search", "{\"queries\": [[\"uri:e0\", \"uri:e1\"]], \"k\": 1}");
+            assertEquals(200, response.statusCode());
+
+            JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+            JsonArray scores = body.getAsJsonArray("scores");
+            assertEquals(1, body.get("k").getAsInt());
+            assertEquals(1, scores.size());
+            assertEquals("table0.json", scores.get(0).getAsJsonObject().get("tableID").getAsString());
+        }
+
+        assertEquals(3, this.searches.get());
+    }
+
+    @Test
+    public void testDefaultK() throws IOException, InterruptedException
+    {
+        HttpResponse<String> response = post("/api/search", "{\"queries\": [[\"uri:e4\"]]}");
+        JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertEquals(2, body.get("k").getAsInt());
+        assertEquals(2, body.getAsJsonArray("scores").size());
+        assertEquals("table1.json", body.getAsJsonArray("scores").get(0).getAsJsonObject().get("tableID").getAsString());
+    }
+
+    @Test
+    public void testInvalidQueries() throws IOException, InterruptedException
+    {
+        HttpResponse<String> response = post("/api/search", "{\"queries\": [[\"uri:e0\", \"uri:unknown\", \"other\"]]}");
+        assertEquals(400, response.statusCode());
+
+        JsonArray invalid = JsonParser.parseString(response.body()).getAsJsonObject().getAsJsonArray("invalidEntities");
+        assertEquals(2, invalid.size());
+        assertEquals("uri:unknown", invalid.get(0).getAsString());
+        assertEquals("other", invalid.get(1).getAsString());
+
+        assertEquals(400, post("/api/search", "not json").statusCode());
+        assertEquals(400, post("/api/search", "{\"tuples\": []}").statusCode());
+        assertEquals(400, post("/api/search", "{\"queries\": [[\"uri:e0\"]], \"k\": 0}").statusCode());
+        assertEquals(0, this.searches.get());
+    }
+
+    @Test
+    public void testWebInterface() throws IOException, InterruptedException
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + this.server.port() + "/query_submit"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("query=" + URLEncoder.encode("[\"uri:e4\", \"uri:e5\"]", StandardCharsets.UTF_8)))
+                .build();
+        HttpResponse<String> response = this.client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("table1.json"));
+    }
+
+    @Test
+    public void testUnknownEntities()
+    {
+        assertEquals(List.of("uri:e9"), this.server.unknownEntities(new DynamicTable<>(List.of(List.of("uri:e1", "uri:e9")))));
+    }
+}
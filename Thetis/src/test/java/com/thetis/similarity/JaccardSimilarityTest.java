@@ -1,6 +1,7 @@
 package com.thetis.similarity;
 
 import com.thetis.similarity.JaccardSimilarity;
+import com.thetis.structures.Pair;
 import com.thetis.structures.graph.Type;
 import org.junit.Test;
 
@@ -36,4 +37,28 @@ public class JaccardSimilarityTest
         assertEquals((double) 1 / 3, JaccardSimilarity.make(this.ts1, ts3).similarity(), 0.0001);
         assertEquals((double) 1 / 7, JaccardSimilarity.make(this.ts2, this.ts3).similarity(), 0.0001);
     }
+
+    @Test
+    public void testSortedIds()
+    {
+        int[] s1 = {0, 1, 2, 3, 4}, s2 = {1, 2, 3}, s3 = {5, 6};
+        assertEquals(1.0, JaccardSimilarity.similarity(s1, s1), 0.0);
+        assertEquals(3.0 / 5, JaccardSimilarity.similarity(s1, s2), 0.0001);
+        assertEquals(0.0, JaccardSimilarity.similarity(s1, s3), 0.0);
+        assertEquals(0.0, JaccardSimilarity.similarity(new int[0], new int[0]), 0.0);
+    }
+
+    @Test
+    public void testWeightedSortedIds()
+    {
+        double[] weights = {231.23, 2.11, 534.21, 5.64, 31.74, -1};
+        int[] s1 = {0, 1, 2, 3, 4}, s2 = {2, 3, 5};
+        double expected = JaccardSimilarity.make(this.ts1, this.ts3,
+                Set.of(new Pair<>(new Type("t1", 231.23), 231.23), new Pair<>(new Type("t2", 2.11), 2.11),
+                        new Pair<>(new Type("t3", 534.21), 534.21), new Pair<>(new Type("t4", 5.64), 5.64),
+                        new Pair<>(new Type("t5", 31.74), 31.74))).similarity();
+        assertEquals(expected, JaccardSimilarity.similarity(s1, s2, weights), 0.0001);
+        assertEquals((534.21 + 5.64) / (231.23 + 2.11 + 534.21 + 5.64 + 31.74), JaccardSimilarity.similarity(s1, s2, weights), 0.0001);
+        assertEquals(0.0, JaccardSimilarity.similarity(new int[] {5}, new int[] {5}, weights), 0.0);
+    }
 }
@@ -0,0 +1,126 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.utilities.Utils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DenseEmbeddingsIndexTest
+{
+    private final DenseEmbeddingsIndex<String> idx = new DenseEmbeddingsIndex<>();
+    private final List<Double> vector1 = List.of(3.0, 4.0, 0.0),
+            vector2 = List.of(1.0, 2.0, 3.0),
+            vector3 = List.of(-2.0, 0.5, 1.0);
+
+    @Before
+    public void load()
+    {
+        this.idx.insert(new Id(1), this.vector1);
+        this.idx.insert(new Id(5), this.vector2);
+        this.idx.insert(new Id(3000), this.vector3);
+        this.idx.clusterInsert("cluster1", new Id(1), this.vector1);
+    }
+
+    @Test
+    public void testFindNormalized()
+    {
+        assertEquals(3, this.idx.size());
+        assertEquals(3, this.idx.dimension());
+        List<Double> found = this.idx.find(new Id(1));
+        assertEquals(0.6, found.get(0), 0.000001);
+        assertEquals(0.8, found.get(1), 0.000001);
+        assertEquals(0.0, found.get(2), 0.000001);
+        assertNull(this.idx.find(new Id(2)));
+        assertNull(this.idx.find(new Id(-1)));
+    }
+
+    @Test
+    public void testCosineSimilarity()
+    {
+        assertEquals(Utils.cosineSimilarity(this.vector1, this.vector2), this.idx.cosineSimilarity(new Id(1), new Id(5)), 0.000001);
+        assertEquals(Utils.cosineSimilarity(this.vector2, this.vector3), this.idx.cosineSimilarity(new Id(5), new Id(3000)), 0.000001);
+        assertEquals(1.0, this.idx.cosineSimilarity(new Id(5), new Id(5)), 0.000001);
+        assertEquals(0.0, this.idx.cosineSimilarity(new Id(5), new Id(6)), 0.0);
+    }
+
+    @Test
+    public void testRemove()
+    {
+        assertTrue(this.idx.remove(new Id(1)));
+        assertFalse(this.idx.remove(new Id(1)));
+        assertFalse(this.idx.contains(new Id(1)));
+        assertEquals(2, this.idx.size());
+        assertTrue(this.idx.contains(new Id(3000)));
+        assertEquals(Utils.cosineSimilarity(this.vector2, this.vector3), this.idx.cosineSimilarity(new Id(5), new Id(3000)), 0.000001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionMismatch()
+    {
+        this.idx.insert(new Id(7), List.of(1.0, 2.0));
+    }
+
+    @Test
+    public void testGrowthLimit()
+    {
+        DenseEmbeddingsIndex<String> limited = new DenseEmbeddingsIndex<>();
+        limited.maxMatrixLength = 1500 * 3 + 2;
+
+        for (int id = 0; id < 1500; id++)
+        {
+            limited.insert(new Id(id), this.vector2);
+        }
+
+        assertEquals(1500, limited.size());
+        assertEquals(1.0, limited.cosineSimilarity(new Id(0), new Id(1499)), 0.000001);
+
+        try
+        {
+            limited.insert(new Id(1500), this.vector2);
+            fail("Insertion beyond the maximum matrix size must fail");
+        }
+
+        catch (IllegalStateException e)
+        {
+            assertEquals(1500, limited.size());
+        }
+
+        limited.insert(new Id(0), this.vector1);    // Existing rows can still be replaced
+        assertEquals(1500, limited.size());
+    }
+
+    @Test
+    public void testClusters()
+    {
+        assertEquals(1, this.idx.clusters());
+        assertEquals(this.vector1, this.idx.clusterGet("cluster1", new Id(1)));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes))
+        {
+            output.writeObject(this.idx);
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            DenseEmbeddingsIndex<String> read = (DenseEmbeddingsIndex<String>) input.readObject();
+            assertEquals(3, read.size());
+            assertEquals(this.idx.find(new Id(5)), read.find(new Id(5)));
+            assertEquals(this.idx.cosineSimilarity(new Id(1), new Id(3000)), read.cosineSimilarity(new Id(1), new Id(3000)), 0.0);
+            assertEquals(1, read.clusters());
+
+            read.insert(new Id(6), this.vector1);
+            assertEquals(4, read.size());
+        }
+    }
+}
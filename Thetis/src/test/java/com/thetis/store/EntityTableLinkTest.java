@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import java.io.*;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -96,6 +97,27 @@ public class EntityTableLinkTest
         assertTrue(entities3.contains(this.id1) && entities3.contains(this.id3));
     }
 
+    @Test
+    public void testForwardIndex()
+    {
+        this.tableLink.addLocation(this.id3, "file3", List.of(new Pair<>(2, 1), new Pair<>(4, 0)));
+        this.tableLink.buildForwardIndex();
+        assertTrue(this.tableLink.hasForwardIndex());
+        assertEquals(Set.of(this.id1, this.id2), this.tableLink.tableToEntities("file1"));
+        assertEquals(Set.of(this.id1, this.id2, this.id3), this.tableLink.tableToEntities("file2"));
+        assertEquals(Set.of(this.id1, this.id3), this.tableLink.tableToEntities("file3"));
+        assertTrue(this.tableLink.tableToEntities("file4").isEmpty());
+
+        Map<Id, List<Pair<Integer, Integer>>> locations = this.tableLink.tableLocations("file3");
+        assertEquals(2, locations.size());
+        assertEquals(List.of(), locations.get(this.id1));
+        assertEquals(List.of(new Pair<>(2, 1), new Pair<>(4, 0)), locations.get(this.id3));
+
+        this.tableLink.insert(this.id3, List.of("file1"));
+        assertFalse(this.tableLink.hasForwardIndex());
+        assertEquals(Set.of(this.id1, this.id2, this.id3), this.tableLink.tableToEntities("file1"));
+    }
+
     @Test
     public void testSerialization()
     {
@@ -130,4 +152,35 @@ public class EntityTableLinkTest
             fail(e.getMessage());
         }*/
     }
+
+    @Test
+    public void testSerializationRoundTrip() throws IOException, ClassNotFoundException
+    {
+        List<Pair<Integer, Integer>> locations = List.of(new Pair<>(0, 1), new Pair<>(7, 3));
+        this.tableLink.addLocation(this.id2, "file2", locations);
+        this.tableLink.setDirectory("tables/");
+        this.tableLink.buildForwardIndex();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes))
+        {
+            stream.writeObject(this.tableLink);
+        }
+
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            EntityTableLink index = (EntityTableLink) stream.readObject();
+            assertEquals(3, index.size());
+            assertEquals(3, index.tableCount());
+            assertEquals("tables/", index.getDirectory());
+            assertEquals(Set.copyOf(this.files1), Set.copyOf(index.find(this.id1)));
+            assertEquals(Set.copyOf(this.files3), Set.copyOf(index.find(this.id3)));
+            assertEquals(locations, index.getLocations(this.id2, "file2"));
+            assertEquals(List.of(), index.getLocations(this.id2, "file1"));
+            assertNull(index.getLocations(this.id2, "file3"));
+            assertTrue(index.hasForwardIndex());
+            assertEquals(Set.of(this.id1, this.id2, this.id3), index.tableToEntities("file2"));
+            assertEquals(locations, index.tableLocations("file2").get(this.id2));
+        }
+    }
 }
@@ -53,4 +53,45 @@ public class EntityTableTest
         assertEquals(this.ent2, this.entTable.find(this.id2));
         assertEquals(this.ent3, this.entTable.find(this.id3));
     }
+
+    @Test
+    public void testInternedIds()
+    {
+        int[] types1 = this.ent1.getTypeIds(), types2 = this.ent2.getTypeIds(), types3 = this.ent3.getTypeIds();
+        assertEquals(3, this.entTable.typeCount());
+        assertArrayEquals(new int[] {0, 1, 2}, types1);
+        assertArrayEquals(new int[] {1, 2}, types2);
+        assertArrayEquals(new int[] {0, 1}, types3);
+        assertEquals(0, this.ent1.getPredicateIds().length);
+
+        Entity duplicates = new Entity("uri4", List.of(new Type("type3"), new Type("type4"), new Type("type3")), List.of("p1", "p1"));
+        this.entTable.insert(Id.alloc(), duplicates);
+        assertArrayEquals(new int[] {2, 3}, duplicates.getTypeIds());
+        assertArrayEquals(new int[] {0}, duplicates.getPredicateIds());
+    }
+
+    @Test
+    public void testTypeIdfs()
+    {
+        assertEquals(-1, this.entTable.getTypeIdfs()[0], 0.0);
+        List.of(this.ent1, this.ent2, this.ent3).forEach(e -> e.getTypes().forEach(t -> t.setIdf(t.getType().length())));
+        this.entTable.updateTypeIdfs();
+
+        for (int i = 0; i < this.entTable.typeCount(); i++)
+        {
+            assertEquals(5, this.entTable.getTypeIdfs()[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testUnknownTypeIdfKeepsIdf()
+    {
+        Id corpusEntity = Id.alloc(), queryEntity = Id.alloc();
+        this.entTable.insert(corpusEntity, new Entity("uri4", List.of(new Type("type4", 1.5)), List.of()));
+        this.entTable.insert(queryEntity, new Entity("uri5", List.of(new Type("type4")), List.of()));
+
+        int typeId = this.entTable.find(queryEntity).getTypeIds()[0];
+        assertEquals(1.5, this.entTable.getTypeIdfs()[typeId], 0);
+        assertEquals(-1, this.entTable.getTypeIdfs()[this.ent1.getTypeIds()[0]], 0);
+    }
 }
@@ -0,0 +1,177 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.system.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IndexFileTest
+{
+    private final File file = new File("test_index.bin");
+
+    @Before
+    public void init()
+    {
+        Configuration.reloadConfiguration();
+    }
+
+    @After
+    public void cleanup()
+    {
+        this.file.delete();
+    }
+
+    @Test
+    public void testSections() throws IOException
+    {
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("ints", output -> IndexFile.writeInts(output, new int[]{1, -2, 3, 4}, 3));
+            writer.section("object", output -> IndexFile.writeObject(output, List.of("a", "b")));
+        }
+
+        IndexFile indexFile = IndexFile.open(this.file);
+        assertEquals(IndexFile.VERSION, indexFile.version());
+        assertEquals(List.of("ints", "object"), List.copyOf(indexFile.sections()));
+        assertArrayEquals(new int[]{1, -2, 3}, indexFile.read("ints", input -> IndexFile.readInts(input, 3)));
+        assertEquals(List.of("a", "b"), indexFile.read("object", IndexFile::readObject));
+    }
+
+    @Test
+    public void testFailedWriteKeepsIndex() throws IOException
+    {
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("ints", output -> IndexFile.writeInts(output, new int[]{1, 2}, 2));
+        }
+
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("object", output -> IndexFile.writeObject(output, List.of("a")));
+            writer.section("failing", output -> {
+                throw new IOException("disk full");
+            });
+        }
+
+        catch (IOException e)
+        {
+            assertEquals("disk full", e.getMessage());
+        }
+
+        IndexFile indexFile = IndexFile.open(this.file);
+        assertEquals(List.of("ints"), List.copyOf(indexFile.sections()));
+        assertArrayEquals(new int[]{1, 2}, indexFile.read("ints", input -> IndexFile.readInts(input, 2)));
+
+        assertFalse(new File(this.file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testChecksum() throws IOException
+    {
+        float[] values = new float[10_000];
+
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = i / 3.0f;
+        }
+
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("floats", output -> IndexFile.writeFloats(output, values, values.length));
+        }
+
+        assertArrayEquals(values, IndexFile.open(this.file).read("floats", input -> IndexFile.readFloats(input, values.length)), 0);
+
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw"))
+        {
+            raf.seek(100);
+            raf.write(raf.read() ^ 0xFF);
+        }
+
+        try
+        {
+            IndexFile.open(this.file).read("floats", input -> IndexFile.readFloats(input, values.length));
+            fail("Corrupt section was read");
+        }
+
+        catch (IOException ignored) {}
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnreadBytes() throws IOException
+    {
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("ints", output -> IndexFile.writeInts(output, new int[]{1, 2}, 2));
+        }
+
+        IndexFile.open(this.file).read("ints", input -> IndexFile.readInts(input, 1));
+    }
+
+    @Test
+    public void testIndexes() throws IOException
+    {
+        EntityLinking linker = new EntityLinking("wiki:", "uri:");
+        linker.addMapping("wiki:a", "uri:A");
+        linker.addMapping("wiki:b", "uri:B");
+        Id idA = linker.kgUriLookup("uri:A"), idB = linker.kgUriLookup("uri:B");
+
+        EntityTable entityTable = new EntityTable();
+        entityTable.insert(idA, new Entity("uri:A", 0.5, List.of(new Type("t1", 1.5), new Type("t2")), List.of("p1")));
+        entityTable.insert(idB, new Entity("uri:B", List.of(new Type("t2", 2.0)), List.of("p2", "p1")));
+
+        EntityTableLink tableLink = new EntityTableLink();
+        tableLink.setDirectory("tables/");
+        tableLink.addLocation(idA, "table1.json", List.of(new Pair<>(0, 1)));
+        tableLink.insert(idB, List.of("table1.json", "table2.json"));
+
+        DenseEmbeddingsIndex<String> embeddings = new DenseEmbeddingsIndex<>();
+        embeddings.insert(idA, List.of(3.0, 4.0));
+
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            writer.section("linker", linker::write);
+            writer.section("entities", entityTable::write);
+            writer.section("link", tableLink::write);
+            writer.section("embeddings", embeddings::write);
+        }
+
+        IndexFile indexFile = IndexFile.open(this.file);
+        EntityLinking readLinker = indexFile.read("linker", EntityLinking::read);
+        EntityTable readTable = indexFile.read("entities", EntityTable::read);
+        EntityTableLink readLink = indexFile.read("link", EntityTableLink::read);
+        DenseEmbeddingsIndex<String> readEmbeddings = indexFile.read("embeddings", DenseEmbeddingsIndex::read);
+
+        assertEquals("uri:A", readLinker.mapTo("wiki:a"));
+        assertEquals("wiki:b", readLinker.mapFrom("uri:B"));
+        assertEquals(idB, readLinker.kgUriLookup("uri:B"));
+
+        Entity entity = readTable.find(idA);
+        assertEquals("uri:A", entity.getUri());
+        assertEquals(0.5, entity.getIDF(), 0);
+        assertEquals(List.of(new Type("t1", 1.5), new Type("t2")), entity.getTypes());
+        assertArrayEquals(entityTable.find(idB).getTypeIds(), readTable.find(idB).getTypeIds());
+        assertArrayEquals(entityTable.find(idB).getPredicateIds(), readTable.find(idB).getPredicateIds());
+        assertArrayEquals(entityTable.getTypeIdfs(), readTable.getTypeIdfs(), 0);
+
+        assertEquals("tables/", readLink.getDirectory());
+        assertEquals(List.of(new Pair<>(0, 1)), readLink.getLocations(idA, "table1.json"));
+        assertEquals(Set.of("table1.json", "table2.json"), Set.copyOf(readLink.find(idB)));
+
+        assertEquals(2, readEmbeddings.dimension());
+        assertEquals(embeddings.find(idA), readEmbeddings.find(idA));
+        assertFalse(readEmbeddings.contains(idB));
+    }
+}
@@ -0,0 +1,149 @@
+package com.thetis.store;
+
+import com.thetis.structures.Id;
+import com.thetis.structures.Pair;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.system.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedIndexTest
+{
+    private final File file = new File("test_mapped_index.bin");
+    private EntityLinking linker;
+    private EntityTable entityTable;
+    private EntityTableLink tableLink;
+    private DenseEmbeddingsIndex<String> embeddings;
+    private IndexFile indexFile;
+    private Id idA, idB, idC;
+
+    @Before
+    public void init() throws IOException
+    {
+        Configuration.reloadConfiguration();
+        this.linker = new EntityLinking("wiki:", "uri:");
+        this.linker.addMapping("wiki:a", "uri:A");
+        this.linker.addMapping("wiki:b", "uri:B");
+        this.linker.addMapping("wiki:c", "uri:C");
+        this.idA = this.linker.kgUriLookup("uri:A");
+        this.idB = this.linker.kgUriLookup("uri:B");
+        this.idC = this.linker.kgUriLookup("uri:C");
+
+        this.entityTable = new EntityTable();
+        this.entityTable.insert(this.idA, new Entity("uri:A", 0.5, List.of(new Type("t1", 1.5), new Type("t2")), List.of("p1")));
+        this.entityTable.insert(this.idB, new Entity("uri:B", List.of(new Type("t2", 2.0)), List.of("p2", "p1")));
+
+        this.tableLink = new EntityTableLink();
+        this.tableLink.setDirectory("tables/");
+        this.tableLink.addLocation(this.idA, "table2.json", List.of(new Pair<>(0, 1), new Pair<>(3, 0)));
+        this.tableLink.addLocation(this.idB, "table1.json", List.of(new Pair<>(2, 2)));
+        this.tableLink.addLocation(this.idB, "table2.json", List.of(new Pair<>(1, 0)));
+
+        this.embeddings = new DenseEmbeddingsIndex<>();
+        this.embeddings.insert(this.idA, List.of(3.0, 4.0));
+        this.embeddings.insert(this.idB, List.of(1.0, 0.0));
+
+        try (IndexFile.Writer writer = IndexFile.create(this.file))
+        {
+            MappedEntityLinking.write(writer, this.linker);
+            MappedEntityTable.write(writer, this.entityTable);
+            MappedEntityTableLink.write(writer, this.tableLink);
+            MappedEmbeddingsIndex.write(writer, this.embeddings);
+        }
+
+        this.indexFile = IndexFile.open(this.file);
+    }
+
+    @After
+    public void cleanup()
+    {
+        this.file.delete();
+    }
+
+    @Test
+    public void testLinker() throws IOException
+    {
+        assertTrue(MappedEntityLinking.isMapped(this.indexFile));
+
+        MappedEntityLinking mapped = MappedEntityLinking.open(this.indexFile);
+        assertEquals("uri:A", mapped.mapTo("wiki:a"));
+        assertEquals("wiki:c", mapped.mapFrom("uri:C"));
+        assertEquals(this.idB, mapped.kgUriLookup("uri:B"));
+        assertEquals("uri:B", mapped.kgUriLookup(this.idB));
+        assertNull(mapped.mapTo("wiki:d"));
+
+        mapped.addMapping("wiki:d", "uri:D");
+        assertEquals("uri:D", mapped.mapTo("wiki:d"));
+        assertNotNull(mapped.kgUriLookup("uri:D"));
+        assertFalse(Set.of(this.idA, this.idB, this.idC).contains(mapped.kgUriLookup("uri:D")));
+    }
+
+    @Test
+    public void testEntityTable() throws IOException
+    {
+        MappedEntityTable mapped = MappedEntityTable.open(this.indexFile);
+        assertEquals(2, mapped.size());
+        assertTrue(mapped.contains(this.idA));
+        assertFalse(mapped.contains(this.idC));
+
+        Entity entity = mapped.find(this.idA);
+        assertEquals("uri:A", entity.getUri());
+        assertEquals(0.5, entity.getIDF(), 0);
+        assertEquals(List.of(new Type("t1", 1.5), new Type("t2")), entity.getTypes());
+        assertEquals(List.of("p2", "p1"), mapped.find(this.idB).getPredicates());
+        assertArrayEquals(this.entityTable.find(this.idB).getTypeIds(), mapped.find(this.idB).getTypeIds());
+        assertArrayEquals(this.entityTable.find(this.idB).getPredicateIds(), mapped.find(this.idB).getPredicateIds());
+        assertArrayEquals(this.entityTable.getTypeIdfs(), mapped.getTypeIdfs(), 0);
+
+        mapped.insert(this.idC, new Entity("uri:C", List.of(new Type("t3")), List.of()));
+        assertEquals(3, mapped.size());
+        assertEquals("uri:C", mapped.find(this.idC).getUri());
+
+        Set<Id> ids = new HashSet<>();
+        mapped.allIds().forEachRemaining(ids::add);
+        assertEquals(Set.of(this.idA, this.idB, this.idC), ids);
+
+        Set<String> occurrences = new HashSet<>();
+        mapped.forEachTypeOccurrence((entityId, type, idf) -> occurrences.add(entityId + " " + type + " " + idf));
+        assertEquals(Set.of(this.idA.getId() + " t1 1.5", this.idA.getId() + " t2 -1.0", this.idB.getId() + " t2 2.0",
+                this.idC.getId() + " t3 -1.0"), occurrences);
+    }
+
+    @Test
+    public void testEntityTableLink() throws IOException
+    {
+        MappedEntityTableLink mapped = MappedEntityTableLink.open(this.indexFile);
+        assertEquals("tables/", mapped.getDirectory());
+        assertEquals(2, mapped.size());
+        assertEquals(2, mapped.tableCount());
+        assertEquals(Set.of("table1.json", "table2.json"), Set.copyOf(mapped.find(this.idB)));
+        assertEquals(List.of(new Pair<>(0, 1), new Pair<>(3, 0)), mapped.getLocations(this.idA, "table2.json"));
+        assertNull(mapped.getLocations(this.idA, "table1.json"));
+        assertEquals(Set.of(this.idA, this.idB), mapped.tableToEntities("table2.json"));
+        assertEquals(this.tableLink.tableLocations("table2.json"), mapped.tableLocations("table2.json"));
+        assertTrue(mapped.tableToEntities("table3.json").isEmpty());
+    }
+
+    @Test
+    public void testEmbeddings() throws IOException
+    {
+        MappedEmbeddingsIndex<String> mapped = MappedEmbeddingsIndex.open(this.indexFile);
+        assertEquals(2, mapped.dimension());
+        assertEquals(2, mapped.size());
+        assertEquals(this.embeddings.find(this.idA), mapped.find(this.idA));
+        assertEquals(this.embeddings.cosineSimilarity(this.idA, this.idB), mapped.cosineSimilarity(this.idA, this.idB), 1e-6);
+        assertNull(mapped.find(this.idC));
+
+        mapped.insert(this.idC, List.of(0.0, 2.0));
+        assertEquals(3, mapped.size());
+        assertEquals(0.8, mapped.cosineSimilarity(this.idA, this.idC), 1e-6);
+    }
+}
@@ -0,0 +1,98 @@
+package com.thetis.store;
+
+import com.thetis.structures.table.LinkedTable;
+import com.thetis.system.Configuration;
+import com.thetis.tables.JsonTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TableCorpusTest
+{
+    private final TableCorpus corpus = new TableCorpus();
+    private final EntityLinking linker = new EntityLinking("wiki:", "uri:");
+    private LinkedTable table1, table2;
+
+    @Before
+    public void init()
+    {
+        Configuration.reloadConfiguration();
+        this.linker.addMapping("wiki:wiki1", "uri:uri1");
+        this.linker.addMapping("wiki:wiki2", "uri:uri2");
+
+        List<JsonTable.TableCell> headers = List.of(new JsonTable.TableCell("h1", false, List.of()),
+                new JsonTable.TableCell("h2", false, List.of()));
+        List<List<JsonTable.TableCell>> rows = List.of(
+                List.of(new JsonTable.TableCell("c1", false, List.of("wiki:unknown", "wiki:wiki1")),
+                        new JsonTable.TableCell("c2", false, List.of())),
+                List.of(new JsonTable.TableCell("c3", false, List.of("wiki:unknown")),
+                        new JsonTable.TableCell("c4", false, List.of("wiki:wiki2"))));
+        JsonTable jTable = new JsonTable("id", 2, 2, 0, "title", 0, "caption", headers, rows);
+
+        this.table1 = TableCorpus.link(jTable, this.linker);
+        this.table2 = new LinkedTable(1, 1, 1, new String[]{"header"});
+        this.corpus.insert("table1.json", this.table1);
+        this.corpus.insert("table2.json", this.table2);
+    }
+
+    @Test
+    public void testLink()
+    {
+        assertEquals(2, this.table1.rowCount());
+        assertEquals(2, this.table1.columnCount());
+        assertArrayEquals(new String[]{"h1", "h2"}, this.table1.headers());
+        assertEquals(this.linker.kgUriLookup("uri:uri1").getId(), this.table1.entity(0, 0));
+        assertEquals(LinkedTable.NO_ENTITY, this.table1.entity(0, 1));
+        assertEquals(LinkedTable.NO_ENTITY, this.table1.entity(1, 0));
+        assertEquals(this.linker.kgUriLookup("uri:uri2").getId(), this.table1.entity(1, 1));
+    }
+
+    @Test
+    public void testFind()
+    {
+        assertSame(this.table1, this.corpus.find("table1.json"));
+        assertSame(this.table2, this.corpus.find("table2.json"));
+        assertNull(this.corpus.find("table3.json"));
+    }
+
+    @Test
+    public void testRemove()
+    {
+        assertTrue(this.corpus.remove("table1.json"));
+        assertFalse(this.corpus.contains("table1.json"));
+        assertTrue(this.corpus.contains("table2.json"));
+        assertEquals(1, this.corpus.size());
+    }
+
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        File file = new File("test_corpus.bin");
+
+        try
+        {
+            this.corpus.write(file);
+            TableCorpus read = TableCorpus.read(file);
+            assertEquals(Set.of("table1.json", "table2.json"), read.tableNames());
+
+            LinkedTable readTable1 = read.find("table1.json"), readTable2 = read.find("table2.json");
+            assertEquals(this.table1.dataRows(), readTable1.dataRows());
+            assertArrayEquals(this.table1.headers(), readTable1.headers());
+            assertArrayEquals(this.table1.entities(), readTable1.entities());
+            assertEquals(1, readTable2.rowCount());
+            assertEquals(LinkedTable.NO_ENTITY, readTable2.entity(0, 0));
+            assertNull(read.find("table3.json"));
+        }
+
+        finally
+        {
+            file.delete();
+        }
+    }
+}
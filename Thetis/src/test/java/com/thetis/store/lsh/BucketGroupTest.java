@@ -3,8 +3,10 @@ package com.thetis.store.lsh;
 import com.thetis.store.lsh.BucketGroup;
 import org.junit.Test;
 
+import java.util.Map;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -59,4 +61,37 @@ public class BucketGroupTest
             assertTrue(b3Values.contains(val));
         }
     }
+
+    @Test
+    public void testSparse()
+    {
+        BucketGroup<String, String> group = new BucketGroup<>(1 << 20);
+        group.add(1000000, "1", "a");
+        group.add(3, "2", "b");
+        group.add(1000000, "3", "c");
+
+        assertEquals(1 << 20, group.size());
+        assertEquals(2, group.buckets().size());
+        assertArrayEquals(new int[]{3, 1000000}, group.bucketIndices());
+        assertEquals(Set.of("a", "c"), group.get(1000000));
+        assertTrue(group.get(4).isEmpty());
+    }
+
+    @Test
+    public void testFreeze()
+    {
+        BucketGroup<String, String> group = create();
+        Map<String, Integer> ids = Map.of("a", 0, "b", 1, "c", 2, "d", 3, "e", 4, "f", 5, "g", 6);
+        group.freeze(ids::get);
+
+        assertTrue(group.isFrozen());
+        assertArrayEquals(new int[]{0, 1, 2}, group.valueIds(0));
+        assertArrayEquals(new int[]{3}, group.valueIds(1));
+        assertArrayEquals(new int[]{4, 5, 6}, group.valueIds(2));
+
+        group.addFrozen(1, 0);
+        group.addFrozen(1, 3);
+        assertArrayEquals(new int[]{0, 3}, group.valueIds(1));
+        assertArrayEquals(new int[]{0, 1, 2}, group.valueIds(0));
+    }
 }
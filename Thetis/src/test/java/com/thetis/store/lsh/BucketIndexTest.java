@@ -0,0 +1,73 @@
+package com.thetis.store.lsh;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BucketIndexTest
+{
+    private static class TestIndex extends BucketIndex<String, String>
+    {
+        private TestIndex()
+        {
+            super(3, 4);
+        }
+    }
+
+    private TestIndex index;
+
+    @Before
+    public void setup()
+    {
+        this.index = new TestIndex();
+        this.index.add(0, 1, "1", "a");
+        this.index.add(0, 1, "2", "a");
+        this.index.add(0, 1, "3", "b");
+        this.index.add(1, 2, "1", "a");
+        this.index.add(1, 2, "4", "c");
+        this.index.add(2, 3, "1", "a");
+        this.index.add(2, 3, "3", "b");
+    }
+
+    @Test
+    public void testFreeze()
+    {
+        assertFalse(this.index.isFrozen());
+        assertEquals(Set.of("a", "b"), this.index.get(0, 1));
+
+        this.index.freeze();
+        assertTrue(this.index.isFrozen());
+        assertEquals(3, this.index.size());
+        assertEquals(4, this.index.groupSize());
+        assertEquals(Set.of("a", "b"), this.index.get(0, 1));
+        assertEquals(2, this.index.bucketGroups().get(0).valueIds(1).length);
+        assertTrue(this.index.get(0, 0).isEmpty());
+    }
+
+    @Test
+    public void testSearch()
+    {
+        List<Integer> keys = List.of(1, 2, 3);
+        assertEquals(Set.of("a", "b", "c"), this.index.search(keys, 1));
+        assertEquals(Set.of("a", "b"), this.index.search(keys, 2));
+        assertEquals(Set.of("a"), this.index.search(keys, 3));
+        assertTrue(this.index.search(List.of(0, 0, 0), 1).isEmpty());
+    }
+
+    @Test
+    public void testAddAfterFreeze()
+    {
+        this.index.freeze();
+        this.index.add(0, 1, "5", "d");
+        this.index.add(1, 2, "5", "d");
+        this.index.add(1, 2, "6", "a");
+
+        assertEquals(Set.of("a", "b", "d"), this.index.get(0, 1));
+        assertEquals(3, this.index.bucketGroups().get(1).valueIds(2).length);
+        assertEquals(Set.of("a", "b", "d"), this.index.search(List.of(1, 2, 3), 2));
+    }
+}
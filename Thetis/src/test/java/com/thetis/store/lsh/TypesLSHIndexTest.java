@@ -1,4 +1,117 @@
 package com.thetis.store.lsh;
 
-public class TypesLSHIndexTest {
+import com.thetis.store.EntityLinking;
+import com.thetis.store.EntityTable;
+import com.thetis.structures.PairNonComparable;
+import com.thetis.structures.graph.Entity;
+import com.thetis.structures.graph.Type;
+import com.thetis.structures.table.DynamicTable;
+import com.thetis.structures.table.Table;
+import com.thetis.system.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TypesLSHIndexTest
+{
+    private static final File MISSING_KG_CONFIG = new File("missing-kg.properties");
+    private EntityLinking linker;
+    private EntityTable entityTable;
+    private SetLSHIndex index;
+    private Set<PairNonComparable<String, Table<String>>> tables;
+
+    private void addEntity(String name, String ... types)
+    {
+        this.linker.addMapping("wiki:" + name, "uri:" + name);
+        this.entityTable.insert(this.linker.kgUriLookup("uri:" + name),
+                new Entity("uri:" + name, Arrays.stream(types).map(Type::new).toList(), List.of()));
+    }
+
+    @Before
+    public void setup()
+    {
+        Configuration.reloadConfiguration();
+        this.linker = new EntityLinking("wiki:", "uri:");
+        this.entityTable = new EntityTable();
+        addEntity("A", "t1", "t2");
+        addEntity("B", "t1", "t2");
+        addEntity("C", "t3", "t4");
+        addEntity("D", "t5", "t6");
+        addEntity("E", "t7", "t8");
+
+        Set<PairNonComparable<String, Table<String>>> tables = new HashSet<>();
+        Map<String, String> tableEntities = Map.of("table1", "A", "table2", "B", "table3", "C", "table4", "D", "table5", "E");
+        tableEntities.forEach((table, entity) ->
+                tables.add(new PairNonComparable<>(table, new DynamicTable<>(List.of(List.of("uri:" + entity))))));
+
+        this.tables = tables;
+
+        // The KG configuration does not exist, so the index must be built and searched from the entity table alone
+        this.index = build(1);
+    }
+
+    private SetLSHIndex build(int threads)
+    {
+        return new SetLSHIndex(MISSING_KG_CONFIG, SetLSHIndex.EntitySet.TYPES, 30, 10, 2, this.tables,
+                (obj, keys) -> Math.abs(obj.hashCode() % keys), 3, 100, threads, new Random(0), this.linker, this.entityTable, false);
+    }
+
+    @Test
+    public void testSearchWithoutKG()
+    {
+        Set<String> result = this.index.search("uri:A");
+        assertTrue(result.contains("table1"));
+        assertTrue(result.contains("table2"));
+        assertEquals(result, this.index.agggregatedSearch("uri:A", "uri:B"));
+    }
+
+    @Test
+    public void testQueryEntityFromEntityTable()
+    {
+        addEntity("F", "t1", "t2");
+        this.index.useEntityTable(this.entityTable);
+
+        Set<String> result = this.index.search("uri:F");
+        assertTrue(result.contains("table1"));
+        assertTrue(result.contains("table2"));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes))
+        {
+            output.writeObject(this.index);
+        }
+
+        SetLSHIndex read;
+
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            read = (SetLSHIndex) input.readObject();
+        }
+
+        read.useEntityLinker(this.linker);
+        read.useEntityTable(this.entityTable);
+        assertEquals(this.index.search("uri:C"), read.search("uri:C"));
+        assertEquals(this.index.agggregatedSearch("uri:A", "uri:D"), read.agggregatedSearch("uri:A", "uri:D"));
+    }
+
+    @Test
+    public void testParallelBuild()
+    {
+        SetLSHIndex parallel = build(4);
+        assertTrue(parallel.isFrozen());
+
+        for (String entity : List.of("uri:A", "uri:B", "uri:C", "uri:D", "uri:E"))
+        {
+            assertEquals(this.index.search(entity), parallel.search(entity));
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.thetis.structures;
+
+import com.thetis.system.Configuration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class IdTest
+{
+    @Before
+    public void setup()
+    {
+        Configuration.reloadConfiguration();
+    }
+
+    @Test
+    public void testConcurrentAllocationIsUnique() throws InterruptedException, ExecutionException
+    {
+        int threads = 8, perThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<int[]>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++)
+        {
+            futures.add(executor.submit(() -> {
+                int[] ids = new int[perThread];
+
+                for (int i = 0; i < perThread; i++)
+                {
+                    ids[i] = Id.alloc().getId();
+                }
+
+                return ids;
+            }));
+        }
+
+        Set<Integer> allocated = new HashSet<>();
+        int largest = -1;
+
+        for (Future<int[]> future : futures)
+        {
+            for (int id : future.get())
+            {
+                assertTrue(allocated.add(id));
+                largest = Math.max(largest, id);
+            }
+        }
+
+        executor.shutdown();
+        assertEquals(threads * perThread, allocated.size());
+        assertTrue(Integer.parseInt(Configuration.getLargestId()) >= largest);
+    }
+
+    @Test
+    public void testExistingIdsAreNotAllocated()
+    {
+        int existing = Id.alloc().getId() + 1000;
+        new Id(existing);
+        assertTrue(Id.alloc().getId() > existing);
+    }
+
+    @Test
+    public void testPersistedLargestIdCoversAllocations()
+    {
+        Id id = Id.alloc();
+        assertTrue(Integer.parseInt(Configuration.getLargestId()) >= id.getId());
+    }
+}
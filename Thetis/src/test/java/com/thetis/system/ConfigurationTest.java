@@ -4,7 +4,8 @@ import com.thetis.system.Configuration;
 import org.junit.After;
 import org.junit.Test;
 
-import java.io.File;
+import java.io.*;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -15,6 +16,7 @@ public class ConfigurationTest
     public void reset()
     {
         (new File(".config.conf")).delete();
+        Configuration.reloadConfiguration();
     }
 
     @Test
@@ -72,10 +74,96 @@ public class ConfigurationTest
         assertEquals("path", Configuration.getDBPath());
     }
 
+    @Test
+    public void testFlush()
+    {
+        Configuration.setDBHost("flushed");
+        Configuration.flush();
+        Configuration.reloadConfiguration();
+        assertEquals("flushed", Configuration.getDBHost());
+    }
+
+    @Test
+    public void testReloadDiscardsUnflushed()
+    {
+        Configuration.setDBHost("unflushed");
+        Configuration.reloadConfiguration();
+        assertNull(Configuration.getDBHost());
+    }
+
     @Test
     public void testDBEmbeddingsDimension()
     {
         Configuration.setEmbeddingsDimension(100);
         assertEquals(100, Configuration.getEmbeddingsDimension());
     }
+
+    private static void writeFromOtherProcess(String key, String value) throws IOException, ClassNotFoundException
+    {
+        File file = new File(".config.conf");
+        Properties properties;
+
+        try (ObjectInputStream input = new ObjectInputStream(new FileInputStream(file)))
+        {
+            properties = (Properties) input.readObject();
+        }
+
+        properties.setProperty(key, value);
+
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file)))
+        {
+            output.writeObject(properties);
+        }
+
+        file.setLastModified(file.lastModified() + 2000);
+    }
+
+    @Test
+    public void testExternalChangeKeepsLocalUpdates() throws IOException, ClassNotFoundException
+    {
+        Configuration.setDBHost("local");
+        writeFromOtherProcess("DBName", "external");
+        Configuration.reloadIfChanged();
+        assertEquals("local", Configuration.getDBHost());
+        assertEquals("external", Configuration.getDBName());
+
+        Configuration.flush();
+        Configuration.reloadConfiguration();
+        assertEquals("local", Configuration.getDBHost());
+        assertEquals("external", Configuration.getDBName());
+    }
+
+    @Test
+    public void testFlushKeepsExternalChanges() throws IOException, ClassNotFoundException
+    {
+        Configuration.setDBHost("local");
+        writeFromOtherProcess("DBName", "external");
+        Configuration.flush();
+        Configuration.reloadConfiguration();
+        assertEquals("local", Configuration.getDBHost());
+        assertEquals("external", Configuration.getDBName());
+    }
+
+    @Test
+    public void testUnreadableFileKeepsConfiguration() throws IOException
+    {
+        Configuration.setDBName("kept");
+        Configuration.flush();
+
+        try (FileOutputStream output = new FileOutputStream(".config.conf"))
+        {
+            output.write(new byte[]{1, 2, 3});   // Partially written by another process
+        }
+
+        (new File(".config.conf")).setLastModified(System.currentTimeMillis() + 2000);
+        Configuration.reloadIfChanged();
+        assertEquals("kept", Configuration.getDBName());
+
+        Configuration.setDBHost("local");
+        Configuration.flush();
+        Configuration.reloadConfiguration();
+        assertEquals("kept", Configuration.getDBName());
+        assertEquals("local", Configuration.getDBHost());
+        assertEquals("index.bin", Configuration.getIndexFile());
+    }
 }
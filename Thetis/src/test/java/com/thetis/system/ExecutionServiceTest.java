@@ -0,0 +1,108 @@
+package com.thetis.system;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ExecutionServiceTest
+{
+    private ExecutionService service;
+
+    @Before
+    public void init()
+    {
+        this.service = new ExecutionService(4);
+    }
+
+    @After
+    public void close()
+    {
+        this.service.close();
+    }
+
+    @Test
+    public void testAwait() throws ExecutionException, InterruptedException
+    {
+        ExecutionService.Batch<Integer> batch = this.service.batch();
+        List<Long> progress = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            final int value = i;
+            batch.submit(() -> value * 2);
+        }
+
+        List<Integer> results = batch.await(progress::add);
+        assertEquals(100, results.size());
+        assertEquals(100, batch.completed());
+        assertEquals(100, progress.size());
+        assertEquals(100L, (long) progress.get(99));
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(i * 2, (int) results.get(i));
+        }
+    }
+
+    @Test
+    public void testReuse() throws ExecutionException, InterruptedException
+    {
+        for (int round = 0; round < 3; round++)
+        {
+            ExecutionService.Batch<Integer> batch = this.service.batch();
+            batch.submit(() -> 1);
+            assertEquals(List.of(1), batch.await(null));
+        }
+
+        assertFalse(this.service.isShutdown());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testFailure() throws ExecutionException, InterruptedException
+    {
+        ExecutionService.Batch<Integer> batch = this.service.batch();
+        batch.submit(() -> 1);
+        batch.submit(() -> { throw new IllegalStateException("Failure"); });
+        batch.await(null);
+    }
+
+    @Test
+    public void testDeadline() throws ExecutionException, InterruptedException
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutionService.Batch<Integer> batch = this.service.batch();
+
+        for (int i = 0; i < 20; i++)
+        {
+            batch.submit(() -> {
+                release.await();
+                return 1;
+            });
+        }
+
+        try
+        {
+            batch.await(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50), null);
+            fail("Deadline did not pass");
+        }
+
+        catch (TimeoutException e)
+        {
+            assertTrue(batch.isCancelled());
+        }
+
+        finally
+        {
+            release.countDown();
+        }
+    }
+}